@@ -0,0 +1,49 @@
+package com.thalesians.linear;
+
+import java.util.Random;
+
+final class BenchmarkMatrices {
+	private BenchmarkMatrices() {
+		throw new AssertionError("This class cannot be instantiated");
+	}
+
+	static SimpleDenseMatrixOfDoubles random(int rowcount, int columncount, long seed) {
+		Random random = new Random(seed);
+		SimpleDenseMatrixOfDoubles.Builder builder = SimpleDenseMatrixOfDoubles.builder(rowcount, columncount);
+		for (int i = 0; i < rowcount; ++i) {
+			for (int j = 0; j < columncount; ++j) {
+				builder.set(i, j, random.nextGaussian());
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Generates a sparse matrix in which every element is nonzero with the given probability
+	 */
+	static SparseMatrixOfDoubles randomSparse(int rowcount, int columncount, double density, long seed) {
+		Random random = new Random(seed);
+		SparseMatrixOfDoubles.Builder builder = SparseMatrixOfDoubles.builder(rowcount, columncount);
+		for (int i = 0; i < rowcount; ++i) {
+			for (int j = 0; j < columncount; ++j) {
+				if (random.nextDouble() < density) {
+					builder.setDouble(i, j, random.nextGaussian());
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Generates a well conditioned symmetric positive definite matrix, so that every kind of matrix built from it can be
+	 * inverted and Cholesky decomposed
+	 */
+	static SimpleDenseMatrixOfDoubles randomSymmetricPositiveDefinite(int dimcount, long seed) {
+		SimpleDenseMatrixOfDoubles g = random(dimcount, dimcount, seed);
+		return SimpleDenseMatrixOfDoubles.builder()
+				.mult(g, SimpleDenseMatrixOfDoubles.copyOf(g.transpose()))
+				.scale(1.0 / dimcount)
+				.add(SimpleDenseMatrixOfDoubles.identity(dimcount))
+				.build();
+	}
+}
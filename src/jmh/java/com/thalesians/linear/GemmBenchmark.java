@@ -0,0 +1,73 @@
+package com.thalesians.linear;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link Gemm} kernel, serial and parallel, with the EJML multiplication that the dense builder used
+ * before, and measures the multiplication through the builder, which picks between the two, as well as the symmetric
+ * rank-k product X^T * X.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GemmBenchmark {
+	@Param({ "10", "100", "500", "1000", "2000" })
+	public int size;
+
+	private SimpleDenseMatrixOfDoubles lhs;
+	private SimpleDenseMatrixOfDoubles rhs;
+	private DenseMatrix64F result;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		lhs = BenchmarkMatrices.random(size, size, 1L);
+		rhs = BenchmarkMatrices.random(size, size, 2L);
+		result = new DenseMatrix64F(size, size);
+	}
+
+	@Benchmark public DenseMatrix64F ejml() {
+		CommonOps.mult(lhs.impl, rhs.impl, result);
+		return result;
+	}
+
+	@Benchmark public DenseMatrix64F kernelSerial() {
+		Gemm.gemmSerial(size, size, size, 1.0, lhs.impl.data, 0, size, rhs.impl.data, 0, size, 0.0, result.data, 0, size);
+		return result;
+	}
+
+	@Benchmark public DenseMatrix64F kernelParallel() {
+		Gemm.gemm(size, size, size, 1.0, lhs.impl.data, 0, size, rhs.impl.data, 0, size, 0.0, result.data, 0, size);
+		return result;
+	}
+
+	@Benchmark public DenseMatrix64F kernelMultAdd() {
+		Gemm.gemm(size, size, size, 0.5, lhs.impl.data, 0, size, rhs.impl.data, 0, size, 0.5, result.data, 0, size);
+		return result;
+	}
+
+	@Benchmark public Matrix<Double> builderMult() {
+		return lhs.mult(rhs);
+	}
+
+	@Benchmark public Matrix<Double> transposeTimesSelf() {
+		return lhs.transpose().mult(lhs);
+	}
+}
@@ -0,0 +1,65 @@
+package com.thalesians.linear;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the Kronecker product and sum. The result of both has size squared rows and columns, so the sizes stop
+ * well short of those used by {@link MatrixOperationsBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KroneckerBenchmark {
+	@Param({ "2", "10", "30", "50" })
+	public int size;
+
+	@Param({ "DENSE", "SYMMETRIC", "BLOCK", "BLOCK_DIAGONAL", "TRANSPOSE", "SUBMATRIX" })
+	public MatrixKind kind;
+
+	private Matrix<Double> lhs;
+	private Matrix<Double> rhs;
+	private Matrix<Double> vector;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		lhs = kind.create(BenchmarkMatrices.randomSymmetricPositiveDefinite(size, 1L));
+		rhs = kind.create(BenchmarkMatrices.randomSymmetricPositiveDefinite(size, 2L));
+		vector = BenchmarkMatrices.random(size * size, 1, 3L);
+	}
+
+	@Benchmark public Matrix<Double> kroneckerProduct() {
+		return lhs.kroneckerProduct(rhs);
+	}
+
+	@Benchmark public Matrix<Double> kroneckerSum() {
+		return lhs.kroneckerSum(rhs);
+	}
+
+	@Benchmark public Matrix<Double> kroneckerProductTimesVector() {
+		return lhs.kroneckerProduct(rhs).mult(vector);
+	}
+
+	@Benchmark public Matrix<Double> lazyKroneckerProductTimesVector() {
+		return KroneckerProduct.of(lhs, rhs).mult(vector);
+	}
+
+	@Benchmark public Matrix<Double> lazyKroneckerSumTimesVector() {
+		return KroneckerSum.of(lhs, rhs).mult(vector);
+	}
+}
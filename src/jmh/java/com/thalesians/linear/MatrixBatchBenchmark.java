@@ -0,0 +1,79 @@
+package com.thalesians.linear;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares operations on many small matrices held in a {@link MatrixBatch} with the same operations on as many
+ * separate dense matrices
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatrixBatchBenchmark {
+	@Param({ "2", "3", "6", "12" })
+	public int size;
+
+	@Param({ "10000" })
+	public int count;
+
+	private List<SimpleDenseMatrixOfDoubles> matrices;
+	private MatrixBatch batch;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		matrices = new ArrayList<>(count);
+		for (int b = 0; b < count; ++b) {
+			matrices.add(BenchmarkMatrices.randomSymmetricPositiveDefinite(size, b));
+		}
+		batch = MatrixBatch.of(matrices);
+	}
+
+	@Benchmark public MatrixBatch batchedMult() {
+		return batch.mult(batch);
+	}
+
+	@Benchmark public void separateMult(Blackhole blackhole) {
+		for (SimpleDenseMatrixOfDoubles matrix : matrices) {
+			blackhole.consume(matrix.mult(matrix));
+		}
+	}
+
+	@Benchmark public MatrixBatch batchedInvert() {
+		return batch.invert();
+	}
+
+	@Benchmark public void separateInvert(Blackhole blackhole) {
+		for (SimpleDenseMatrixOfDoubles matrix : matrices) {
+			blackhole.consume(matrix.invert());
+		}
+	}
+
+	@Benchmark public MatrixBatch batchedCholesky() throws LinearException {
+		return batch.cholesky();
+	}
+
+	@Benchmark public void separateCholesky(Blackhole blackhole) throws LinearException {
+		for (SimpleDenseMatrixOfDoubles matrix : matrices) {
+			blackhole.consume(MatrixDecomposition.cholesky(matrix));
+		}
+	}
+}
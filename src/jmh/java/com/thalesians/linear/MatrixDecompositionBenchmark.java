@@ -0,0 +1,71 @@
+package com.thalesians.linear;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Function;
+
+/**
+ * Benchmarks every entry point of {@link MatrixDecomposition}, together with the solver and the Cholesky function in
+ * {@link MatrixFunctions}, on a symmetric positive definite input of each matrix kind.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatrixDecompositionBenchmark {
+	@Param({ "2", "10", "100", "500", "2000" })
+	public int size;
+
+	@Param({ "DENSE", "SYMMETRIC", "BLOCK", "BLOCK_DIAGONAL", "TRANSPOSE", "SUBMATRIX" })
+	public MatrixKind kind;
+
+	private Matrix<Double> matrix;
+	private Matrix<Double> rhs;
+	private Function<Matrix<Double>, Matrix<Double>> choleskyfunction;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		matrix = kind.create(BenchmarkMatrices.randomSymmetricPositiveDefinite(size, 1L));
+		rhs = BenchmarkMatrices.random(size, 1, 2L);
+		choleskyfunction = MatrixFunctions.choleskyDecompositionFunction();
+	}
+
+	@Benchmark public MatrixDecomposition.Cholesky cholesky() throws LinearException {
+		return MatrixDecomposition.cholesky(matrix);
+	}
+
+	@Benchmark public MatrixDecomposition.QR qr() throws LinearException {
+		return MatrixDecomposition.qr(matrix);
+	}
+
+	@Benchmark public MatrixDecomposition.SVD svd() throws LinearException {
+		return MatrixDecomposition.svd(matrix);
+	}
+
+	@Benchmark public MatrixDecomposition.ED ed() throws LinearException {
+		return MatrixDecomposition.ed(matrix);
+	}
+
+	@Benchmark public Matrix<Double> choleskyFunction() {
+		return choleskyfunction.apply(matrix);
+	}
+
+	@Benchmark public Matrix<Double> solve() {
+		return MatrixFunctions.solve(matrix, rhs);
+	}
+}
@@ -0,0 +1,52 @@
+package com.thalesians.linear;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the eager evaluation of a Kalman-style covariance update with its lazy, fused evaluation through
+ * {@link MatrixExpression}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatrixExpressionBenchmark {
+	@Param({ "10", "100", "500" })
+	public int size;
+
+	private SimpleDenseMatrixOfDoubles p;
+	private SimpleDenseMatrixOfDoubles f;
+	private SimpleDenseMatrixOfDoubles q;
+	private SimpleDenseMatrixOfDoubles r;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		p = BenchmarkMatrices.randomSymmetricPositiveDefinite(size, 1L);
+		f = BenchmarkMatrices.random(size, size, 2L);
+		q = BenchmarkMatrices.randomSymmetricPositiveDefinite(size, 3L);
+		r = BenchmarkMatrices.randomSymmetricPositiveDefinite(size, 4L);
+	}
+
+	@Benchmark public Matrix<Double> eager() {
+		return f.mult(p).mult(f.transpose()).scale(0.5).add(q).subtract(r.scale(0.25));
+	}
+
+	@Benchmark public Matrix<Double> lazy() {
+		return MatrixExpression.of(f).mult(p).mult(f.transpose()).scale(0.5).add(q).subtract(r.scale(0.25)).evaluate();
+	}
+}
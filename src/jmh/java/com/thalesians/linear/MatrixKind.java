@@ -0,0 +1,56 @@
+package com.thalesians.linear;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The matrix implementations covered by the benchmarks. Each kind builds a fresh instance holding the same values as
+ * (or, for the block diagonal kind, the diagonal blocks of) the given dense source matrix.
+ */
+public enum MatrixKind {
+	DENSE {
+		@Override Matrix<Double> create(SimpleDenseMatrixOfDoubles source) {
+			return SimpleDenseMatrixOfDoubles.copyOf(source);
+		}
+	},
+	SYMMETRIC {
+		@Override Matrix<Double> create(SimpleDenseMatrixOfDoubles source) {
+			return SimpleSymmetricMatrixOfDoubles.fromLower(source);
+		}
+	},
+	BLOCK {
+		@Override Matrix<Double> create(SimpleDenseMatrixOfDoubles source) {
+			int n = source.getRowCount(), top = n / 2, bottom = n - top;
+			Matrix<Double> a = source.get(SimpleRectangle.create(0, 0, top, top));
+			Matrix<Double> b = source.get(SimpleRectangle.create(0, top, top, bottom));
+			Matrix<Double> c = source.get(SimpleRectangle.create(top, 0, bottom, top));
+			Matrix<Double> d = source.get(SimpleRectangle.create(top, top, bottom, bottom));
+			return SimpleBlockMatrix.of(ImmutableList.of(a, b), ImmutableList.of(c, d));
+		}
+	},
+	BLOCK_DIAGONAL {
+		@Override Matrix<Double> create(SimpleDenseMatrixOfDoubles source) {
+			int n = source.getRowCount();
+			ImmutableList.Builder<Matrix<Double>> blocks = ImmutableList.builder();
+			for (int offset = 0; offset < n; offset += BLOCK_DIAGONAL_BLOCK_SIZE) {
+				int d = Math.min(BLOCK_DIAGONAL_BLOCK_SIZE, n - offset);
+				blocks.add(source.get(SimpleRectangle.create(offset, offset, d, d)));
+			}
+			return SimpleBlockDiagonalMatrixView.create(blocks.build());
+		}
+	},
+	TRANSPOSE {
+		@Override Matrix<Double> create(SimpleDenseMatrixOfDoubles source) {
+			return SimpleTransposeView.of(DENSE.create(source));
+		}
+	},
+	SUBMATRIX {
+		@Override Matrix<Double> create(SimpleDenseMatrixOfDoubles source) {
+			int n = source.getRowCount();
+			return SimpleSubMatrixView.of(DENSE.create(source), SimpleRectangle.create(0, 0, n, n), SimpleDenseMatrixOfDoubles.builder());
+		}
+	};
+
+	static final int BLOCK_DIAGONAL_BLOCK_SIZE = 10;
+
+	abstract Matrix<Double> create(SimpleDenseMatrixOfDoubles source);
+}
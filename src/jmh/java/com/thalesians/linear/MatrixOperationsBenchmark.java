@@ -0,0 +1,140 @@
+package com.thalesians.linear;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Function;
+
+/**
+ * Benchmarks the arithmetic operations of every matrix implementation. Operations whose results are memoised by the
+ * matrix (invert, determinant) get a fresh matrix instance for every invocation, so that the memoised value is never
+ * measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatrixOperationsBenchmark {
+	@Param({ "2", "10", "100", "500", "2000" })
+	public int size;
+
+	@Param({ "DENSE", "SYMMETRIC", "BLOCK", "BLOCK_DIAGONAL", "TRANSPOSE", "SUBMATRIX" })
+	public MatrixKind kind;
+
+	private SimpleDenseMatrixOfDoubles source;
+	private Matrix<Double> lhs;
+	private Matrix<Double> rhs;
+	private Matrix<Double> vectorised;
+
+	private static final Function<Double, Double> EXP = new Function<Double, Double>() {
+		@Override public Double apply(Double input) {
+			return Math.exp(input);
+		}
+	};
+
+	private static final Function2<Double, Double, Double> PRODUCT = new Function2<Double, Double, Double>() {
+		@Override public Double apply(Double input1, Double input2) {
+			return input1 * input2;
+		}
+	};
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		source = BenchmarkMatrices.randomSymmetricPositiveDefinite(size, 1L);
+		lhs = kind.create(source);
+		rhs = kind.create(BenchmarkMatrices.randomSymmetricPositiveDefinite(size, 2L));
+		vectorised = lhs.vec();
+	}
+
+	@Benchmark public Matrix<Double> mult() {
+		return lhs.mult(rhs);
+	}
+
+	@Benchmark public Matrix<Double> add() {
+		return lhs.add(rhs);
+	}
+
+	@Benchmark public Matrix<Double> subtract() {
+		return lhs.subtract(rhs);
+	}
+
+	@Benchmark public Matrix<Double> scale() {
+		return lhs.scale(1.5);
+	}
+
+	@Benchmark public Matrix<Double> vec() {
+		return lhs.vec();
+	}
+
+	@Benchmark public Matrix<Double> unvec() {
+		return vectorised.unvec(size);
+	}
+
+	@Benchmark public Matrix<Double> elementwise() {
+		return Elementwise.elementwise(lhs, EXP);
+	}
+
+	@Benchmark public Matrix<Double> elementwiseBinary() {
+		return Elementwise.elementwise(lhs, rhs, PRODUCT);
+	}
+
+	@Benchmark public Matrix<Double> sumOfRows() {
+		return MatrixArithmetics.sumOfRows(lhs);
+	}
+
+	@Benchmark public Matrix<Double> sumOfColumns() {
+		return MatrixArithmetics.sumOfColumns(lhs);
+	}
+
+	@Benchmark public Matrix<Double> meanRow() {
+		return MatrixArithmetics.meanRow(lhs);
+	}
+
+	@Benchmark public Matrix<Double> meanColumn() {
+		return MatrixArithmetics.meanColumn(lhs);
+	}
+
+	@Benchmark public double meanElement() {
+		return MatrixArithmetics.meanElement(lhs);
+	}
+
+	@Benchmark public double frobeniusNorm() {
+		return MatrixArithmetics.frobeniusNorm(lhs);
+	}
+
+	@Benchmark public double maxElement() {
+		return MatrixArithmetics.maxElement(lhs);
+	}
+
+	@State(Scope.Thread)
+	public static class FreshMatrix {
+		Matrix<Double> matrix;
+
+		@Setup(Level.Invocation)
+		public void setUp(MatrixOperationsBenchmark benchmark) {
+			matrix = benchmark.kind.create(benchmark.source);
+		}
+	}
+
+	@Benchmark public Matrix<Double> invert(FreshMatrix fresh) {
+		return fresh.matrix.invert();
+	}
+
+	@Benchmark public Double determinant(FreshMatrix fresh) {
+		return fresh.matrix.determinant();
+	}
+}
@@ -0,0 +1,68 @@
+package com.thalesians.linear;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares products of sparse matrices in CSR storage with the same products of their dense copies
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SparseMatrixBenchmark {
+	@Param({ "100", "500" })
+	public int size;
+
+	@Param({ "0.01", "0.1" })
+	public double density;
+
+	private SparseMatrixOfDoubles a;
+	private SparseMatrixOfDoubles b;
+	private SimpleDenseMatrixOfDoubles densea;
+	private SimpleDenseMatrixOfDoubles denseb;
+	private SimpleDenseMatrixOfDoubles vector;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		a = BenchmarkMatrices.randomSparse(size, size, density, 1L);
+		b = BenchmarkMatrices.randomSparse(size, size, density, 2L);
+		densea = a.toDense();
+		denseb = b.toDense();
+		vector = BenchmarkMatrices.random(size, 1, 3L);
+	}
+
+	@Benchmark public Matrix<Double> sparseTimesSparse() {
+		return a.mult(b);
+	}
+
+	@Benchmark public Matrix<Double> sparseTimesDense() {
+		return a.mult(denseb);
+	}
+
+	@Benchmark public Matrix<Double> denseTimesDense() {
+		return densea.mult(denseb);
+	}
+
+	@Benchmark public Matrix<Double> sparseTimesVector() {
+		return a.mult(vector);
+	}
+
+	@Benchmark public Matrix<Double> denseTimesVector() {
+		return densea.mult(vector);
+	}
+}
@@ -0,0 +1,91 @@
+package com.thalesians.linear;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the scalar {@link DoubleKernels} with the ones on the Vector API. Needs Java 17 or later; the forked JVM is
+ * started with the incubator module, and the vector variant fails in setup if the kernels cannot be loaded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class VectorKernelsBenchmark {
+	public enum Kernels { SCALAR, VECTOR }
+
+	@Param({ "SCALAR", "VECTOR" })
+	public Kernels kernels;
+
+	@Param({ "1000", "100000", "1000000" })
+	public int length;
+
+	private DoubleKernels impl;
+	private double[] a;
+	private double[] b;
+	private double[] c;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		impl = kernels == Kernels.SCALAR ? DoubleKernels.scalar() : DoubleKernels.vector();
+		if (impl == null) {
+			throw new IllegalStateException("The vector kernels cannot be loaded on this JVM");
+		}
+		Random random = new Random(1L);
+		a = new double[length];
+		b = new double[length];
+		c = new double[length];
+		for (int i = 0; i < length; ++i) {
+			a[i] = random.nextGaussian();
+			b[i] = random.nextGaussian();
+		}
+		// A sprinkling of NaNs for replaceNaNs and the NaN-ignoring reductions
+		for (int i = 0; i < length; i += 97) {
+			a[i] = Double.NaN;
+		}
+	}
+
+	@Benchmark public double[] add() {
+		impl.add(a, b, c, length);
+		return c;
+	}
+
+	@Benchmark public double[] scale() {
+		impl.scale(0.5, b, c, length);
+		return c;
+	}
+
+	@Benchmark public double[] axpy() {
+		impl.axpy(0.5, b, 0, c, 0, length);
+		return c;
+	}
+
+	@Benchmark public double[] multiply() {
+		impl.multiply(a, 0, b, 0, c, 0, length);
+		return c;
+	}
+
+	@Benchmark public double maxAbs() {
+		return impl.maxAbs(a, length);
+	}
+
+	@Benchmark public double[] replaceNaNs() {
+		impl.replaceNaNs(a, 0.0, c, length);
+		return c;
+	}
+}
@@ -3,49 +3,74 @@ package com.thalesians.linear;
 import com.google.common.base.Preconditions;
 
 public abstract class AbstractMatrix<T> implements Matrix<T> {
-	private final MatrixBuilder<T> resultbuilder;
-	private Matrix<T> inverse;
-	private Matrix<T> transpose;
+	private final MatrixBuilder<T> resultbuilderprototype;
+	private volatile Matrix<T> inverse;
+	private volatile Matrix<T> transpose;
 	
-	public AbstractMatrix(MatrixBuilder<T> resultbuilder) {
-		this.resultbuilder = resultbuilder;
+	/**
+	 * The given builder is only used as a prototype: every operation works on a new builder obtained from it, so
+	 * that a matrix can be shared between threads
+	 */
+	public AbstractMatrix(MatrixBuilder<T> resultbuilderprototype) {
+		this.resultbuilderprototype = resultbuilderprototype;
 	}
 	
+	/**
+	 * Returns a new builder for the result of an operation
+	 */
 	protected MatrixBuilder<T> getResultBuilder() {
-		return resultbuilder;
+		return resultbuilderprototype.newBuilder();
+	}
+	
+	/**
+	 * Returns the prototype to pass on to views created from this matrix
+	 */
+	protected MatrixBuilder<T> getResultBuilderPrototype() {
+		return resultbuilderprototype;
 	}
 	
 	@Override public Matrix<T> get(Rectangle rect) {
-		return SimpleSubMatrixView.of(this, rect, resultbuilder);
+		return SimpleSubMatrixView.of(this, rect, resultbuilderprototype);
 	}
 	
 	@Override public Matrix<T> scale(T scalar) {
-		return resultbuilder.set(this).scale(scalar).build();
+		return getResultBuilder().set(this).scale(scalar).build();
 	}
 	
 	@Override public Matrix<T> add(Matrix<T> matrix) {
-		return resultbuilder.set(this).add(matrix).build();
+		return getResultBuilder().set(this).add(matrix).build();
 	}
 	
 	@Override public Matrix<T> subtract(Matrix<T> matrix) {
-		return resultbuilder.set(this).subtract(matrix).build();
+		return getResultBuilder().set(this).subtract(matrix).build();
 	}
 	
 	@Override public Matrix<T> mult(Matrix<T> matrix) {
-		return resultbuilder.setShape(getRowCount(), matrix.getColumnCount()).mult(this, matrix).build();
+		return getResultBuilder().setShape(getRowCount(), matrix.getColumnCount()).mult(this, matrix).build();
 	}
 	
 	@Override public Matrix<T> multByDiag(Matrix<T> diag) {
-		return resultbuilder.set(this).multByDiag(diag).build();
+		return getResultBuilder().set(this).multByDiag(diag).build();
 	}
 	
 	@Override public Matrix<T> vec() {
 		int rc = getRowCount(), cc = getColumnCount();
+		MatrixBuilder<T> resultbuilder = getResultBuilder();
 		resultbuilder.setShape(rc * cc, 1);
 		int rowoffset = 0;
-		for (int j = 0; j < cc; ++j) {
-			for (int i = 0; i < rc; ++i) {
-				resultbuilder.set(rowoffset++, 0, get(i, j));
+		if (this instanceof DoubleMatrix && resultbuilder instanceof DoubleMatrixBuilder) {
+			DoubleMatrix m = (DoubleMatrix) this;
+			DoubleMatrixBuilder b = (DoubleMatrixBuilder) resultbuilder;
+			for (int j = 0; j < cc; ++j) {
+				for (int i = 0; i < rc; ++i) {
+					b.setDouble(rowoffset++, 0, m.getDouble(i, j));
+				}
+			}
+		} else {
+			for (int j = 0; j < cc; ++j) {
+				for (int i = 0; i < rc; ++i) {
+					resultbuilder.set(rowoffset++, 0, get(i, j));
+				}
 			}
 		}
 		return resultbuilder.build();
@@ -56,11 +81,22 @@ public abstract class AbstractMatrix<T> implements Matrix<T> {
 		int rc = getRowCount();
 		Preconditions.checkArgument(rc % rowcount == 0);
 		int columncount = rc / rowcount;
+		MatrixBuilder<T> resultbuilder = getResultBuilder();
 		resultbuilder.setShape(rowcount, columncount);
 		int rowoffset = 0;
-		for (int j = 0; j < columncount; ++j) {
-			for (int i = 0; i < rowcount; ++i) {
-				resultbuilder.set(i, j, get(rowoffset++, 0));
+		if (this instanceof DoubleMatrix && resultbuilder instanceof DoubleMatrixBuilder) {
+			DoubleMatrix m = (DoubleMatrix) this;
+			DoubleMatrixBuilder b = (DoubleMatrixBuilder) resultbuilder;
+			for (int j = 0; j < columncount; ++j) {
+				for (int i = 0; i < rowcount; ++i) {
+					b.setDouble(i, j, m.getDouble(rowoffset++, 0));
+				}
+			}
+		} else {
+			for (int j = 0; j < columncount; ++j) {
+				for (int i = 0; i < rowcount; ++i) {
+					resultbuilder.set(i, j, get(rowoffset++, 0));
+				}
 			}
 		}
 		return resultbuilder.build();
@@ -69,7 +105,30 @@ public abstract class AbstractMatrix<T> implements Matrix<T> {
 	@Override public Matrix<T> kroneckerProduct(Matrix<T> matrix) {
 		int rc1 = getRowCount(), cc1 = getColumnCount();
 		int rc2 = matrix.getRowCount(), cc2 = matrix.getColumnCount();
+		if (this instanceof DoubleMatrix && matrix instanceof DoubleMatrix && resultbuilderprototype instanceof SimpleDenseMatrixOfDoubles.Builder) {
+			// Matrices of doubles with dense results are multiplied out by the kernel of KroneckerProduct, without any
+			// intermediate matrices
+			@SuppressWarnings("unchecked")
+			Matrix<T> result = (Matrix<T>) KroneckerProduct.toDense((Matrix<Double>) this, (Matrix<Double>) matrix);
+			return result;
+		}
+		MatrixBuilder<T> resultbuilder = getResultBuilder();
 		resultbuilder.setShape(rc1 * rc2, cc1 * cc2);
+		if (this instanceof DoubleMatrix && matrix instanceof DoubleMatrix && resultbuilder instanceof DoubleMatrixBuilder) {
+			DoubleMatrix m1 = (DoubleMatrix) this, m2 = (DoubleMatrix) matrix;
+			DoubleMatrixBuilder b = (DoubleMatrixBuilder) resultbuilder;
+			for (int i1 = 0; i1 < rc1; ++i1) {
+				for (int j1 = 0; j1 < cc1; ++j1) {
+					double a = m1.getDouble(i1, j1);
+					for (int i2 = 0; i2 < rc2; ++i2) {
+						for (int j2 = 0; j2 < cc2; ++j2) {
+							b.setDouble(i1 * rc2 + i2, j1 * cc2 + j2, a * m2.getDouble(i2, j2));
+						}
+					}
+				}
+			}
+			return resultbuilder.build();
+		}
 		int rowoffset = 0;
 		for (int i = 0; i < rc1; ++i) {
 			int columnoffset = 0;
@@ -84,23 +143,31 @@ public abstract class AbstractMatrix<T> implements Matrix<T> {
 
 	@Override public Matrix<T> kroneckerSum(Matrix<T> matrix) {
 		Preconditions.checkArgument(MatrixUtils.isSquare(this) && MatrixUtils.isSquare(matrix));
-		Matrix<T> eye1 = resultbuilder.setShape(this).setToIdentity().build();
-		Matrix<T> eye2 = resultbuilder.setShape(matrix).setToIdentity().build();
+		if (this instanceof DoubleMatrix && matrix instanceof DoubleMatrix && resultbuilderprototype instanceof SimpleDenseMatrixOfDoubles.Builder) {
+			@SuppressWarnings("unchecked")
+			Matrix<T> result = (Matrix<T>) KroneckerSum.toDense((Matrix<Double>) this, (Matrix<Double>) matrix);
+			return result;
+		}
+		Matrix<T> eye1 = getResultBuilder().setShape(this).setToIdentity().build();
+		Matrix<T> eye2 = getResultBuilder().setShape(matrix).setToIdentity().build();
 		return kroneckerProduct(eye1).add(eye2.kroneckerProduct(matrix));
 	}
 	
 	@Override public Matrix<T> transpose() {
-		if (transpose == null) {
-			transpose = SimpleTransposeView.of(this, resultbuilder);
+		Matrix<T> result = transpose;
+		if (result == null) {
+			transpose = result = SimpleTransposeView.of(this, resultbuilderprototype);
 		}
-		return transpose;
+		return result;
 	}
 	
 	@Override public Matrix<T> invert() {
-		if (inverse == null) {
-			inverse = resultbuilder.set(this).invert().build();
+		// Racing threads may both compute the inverse, but either result is correct and the field is volatile
+		Matrix<T> result = inverse;
+		if (result == null) {
+			inverse = result = getResultBuilder().set(this).invert().build();
 		}
-		return inverse;
+		return result;
 	}
 	
 	@Override public T determinant() {
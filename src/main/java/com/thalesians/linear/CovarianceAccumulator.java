@@ -0,0 +1,214 @@
+package com.thalesians.linear;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Accumulates the mean and covariance of observations, given one at a time or in batches as the rows of a matrix,
+ * without keeping the observations. The mean and the scatter matrix about it are updated with Welford's method, and
+ * the scatter matrix is kept in the packed layout of {@link SimpleSymmetricMatrixOfDoubles}.
+ * <p>
+ * With a decay factor below one the weights of the earlier observations are multiplied by it for every new one, so
+ * that the statistics are exponentially weighted. Accumulators of consecutive chunks of the observations can be
+ * filled independently, e.g. in parallel, and then merged in order with Chan's formula. An accumulator is not safe
+ * for use by several threads at once.
+ */
+public final class CovarianceAccumulator {
+	private final int dimcount;
+	private final double decay;
+	private long count;
+	/** Sum of the weights of the observations, and of their squares */
+	private double weight;
+	private double weightsq;
+	private final double[] mean;
+	/** Packed lower triangle of the weighted sum of the outer products of the deviations from the mean */
+	private final double[] scatter;
+	/** Deviations of the observation being added, kept to avoid allocating them every time */
+	private final double[] delta;
+
+	private CovarianceAccumulator(int dimcount, double decay) {
+		Preconditions.checkArgument(dimcount >= 0);
+		Preconditions.checkArgument(decay > 0.0 && decay <= 1.0, "The decay factor must be in (0, 1] (%s)", decay);
+		this.dimcount = dimcount;
+		this.decay = decay;
+		this.mean = new double[dimcount];
+		this.scatter = new double[SimpleSymmetricMatrixOfDoubles.getDataLength(dimcount)];
+		this.delta = new double[dimcount];
+	}
+
+	public static CovarianceAccumulator create(int dimcount) {
+		return new CovarianceAccumulator(dimcount, 1.0);
+	}
+
+	/**
+	 * Creates an accumulator that weights the observation that is k observations older than the latest one by decay^k
+	 */
+	public static CovarianceAccumulator create(int dimcount, double decay) {
+		return new CovarianceAccumulator(dimcount, decay);
+	}
+
+	public CovarianceAccumulator copy() {
+		CovarianceAccumulator result = new CovarianceAccumulator(dimcount, decay);
+		result.count = count;
+		result.weight = weight;
+		result.weightsq = weightsq;
+		System.arraycopy(mean, 0, result.mean, 0, dimcount);
+		System.arraycopy(scatter, 0, result.scatter, 0, scatter.length);
+		return result;
+	}
+
+	public int getDimCount() {
+		return dimcount;
+	}
+
+	public double getDecay() {
+		return decay;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getWeight() {
+		return weight;
+	}
+
+	public CovarianceAccumulator add(double... observation) {
+		Preconditions.checkArgument(observation.length == dimcount, "Observation of dimension %s, expected %s", observation.length, dimcount);
+		double previousweight = decay * weight;
+		weight = previousweight + 1.0;
+		weightsq = decay * decay * weightsq + 1.0;
+		for (int j = 0; j < dimcount; ++j) {
+			delta[j] = observation[j] - mean[j];
+			mean[j] += delta[j] / weight;
+		}
+		// The deviation from the new mean is (previousweight / weight) times the deviation from the old one, so the
+		// update stays symmetric and only the lower triangle needs computing
+		double c = previousweight / weight;
+		for (int i = 0, k = 0; i < dimcount; ++i) {
+			double ci = c * delta[i];
+			for (int j = 0; j <= i; ++j, ++k) {
+				scatter[k] = decay * scatter[k] + ci * delta[j];
+			}
+		}
+		++count;
+		return this;
+	}
+
+	/**
+	 * Adds the rows of the matrix as observations, in order. Without decay the batch is reduced to its own mean and
+	 * scatter matrix, which is computed as a symmetric rank-k product, and merged in.
+	 */
+	public CovarianceAccumulator add(Matrix<? extends Double> observations) {
+		int n = observations.getRowCount();
+		Preconditions.checkArgument(observations.getColumnCount() == dimcount, "Observations of dimension %s, expected %s", observations.getColumnCount(), dimcount);
+		if (n == 0) {
+			return this;
+		}
+		double[] x = new double[n * dimcount];
+		if (observations instanceof SimpleDenseMatrixOfDoubles) {
+			System.arraycopy(((SimpleDenseMatrixOfDoubles) observations).impl.data, 0, x, 0, x.length);
+		} else {
+			for (int i = 0; i < n; ++i) {
+				for (int j = 0; j < dimcount; ++j) {
+					x[i * dimcount + j] = MatrixUtils.getDouble(observations, i, j);
+				}
+			}
+		}
+		if (decay != 1.0) {
+			double[] observation = new double[dimcount];
+			for (int i = 0; i < n; ++i) {
+				System.arraycopy(x, i * dimcount, observation, 0, dimcount);
+				add(observation);
+			}
+			return this;
+		}
+		double[] batchmean = new double[dimcount];
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < dimcount; ++j) {
+				batchmean[j] += x[i * dimcount + j];
+			}
+		}
+		for (int j = 0; j < dimcount; ++j) {
+			batchmean[j] /= n;
+		}
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < dimcount; ++j) {
+				x[i * dimcount + j] -= batchmean[j];
+			}
+		}
+		combine(n, n, n, batchmean, SymmetricRankK.transposeTimesSelf(n, dimcount, 1.0, x));
+		return this;
+	}
+
+	/**
+	 * Merges in the statistics of an accumulator of the observations that follow those of this one, leaving the other
+	 * accumulator unchanged
+	 */
+	public CovarianceAccumulator merge(CovarianceAccumulator later) {
+		Preconditions.checkArgument(later.dimcount == dimcount, "Incompatible dimensions (%s and %s)", dimcount, later.dimcount);
+		Preconditions.checkArgument(later.decay == decay, "Incompatible decay factors (%s and %s)", decay, later.decay);
+		combine(later.count, later.weight, later.weightsq, later.mean, later.scatter);
+		return this;
+	}
+
+	/**
+	 * Chan's formula for the union of two sets of observations, the given ones following those accumulated so far
+	 */
+	private void combine(long othercount, double otherweight, double otherweightsq, double[] othermean, double[] otherscatter) {
+		if (othercount == 0) {
+			return;
+		}
+		double decayfactor = decay == 1.0 ? 1.0 : Math.pow(decay, othercount);
+		double thisweight = decayfactor * weight;
+		weight = thisweight + otherweight;
+		weightsq = decayfactor * decayfactor * weightsq + otherweightsq;
+		double c = thisweight * otherweight / weight;
+		for (int j = 0; j < dimcount; ++j) {
+			delta[j] = othermean[j] - mean[j];
+			mean[j] += delta[j] * otherweight / weight;
+		}
+		for (int i = 0, k = 0; i < dimcount; ++i) {
+			double ci = c * delta[i];
+			for (int j = 0; j <= i; ++j, ++k) {
+				scatter[k] = decayfactor * scatter[k] + otherscatter[k] + ci * delta[j];
+			}
+		}
+		count += othercount;
+	}
+
+	/**
+	 * The weighted mean as a row vector, or NaNs if there are no observations
+	 */
+	public SimpleDenseMatrixOfDoubles getMean() {
+		if (count == 0) {
+			double[] result = new double[dimcount];
+			Arrays.fill(result, Double.NaN);
+			return SimpleDenseMatrixOfDoubles.rowVector(result);
+		}
+		return SimpleDenseMatrixOfDoubles.rowVector(mean.clone());
+	}
+
+	/**
+	 * The weighted population covariance, i.e. the scatter matrix divided by the sum of the weights, or NaNs if there
+	 * are no observations
+	 */
+	public SimpleSymmetricMatrixOfDoubles getCovariance() {
+		if (count == 0) {
+			return SimpleSymmetricMatrixOfDoubles.nan(dimcount);
+		}
+		return new SimpleSymmetricMatrixOfDoubles(dimcount, scatter.clone(), 1.0 / weight);
+	}
+
+	/**
+	 * The unbiased weighted sample covariance, i.e. the scatter matrix divided by W - W2 / W for the sum of the weights
+	 * W and the sum of their squares W2, which is n - 1 without decay; NaNs if there are fewer than two observations
+	 */
+	public SimpleSymmetricMatrixOfDoubles getSampleCovariance() {
+		if (count < 2) {
+			return SimpleSymmetricMatrixOfDoubles.nan(dimcount);
+		}
+		return new SimpleSymmetricMatrixOfDoubles(dimcount, scatter.clone(), 1.0 / (weight - weightsq / weight));
+	}
+}
@@ -0,0 +1,127 @@
+package com.thalesians.linear;
+
+/**
+ * Loops over contiguous double arrays that the dense matrices and their builders use for their elementwise operations
+ * and reductions. The implementation in use is the one built on the Vector API in the vector source set when it can be
+ * loaded, i.e. on Java 17 or later with {@code --add-modules jdk.incubator.vector}, and the scalar loops below
+ * otherwise. The reductions only pick elements, so both give the same results. Setting the system property
+ * {@code com.thalesians.linear.vector} to false forces the scalar loops.
+ * <p>
+ * Output arrays may be the same as input arrays, but must not otherwise overlap them.
+ */
+abstract class DoubleKernels {
+	private static final DoubleKernels SCALAR = new Scalar();
+	private static final DoubleKernels VECTOR = loadVector();
+	private static final DoubleKernels INSTANCE = VECTOR != null && Boolean.parseBoolean(System.getProperty("com.thalesians.linear.vector", "true")) ? VECTOR : SCALAR;
+
+	/**
+	 * The kernels in use
+	 */
+	static DoubleKernels get() {
+		return INSTANCE;
+	}
+
+	static DoubleKernels scalar() {
+		return SCALAR;
+	}
+
+	/**
+	 * The vectorised kernels, or null if they cannot be loaded on this JVM
+	 */
+	static DoubleKernels vector() {
+		return VECTOR;
+	}
+
+	private static DoubleKernels loadVector() {
+		try {
+			return (DoubleKernels) Class.forName("com.thalesians.linear.VectorDoubleKernels").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+			// Not built, not Java 17 or later, or the incubator module is not there
+			return null;
+		}
+	}
+
+	/** c = a + b */
+	abstract void add(double[] a, double[] b, double[] c, int length);
+
+	/** c = a - b */
+	abstract void subtract(double[] a, double[] b, double[] c, int length);
+
+	/** c = alpha * a */
+	abstract void scale(double alpha, double[] a, double[] c, int length);
+
+	/** y += alpha * x over length elements from the given offsets */
+	abstract void axpy(double alpha, double[] x, int xoffset, double[] y, int yoffset, int length);
+
+	/** c = a .* b over length elements from the given offsets */
+	abstract void multiply(double[] a, int aoffset, double[] b, int boffset, double[] c, int coffset, int length);
+
+	/** The largest absolute value, ignoring NaNs, or zero if there are no elements */
+	abstract double maxAbs(double[] a, int length);
+
+	/** The smallest absolute value, ignoring NaNs, or Double.MAX_VALUE if there are no elements */
+	abstract double minAbs(double[] a, int length);
+
+	/** c = a with NaNs replaced by the value */
+	abstract void replaceNaNs(double[] a, double value, double[] c, int length);
+
+	private static final class Scalar extends DoubleKernels {
+		@Override void add(double[] a, double[] b, double[] c, int length) {
+			for (int i = 0; i < length; ++i) {
+				c[i] = a[i] + b[i];
+			}
+		}
+
+		@Override void subtract(double[] a, double[] b, double[] c, int length) {
+			for (int i = 0; i < length; ++i) {
+				c[i] = a[i] - b[i];
+			}
+		}
+
+		@Override void scale(double alpha, double[] a, double[] c, int length) {
+			for (int i = 0; i < length; ++i) {
+				c[i] = alpha * a[i];
+			}
+		}
+
+		@Override void axpy(double alpha, double[] x, int xoffset, double[] y, int yoffset, int length) {
+			for (int i = 0; i < length; ++i) {
+				y[yoffset + i] += alpha * x[xoffset + i];
+			}
+		}
+
+		@Override void multiply(double[] a, int aoffset, double[] b, int boffset, double[] c, int coffset, int length) {
+			for (int i = 0; i < length; ++i) {
+				c[coffset + i] = a[aoffset + i] * b[boffset + i];
+			}
+		}
+
+		@Override double maxAbs(double[] a, int length) {
+			double max = 0.0;
+			for (int i = 0; i < length; ++i) {
+				double val = Math.abs(a[i]);
+				if (val > max) {
+					max = val;
+				}
+			}
+			return max;
+		}
+
+		@Override double minAbs(double[] a, int length) {
+			double min = Double.MAX_VALUE;
+			for (int i = 0; i < length; ++i) {
+				double val = Math.abs(a[i]);
+				if (val < min) {
+					min = val;
+				}
+			}
+			return min;
+		}
+
+		@Override void replaceNaNs(double[] a, double value, double[] c, int length) {
+			for (int i = 0; i < length; ++i) {
+				c[i] = Double.isNaN(a[i]) ? value : a[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.thalesians.linear;
+
+/**
+ * Primitive access to the elements of a double valued matrix, which avoids boxing every element read as a Double.
+ * The views implement this interface whatever their element type, so {@link #getDouble(int, int)} may only be called
+ * on a view whose elements are Doubles.
+ */
+public interface DoubleMatrix {
+	int getRowCount();
+	int getColumnCount();
+	double getDouble(int row, int column);
+	
+	/**
+	 * Copies the given row into dest, starting at the given offset
+	 */
+	default void getRow(int row, double[] dest, int offset) {
+		for (int j = 0, cc = getColumnCount(); j < cc; ++j) {
+			dest[offset + j] = getDouble(row, j);
+		}
+	}
+	
+	/**
+	 * Copies the given column into dest, starting at the given offset
+	 */
+	default void getColumn(int column, double[] dest, int offset) {
+		for (int i = 0, rc = getRowCount(); i < rc; ++i) {
+			dest[offset + i] = getDouble(i, column);
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package com.thalesians.linear;
+
+/**
+ * A builder of double valued matrices with primitive accessors, which avoid boxing every element written as a Double
+ */
+public interface DoubleMatrixBuilder extends MatrixBuilder<Double> {
+	double getDouble(int row, int column);
+	DoubleMatrixBuilder setDouble(int row, int column, double value);
+	DoubleMatrixBuilder addDouble(int row, int column, double value);
+}
@@ -1,5 +1,10 @@
 package com.thalesians.linear;
 
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import org.ejml.data.DenseMatrix64F;
+
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 
@@ -19,8 +24,12 @@ public final class Elementwise {
 		return builder.build();
 	}
 	
+	/**
+	 * A function that maps zero to zero is applied to the stored elements of a sparse matrix only, and the result is
+	 * sparse
+	 */
 	public static Matrix<Double> elementwise(Matrix<Double> matrix, Function<Double, Double> func) {
-		return elementwise(SimpleDenseMatrixOfDoubles.builder(), matrix, func);
+		return elementwiseDoubles(matrix, func::apply);
 	}
 	
 	public static <T> Matrix<T> elementwise(MatrixBuilder<T> builder, Matrix<T> matrix1, Matrix<T> matrix2, Function2<T, T, T> func) {
@@ -35,7 +44,101 @@ public final class Elementwise {
 		return builder.build();
 	}
 	
+	/**
+	 * A function that maps two zeros to zero is applied to two sparse matrices over the union of their stored elements
+	 * only, and the result is sparse
+	 */
 	public static Matrix<Double> elementwise(Matrix<Double> matrix1, Matrix<Double> matrix2, Function2<Double, Double, Double> func) {
-		return elementwise(SimpleDenseMatrixOfDoubles.builder(), matrix1, matrix2, func);
+		return elementwiseDoubles(matrix1, matrix2, func::apply);
+	}
+	
+	public static Matrix<Double> elementwiseDoubles(Matrix<? extends Double> matrix, DoubleUnaryOperator func) {
+		return elementwiseDoubles(matrix, func, false);
+	}
+	
+	/**
+	 * Applies the primitive function to every element without boxing. In the parallel mode blocks of rows are computed
+	 * on the pool of {@link ParallelUtils}, so the function must be safe to call concurrently. A function that maps zero
+	 * to zero is applied to the stored elements of a sparse matrix only, and the result is sparse.
+	 */
+	public static Matrix<Double> elementwiseDoubles(Matrix<? extends Double> matrix, DoubleUnaryOperator func, boolean parallel) {
+		if (matrix instanceof SparseMatrixOfDoubles && func.applyAsDouble(0.0) == 0.0) {
+			return ((SparseMatrixOfDoubles) matrix).mapNonZeros(func);
+		}
+		int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
+		double[] source = matrix instanceof SimpleDenseMatrixOfDoubles ? ((SimpleDenseMatrixOfDoubles) matrix).impl.data : null;
+		double[] result = new double[rc * cc];
+		ParallelUtils.forEachRowBlock(rc, cc, parallel, (rowbegin, rowend) -> {
+			if (source != null) {
+				for (int k = rowbegin * cc, end = rowend * cc; k < end; ++k) {
+					result[k] = func.applyAsDouble(source[k]);
+				}
+			} else {
+				for (int i = rowbegin; i < rowend; ++i) {
+					for (int j = 0; j < cc; ++j) {
+						result[i * cc + j] = func.applyAsDouble(MatrixUtils.getDouble(matrix, i, j));
+					}
+				}
+			}
+		});
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(rc, cc, result));
+	}
+	
+	public static Matrix<Double> elementwiseDoubles(Matrix<? extends Double> matrix1, Matrix<? extends Double> matrix2, DoubleBinaryOperator func) {
+		return elementwiseDoubles(matrix1, matrix2, func, false);
+	}
+	
+	/**
+	 * The binary counterpart of {@link #elementwiseDoubles(Matrix, DoubleUnaryOperator, boolean)}; a function that maps
+	 * two zeros to zero is applied to two sparse matrices over the union of their stored elements only
+	 */
+	public static Matrix<Double> elementwiseDoubles(Matrix<? extends Double> matrix1, Matrix<? extends Double> matrix2, DoubleBinaryOperator func, boolean parallel) {
+		Preconditions.checkArgument(MatrixUtils.areSameShape(matrix1, matrix2));
+		if (matrix1 instanceof SparseMatrixOfDoubles && matrix2 instanceof SparseMatrixOfDoubles && func.applyAsDouble(0.0, 0.0) == 0.0) {
+			return SparseMatrixOfDoubles.merge((SparseMatrixOfDoubles) matrix1, (SparseMatrixOfDoubles) matrix2, func);
+		}
+		int rc = matrix1.getRowCount(), cc = matrix1.getColumnCount();
+		double[] source1 = matrix1 instanceof SimpleDenseMatrixOfDoubles ? ((SimpleDenseMatrixOfDoubles) matrix1).impl.data : null;
+		double[] source2 = matrix2 instanceof SimpleDenseMatrixOfDoubles ? ((SimpleDenseMatrixOfDoubles) matrix2).impl.data : null;
+		double[] result = new double[rc * cc];
+		ParallelUtils.forEachRowBlock(rc, cc, parallel, (rowbegin, rowend) -> {
+			if (source1 != null && source2 != null) {
+				for (int k = rowbegin * cc, end = rowend * cc; k < end; ++k) {
+					result[k] = func.applyAsDouble(source1[k], source2[k]);
+				}
+			} else {
+				for (int i = rowbegin; i < rowend; ++i) {
+					for (int j = 0; j < cc; ++j) {
+						result[i * cc + j] = func.applyAsDouble(MatrixUtils.getDouble(matrix1, i, j), MatrixUtils.getDouble(matrix2, i, j));
+					}
+				}
+			}
+		});
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(rc, cc, result));
+	}
+	
+	/**
+	 * Applies the function to every element of a float valued matrix in double precision, rounding the results; the
+	 * primitive function avoids boxing every element
+	 */
+	public static SimpleDenseMatrixOfFloats elementwiseFloats(Matrix<? extends Float> matrix, DoubleUnaryOperator func) {
+		int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
+		float[] source = SimpleDenseMatrixOfFloats.toArray(matrix);
+		float[] result = new float[rc * cc];
+		for (int k = 0; k < result.length; ++k) {
+			result[k] = (float) func.applyAsDouble(source[k]);
+		}
+		return new SimpleDenseMatrixOfFloats(rc, cc, result);
+	}
+	
+	public static SimpleDenseMatrixOfFloats elementwiseFloats(Matrix<? extends Float> matrix1, Matrix<? extends Float> matrix2, DoubleBinaryOperator func) {
+		Preconditions.checkArgument(MatrixUtils.areSameShape(matrix1, matrix2));
+		int rc = matrix1.getRowCount(), cc = matrix1.getColumnCount();
+		float[] source1 = SimpleDenseMatrixOfFloats.toArray(matrix1), source2 = SimpleDenseMatrixOfFloats.toArray(matrix2);
+		float[] result = new float[rc * cc];
+		for (int k = 0; k < result.length; ++k) {
+			result[k] = (float) func.applyAsDouble(source1[k], source2[k]);
+		}
+		return new SimpleDenseMatrixOfFloats(rc, cc, result);
 	}
 }
@@ -0,0 +1,19 @@
+package com.thalesians.linear;
+
+/**
+ * Primitive access to the elements of a float valued matrix, the single precision counterpart of {@link DoubleMatrix}
+ */
+public interface FloatMatrix {
+	int getRowCount();
+	int getColumnCount();
+	float getFloat(int row, int column);
+	
+	/**
+	 * Copies the given row into dest, starting at the given offset
+	 */
+	default void getRow(int row, float[] dest, int offset) {
+		for (int j = 0, cc = getColumnCount(); j < cc; ++j) {
+			dest[offset + j] = getFloat(row, j);
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package com.thalesians.linear;
+
+/**
+ * A builder of float valued matrices with primitive accessors, which avoid boxing every element written as a Float
+ */
+public interface FloatMatrixBuilder extends MatrixBuilder<Float> {
+	float getFloat(int row, int column);
+	FloatMatrixBuilder setFloat(int row, int column, float value);
+	FloatMatrixBuilder addFloat(int row, int column, float value);
+}
@@ -0,0 +1,240 @@
+package com.thalesians.linear;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A pure Java, cache blocked implementation of the general matrix multiply C = alpha * A * B + beta * C for row-major
+ * storage. Products above the parallel threshold are split into blocks of C, which are computed on the pool of
+ * {@link ParallelUtils}.
+ */
+public final class Gemm {
+	/** Depth of the blocks of A and B, so that the panel of B being worked on stays in the L2 cache */
+	private static final int KC = 128;
+	/** Width of the blocks of B and C, so that the rows of B and C being worked on stay in the L1 cache */
+	private static final int NC = 512;
+	/** Height of the blocks of C that parallel tasks are split into */
+	private static final int MC = 32;
+
+	private static volatile long parallelthreshold = Long.getLong("com.thalesians.linear.gemm.parallelThreshold", 64L * 64L * 64L);
+	private static volatile long kernelthreshold = Long.getLong("com.thalesians.linear.gemm.kernelThreshold", 16L * 16L * 16L);
+
+	private Gemm() {
+		throw new AssertionError("This class cannot be instantiated");
+	}
+
+	/**
+	 * Products with at least this many multiply-adds are computed in parallel
+	 */
+	public static long getParallelThreshold() {
+		return parallelthreshold;
+	}
+
+	public static void setParallelThreshold(long multiplyaddcount) {
+		Preconditions.checkArgument(multiplyaddcount >= 0);
+		parallelthreshold = multiplyaddcount;
+	}
+
+	/**
+	 * Products with fewer than this many multiply-adds are left to EJML by the dense matrix builder, as the blocking
+	 * does not pay off for them
+	 */
+	public static long getKernelThreshold() {
+		return kernelthreshold;
+	}
+
+	public static void setKernelThreshold(long multiplyaddcount) {
+		Preconditions.checkArgument(multiplyaddcount >= 0);
+		kernelthreshold = multiplyaddcount;
+	}
+
+	static long getMultiplyAddCount(int m, int n, int k) {
+		return (long) m * (long) n * (long) k;
+	}
+
+	/**
+	 * Computes C = alpha * A * B + beta * C, where A is m x k, B is k x n and C is m x n, all stored row-major with
+	 * the given leading dimensions (distance between the starts of consecutive rows). C must not overlap A or B.
+	 */
+	public static void gemm(int m, int n, int k, double alpha,
+			double[] a, int aoffset, int lda, double[] b, int boffset, int ldb,
+			double beta, double[] c, int coffset, int ldc) {
+		if (m == 0 || n == 0) {
+			return;
+		}
+		if (getMultiplyAddCount(m, n, k) >= parallelthreshold && (long) m * (long) n > MC * MC) {
+			ParallelUtils.getPool().invoke(new GemmTask(0, m, 0, n, k, alpha, a, aoffset, lda, b, boffset, ldb, beta, c, coffset, ldc));
+		} else {
+			gemmSerial(0, m, 0, n, k, alpha, a, aoffset, lda, b, boffset, ldb, beta, c, coffset, ldc);
+		}
+	}
+
+	/**
+	 * Computes C = alpha * A * B + beta * C on the calling thread only
+	 */
+	public static void gemmSerial(int m, int n, int k, double alpha,
+			double[] a, int aoffset, int lda, double[] b, int boffset, int ldb,
+			double beta, double[] c, int coffset, int ldc) {
+		gemmSerial(0, m, 0, n, k, alpha, a, aoffset, lda, b, boffset, ldb, beta, c, coffset, ldc);
+	}
+
+	/**
+	 * Computes the rows [rowbegin, rowend) and columns [columnbegin, columnend) of C
+	 */
+	private static void gemmSerial(int rowbegin, int rowend, int columnbegin, int columnend, int k, double alpha,
+			double[] a, int aoffset, int lda, double[] b, int boffset, int ldb,
+			double beta, double[] c, int coffset, int ldc) {
+		scale(rowbegin, rowend, columnbegin, columnend, beta, c, coffset, ldc);
+		if (alpha == 0.0) {
+			return;
+		}
+		for (int pp = 0; pp < k; pp += KC) {
+			int pend = Math.min(pp + KC, k);
+			for (int jj = columnbegin; jj < columnend; jj += NC) {
+				int jend = Math.min(jj + NC, columnend);
+				for (int i = rowbegin; i < rowend; ++i) {
+					int arow = aoffset + i * lda, crow = coffset + i * ldc;
+					int p = pp;
+					// Unrolling over the depth keeps four elements of A in registers and loads and stores each element of C
+					// once for every four multiply-adds
+					for (; p + 3 < pend; p += 4) {
+						double a0 = alpha * a[arow + p], a1 = alpha * a[arow + p + 1], a2 = alpha * a[arow + p + 2], a3 = alpha * a[arow + p + 3];
+						int b0 = boffset + p * ldb, b1 = b0 + ldb, b2 = b1 + ldb, b3 = b2 + ldb;
+						for (int j = jj; j < jend; ++j) {
+							c[crow + j] += a0 * b[b0 + j] + a1 * b[b1 + j] + a2 * b[b2 + j] + a3 * b[b3 + j];
+						}
+					}
+					for (; p < pend; ++p) {
+						double a0 = alpha * a[arow + p];
+						int b0 = boffset + p * ldb;
+						for (int j = jj; j < jend; ++j) {
+							c[crow + j] += a0 * b[b0 + j];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes C = alpha * A * B + beta * C in single precision, blocked in the same way as the double precision
+	 * multiply. Products above the parallel threshold are split into blocks of rows of C.
+	 */
+	public static void gemm(int m, int n, int k, float alpha,
+			float[] a, int aoffset, int lda, float[] b, int boffset, int ldb,
+			float beta, float[] c, int coffset, int ldc) {
+		if (m == 0 || n == 0) {
+			return;
+		}
+		int blockcount = (m + MC - 1) / MC;
+		if (getMultiplyAddCount(m, n, k) >= parallelthreshold && blockcount > 1) {
+			ParallelUtils.forEachIndex(0, blockcount, block -> gemmSerial(block * MC, Math.min(m, (block + 1) * MC), 0, n, k,
+					alpha, a, aoffset, lda, b, boffset, ldb, beta, c, coffset, ldc));
+		} else {
+			gemmSerial(0, m, 0, n, k, alpha, a, aoffset, lda, b, boffset, ldb, beta, c, coffset, ldc);
+		}
+	}
+
+	private static void gemmSerial(int rowbegin, int rowend, int columnbegin, int columnend, int k, float alpha,
+			float[] a, int aoffset, int lda, float[] b, int boffset, int ldb,
+			float beta, float[] c, int coffset, int ldc) {
+		for (int i = rowbegin; i < rowend; ++i) {
+			int crow = coffset + i * ldc;
+			if (beta == 0.0f) {
+				Arrays.fill(c, crow + columnbegin, crow + columnend, 0.0f);
+			} else if (beta != 1.0f) {
+				for (int j = crow + columnbegin, jend = crow + columnend; j < jend; ++j) {
+					c[j] *= beta;
+				}
+			}
+		}
+		if (alpha == 0.0f) {
+			return;
+		}
+		for (int pp = 0; pp < k; pp += KC) {
+			int pend = Math.min(pp + KC, k);
+			for (int jj = columnbegin; jj < columnend; jj += NC) {
+				int jend = Math.min(jj + NC, columnend);
+				for (int i = rowbegin; i < rowend; ++i) {
+					int arow = aoffset + i * lda, crow = coffset + i * ldc;
+					int p = pp;
+					for (; p + 3 < pend; p += 4) {
+						float a0 = alpha * a[arow + p], a1 = alpha * a[arow + p + 1], a2 = alpha * a[arow + p + 2], a3 = alpha * a[arow + p + 3];
+						int b0 = boffset + p * ldb, b1 = b0 + ldb, b2 = b1 + ldb, b3 = b2 + ldb;
+						for (int j = jj; j < jend; ++j) {
+							c[crow + j] += a0 * b[b0 + j] + a1 * b[b1 + j] + a2 * b[b2 + j] + a3 * b[b3 + j];
+						}
+					}
+					for (; p < pend; ++p) {
+						float a0 = alpha * a[arow + p];
+						int b0 = boffset + p * ldb;
+						for (int j = jj; j < jend; ++j) {
+							c[crow + j] += a0 * b[b0 + j];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static void scale(int rowbegin, int rowend, int columnbegin, int columnend, double beta, double[] c, int coffset, int ldc) {
+		if (beta == 1.0) {
+			return;
+		}
+		for (int i = rowbegin; i < rowend; ++i) {
+			int crow = coffset + i * ldc;
+			if (beta == 0.0) {
+				// Overwrite rather than multiply, so that NaNs and infinities in the previous contents do not propagate
+				Arrays.fill(c, crow + columnbegin, crow + columnend, 0.0);
+			} else {
+				for (int j = crow + columnbegin, jend = crow + columnend; j < jend; ++j) {
+					c[j] *= beta;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Splits C along its longer side until the blocks are small enough to be computed serially. The blocks are
+	 * disjoint, so the tasks need no synchronisation.
+	 */
+	private static final class GemmTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int rowbegin, rowend, columnbegin, columnend, k;
+		private final double alpha, beta;
+		private final double[] a, b, c;
+		private final int aoffset, lda, boffset, ldb, coffset, ldc;
+
+		GemmTask(int rowbegin, int rowend, int columnbegin, int columnend, int k, double alpha,
+				double[] a, int aoffset, int lda, double[] b, int boffset, int ldb,
+				double beta, double[] c, int coffset, int ldc) {
+			this.rowbegin = rowbegin; this.rowend = rowend;
+			this.columnbegin = columnbegin; this.columnend = columnend;
+			this.k = k; this.alpha = alpha; this.beta = beta;
+			this.a = a; this.aoffset = aoffset; this.lda = lda;
+			this.b = b; this.boffset = boffset; this.ldb = ldb;
+			this.c = c; this.coffset = coffset; this.ldc = ldc;
+		}
+
+		@Override protected void compute() {
+			int rc = rowend - rowbegin, cc = columnend - columnbegin;
+			boolean small = getMultiplyAddCount(rc, cc, k) < parallelthreshold / 4 || (rc <= MC && cc <= NC);
+			if (small) {
+				gemmSerial(rowbegin, rowend, columnbegin, columnend, k, alpha, a, aoffset, lda, b, boffset, ldb, beta, c, coffset, ldc);
+			} else if (rc > MC && (rc >= cc || cc <= NC)) {
+				int mid = rowbegin + ((rc / 2 + MC - 1) / MC) * MC;
+				invokeAll(
+						new GemmTask(rowbegin, mid, columnbegin, columnend, k, alpha, a, aoffset, lda, b, boffset, ldb, beta, c, coffset, ldc),
+						new GemmTask(mid, rowend, columnbegin, columnend, k, alpha, a, aoffset, lda, b, boffset, ldb, beta, c, coffset, ldc));
+			} else {
+				int mid = columnbegin + cc / 2;
+				invokeAll(
+						new GemmTask(rowbegin, rowend, columnbegin, mid, k, alpha, a, aoffset, lda, b, boffset, ldb, beta, c, coffset, ldc),
+						new GemmTask(rowbegin, rowend, mid, columnend, k, alpha, a, aoffset, lda, b, boffset, ldb, beta, c, coffset, ldc));
+			}
+		}
+	}
+}
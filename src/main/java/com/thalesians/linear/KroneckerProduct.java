@@ -0,0 +1,182 @@
+package com.thalesians.linear;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * The Kronecker product A (x) B of two matrices of doubles, stored as its factors only. Elements are computed on
+ * demand, and multiplication by a matrix uses (A (x) B) * vec(X) = vec(B * X * A^T) column by column, which takes
+ * O(mnq + mpq) rather than O(mnpq) operations for an m x n A and a p x q B. The inverse, transpose, determinant and
+ * eigendecomposition are all computed from the factors.
+ */
+public final class KroneckerProduct extends AbstractMatrix<Double> implements DoubleMatrix {
+	/** Dense products with at least this many elements are computed in parallel */
+	static final long PARALLEL_ELEMENT_COUNT = 1L << 16;
+
+	private final Matrix<Double> left;
+	private final Matrix<Double> right;
+	private final int leftrowcount, leftcolumncount;
+	private final int rightrowcount, rightcolumncount;
+
+	private KroneckerProduct(Matrix<Double> left, Matrix<Double> right) {
+		super(SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
+		this.left = left;
+		this.right = right;
+		this.leftrowcount = left.getRowCount(); this.leftcolumncount = left.getColumnCount();
+		this.rightrowcount = right.getRowCount(); this.rightcolumncount = right.getColumnCount();
+	}
+
+	public static KroneckerProduct of(Matrix<Double> left, Matrix<Double> right) {
+		return new KroneckerProduct(left, right);
+	}
+
+	public Matrix<Double> getLeft() {
+		return left;
+	}
+
+	public Matrix<Double> getRight() {
+		return right;
+	}
+
+	@Override public int getRowCount() {
+		return leftrowcount * rightrowcount;
+	}
+
+	@Override public int getColumnCount() {
+		return leftcolumncount * rightcolumncount;
+	}
+
+	@Override public Double get(int row, int column) {
+		return getDouble(row, column);
+	}
+
+	@Override public double getDouble(int row, int column) {
+		return MatrixUtils.getDouble(left, row / rightrowcount, column / rightcolumncount)
+				* MatrixUtils.getDouble(right, row % rightrowcount, column % rightcolumncount);
+	}
+
+	@Override public void getRow(int row, double[] dest, int offset) {
+		int leftrow = row / rightrowcount, rightrow = row % rightrowcount;
+		for (int j = 0; j < leftcolumncount; ++j) {
+			double a = MatrixUtils.getDouble(left, leftrow, j);
+			for (int k = 0; k < rightcolumncount; ++k) {
+				dest[offset++] = a * MatrixUtils.getDouble(right, rightrow, k);
+			}
+		}
+	}
+
+	@Override public KroneckerProduct scale(Double scalar) {
+		return of(left.scale(scalar), right);
+	}
+
+	@Override public KroneckerProduct transpose() {
+		return of(left.transpose(), right.transpose());
+	}
+
+	/**
+	 * (A (x) B)^-1 = A^-1 (x) B^-1
+	 */
+	@Override public KroneckerProduct invert() {
+		return of(left.invert(), right.invert());
+	}
+
+	/**
+	 * det(A (x) B) = det(A)^p * det(B)^m for an m x m A and a p x p B
+	 */
+	@Override public Double determinant() {
+		return Math.pow(left.determinant(), rightrowcount) * Math.pow(right.determinant(), leftrowcount);
+	}
+
+	/**
+	 * The product with another Kronecker product of conforming factors is (A * C) (x) (B * D); any other matrix is
+	 * multiplied column by column through vec(B * X * A^T)
+	 */
+	@Override public Matrix<Double> mult(Matrix<Double> matrix) {
+		if (matrix instanceof KroneckerProduct) {
+			KroneckerProduct other = (KroneckerProduct) matrix;
+			if (leftcolumncount == other.leftrowcount && rightcolumncount == other.rightrowcount) {
+				return of(left.mult(other.left), right.mult(other.right));
+			}
+		}
+		if (matrix.getRowCount() != getColumnCount()) {
+			return super.mult(matrix);
+		}
+		double[] a = MatrixUtils.toEJMLDenseMatrix64F(left).data;
+		double[] bt = MatrixUtils.toEJMLDenseMatrix64F(right.transpose()).data;
+		int columncount = matrix.getColumnCount(), rowcount = getRowCount();
+		double[] result = new double[rowcount * columncount];
+		double[] x = new double[getColumnCount()], temp = new double[leftrowcount * rightcolumncount];
+		double[] y = columncount == 1 ? result : new double[rowcount];
+		for (int c = 0; c < columncount; ++c) {
+			for (int i = 0; i < x.length; ++i) {
+				x[i] = MatrixUtils.getDouble(matrix, i, c);
+			}
+			multVector(a, bt, x, temp, y);
+			if (y != result) {
+				for (int i = 0; i < rowcount; ++i) {
+					result[i * columncount + c] = y[i];
+				}
+			}
+		}
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(rowcount, columncount, result));
+	}
+
+	/**
+	 * y = (A (x) B) * x. Read as a row-major n x q matrix, x is X^T, and B * X * A^T read column by column is
+	 * A * X^T * B^T read row by row, so y is computed as two products of row-major matrices without transposing x.
+	 */
+	private void multVector(double[] a, double[] bt, double[] x, double[] temp, double[] y) {
+		Gemm.gemm(leftrowcount, rightcolumncount, leftcolumncount, 1.0, a, 0, leftcolumncount, x, 0, rightcolumncount, 0.0, temp, 0, rightcolumncount);
+		Gemm.gemm(leftrowcount, rightrowcount, rightcolumncount, 1.0, temp, 0, rightcolumncount, bt, 0, rightrowcount, 0.0, y, 0, rightrowcount);
+	}
+
+	/**
+	 * The eigendecomposition A (x) B = (Q_A (x) Q_B) * (Lambda_A (x) Lambda_B) * (Q_A (x) Q_B)^-1, from those of the
+	 * factors
+	 */
+	MatrixDecomposition.ED eigendecomposition() throws LinearException {
+		MatrixDecomposition.ED leftdecomposition = MatrixDecomposition.ed(left), rightdecomposition = MatrixDecomposition.ed(right);
+		return new MatrixDecomposition.ED(of(leftdecomposition.Q, rightdecomposition.Q), of(leftdecomposition.Lambda, rightdecomposition.Lambda));
+	}
+
+	/**
+	 * Materialises the product
+	 */
+	public SimpleDenseMatrixOfDoubles toDense() {
+		return toDense(left, right);
+	}
+
+	/**
+	 * Computes the dense Kronecker product of two matrices, writing every element of the result exactly once and in
+	 * parallel across the rows of the left factor for large products
+	 */
+	static SimpleDenseMatrixOfDoubles toDense(Matrix<? extends Double> left, Matrix<? extends Double> right) {
+		int m = left.getRowCount(), n = left.getColumnCount(), p = right.getRowCount(), q = right.getColumnCount();
+		double[] a = MatrixUtils.toEJMLDenseMatrix64F(left).data, b = MatrixUtils.toEJMLDenseMatrix64F(right).data;
+		double[] result = new double[m * p * n * q];
+		if ((long) m * p * n * q >= PARALLEL_ELEMENT_COUNT) {
+			ParallelUtils.forEachIndex(0, m, i -> fillRows(i, a, n, b, p, q, result));
+		} else {
+			for (int i = 0; i < m; ++i) {
+				fillRows(i, a, n, b, p, q, result);
+			}
+		}
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(m * p, n * q, result));
+	}
+
+	/**
+	 * Writes the rows of the product that come from row i of the left factor
+	 */
+	private static void fillRows(int i, double[] a, int n, double[] b, int p, int q, double[] dest) {
+		int resultcolumncount = n * q;
+		for (int k = 0; k < p; ++k) {
+			int destrow = (i * p + k) * resultcolumncount, brow = k * q;
+			for (int j = 0; j < n; ++j) {
+				double aij = a[i * n + j];
+				int destoffset = destrow + j * q;
+				for (int l = 0; l < q; ++l) {
+					dest[destoffset + l] = aij * b[brow + l];
+				}
+			}
+		}
+	}
+}
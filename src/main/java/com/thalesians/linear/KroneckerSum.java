@@ -0,0 +1,213 @@
+package com.thalesians.linear;
+
+import org.ejml.data.Complex64F;
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.DecompositionFactory;
+import org.ejml.interfaces.decomposition.EigenDecomposition;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The Kronecker sum A (+) B = A (x) I + I (x) B of a square m x m A and a square p x p B, stored as its factors only.
+ * Multiplication by a matrix uses (A (+) B) * vec(X) = vec(X * A^T + B * X) column by column, in O(mp(m + p))
+ * rather than O(m^2 p^2) operations. The determinant and eigendecomposition are computed from those of the factors,
+ * as the eigenvalues of A (+) B are the sums of an eigenvalue of A and one of B.
+ */
+public final class KroneckerSum extends AbstractMatrix<Double> implements DoubleMatrix {
+	private final Matrix<Double> left;
+	private final Matrix<Double> right;
+	private final int leftdimcount;
+	private final int rightdimcount;
+
+	private KroneckerSum(Matrix<Double> left, Matrix<Double> right) {
+		super(SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
+		Preconditions.checkArgument(MatrixUtils.isSquare(left) && MatrixUtils.isSquare(right));
+		this.left = left;
+		this.right = right;
+		this.leftdimcount = left.getRowCount();
+		this.rightdimcount = right.getRowCount();
+	}
+
+	public static KroneckerSum of(Matrix<Double> left, Matrix<Double> right) {
+		return new KroneckerSum(left, right);
+	}
+
+	public Matrix<Double> getLeft() {
+		return left;
+	}
+
+	public Matrix<Double> getRight() {
+		return right;
+	}
+
+	@Override public int getRowCount() {
+		return leftdimcount * rightdimcount;
+	}
+
+	@Override public int getColumnCount() {
+		return leftdimcount * rightdimcount;
+	}
+
+	@Override public Double get(int row, int column) {
+		return getDouble(row, column);
+	}
+
+	@Override public double getDouble(int row, int column) {
+		int leftrow = row / rightdimcount, leftcolumn = column / rightdimcount;
+		int rightrow = row % rightdimcount, rightcolumn = column % rightdimcount;
+		double result = 0.0;
+		if (rightrow == rightcolumn) {
+			result += MatrixUtils.getDouble(left, leftrow, leftcolumn);
+		}
+		if (leftrow == leftcolumn) {
+			result += MatrixUtils.getDouble(right, rightrow, rightcolumn);
+		}
+		return result;
+	}
+
+	@Override public KroneckerSum scale(Double scalar) {
+		return of(left.scale(scalar), right.scale(scalar));
+	}
+
+	@Override public KroneckerSum transpose() {
+		return of(left.transpose(), right.transpose());
+	}
+
+	/**
+	 * Read as a row-major m x p matrix, x is X^T, and X * A^T + B * X read column by column is A * X^T + X^T * B^T
+	 * read row by row
+	 */
+	@Override public Matrix<Double> mult(Matrix<Double> matrix) {
+		if (matrix.getRowCount() != getColumnCount()) {
+			return super.mult(matrix);
+		}
+		int m = leftdimcount, p = rightdimcount, n = m * p;
+		double[] a = MatrixUtils.toEJMLDenseMatrix64F(left).data;
+		double[] bt = MatrixUtils.toEJMLDenseMatrix64F(right.transpose()).data;
+		int columncount = matrix.getColumnCount();
+		double[] result = new double[n * columncount];
+		double[] x = new double[n];
+		double[] y = columncount == 1 ? result : new double[n];
+		for (int c = 0; c < columncount; ++c) {
+			for (int i = 0; i < n; ++i) {
+				x[i] = MatrixUtils.getDouble(matrix, i, c);
+			}
+			Gemm.gemm(m, p, m, 1.0, a, 0, m, x, 0, p, 0.0, y, 0, p);
+			Gemm.gemm(m, p, p, 1.0, x, 0, p, bt, 0, p, 1.0, y, 0, p);
+			if (y != result) {
+				for (int i = 0; i < n; ++i) {
+					result[i * columncount + c] = y[i];
+				}
+			}
+		}
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(n, columncount, result));
+	}
+
+	/**
+	 * The product of the sums of the eigenvalues of the factors, which are complex in general
+	 */
+	@Override public Double determinant() {
+		Complex64F[] lefteigenvalues = eigenvalues(left), righteigenvalues = eigenvalues(right);
+		double real = 1.0, imaginary = 0.0;
+		for (Complex64F lambda : lefteigenvalues) {
+			for (Complex64F mu : righteigenvalues) {
+				double sumreal = lambda.real + mu.real, sumimaginary = lambda.imaginary + mu.imaginary;
+				double newreal = real * sumreal - imaginary * sumimaginary;
+				imaginary = real * sumimaginary + imaginary * sumreal;
+				real = newreal;
+			}
+		}
+		return real;
+	}
+
+	private static Complex64F[] eigenvalues(Matrix<Double> matrix) {
+		EigenDecomposition<DenseMatrix64F> decomposer = DecompositionFactory.eig(matrix.getRowCount(), false);
+		if (!decomposer.decompose(MatrixUtils.toEJMLDenseMatrix64F(matrix).copy())) {
+			throw new RuntimeLinearException("Unable to compute eigenvalues");
+		}
+		Complex64F[] result = new Complex64F[decomposer.getNumberOfEigenvalues()];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = decomposer.getEigenvalue(i);
+		}
+		return result;
+	}
+
+	/**
+	 * For symmetric factors with eigendecompositions Q_A * Lambda_A * Q_A^T and Q_B * Lambda_B * Q_B^T, the inverse is
+	 * (Q_A (x) Q_B) * (Lambda_A (+) Lambda_B)^-1 * (Q_A (x) Q_B)^T, where the middle factor is diagonal. The products
+	 * are done with the structured multiplication of {@link KroneckerProduct}, in O(m^2 p^2 (m + p)) rather than
+	 * O(m^3 p^3) operations. Other factors fall back to the general inverse.
+	 */
+	@Override public Matrix<Double> invert() {
+		if (!MatrixUtils.isSymmetric(left) || !MatrixUtils.isSymmetric(right)) {
+			return super.invert();
+		}
+		MatrixDecomposition.ED decomposition;
+		try {
+			decomposition = eigendecomposition();
+		} catch (LinearException e) {
+			throw new RuntimeLinearException("Unable to compute eigendecomposition", e);
+		}
+		KroneckerProduct q = (KroneckerProduct) decomposition.Q;
+		SimpleDenseMatrixOfDoubles.Builder inner = SimpleDenseMatrixOfDoubles.builderFromCopy(q.transpose().toDense());
+		for (int i = 0, n = getRowCount(); i < n; ++i) {
+			double lambda = decomposition.Lambda.get(i, i);
+			for (int j = 0; j < n; ++j) {
+				inner.setDouble(i, j, inner.getDouble(i, j) / lambda);
+			}
+		}
+		return q.mult(inner.build());
+	}
+
+	/**
+	 * The eigendecomposition A (+) B = (Q_A (x) Q_B) * (Lambda_A (+) Lambda_B) * (Q_A (x) Q_B)^-1, from those of the
+	 * factors
+	 */
+	MatrixDecomposition.ED eigendecomposition() throws LinearException {
+		MatrixDecomposition.ED leftdecomposition = MatrixDecomposition.ed(left), rightdecomposition = MatrixDecomposition.ed(right);
+		return new MatrixDecomposition.ED(KroneckerProduct.of(leftdecomposition.Q, rightdecomposition.Q), of(leftdecomposition.Lambda, rightdecomposition.Lambda));
+	}
+
+	/**
+	 * Materialises the sum
+	 */
+	public SimpleDenseMatrixOfDoubles toDense() {
+		return toDense(left, right);
+	}
+
+	/**
+	 * Computes the dense Kronecker sum of two square matrices, a row of blocks at a time and in parallel across the rows
+	 * of blocks for large sums
+	 */
+	static SimpleDenseMatrixOfDoubles toDense(Matrix<? extends Double> left, Matrix<? extends Double> right) {
+		Preconditions.checkArgument(MatrixUtils.isSquare(left) && MatrixUtils.isSquare(right));
+		int m = left.getRowCount(), p = right.getRowCount(), n = m * p;
+		double[] a = MatrixUtils.toEJMLDenseMatrix64F(left).data, b = MatrixUtils.toEJMLDenseMatrix64F(right).data;
+		double[] result = new double[n * n];
+		if ((long) n * n >= KroneckerProduct.PARALLEL_ELEMENT_COUNT) {
+			ParallelUtils.forEachIndex(0, m, i -> fillRows(i, a, m, b, p, result));
+		} else {
+			for (int i = 0; i < m; ++i) {
+				fillRows(i, a, m, b, p, result);
+			}
+		}
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(n, n, result));
+	}
+
+	/**
+	 * Writes the rows of the sum that come from row i of the left factor: the diagonals of the blocks hold A and the
+	 * diagonal block holds B in addition
+	 */
+	private static void fillRows(int i, double[] a, int m, double[] b, int p, double[] dest) {
+		int n = m * p;
+		for (int k = 0; k < p; ++k) {
+			int destrow = (i * p + k) * n;
+			for (int j = 0; j < m; ++j) {
+				dest[destrow + j * p + k] = a[i * m + j];
+			}
+			for (int l = 0; l < p; ++l) {
+				dest[destrow + i * p + l] += b[k * p + l];
+			}
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.thalesians.linear;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * A read-only matrix of doubles over a matrix file mapped into memory by {@link MatrixFiles#map(java.nio.file.Path)}.
+ * The elements are read straight from the mapping in whatever storage kind the file has, with no copy made, and are
+ * only paged in from disk as they are used. The results of operations on the matrix are ordinary dense matrices.
+ */
+public final class MappedMatrixOfDoubles extends AbstractMatrix<Double> implements DoubleMatrix {
+	/** The length in bytes of each mapped chunk of a file; a power of two, so that no element straddles two chunks */
+	static final long CHUNK_LENGTH = 1L << 30;
+	private static final int CHUNK_SHIFT = 30;
+
+	private final MatrixFiles.StorageKind kind;
+	private final int rowcount;
+	private final int columncount;
+	private final ByteBuffer[] values;
+	/** The row pointers and column indices of a sparse file, null otherwise */
+	private final ByteBuffer[] pointers;
+	private final ByteBuffer[] indices;
+
+	MappedMatrixOfDoubles(MatrixFiles.StorageKind kind, int rowcount, int columncount, ByteBuffer[] values, ByteBuffer[] pointers, ByteBuffer[] indices) {
+		super(SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
+		this.kind = kind;
+		this.rowcount = rowcount;
+		this.columncount = columncount;
+		this.values = values;
+		this.pointers = pointers;
+		this.indices = indices;
+	}
+
+	public MatrixFiles.StorageKind getStorageKind() {
+		return kind;
+	}
+
+	@Override public int getRowCount() {
+		return rowcount;
+	}
+
+	@Override public int getColumnCount() {
+		return columncount;
+	}
+
+	private static double getValue(ByteBuffer[] chunks, long index) {
+		long offset = index << 3;
+		return chunks[(int) (offset >>> CHUNK_SHIFT)].getDouble((int) (offset & (CHUNK_LENGTH - 1)));
+	}
+
+	private static int getInt(ByteBuffer[] chunks, long index) {
+		long offset = index << 2;
+		return chunks[(int) (offset >>> CHUNK_SHIFT)].getInt((int) (offset & (CHUNK_LENGTH - 1)));
+	}
+
+	private static long getPackedIndex(int row, int column) {
+		return row >= column ? ((long) row * row + row) / 2 + column : ((long) column * column + column) / 2 + row;
+	}
+
+	/**
+	 * Binary search for the column within the given row of a sparse file
+	 */
+	private long find(int row, int column) {
+		long low = getInt(pointers, row), high = getInt(pointers, row + 1) - 1L;
+		while (low <= high) {
+			long middle = (low + high) >>> 1;
+			int index = getInt(indices, middle);
+			if (index < column) {
+				low = middle + 1;
+			} else if (index > column) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	@Override public Double get(int row, int column) {
+		return getDouble(row, column);
+	}
+
+	@Override public double getDouble(int row, int column) {
+		if (row < 0 || row >= rowcount || column < 0 || column >= columncount) {
+			throw new IndexOutOfBoundsException("Invalid element (" + row + ", " + column + ") of a " + rowcount + " x " + columncount + " matrix");
+		}
+		switch (kind) {
+		case DENSE:
+			return getValue(values, (long) row * columncount + column);
+		case PACKED_SYMMETRIC:
+			return getValue(values, getPackedIndex(row, column));
+		default:
+			long index = find(row, column);
+			return index >= 0 ? getValue(values, index) : 0.0;
+		}
+	}
+
+	@Override public void getRow(int row, double[] dest, int offset) {
+		switch (kind) {
+		case DENSE:
+			for (int j = 0; j < columncount; ++j) {
+				dest[offset + j] = getValue(values, (long) row * columncount + j);
+			}
+			break;
+		case PACKED_SYMMETRIC:
+			// The lower part of the row is contiguous, the upper part is down a column of the lower triangle
+			long rowstart = getPackedIndex(row, 0);
+			for (int j = 0; j <= row; ++j) {
+				dest[offset + j] = getValue(values, rowstart + j);
+			}
+			for (int j = row + 1; j < columncount; ++j) {
+				dest[offset + j] = getValue(values, getPackedIndex(j, row));
+			}
+			break;
+		default:
+			Arrays.fill(dest, offset, offset + columncount, 0.0);
+			for (long k = getInt(pointers, row), kend = getInt(pointers, row + 1); k < kend; ++k) {
+				dest[offset + getInt(indices, k)] = getValue(values, k);
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Copies the matrix onto the heap, into the in-memory type of its storage kind: a {@link SimpleDenseMatrixOfDoubles},
+	 * a {@link SimpleSymmetricMatrixOfDoubles} or a {@link SparseMatrixOfDoubles}
+	 */
+	public Matrix<Double> copyToHeap() {
+		switch (kind) {
+		case DENSE:
+			double[] data = new double[rowcount * columncount];
+			for (int i = 0; i < rowcount; ++i) {
+				getRow(i, data, i * columncount);
+			}
+			return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(rowcount, columncount, data));
+		case PACKED_SYMMETRIC:
+			double[] packed = new double[SimpleSymmetricMatrixOfDoubles.getDataLength(rowcount)];
+			for (int k = 0; k < packed.length; ++k) {
+				packed[k] = getValue(values, k);
+			}
+			return new SimpleSymmetricMatrixOfDoubles(rowcount, packed);
+		default:
+			int nonzerocount = getInt(pointers, rowcount);
+			int[] rowpointers = new int[rowcount + 1];
+			for (int i = 0; i <= rowcount; ++i) {
+				rowpointers[i] = getInt(pointers, i);
+			}
+			int[] columnindices = new int[nonzerocount];
+			double[] nonzeros = new double[nonzerocount];
+			for (int k = 0; k < nonzerocount; ++k) {
+				columnindices[k] = getInt(indices, k);
+				nonzeros[k] = getValue(values, k);
+			}
+			return SparseMatrixOfDoubles.wrapCompressedRows(rowcount, columncount, rowpointers, columnindices, nonzeros);
+		}
+	}
+}
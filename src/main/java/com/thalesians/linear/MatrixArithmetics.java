@@ -1,64 +1,336 @@
 package com.thalesians.linear;
 
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Reductions of double valued matrices. The elements are split into a fixed grid of blocks of up to ROW_BLOCK rows and
+ * COLUMN_BLOCK columns, which depends on the shape of the matrix only. Each block is reduced on its own with pairwise
+ * summation, and the results of the blocks are combined pairwise in a fixed order. Large matrices have their blocks
+ * reduced on the pool of {@link ParallelUtils}, but as neither the blocks nor the order in which they are combined
+ * depend on the threads, the results are bit for bit the same whatever the parallelism. The sums are plain scalar
+ * loops rather than {@link DoubleKernels}, whose vector lane count, and so order of addition, depends on the CPU.
+ */
 public final class MatrixArithmetics {
+	private static final int ROW_BLOCK = 128;
+	private static final int COLUMN_BLOCK = 1024;
+	/** Sums of at most this many elements are accumulated in order; longer ones are split in halves */
+	private static final int PAIRWISE_BASE = 128;
+
+	/** What is summed of every element */
+	private static final int VALUE = 0, ABS = 1, SQUARE = 2;
+
 	private MatrixArithmetics() {
 		throw new AssertionError("This class cannot be instantiated");
 	}
 
+	/**
+	 * Sums the rows, i.e. returns the row vector of the sums of the columns
+	 */
 	public static Matrix<Double> sumOfRows(Matrix<Double> matrix) {
-		int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
-		SimpleDenseMatrixOfDoubles.Builder result = SimpleDenseMatrixOfDoubles.builder(1, cc);
-		for (int i = 0; i < rc; ++i) {
-			for (int j = 0; j < cc; ++j) {
-				result.add(0, j, matrix.get(i, j));
-			}
-		}
-		return result.build();
+		return SimpleDenseMatrixOfDoubles.rowVector(columnSums(matrix, VALUE));
 	}
-	
+
+	/**
+	 * Sums the columns, i.e. returns the column vector of the sums of the rows
+	 */
 	public static Matrix<Double> sumOfColumns(Matrix<Double> matrix) {
-		int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
-		SimpleDenseMatrixOfDoubles.Builder result = SimpleDenseMatrixOfDoubles.builder(rc, 1);
-		for (int i = 0; i < rc; ++i) {
-			for (int j = 0; j < cc; ++j) {
-				result.add(i, 0, matrix.get(i, j));
+		return SimpleDenseMatrixOfDoubles.columnVector(rowSums(matrix, VALUE));
+	}
+
+	public static double sumOfElements(Matrix<? extends Double> matrix) {
+		return sum(matrix, VALUE);
+	}
+
+	/**
+	 * The mean of the rows; NaNs if there are none
+	 */
+	public static Matrix<Double> meanRow(Matrix<Double> matrix) {
+		double[] result = columnSums(matrix, VALUE);
+		for (int j = 0; j < result.length; ++j) {
+			result[j] /= matrix.getRowCount();
+		}
+		return SimpleDenseMatrixOfDoubles.rowVector(result);
+	}
+
+	/**
+	 * The mean of the columns; NaNs if there are none
+	 */
+	public static Matrix<Double> meanColumn(Matrix<Double> matrix) {
+		double[] result = rowSums(matrix, VALUE);
+		for (int i = 0; i < result.length; ++i) {
+			result[i] /= matrix.getColumnCount();
+		}
+		return SimpleDenseMatrixOfDoubles.columnVector(result);
+	}
+
+	/**
+	 * The mean of the elements; NaN if there are none
+	 */
+	public static double meanElement(Matrix<Double> matrix) {
+		return sum(matrix, VALUE) / ((double) matrix.getRowCount() * matrix.getColumnCount());
+	}
+
+	public static double trace(Matrix<? extends Double> matrix) {
+		Preconditions.checkArgument(MatrixUtils.isSquare(matrix), "Trace of a non-square matrix (%s x %s)", matrix.getRowCount(), matrix.getColumnCount());
+		double[] diagonal = new double[matrix.getRowCount()];
+		for (int i = 0; i < diagonal.length; ++i) {
+			diagonal[i] = MatrixUtils.getDouble(matrix, i, i);
+		}
+		return pairwiseSum(diagonal, 0, diagonal.length, VALUE);
+	}
+
+	/**
+	 * The Frobenius norm, i.e. the square root of the sum of the squares of the elements
+	 */
+	public static double frobeniusNorm(Matrix<? extends Double> matrix) {
+		return Math.sqrt(sum(matrix, SQUARE));
+	}
+
+	/**
+	 * The 1-norm, i.e. the largest sum of the absolute values of a column
+	 */
+	public static double norm1(Matrix<? extends Double> matrix) {
+		return max(columnSums(matrix, ABS));
+	}
+
+	/**
+	 * The infinity norm, i.e. the largest sum of the absolute values of a row
+	 */
+	public static double normInf(Matrix<? extends Double> matrix) {
+		return max(rowSums(matrix, ABS));
+	}
+
+	/**
+	 * The smallest element, ignoring NaNs; NaN if there are no other elements
+	 */
+	public static double minElement(Matrix<? extends Double> matrix) {
+		return extreme(matrix, false);
+	}
+
+	/**
+	 * The largest element, ignoring NaNs; NaN if there are no other elements
+	 */
+	public static double maxElement(Matrix<? extends Double> matrix) {
+		return extreme(matrix, true);
+	}
+
+	private static double max(double[] values) {
+		double result = 0.0;
+		for (double value : values) {
+			if (value > result || Double.isNaN(value)) {
+				result = value;
 			}
 		}
-		return result.build();
+		return result;
 	}
-	
-	public static Matrix<Double> meanRow(Matrix<Double> matrix) {
-		int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
-		SimpleDenseMatrixOfDoubles.Builder result = SimpleDenseMatrixOfDoubles.builder(1, cc);
-		for (int i = 0; i < rc; ++i) {
-			for (int j = 0; j < cc; ++j) {
-				result.add(0, j, (matrix.get(i, j) - result.get(0, j)) / ((double) (i + 1)));
+
+	private static double sum(Matrix<? extends Double> matrix, int kind) {
+		Blocks blocks = new Blocks(matrix);
+		double[] partials = new double[blocks.count];
+		blocks.forEach((b, rowbegin, rowend, columnbegin, columnend) -> {
+			double[] buffer = blocks.buffer(columnend - columnbegin);
+			double[] rowsums = new double[rowend - rowbegin];
+			for (int i = rowbegin; i < rowend; ++i) {
+				double[] row = blocks.getRow(i, columnbegin, columnend, buffer);
+				rowsums[i - rowbegin] = pairwiseSum(row, blocks.offset(i, columnbegin), columnend - columnbegin, kind);
+			}
+			partials[b] = pairwiseSum(rowsums, 0, rowsums.length, VALUE);
+		});
+		return pairwiseSum(partials, 0, partials.length, VALUE);
+	}
+
+	/**
+	 * Sums of the columns; every row block sums its rows in order into its own partial sums, which are then added up
+	 * over the row blocks in a binary tree
+	 */
+	private static double[] columnSums(Matrix<? extends Double> matrix, int kind) {
+		Blocks blocks = new Blocks(matrix);
+		int cc = blocks.columncount;
+		double[] partials = new double[blocks.rowblockcount * cc];
+		blocks.forEach((b, rowbegin, rowend, columnbegin, columnend) -> {
+			double[] buffer = blocks.buffer(columnend - columnbegin);
+			int base = (b / blocks.columnblockcount) * cc;
+			for (int i = rowbegin; i < rowend; ++i) {
+				double[] row = blocks.getRow(i, columnbegin, columnend, buffer);
+				int offset = blocks.offset(i, columnbegin);
+				for (int j = columnbegin; j < columnend; ++j) {
+					partials[base + j] += apply(row[offset + j - columnbegin], kind);
+				}
+			}
+		});
+		for (int step = 1; step < blocks.rowblockcount; step *= 2) {
+			for (int rb = 0; rb + step < blocks.rowblockcount; rb += 2 * step) {
+				int target = rb * cc, source = (rb + step) * cc;
+				for (int j = 0; j < cc; ++j) {
+					partials[target + j] += partials[source + j];
+				}
 			}
 		}
-		return result.build();
+		return Arrays.copyOf(partials, cc);
 	}
-	
-	public static Matrix<Double> meanColumn(Matrix<Double> matrix) {
-		int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
-		SimpleDenseMatrixOfDoubles.Builder result = SimpleDenseMatrixOfDoubles.builder(rc, 1);
+
+	/**
+	 * Sums of the rows; every block sums its part of each row pairwise, and the parts of a row are added up pairwise
+	 * over the column blocks
+	 */
+	private static double[] rowSums(Matrix<? extends Double> matrix, int kind) {
+		Blocks blocks = new Blocks(matrix);
+		int rc = blocks.rowcount, cbc = blocks.columnblockcount;
+		double[] partials = new double[rc * cbc];
+		blocks.forEach((b, rowbegin, rowend, columnbegin, columnend) -> {
+			double[] buffer = blocks.buffer(columnend - columnbegin);
+			int cb = b % cbc;
+			for (int i = rowbegin; i < rowend; ++i) {
+				double[] row = blocks.getRow(i, columnbegin, columnend, buffer);
+				partials[i * cbc + cb] = pairwiseSum(row, blocks.offset(i, columnbegin), columnend - columnbegin, kind);
+			}
+		});
+		double[] result = new double[rc];
 		for (int i = 0; i < rc; ++i) {
-			for (int j = 0; j < cc; ++j) {
-				result.add(1, 0, (matrix.get(i, j) - result.get(i, 0)) / ((double) (j + 1)));
+			result[i] = pairwiseSum(partials, i * cbc, cbc, VALUE);
+		}
+		return result;
+	}
+
+	private static double extreme(Matrix<? extends Double> matrix, boolean max) {
+		Blocks blocks = new Blocks(matrix);
+		double[] partials = new double[blocks.count];
+		blocks.forEach((b, rowbegin, rowend, columnbegin, columnend) -> {
+			double[] buffer = blocks.buffer(columnend - columnbegin);
+			double result = Double.NaN;
+			for (int i = rowbegin; i < rowend; ++i) {
+				double[] row = blocks.getRow(i, columnbegin, columnend, buffer);
+				for (int k = blocks.offset(i, columnbegin), end = k + columnend - columnbegin; k < end; ++k) {
+					result = extreme(result, row[k], max);
+				}
 			}
+			partials[b] = result;
+		});
+		double result = Double.NaN;
+		for (double partial : partials) {
+			result = extreme(result, partial, max);
+		}
+		return result;
+	}
+
+	private static double extreme(double a, double b, boolean max) {
+		if (Double.isNaN(a)) {
+			return b;
+		} else if (Double.isNaN(b)) {
+			return a;
+		} else {
+			return (max ? b > a : b < a) ? b : a;
 		}
-		return result.build();
 	}
-	
-	public static double meanElement(Matrix<Double> matrix) {
-		int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
+
+	private static double apply(double value, int kind) {
+		switch (kind) {
+		case ABS:
+			return Math.abs(value);
+		case SQUARE:
+			return value * value;
+		default:
+			return value;
+		}
+	}
+
+	/**
+	 * Sums of up to PAIRWISE_BASE elements are accumulated in order, longer ones are split in halves, so that the
+	 * rounding error grows with the logarithm of the length rather than the length
+	 */
+	private static double pairwiseSum(double[] a, int offset, int length, int kind) {
+		if (length > PAIRWISE_BASE) {
+			int half = length >>> 1;
+			return pairwiseSum(a, offset, half, kind) + pairwiseSum(a, offset + half, length - half, kind);
+		}
 		double result = 0.0;
-		int index = 0;
-		for (int i = 0; i < rc; ++i) {
-			for (int j = 0; j < cc; ++j) {
-				result += (matrix.get(i, j) - result) / ((double) (index + 1));
-				++index;
+		switch (kind) {
+		case ABS:
+			for (int k = offset, end = offset + length; k < end; ++k) {
+				result += Math.abs(a[k]);
+			}
+			break;
+		case SQUARE:
+			for (int k = offset, end = offset + length; k < end; ++k) {
+				result += a[k] * a[k];
+			}
+			break;
+		default:
+			for (int k = offset, end = offset + length; k < end; ++k) {
+				result += a[k];
 			}
 		}
 		return result;
 	}
+
+	private interface BlockAction {
+		void apply(int block, int rowbegin, int rowend, int columnbegin, int columnend);
+	}
+
+	/**
+	 * The grid of blocks of a matrix, numbered row by row, and row-major access to their elements
+	 */
+	private static final class Blocks {
+		final Matrix<? extends Double> matrix;
+		/** The storage of a dense matrix, or null if the elements have to be copied out */
+		final double[] data;
+		final int rowcount, columncount;
+		final int rowblockcount, columnblockcount, count;
+
+		Blocks(Matrix<? extends Double> matrix) {
+			this.matrix = matrix;
+			this.data = matrix instanceof SimpleDenseMatrixOfDoubles ? ((SimpleDenseMatrixOfDoubles) matrix).impl.data : null;
+			this.rowcount = matrix.getRowCount();
+			this.columncount = matrix.getColumnCount();
+			this.rowblockcount = (rowcount + ROW_BLOCK - 1) / ROW_BLOCK;
+			this.columnblockcount = Math.max(1, (columncount + COLUMN_BLOCK - 1) / COLUMN_BLOCK);
+			this.count = rowblockcount * columnblockcount;
+		}
+
+		/**
+		 * Applies the action to every block, on the pool of {@link ParallelUtils} if the matrix is large enough; the
+		 * blocks are handed out to the tasks in contiguous runs, but each block is reduced the same way whichever task
+		 * it falls to
+		 */
+		void forEach(BlockAction action) {
+			long elementcount = (long) rowcount * columncount;
+			int taskcount = count > 1 && elementcount >= Gemm.getParallelThreshold() ? Math.min(4 * ParallelUtils.getParallelism(), count) : 1;
+			if (taskcount <= 1) {
+				apply(0, count, action);
+			} else {
+				ParallelUtils.forEachIndex(0, taskcount, t -> apply((int) ((long) count * t / taskcount), (int) ((long) count * (t + 1) / taskcount), action));
+			}
+		}
+
+		private void apply(int blockbegin, int blockend, BlockAction action) {
+			for (int b = blockbegin; b < blockend; ++b) {
+				int rb = b / columnblockcount, cb = b % columnblockcount;
+				action.apply(b, rb * ROW_BLOCK, Math.min(rowcount, (rb + 1) * ROW_BLOCK), cb * COLUMN_BLOCK, Math.min(columncount, (cb + 1) * COLUMN_BLOCK));
+			}
+		}
+
+		double[] buffer(int length) {
+			return data != null ? null : new double[length];
+		}
+
+		/**
+		 * The elements [columnbegin, columnend) of the row, starting at {@link #offset(int, int)} of the returned array,
+		 * which is either the storage of a dense matrix or the buffer they have been copied into
+		 */
+		double[] getRow(int row, int columnbegin, int columnend, double[] buffer) {
+			if (data != null) {
+				return data;
+			}
+			for (int j = columnbegin; j < columnend; ++j) {
+				buffer[j - columnbegin] = MatrixUtils.getDouble(matrix, row, j);
+			}
+			return buffer;
+		}
+
+		int offset(int row, int columnbegin) {
+			return data != null ? row * columncount + columnbegin : 0;
+		}
+	}
 }
@@ -0,0 +1,475 @@
+package com.thalesians.linear;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A batch of matrices of doubles of the same shape, stored as a structure of arrays: all the (0, 0) elements of the
+ * batch, then all the (0, 1) elements and so on, in one contiguous array. The kernels run the same arithmetic on every
+ * matrix of the batch in the innermost loop, over contiguous memory, so that the JIT vectorises them across the batch
+ * and no object is created per matrix. Two by two and three by three matrices have unrolled determinant, inversion and
+ * multiplication kernels. Large batches are split across the pool of {@link ParallelUtils}.
+ * <p>
+ * A batch is mutable, so that it can be refilled on every update without allocating; the views returned by
+ * {@link #get(int)} read the batch as it is when they are read.
+ */
+public final class MatrixBatch {
+	/** Matrices handled by one task of a parallel kernel */
+	private static final int MATRICES_PER_TASK = 256;
+
+	private final int count;
+	private final int rowcount;
+	private final int columncount;
+	private final double[] data;
+
+	private MatrixBatch(int count, int rowcount, int columncount) {
+		Preconditions.checkArgument(count >= 0 && rowcount >= 0 && columncount >= 0);
+		this.count = count;
+		this.rowcount = rowcount;
+		this.columncount = columncount;
+		this.data = new double[count * rowcount * columncount];
+	}
+
+	/**
+	 * A batch of count zero matrices
+	 */
+	public static MatrixBatch create(int count, int rowcount, int columncount) {
+		return new MatrixBatch(count, rowcount, columncount);
+	}
+
+	public static MatrixBatch identity(int count, int dimcount) {
+		MatrixBatch result = new MatrixBatch(count, dimcount, dimcount);
+		for (int i = 0; i < dimcount; ++i) {
+			int offset = result.offset(i, i);
+			for (int b = 0; b < count; ++b) {
+				result.data[offset + b] = 1.0;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A batch holding copies of the given matrices, which must all have the same shape
+	 */
+	public static MatrixBatch of(List<? extends Matrix<? extends Double>> matrices) {
+		Preconditions.checkArgument(!matrices.isEmpty(), "A batch must be created from at least one matrix");
+		MatrixBatch result = new MatrixBatch(matrices.size(), matrices.get(0).getRowCount(), matrices.get(0).getColumnCount());
+		for (int b = 0; b < matrices.size(); ++b) {
+			result.set(b, matrices.get(b));
+		}
+		return result;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getRowCount() {
+		return rowcount;
+	}
+
+	public int getColumnCount() {
+		return columncount;
+	}
+
+	/**
+	 * The offset in the data of element (row, column) of the first matrix of the batch
+	 */
+	private int offset(int row, int column) {
+		return (row * columncount + column) * count;
+	}
+
+	public double getDouble(int index, int row, int column) {
+		Preconditions.checkElementIndex(index, count, "index");
+		Preconditions.checkElementIndex(row, rowcount, "row");
+		Preconditions.checkElementIndex(column, columncount, "column");
+		return data[offset(row, column) + index];
+	}
+
+	public MatrixBatch setDouble(int index, int row, int column, double value) {
+		Preconditions.checkElementIndex(index, count, "index");
+		Preconditions.checkElementIndex(row, rowcount, "row");
+		Preconditions.checkElementIndex(column, columncount, "column");
+		data[offset(row, column) + index] = value;
+		return this;
+	}
+
+	/**
+	 * Copies the matrix into the batch at the given index
+	 */
+	public MatrixBatch set(int index, Matrix<? extends Double> matrix) {
+		Preconditions.checkElementIndex(index, count, "index");
+		Preconditions.checkArgument(matrix.getRowCount() == rowcount && matrix.getColumnCount() == columncount,
+				"Expected a %s x %s matrix, got %s x %s", rowcount, columncount, matrix.getRowCount(), matrix.getColumnCount());
+		for (int i = 0; i < rowcount; ++i) {
+			for (int j = 0; j < columncount; ++j) {
+				data[offset(i, j) + index] = MatrixUtils.getDouble(matrix, i, j);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * A view of the matrix at the given index, for use with the rest of the library
+	 */
+	public Matrix<Double> get(int index) {
+		Preconditions.checkElementIndex(index, count, "index");
+		return new View(index);
+	}
+
+	private final class View extends AbstractMatrix<Double> implements DoubleMatrix {
+		private final int index;
+
+		View(int index) {
+			super(SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
+			this.index = index;
+		}
+
+		@Override public int getRowCount() {
+			return rowcount;
+		}
+
+		@Override public int getColumnCount() {
+			return columncount;
+		}
+
+		@Override public Double get(int row, int column) {
+			return getDouble(row, column);
+		}
+
+		@Override public double getDouble(int row, int column) {
+			return MatrixBatch.this.getDouble(index, row, column);
+		}
+	}
+
+	/**
+	 * Runs the kernel over [begin, end) ranges of the batch, in parallel when the batch holds enough work
+	 */
+	private void forEachRange(long workpermatrix, RangeKernel kernel) {
+		int taskcount = (count + MATRICES_PER_TASK - 1) / MATRICES_PER_TASK;
+		if (taskcount > 1 && workpermatrix * count >= Gemm.getParallelThreshold()) {
+			ParallelUtils.forEachIndex(0, taskcount, t -> kernel.apply(t * MATRICES_PER_TASK, Math.min(count, (t + 1) * MATRICES_PER_TASK)));
+		} else {
+			kernel.apply(0, count);
+		}
+	}
+
+	private interface RangeKernel {
+		void apply(int begin, int end);
+	}
+
+	private void checkSameShape(MatrixBatch batch) {
+		Preconditions.checkArgument(batch.count == count && batch.rowcount == rowcount && batch.columncount == columncount,
+				"Incompatible batches (%s of %s x %s and %s of %s x %s)", count, rowcount, columncount, batch.count, batch.rowcount, batch.columncount);
+	}
+
+	public MatrixBatch add(MatrixBatch batch) {
+		checkSameShape(batch);
+		MatrixBatch result = new MatrixBatch(count, rowcount, columncount);
+		for (int k = 0; k < data.length; ++k) {
+			result.data[k] = data[k] + batch.data[k];
+		}
+		return result;
+	}
+
+	public MatrixBatch subtract(MatrixBatch batch) {
+		checkSameShape(batch);
+		MatrixBatch result = new MatrixBatch(count, rowcount, columncount);
+		for (int k = 0; k < data.length; ++k) {
+			result.data[k] = data[k] - batch.data[k];
+		}
+		return result;
+	}
+
+	public MatrixBatch scale(double scalar) {
+		MatrixBatch result = new MatrixBatch(count, rowcount, columncount);
+		for (int k = 0; k < data.length; ++k) {
+			result.data[k] = scalar * data[k];
+		}
+		return result;
+	}
+
+	public MatrixBatch transpose() {
+		MatrixBatch result = new MatrixBatch(count, columncount, rowcount);
+		for (int i = 0; i < rowcount; ++i) {
+			for (int j = 0; j < columncount; ++j) {
+				System.arraycopy(data, offset(i, j), result.data, result.offset(j, i), count);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Multiplies every matrix of this batch by the matrix at the same index of the given batch
+	 */
+	public MatrixBatch mult(MatrixBatch batch) {
+		Preconditions.checkArgument(batch.count == count && batch.rowcount == columncount,
+				"Incompatible batches for multiplication (%s of %s x %s and %s of %s x %s)", count, rowcount, columncount, batch.count, batch.rowcount, batch.columncount);
+		MatrixBatch result = new MatrixBatch(count, rowcount, batch.columncount);
+		forEachRange((long) rowcount * columncount * batch.columncount, (begin, end) -> multRange(batch, result, begin, end));
+		return result;
+	}
+
+	private void multRange(MatrixBatch batch, MatrixBatch result, int begin, int end) {
+		int m = rowcount, n = batch.columncount, k = columncount;
+		double[] a = data, b = batch.data, c = result.data;
+		for (int i = 0; i < m; ++i) {
+			for (int j = 0; j < n; ++j) {
+				int co = result.offset(i, j);
+				if (k == 2) {
+					int a0 = offset(i, 0), a1 = offset(i, 1), b0 = batch.offset(0, j), b1 = batch.offset(1, j);
+					for (int x = begin; x < end; ++x) {
+						c[co + x] = a[a0 + x] * b[b0 + x] + a[a1 + x] * b[b1 + x];
+					}
+				} else if (k == 3) {
+					int a0 = offset(i, 0), a1 = offset(i, 1), a2 = offset(i, 2), b0 = batch.offset(0, j), b1 = batch.offset(1, j), b2 = batch.offset(2, j);
+					for (int x = begin; x < end; ++x) {
+						c[co + x] = a[a0 + x] * b[b0 + x] + a[a1 + x] * b[b1 + x] + a[a2 + x] * b[b2 + x];
+					}
+				} else {
+					for (int p = 0; p < k; ++p) {
+						int ao = offset(i, p), bo = batch.offset(p, j);
+						for (int x = begin; x < end; ++x) {
+							c[co + x] += a[ao + x] * b[bo + x];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The determinants of the matrices of the batch, by index
+	 */
+	public double[] determinant() {
+		Preconditions.checkArgument(rowcount == columncount, "The determinant is only defined for square matrices");
+		int n = rowcount;
+		double[] result = new double[count];
+		forEachRange((long) n * n * n, (begin, end) -> {
+			if (n == 1) {
+				System.arraycopy(data, begin, result, begin, end - begin);
+			} else if (n == 2) {
+				determinant2(data, begin, end, result);
+			} else if (n == 3) {
+				determinant3(data, begin, end, result);
+			} else {
+				double[] lu = new double[n * n];
+				int[] pivots = new int[n];
+				for (int x = begin; x < end; ++x) {
+					gather(x, lu);
+					result[x] = MatrixFactorisation.determinantLU(lu, n, MatrixFactorisation.decomposeLU(lu, n, pivots));
+				}
+			}
+		});
+		return result;
+	}
+
+	private void determinant2(double[] a, int begin, int end, double[] dest) {
+		int a00 = offset(0, 0), a01 = offset(0, 1), a10 = offset(1, 0), a11 = offset(1, 1);
+		for (int x = begin; x < end; ++x) {
+			dest[x] = a[a00 + x] * a[a11 + x] - a[a01 + x] * a[a10 + x];
+		}
+	}
+
+	private void determinant3(double[] a, int begin, int end, double[] dest) {
+		int a00 = offset(0, 0), a01 = offset(0, 1), a02 = offset(0, 2);
+		int a10 = offset(1, 0), a11 = offset(1, 1), a12 = offset(1, 2);
+		int a20 = offset(2, 0), a21 = offset(2, 1), a22 = offset(2, 2);
+		for (int x = begin; x < end; ++x) {
+			dest[x] = a[a00 + x] * (a[a11 + x] * a[a22 + x] - a[a12 + x] * a[a21 + x])
+					- a[a01 + x] * (a[a10 + x] * a[a22 + x] - a[a12 + x] * a[a20 + x])
+					+ a[a02 + x] * (a[a10 + x] * a[a21 + x] - a[a11 + x] * a[a20 + x]);
+		}
+	}
+
+	/**
+	 * Inverts every matrix of the batch. Two by two and three by three matrices are inverted through their adjugates,
+	 * larger ones by LU decomposition with partial pivoting.
+	 *
+	 * @throws RuntimeLinearException if any of the matrices is singular
+	 */
+	public MatrixBatch invert() {
+		Preconditions.checkArgument(rowcount == columncount, "Only square matrices can be inverted");
+		int n = rowcount;
+		MatrixBatch result = new MatrixBatch(count, n, n);
+		AtomicInteger singular = new AtomicInteger(count);
+		forEachRange((long) n * n * n, (begin, end) -> {
+			if (n == 2) {
+				invert2(begin, end, result.data, singular);
+			} else if (n == 3) {
+				invert3(begin, end, result.data, singular);
+			} else {
+				double[] lu = new double[n * n], column = new double[n];
+				int[] pivots = new int[n];
+				for (int x = begin; x < end; ++x) {
+					gather(x, lu);
+					if (MatrixFactorisation.decomposeLU(lu, n, pivots) == 0) {
+						singular.accumulateAndGet(x, Math::min);
+						continue;
+					}
+					for (int j = 0; j < n; ++j) {
+						for (int i = 0; i < n; ++i) {
+							column[i] = pivots[i] == j ? 1.0 : 0.0;
+						}
+						MatrixFactorisation.solveLU(lu, n, column);
+						for (int i = 0; i < n; ++i) {
+							result.data[result.offset(i, j) + x] = column[i];
+						}
+					}
+				}
+			}
+		});
+		if (singular.get() < count) {
+			throw new RuntimeLinearException("The matrix at index " + singular.get() + " of the batch is singular");
+		}
+		return result;
+	}
+
+	private void invert2(int begin, int end, double[] dest, AtomicInteger singular) {
+		int a00 = offset(0, 0), a01 = offset(0, 1), a10 = offset(1, 0), a11 = offset(1, 1);
+		double[] a = data;
+		for (int x = begin; x < end; ++x) {
+			double determinant = a[a00 + x] * a[a11 + x] - a[a01 + x] * a[a10 + x];
+			if (determinant == 0.0) {
+				singular.accumulateAndGet(x, Math::min);
+			}
+			double scale = 1.0 / determinant;
+			double b00 = a[a11 + x] * scale, b01 = -a[a01 + x] * scale, b10 = -a[a10 + x] * scale, b11 = a[a00 + x] * scale;
+			dest[a00 + x] = b00;
+			dest[a01 + x] = b01;
+			dest[a10 + x] = b10;
+			dest[a11 + x] = b11;
+		}
+	}
+
+	private void invert3(int begin, int end, double[] dest, AtomicInteger singular) {
+		int a00 = offset(0, 0), a01 = offset(0, 1), a02 = offset(0, 2);
+		int a10 = offset(1, 0), a11 = offset(1, 1), a12 = offset(1, 2);
+		int a20 = offset(2, 0), a21 = offset(2, 1), a22 = offset(2, 2);
+		double[] a = data;
+		for (int x = begin; x < end; ++x) {
+			double c00 = a[a11 + x] * a[a22 + x] - a[a12 + x] * a[a21 + x];
+			double c01 = a[a12 + x] * a[a20 + x] - a[a10 + x] * a[a22 + x];
+			double c02 = a[a10 + x] * a[a21 + x] - a[a11 + x] * a[a20 + x];
+			double determinant = a[a00 + x] * c00 + a[a01 + x] * c01 + a[a02 + x] * c02;
+			if (determinant == 0.0) {
+				singular.accumulateAndGet(x, Math::min);
+			}
+			double scale = 1.0 / determinant;
+			dest[a00 + x] = c00 * scale;
+			dest[a01 + x] = (a[a02 + x] * a[a21 + x] - a[a01 + x] * a[a22 + x]) * scale;
+			dest[a02 + x] = (a[a01 + x] * a[a12 + x] - a[a02 + x] * a[a11 + x]) * scale;
+			dest[a10 + x] = c01 * scale;
+			dest[a11 + x] = (a[a00 + x] * a[a22 + x] - a[a02 + x] * a[a20 + x]) * scale;
+			dest[a12 + x] = (a[a02 + x] * a[a10 + x] - a[a00 + x] * a[a12 + x]) * scale;
+			dest[a20 + x] = c02 * scale;
+			dest[a21 + x] = (a[a01 + x] * a[a20 + x] - a[a00 + x] * a[a21 + x]) * scale;
+			dest[a22 + x] = (a[a00 + x] * a[a11 + x] - a[a01 + x] * a[a10 + x]) * scale;
+		}
+	}
+
+	/**
+	 * The lower triangular Cholesky factors L, with A = L * L^T, of the matrices of the batch. The factorisation runs
+	 * column by column over the whole batch at once, as it needs no pivoting.
+	 *
+	 * @throws LinearException if any of the matrices is not positive definite
+	 */
+	public MatrixBatch cholesky() throws LinearException {
+		Preconditions.checkArgument(rowcount == columncount, "Only square matrices can be Cholesky decomposed");
+		int n = rowcount;
+		MatrixBatch result = new MatrixBatch(count, n, n);
+		AtomicInteger failed = new AtomicInteger(count);
+		forEachRange((long) n * n * n, (begin, end) -> choleskyRange(result.data, begin, end, failed));
+		if (failed.get() < count) {
+			throw new LinearException("The matrix at index " + failed.get() + " of the batch is not positive definite");
+		}
+		return result;
+	}
+
+	private void choleskyRange(double[] l, int begin, int end, AtomicInteger failed) {
+		int n = rowcount;
+		for (int j = 0; j < n; ++j) {
+			int jj = offset(j, j);
+			for (int x = begin; x < end; ++x) {
+				l[jj + x] = data[jj + x];
+			}
+			for (int p = 0; p < j; ++p) {
+				int jp = offset(j, p);
+				for (int x = begin; x < end; ++x) {
+					l[jj + x] -= l[jp + x] * l[jp + x];
+				}
+			}
+			for (int x = begin; x < end; ++x) {
+				double d = l[jj + x];
+				if (!(d > 0.0)) {
+					failed.accumulateAndGet(x, Math::min);
+				}
+				l[jj + x] = Math.sqrt(d);
+			}
+			for (int i = j + 1; i < n; ++i) {
+				int ij = offset(i, j);
+				for (int x = begin; x < end; ++x) {
+					l[ij + x] = data[ij + x];
+				}
+				for (int p = 0; p < j; ++p) {
+					int ip = offset(i, p), jp = offset(j, p);
+					for (int x = begin; x < end; ++x) {
+						l[ij + x] -= l[ip + x] * l[jp + x];
+					}
+				}
+				for (int x = begin; x < end; ++x) {
+					l[ij + x] /= l[jj + x];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Solves A_x * X_x = B_x for every index x of the batch, by LU decomposition with partial pivoting
+	 *
+	 * @throws RuntimeLinearException if any of the matrices is singular
+	 */
+	public MatrixBatch solve(MatrixBatch b) {
+		Preconditions.checkArgument(rowcount == columncount, "Only square systems can be solved");
+		Preconditions.checkArgument(b.count == count && b.rowcount == rowcount,
+				"Incompatible batches (%s of %s x %s and %s of %s x %s)", count, rowcount, columncount, b.count, b.rowcount, b.columncount);
+		int n = rowcount, rhscount = b.columncount;
+		MatrixBatch result = new MatrixBatch(count, n, rhscount);
+		AtomicInteger singular = new AtomicInteger(count);
+		forEachRange((long) n * n * (n + rhscount), (begin, end) -> {
+			double[] lu = new double[n * n], column = new double[n];
+			int[] pivots = new int[n];
+			for (int x = begin; x < end; ++x) {
+				gather(x, lu);
+				if (MatrixFactorisation.decomposeLU(lu, n, pivots) == 0) {
+					singular.accumulateAndGet(x, Math::min);
+					continue;
+				}
+				for (int j = 0; j < rhscount; ++j) {
+					for (int i = 0; i < n; ++i) {
+						column[i] = b.data[b.offset(pivots[i], j) + x];
+					}
+					MatrixFactorisation.solveLU(lu, n, column);
+					for (int i = 0; i < n; ++i) {
+						result.data[result.offset(i, j) + x] = column[i];
+					}
+				}
+			}
+		});
+		if (singular.get() < count) {
+			throw new RuntimeLinearException("The matrix at index " + singular.get() + " of the batch is singular");
+		}
+		return result;
+	}
+
+	/**
+	 * Copies the matrix at the given index into a row-major array
+	 */
+	private void gather(int index, double[] dest) {
+		for (int k = 0, length = rowcount * columncount; k < length; ++k) {
+			dest[k] = data[k * count + index];
+		}
+	}
+}
@@ -21,4 +21,13 @@ public interface MatrixBuilder<T> {
 	MatrixBuilder<T> multElementwise(Matrix<? extends T> matrix);
 	MatrixBuilder<T> invert();
 	Matrix<T> build();
+	
+	/**
+	 * Creates a new, empty builder of the same kind. Matrices hold a builder as a prototype and use it to create a
+	 * separate builder for each operation, so that operations on a shared matrix do not contend for one builder.
+	 * Builders written before this method existed do not implement it, and cannot serve as such a prototype.
+	 */
+	default MatrixBuilder<T> newBuilder() {
+		throw new UnsupportedOperationException(getClass().getName() + " does not implement newBuilder(), so it cannot be used as the result builder prototype of a matrix");
+	}
 }
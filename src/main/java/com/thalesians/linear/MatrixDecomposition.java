@@ -1,5 +1,7 @@
 package com.thalesians.linear;
 
+import java.util.List;
+
 import org.ejml.alg.dense.decomposition.chol.CholeskyDecompositionInner_D64;
 import org.ejml.alg.dense.decomposition.qr.QRDecompositionHouseholderColumn_D64;
 import org.ejml.alg.dense.decomposition.svd.SafeSvd;
@@ -12,6 +14,9 @@ import org.ejml.interfaces.decomposition.QRDecomposition;
 import org.ejml.interfaces.decomposition.SingularValueDecomposition;
 import org.ejml.ops.EigenOps;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
 public class MatrixDecomposition {
 	public final static class Cholesky {
 		public final Matrix<Double> L;
@@ -19,11 +24,87 @@ public class MatrixDecomposition {
 		private Cholesky(Matrix<Double> l) {
 			L = l;
 		}
+		
+		/**
+		 * The Cholesky decomposition of A + X * X^T, for the n x k matrix X, computed from this decomposition of A by
+		 * k rank-1 updates of O(n^2) operations each. A column vector X gives a rank-1 update.
+		 * 
+		 * @throws LinearException if A + X * X^T is not positive definite, which can only be the case in floating point
+		 * if X has NaN or infinite elements or the result overflows
+		 */
+		public Cholesky update(Matrix<? extends Double> X) throws LinearException {
+			return new Cholesky(modify(X, false));
+		}
+		
+		/**
+		 * The Cholesky decomposition of A - X * X^T, for the n x k matrix X, computed from this decomposition of A by
+		 * k rank-1 downdates of O(n^2) operations each. A column vector X gives a rank-1 downdate.
+		 * 
+		 * @throws LinearException if A - X * X^T is not positive definite
+		 */
+		public Cholesky downdate(Matrix<? extends Double> X) throws LinearException {
+			return new Cholesky(modify(X, true));
+		}
+		
+		/**
+		 * Applies a rank-1 update or downdate for every column of X in turn to a copy of L. Each one rotates the column
+		 * into L a column of L at a time, as in LINPACK's dchud and dchdd, with hyperbolic rotations for a downdate.
+		 */
+		private Matrix<Double> modify(Matrix<? extends Double> X, boolean downdate) throws LinearException {
+			int n = L.getRowCount();
+			Preconditions.checkArgument(X.getRowCount() == n, "Expected a matrix with %s rows, got %s", n, X.getRowCount());
+			DenseMatrix64F result = MatrixUtils.toEJMLDenseMatrix64F(L).copy();
+			double[] l = result.data;
+			double[] x = new double[n];
+			for (int column = 0; column < X.getColumnCount(); ++column) {
+				for (int i = 0; i < n; ++i) {
+					x[i] = MatrixUtils.getDouble(X, i, column);
+				}
+				for (int k = 0; k < n; ++k) {
+					double lkk = l[k * n + k], xk = x[k];
+					double rsquared = downdate ? (lkk - xk) * (lkk + xk) : lkk * lkk + xk * xk;
+					if (!(rsquared > 0.0 && rsquared < Double.POSITIVE_INFINITY)) {
+						throw new LinearException(downdate ? "The downdated matrix is not positive definite" : "The updated matrix is not positive definite");
+					}
+					double r = Math.sqrt(rsquared), c = r / lkk, s = xk / lkk;
+					l[k * n + k] = r;
+					for (int i = k + 1; i < n; ++i) {
+						double lik = downdate ? (l[i * n + k] - s * x[i]) / c : (l[i * n + k] + s * x[i]) / c;
+						l[i * n + k] = lik;
+						x[i] = c * x[i] - s * lik;
+					}
+				}
+			}
+			return new SimpleDenseMatrixOfDoubles(result);
+		}
 	}
 	
 	public static Cholesky cholesky(Matrix<Double> A) throws LinearException {
+		if (A instanceof SimpleSymmetricMatrixOfDoubles) {
+			// Use the packed factor that the matrix shares with its determinant, solves and inverse
+			double[] l = ((SimpleSymmetricMatrixOfDoubles) A).getCholeskyFactor();
+			if (l == null) {
+				throw new LinearException("Unable to calculate Cholesky decomposition");
+			}
+			return new Cholesky(PackedCholesky.toDenseLower(l, A.getRowCount(), false));
+		}
+		if (A instanceof SimpleDenseMatrixOfDoubles && MatrixUtils.isSquare(A) && MatrixUtils.isSymmetric(A)) {
+			// The shared factorisation is only a Cholesky factorisation if A is exactly symmetric; if it is symmetric to
+			// within rounding only, it is an LU decomposition, and the lower triangle is decomposed below instead
+			MatrixFactorisation factorisation = ((SimpleDenseMatrixOfDoubles) A).getFactorisation();
+			if (factorisation.isCholesky()) {
+				return new Cholesky(factorisation.getCholeskyFactor());
+			}
+		}
+		if (A instanceof SimpleBlockDiagonalMatrixView) {
+			return choleskyOfBlocks((SimpleBlockDiagonalMatrixView<Double>) A);
+		}
 		DenseMatrix64F dA = MatrixUtils.toEJMLDenseMatrix64F(A);
 		CholeskyDecomposition<DenseMatrix64F> choleskyDecomposer = new CholeskyDecompositionInner_D64(true);
+		if (choleskyDecomposer.inputModified() && A instanceof SimpleDenseMatrixOfDoubles) {
+			// The decomposition works in place, so it must not be given the storage of an immutable (and possibly shared) matrix
+			dA = dA.copy();
+		}
 		if (!choleskyDecomposer.decompose(dA)) {
 			throw new LinearException("Unable to calculate Cholesky decomposition");
 		}
@@ -31,6 +112,50 @@ public class MatrixDecomposition {
 		return new Cholesky(L);
 	}
 	
+	/**
+	 * The Cholesky factor of a block diagonal matrix is the block diagonal matrix of the factors of its blocks
+	 */
+	private static Cholesky choleskyOfBlocks(SimpleBlockDiagonalMatrixView<Double> A) throws LinearException {
+		List<Matrix<Double>> factors = A.mapBlocks(i -> {
+			try {
+				return cholesky(A.getBlocks().get(i)).L;
+			} catch (LinearException e) {
+				return null;
+			}
+		});
+		if (factors.contains(null)) {
+			throw new LinearException("Unable to calculate Cholesky decomposition of block " + factors.indexOf(null));
+		}
+		return new Cholesky(SimpleBlockDiagonalMatrixView.create(ImmutableList.copyOf(factors)));
+	}
+	
+	/**
+	 * Represents an LDL^T decomposition of a symmetric double valued matrix, with L unit lower triangular and the
+	 * diagonal of D as a column vector
+	 */
+	public final static class LDLT {
+		public final Matrix<Double> L, D;
+		
+		private LDLT(Matrix<Double> l, Matrix<Double> d) {
+			L = l; D = d;
+		}
+	}
+	
+	/**
+	 * Generates an LDL^T decomposition of a symmetric double valued matrix, which, unlike the Cholesky decomposition,
+	 * exists for indefinite matrices. Only the lower triangle of A is read. No pivoting is done, so the decomposition
+	 * fails if a leading principal minor of A is zero, and loses accuracy if one is small; solves, inverses and
+	 * determinants of symmetric matrices do not use it.
+	 */
+	public static LDLT ldlt(Matrix<Double> A) throws LinearException {
+		int n = A.getRowCount();
+		double[] ld = SimpleSymmetricMatrixOfDoubles.fromLower(A).getScaledData();
+		if (!PackedCholesky.decomposeLdlt(ld, n)) {
+			throw new LinearException("Unable to calculate LDL^T decomposition");
+		}
+		return new LDLT(PackedCholesky.toDenseLower(ld, n, true), PackedCholesky.diagonal(ld, n));
+	}
+	
 	/**
 	 * Represents a QR decomposition of a double valued matrix
 	 */
@@ -92,13 +217,22 @@ public class MatrixDecomposition {
 	public final static class ED {
 		public final Matrix<Double> Q, Lambda;
 		
-		private ED(Matrix<Double> q, Matrix<Double> lambda) {
+		ED(Matrix<Double> q, Matrix<Double> lambda) {
 			Q = q;
 			Lambda = lambda;
 		}
 	}
 	
+	/**
+	 * Kronecker products and sums are decomposed through their factors, and their Q and Lambda are again a Kronecker
+	 * product and a Kronecker product or sum
+	 */
 	public static ED ed(Matrix<Double> A) throws LinearException {
+		if (A instanceof KroneckerProduct) {
+			return ((KroneckerProduct) A).eigendecomposition();
+		} else if (A instanceof KroneckerSum) {
+			return ((KroneckerSum) A).eigendecomposition();
+		}
 		DenseMatrix64F dA = MatrixUtils.toEJMLDenseMatrix64F(A);
 		EigenDecomposition<DenseMatrix64F> eigDecomposer = DecompositionFactory.eig(A.getRowCount(), true);
 		if (!eigDecomposer.decompose(dA)) {
@@ -0,0 +1,514 @@
+package com.thalesians.linear;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.ejml.data.DenseMatrix64F;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+
+/**
+ * A lazily evaluated expression over matrices of doubles. Wrapping a matrix with {@link #of(Matrix)} opts into the lazy
+ * mode: scale, add, subtract, mult, transpose and the elementwise operations on an expression only build up an
+ * expression tree, which is evaluated once, when its elements are first needed or when {@link #evaluate()} is called.
+ * <p>
+ * Evaluation fuses the operations so that as few intermediate matrices as possible are allocated:
+ * <ul>
+ * <li>sums and differences of scaled terms are flattened into one linear combination, whose products are accumulated
+ * straight into the result by {@link Gemm} as alpha * A * B + beta * C;</li>
+ * <li>the remaining terms, together with chains of scalings, transposes and elementwise functions, are computed in a
+ * single pass over the result;</li>
+ * <li>structurally equal subexpressions that need storage of their own are evaluated only once; a product that occurs
+ * more than once is therefore stored and added in the single pass rather than accumulated by {@link Gemm}.</li>
+ * </ul>
+ * {@link Gemm} reads its operands row-major and in place, so the operands of products are only copied when they are
+ * not dense matrices or evaluated expressions. In {@code P.mult(H.transpose()).scale(s).add(R).subtract(Q)} with dense
+ * P, H, R and Q the transposed H is copied into storage of its own, and the rest goes straight into the result.
+ */
+public abstract class MatrixExpression extends AbstractMatrix<Double> implements DoubleMatrix {
+	private final int rowcount;
+	private final int columncount;
+	private final int hashcode;
+	private volatile SimpleDenseMatrixOfDoubles value;
+
+	private MatrixExpression(int rowcount, int columncount, int hashcode) {
+		super(SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
+		this.rowcount = rowcount;
+		this.columncount = columncount;
+		this.hashcode = hashcode;
+	}
+
+	/**
+	 * Starts a lazy expression from the given matrix, which is used as it is and must not change until the expression
+	 * has been evaluated
+	 */
+	public static MatrixExpression of(Matrix<Double> matrix) {
+		if (matrix instanceof MatrixExpression) {
+			return (MatrixExpression) matrix;
+		} else {
+			return new Leaf(matrix);
+		}
+	}
+
+	/**
+	 * Evaluates the expression, at most once
+	 */
+	public SimpleDenseMatrixOfDoubles evaluate() {
+		SimpleDenseMatrixOfDoubles result = value;
+		if (result == null) {
+			value = result = new Evaluation().evaluate(this);
+		}
+		return result;
+	}
+
+	@Override public int getRowCount() {
+		return rowcount;
+	}
+
+	@Override public int getColumnCount() {
+		return columncount;
+	}
+
+	@Override public Double get(int row, int column) {
+		return evaluate().get(row, column);
+	}
+
+	@Override public double getDouble(int row, int column) {
+		return evaluate().getDouble(row, column);
+	}
+
+	@Override public void getRow(int row, double[] dest, int offset) {
+		evaluate().getRow(row, dest, offset);
+	}
+
+	@Override public MatrixExpression scale(Double scalar) {
+		return LinearCombination.of(new double[] { scalar }, new MatrixExpression[] { this });
+	}
+
+	@Override public MatrixExpression add(Matrix<Double> matrix) {
+		checkSameShape(matrix);
+		return LinearCombination.of(new double[] { 1.0, 1.0 }, new MatrixExpression[] { this, of(matrix) });
+	}
+
+	@Override public MatrixExpression subtract(Matrix<Double> matrix) {
+		checkSameShape(matrix);
+		return LinearCombination.of(new double[] { 1.0, -1.0 }, new MatrixExpression[] { this, of(matrix) });
+	}
+
+	@Override public MatrixExpression mult(Matrix<Double> matrix) {
+		if (columncount != matrix.getRowCount()) {
+			throw new RuntimeLinearException("Incompatible matrix dimensions for multiplication (lhs: " + rowcount + " x " + columncount + ", rhs: " + matrix.getRowCount() + " x " + matrix.getColumnCount() + ")");
+		}
+		return new Product(this, of(matrix));
+	}
+
+	@Override public MatrixExpression transpose() {
+		return new Transpose(this);
+	}
+
+	/**
+	 * Applies the function to every element, fused with the surrounding elementwise operations
+	 */
+	public MatrixExpression elementwise(Function<Double, Double> func) {
+		return new Map1(this, func);
+	}
+
+	/**
+	 * Applies the function to the corresponding elements of this and the given matrix, fused with the surrounding
+	 * elementwise operations
+	 */
+	public MatrixExpression elementwise(Matrix<Double> matrix, Function2<Double, Double, Double> func) {
+		checkSameShape(matrix);
+		return new Map2(this, of(matrix), func);
+	}
+
+	@Override public Matrix<Double> invert() {
+		return evaluate().invert();
+	}
+
+	@Override public Double determinant() {
+		return evaluate().determinant();
+	}
+
+	private void checkSameShape(Matrix<Double> matrix) {
+		Preconditions.checkArgument(MatrixUtils.areSameShape(this, matrix), "Incompatible matrix dimensions (%s x %s and %s x %s)",
+				rowcount, columncount, matrix.getRowCount(), matrix.getColumnCount());
+	}
+
+	@Override public final int hashCode() {
+		return hashcode;
+	}
+
+	/**
+	 * Structural equality, which identifies the common subexpressions
+	 */
+	@Override public abstract boolean equals(Object obj);
+
+	/**
+	 * The subexpressions this expression is computed from
+	 */
+	abstract MatrixExpression[] operands();
+
+	/**
+	 * Writes the value of this expression, row-major and of its own shape, into dest, which is initially zero
+	 */
+	abstract void evaluateInto(Evaluation evaluation, double[] dest);
+
+	/**
+	 * Returns a kernel computing the elements of this expression one at a time. By default the expression is evaluated
+	 * into storage of its own and the kernel reads from it.
+	 */
+	ElementKernel kernel(Evaluation evaluation) {
+		return new ArrayKernel(evaluation.materialise(this), columncount);
+	}
+
+	/**
+	 * Computes a single element of an expression; kernels are nested along with the expressions they stand for, so
+	 * that a whole elementwise subtree is evaluated in one pass
+	 */
+	interface ElementKernel {
+		double apply(int row, int column);
+	}
+
+	private static final class ArrayKernel implements ElementKernel {
+		private final double[] data;
+		private final int stride;
+
+		ArrayKernel(double[] data, int stride) {
+			this.data = data; this.stride = stride;
+		}
+
+		@Override public double apply(int row, int column) {
+			return data[row * stride + column];
+		}
+	}
+
+	/**
+	 * The state of a single evaluation: the values of the subexpressions that had to be stored, keyed structurally so
+	 * that equal subexpressions are shared, and how often each subexpression occurs
+	 */
+	static final class Evaluation {
+		private final Map<MatrixExpression, double[]> values = new HashMap<>();
+		private final Map<MatrixExpression, Integer> occurrences = new HashMap<>();
+
+		SimpleDenseMatrixOfDoubles evaluate(MatrixExpression expression) {
+			if (expression instanceof Leaf && ((Leaf) expression).matrix instanceof SimpleDenseMatrixOfDoubles) {
+				return (SimpleDenseMatrixOfDoubles) ((Leaf) expression).matrix;
+			}
+			countOccurrences(expression);
+			double[] dest = new double[expression.rowcount * expression.columncount];
+			expression.evaluateInto(this, dest);
+			return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(expression.rowcount, expression.columncount, dest));
+		}
+
+		/**
+		 * Returns the row-major elements of the expression, which must not be modified as they may be the storage of a
+		 * matrix
+		 */
+		double[] materialise(MatrixExpression expression) {
+			SimpleDenseMatrixOfDoubles evaluated = expression.value;
+			if (evaluated != null) {
+				return evaluated.impl.data;
+			}
+			double[] result = values.get(expression);
+			if (result == null) {
+				if (expression instanceof Leaf) {
+					result = MatrixUtils.toEJMLDenseMatrix64F(((Leaf) expression).matrix).data;
+				} else {
+					result = new double[expression.rowcount * expression.columncount];
+					expression.evaluateInto(this, result);
+				}
+				values.put(expression, result);
+			}
+			return result;
+		}
+
+		/**
+		 * Counts the occurrences of every subexpression, looking inside each distinct one only once, as it is only
+		 * evaluated once
+		 */
+		private void countOccurrences(MatrixExpression expression) {
+			Integer count = occurrences.get(expression);
+			occurrences.put(expression, count == null ? 1 : count + 1);
+			if (count == null) {
+				for (MatrixExpression operand : expression.operands()) {
+					countOccurrences(operand);
+				}
+			}
+		}
+
+		boolean isStored(MatrixExpression expression) {
+			return values.containsKey(expression);
+		}
+
+		/**
+		 * Whether the product can be accumulated straight into the result of a linear combination, i.e. whether it occurs
+		 * only once and has not been evaluated already
+		 */
+		boolean isFusable(MatrixExpression expression) {
+			if (!(expression instanceof Product) || expression.value != null || isStored(expression)) {
+				return false;
+			}
+			Integer count = occurrences.get(expression);
+			return count == null || count == 1;
+		}
+
+		void fill(double[] dest, int rowcount, int columncount, ElementKernel kernel) {
+			for (int i = 0, index = 0; i < rowcount; ++i) {
+				for (int j = 0; j < columncount; ++j, ++index) {
+					dest[index] = kernel.apply(i, j);
+				}
+			}
+		}
+	}
+
+	private static final class Leaf extends MatrixExpression {
+		private final Matrix<Double> matrix;
+
+		Leaf(Matrix<Double> matrix) {
+			super(matrix.getRowCount(), matrix.getColumnCount(), System.identityHashCode(matrix));
+			this.matrix = matrix;
+		}
+
+		@Override public boolean equals(Object obj) {
+			return obj instanceof Leaf && ((Leaf) obj).matrix == matrix;
+		}
+
+		@Override MatrixExpression[] operands() {
+			return new MatrixExpression[0];
+		}
+
+		@Override void evaluateInto(Evaluation evaluation, double[] dest) {
+			System.arraycopy(evaluation.materialise(this), 0, dest, 0, dest.length);
+		}
+	}
+
+	private static final class Product extends MatrixExpression {
+		private final MatrixExpression left, right;
+
+		Product(MatrixExpression left, MatrixExpression right) {
+			super(left.getRowCount(), right.getColumnCount(), Objects.hash(left, right));
+			this.left = left; this.right = right;
+		}
+
+		@Override public boolean equals(Object obj) {
+			if (obj == this) { return true; }
+			if (!(obj instanceof Product) || obj.hashCode() != hashCode()) { return false; }
+			Product other = (Product) obj;
+			return left.equals(other.left) && right.equals(other.right);
+		}
+
+		@Override MatrixExpression[] operands() {
+			return new MatrixExpression[] { left, right };
+		}
+
+		@Override void evaluateInto(Evaluation evaluation, double[] dest) {
+			multAdd(evaluation, 1.0, 0.0, dest);
+		}
+
+		/**
+		 * dest = alpha * left * right + beta * dest
+		 */
+		void multAdd(Evaluation evaluation, double alpha, double beta, double[] dest) {
+			int m = left.getRowCount(), k = left.getColumnCount(), n = right.getColumnCount();
+			double[] a = evaluation.materialise(left), b = evaluation.materialise(right);
+			Gemm.gemm(m, n, k, alpha, a, 0, k, b, 0, n, beta, dest, 0, n);
+		}
+	}
+
+	/**
+	 * A sum of scaled terms. Nested linear combinations are flattened when they are built, so that a chain of scalings,
+	 * sums and differences is a single node.
+	 */
+	private static final class LinearCombination extends MatrixExpression {
+		private final double[] coefficients;
+		private final MatrixExpression[] terms;
+
+		private LinearCombination(double[] coefficients, MatrixExpression[] terms) {
+			super(terms[0].getRowCount(), terms[0].getColumnCount(), Objects.hash(Arrays.hashCode(coefficients), Arrays.hashCode(terms)));
+			this.coefficients = coefficients;
+			this.terms = terms;
+		}
+
+		static LinearCombination of(double[] coefficients, MatrixExpression[] terms) {
+			int count = 0;
+			for (MatrixExpression term : terms) {
+				count += term instanceof LinearCombination ? ((LinearCombination) term).terms.length : 1;
+			}
+			double[] flatcoefficients = new double[count];
+			MatrixExpression[] flatterms = new MatrixExpression[count];
+			int index = 0;
+			for (int t = 0; t < terms.length; ++t) {
+				if (terms[t] instanceof LinearCombination) {
+					LinearCombination combination = (LinearCombination) terms[t];
+					for (int u = 0; u < combination.terms.length; ++u, ++index) {
+						flatcoefficients[index] = coefficients[t] * combination.coefficients[u];
+						flatterms[index] = combination.terms[u];
+					}
+				} else {
+					flatcoefficients[index] = coefficients[t];
+					flatterms[index++] = terms[t];
+				}
+			}
+			return new LinearCombination(flatcoefficients, flatterms);
+		}
+
+		@Override public boolean equals(Object obj) {
+			if (obj == this) { return true; }
+			if (!(obj instanceof LinearCombination) || obj.hashCode() != hashCode()) { return false; }
+			LinearCombination other = (LinearCombination) obj;
+			return Arrays.equals(coefficients, other.coefficients) && Arrays.equals(terms, other.terms);
+		}
+
+		@Override MatrixExpression[] operands() {
+			return terms;
+		}
+
+		/**
+		 * The terms other than the products that occur only here are computed in one pass, then those products are
+		 * accumulated into the result
+		 */
+		@Override void evaluateInto(Evaluation evaluation, double[] dest) {
+			boolean[] fused = new boolean[terms.length];
+			boolean hasother = false;
+			for (int t = 0; t < terms.length; ++t) {
+				fused[t] = evaluation.isFusable(terms[t]);
+				hasother |= !fused[t];
+			}
+			if (hasother) {
+				evaluation.fill(dest, getRowCount(), getColumnCount(), elementKernel(evaluation, fused));
+			}
+			boolean first = !hasother;
+			for (int t = 0; t < terms.length; ++t) {
+				if (fused[t]) {
+					((Product) terms[t]).multAdd(evaluation, coefficients[t], first ? 0.0 : 1.0, dest);
+					first = false;
+				}
+			}
+		}
+
+		@Override ElementKernel kernel(Evaluation evaluation) {
+			return elementKernel(evaluation, new boolean[terms.length]);
+		}
+
+		/**
+		 * A kernel for the sum of the terms other than the excluded ones
+		 */
+		private ElementKernel elementKernel(Evaluation evaluation, boolean[] excluded) {
+			int count = 0;
+			for (int t = 0; t < terms.length; ++t) {
+				count += excluded[t] ? 0 : 1;
+			}
+			double[] c = new double[count];
+			ElementKernel[] kernels = new ElementKernel[count];
+			for (int t = 0, index = 0; t < terms.length; ++t) {
+				if (!excluded[t]) {
+					c[index] = coefficients[t];
+					kernels[index++] = terms[t].kernel(evaluation);
+				}
+			}
+			return (row, column) -> {
+				double sum = 0.0;
+				for (int t = 0; t < kernels.length; ++t) {
+					sum += c[t] * kernels[t].apply(row, column);
+				}
+				return sum;
+			};
+		}
+	}
+
+	private static final class Transpose extends MatrixExpression {
+		private final MatrixExpression matrix;
+
+		Transpose(MatrixExpression matrix) {
+			super(matrix.getColumnCount(), matrix.getRowCount(), ~matrix.hashCode());
+			this.matrix = matrix;
+		}
+
+		@Override public MatrixExpression transpose() {
+			return matrix;
+		}
+
+		@Override public boolean equals(Object obj) {
+			return obj == this || obj instanceof Transpose && matrix.equals(((Transpose) obj).matrix);
+		}
+
+		@Override MatrixExpression[] operands() {
+			return new MatrixExpression[] { matrix };
+		}
+
+		@Override void evaluateInto(Evaluation evaluation, double[] dest) {
+			evaluation.fill(dest, getRowCount(), getColumnCount(), kernel(evaluation));
+		}
+
+		@Override ElementKernel kernel(Evaluation evaluation) {
+			ElementKernel kernel = matrix.kernel(evaluation);
+			return (row, column) -> kernel.apply(column, row);
+		}
+	}
+
+	private static final class Map1 extends MatrixExpression {
+		private final MatrixExpression matrix;
+		private final Function<Double, Double> func;
+
+		Map1(MatrixExpression matrix, Function<Double, Double> func) {
+			super(matrix.getRowCount(), matrix.getColumnCount(), Objects.hash(matrix, func));
+			this.matrix = matrix;
+			this.func = func;
+		}
+
+		@Override public boolean equals(Object obj) {
+			if (obj == this) { return true; }
+			if (!(obj instanceof Map1) || obj.hashCode() != hashCode()) { return false; }
+			Map1 other = (Map1) obj;
+			return matrix.equals(other.matrix) && func.equals(other.func);
+		}
+
+		@Override MatrixExpression[] operands() {
+			return new MatrixExpression[] { matrix };
+		}
+
+		@Override void evaluateInto(Evaluation evaluation, double[] dest) {
+			evaluation.fill(dest, getRowCount(), getColumnCount(), kernel(evaluation));
+		}
+
+		@Override ElementKernel kernel(Evaluation evaluation) {
+			ElementKernel kernel = matrix.kernel(evaluation);
+			return (row, column) -> func.apply(kernel.apply(row, column));
+		}
+	}
+
+	private static final class Map2 extends MatrixExpression {
+		private final MatrixExpression matrix1, matrix2;
+		private final Function2<Double, Double, Double> func;
+
+		Map2(MatrixExpression matrix1, MatrixExpression matrix2, Function2<Double, Double, Double> func) {
+			super(matrix1.getRowCount(), matrix1.getColumnCount(), Objects.hash(matrix1, matrix2, func));
+			this.matrix1 = matrix1; this.matrix2 = matrix2;
+			this.func = func;
+		}
+
+		@Override public boolean equals(Object obj) {
+			if (obj == this) { return true; }
+			if (!(obj instanceof Map2) || obj.hashCode() != hashCode()) { return false; }
+			Map2 other = (Map2) obj;
+			return matrix1.equals(other.matrix1) && matrix2.equals(other.matrix2) && func.equals(other.func);
+		}
+
+		@Override MatrixExpression[] operands() {
+			return new MatrixExpression[] { matrix1, matrix2 };
+		}
+
+		@Override void evaluateInto(Evaluation evaluation, double[] dest) {
+			evaluation.fill(dest, getRowCount(), getColumnCount(), kernel(evaluation));
+		}
+
+		@Override ElementKernel kernel(Evaluation evaluation) {
+			ElementKernel kernel1 = matrix1.kernel(evaluation), kernel2 = matrix2.kernel(evaluation);
+			return (row, column) -> func.apply(kernel1.apply(row, column), kernel2.apply(row, column));
+		}
+	}
+}
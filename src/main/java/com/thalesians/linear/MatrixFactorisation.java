@@ -0,0 +1,315 @@
+package com.thalesians.linear;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * The factorisation of a square dense matrix of doubles that is computed once per matrix and shared by its
+ * determinant, log-determinant, solves and inverse: the Cholesky factor L, with A = L * L^T, if the matrix is symmetric
+ * and positive definite, and otherwise an LU decomposition with partial pivoting, P * A = L * U with unit lower
+ * triangular L. The factors are stored row-major in a single array and never modified once computed, so a factorisation
+ * can be used by several threads at once.
+ */
+final class MatrixFactorisation {
+	private final int n;
+	private final double[] factor;
+	/** The row of A in each row of P * A for an LU decomposition, null for a Cholesky factorisation */
+	private final int[] pivots;
+	/**
+	 * The sign of the permutation P, or zero if the LU decomposition found a zero pivot, in which case the matrix is
+	 * singular and the factor is incomplete; one for a Cholesky factorisation
+	 */
+	private final int sign;
+
+	private MatrixFactorisation(int n, double[] factor, int[] pivots, int sign) {
+		this.n = n;
+		this.factor = factor;
+		this.pivots = pivots;
+		this.sign = sign;
+	}
+
+	/**
+	 * The Cholesky factorisation of the symmetric matrix, of which only the lower triangle is read, or null if it is not
+	 * positive definite
+	 */
+	static MatrixFactorisation cholesky(DenseMatrix64F matrix) {
+		int n = matrix.numRows;
+		if (matrix.numCols != n) {
+			throw new RuntimeLinearException("Only square matrices can be factorised (got " + matrix.numRows + " x " + matrix.numCols + ")");
+		}
+		double[] l = matrix.data.clone();
+		if (!decomposeCholesky(l, n)) {
+			return null;
+		}
+		return new MatrixFactorisation(n, l, null, 1);
+	}
+
+	/**
+	 * Factorises the square matrix, trying a Cholesky factorisation first if it is symmetric
+	 */
+	static MatrixFactorisation of(DenseMatrix64F matrix) {
+		int n = matrix.numRows;
+		if (matrix.numCols != n) {
+			throw new RuntimeLinearException("Only square matrices can be factorised (got " + matrix.numRows + " x " + matrix.numCols + ")");
+		}
+		if (isSymmetric(matrix.data, n)) {
+			MatrixFactorisation result = cholesky(matrix);
+			if (result != null) {
+				return result;
+			}
+		}
+		double[] lu = matrix.data.clone();
+		int[] pivots = new int[n];
+		return new MatrixFactorisation(n, lu, pivots, decomposeLU(lu, n, pivots));
+	}
+
+	private static boolean isSymmetric(double[] a, int n) {
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < i; ++j) {
+				if (a[i * n + j] != a[j * n + i]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	int getDimensionCount() {
+		return n;
+	}
+
+	boolean isCholesky() {
+		return pivots == null;
+	}
+
+	/**
+	 * The Cholesky factor, for a Cholesky factorisation only
+	 */
+	SimpleDenseMatrixOfDoubles getCholeskyFactor() {
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(n, n, factor.clone()));
+	}
+
+	/**
+	 * Whether a zero pivot was found. A matrix that is not singular may still have a determinant that underflows to
+	 * zero, so this is not the same as a zero determinant.
+	 */
+	boolean isSingular() {
+		return sign == 0;
+	}
+
+	/**
+	 * The product of the diagonal of the factor, which may overflow or underflow for large matrices
+	 */
+	double determinant() {
+		if (isCholesky()) {
+			double result = 1.0;
+			for (int i = 0; i < n; ++i) {
+				result *= factor[i * n + i];
+			}
+			return result * result;
+		}
+		return determinantLU(factor, n, sign);
+	}
+
+	/**
+	 * The log of the determinant, summed from the logs of the diagonal of the factor so that it does not overflow or
+	 * underflow. NaN if the determinant is negative and negative infinity if the matrix is singular.
+	 */
+	double logDeterminant() {
+		if (isSingular()) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		double result = 0.0;
+		int resultsign = sign;
+		for (int i = 0; i < n; ++i) {
+			double diagonal = factor[i * n + i];
+			result += Math.log(Math.abs(diagonal));
+			if (diagonal < 0.0) {
+				resultsign = -resultsign;
+			}
+		}
+		return isCholesky() ? 2.0 * result : resultsign > 0 ? result : Double.NaN;
+	}
+
+	private void checkNotSingular() {
+		if (isSingular()) {
+			throw new RuntimeLinearException("The matrix is singular");
+		}
+	}
+
+	/**
+	 * Solves A * X = B in place for the n x k row-major B
+	 */
+	void solveInPlace(double[] b, int columncount) {
+		checkNotSingular();
+		double[] column = new double[n];
+		for (int j = 0; j < columncount; ++j) {
+			for (int i = 0; i < n; ++i) {
+				column[i] = b[(isCholesky() ? i : pivots[i]) * columncount + j];
+			}
+			if (isCholesky()) {
+				solveCholesky(factor, n, column);
+			} else {
+				solveLU(factor, n, column);
+			}
+			for (int i = 0; i < n; ++i) {
+				b[i * columncount + j] = column[i];
+			}
+		}
+	}
+
+	/**
+	 * Solves A * x = b for the vector b into x, without allocating; b and x must be different arrays
+	 */
+	void solveInto(double[] b, double[] x) {
+		checkNotSingular();
+		if (isCholesky()) {
+			System.arraycopy(b, 0, x, 0, n);
+			solveCholesky(factor, n, x);
+		} else {
+			for (int i = 0; i < n; ++i) {
+				x[i] = b[pivots[i]];
+			}
+			solveLU(factor, n, x);
+		}
+	}
+
+	SimpleDenseMatrixOfDoubles solve(Matrix<? extends Double> b) {
+		if (b.getRowCount() != n) {
+			throw new RuntimeLinearException("The right-hand side has " + b.getRowCount() + " rows, expected " + n);
+		}
+		DenseMatrix64F result = MatrixUtils.toEJMLDenseMatrix64F(b).copy();
+		solveInPlace(result.data, result.numCols);
+		return new SimpleDenseMatrixOfDoubles(result);
+	}
+
+	SimpleDenseMatrixOfDoubles inverse() {
+		double[] result = new double[n * n];
+		for (int i = 0; i < n; ++i) {
+			result[i * n + i] = 1.0;
+		}
+		solveInPlace(result, n);
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(n, n, result));
+	}
+
+	/**
+	 * Overwrites the lower triangle of the row-major symmetric a with its Cholesky factor and zeroes the strict upper
+	 * triangle. Returns false if the matrix is not positive definite.
+	 */
+	static boolean decomposeCholesky(double[] a, int n) {
+		for (int j = 0; j < n; ++j) {
+			double d = a[j * n + j];
+			for (int k = 0; k < j; ++k) {
+				d -= a[j * n + k] * a[j * n + k];
+			}
+			if (!(d > 0.0)) {
+				return false;
+			}
+			double ljj = Math.sqrt(d);
+			a[j * n + j] = ljj;
+			for (int i = j + 1; i < n; ++i) {
+				double s = a[i * n + j];
+				for (int k = 0; k < j; ++k) {
+					s -= a[i * n + k] * a[j * n + k];
+				}
+				a[i * n + j] = s / ljj;
+				a[j * n + i] = 0.0;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Solves L * L^T * x = b in place
+	 */
+	static void solveCholesky(double[] l, int n, double[] b) {
+		for (int i = 0; i < n; ++i) {
+			double sum = b[i];
+			for (int j = 0; j < i; ++j) {
+				sum -= l[i * n + j] * b[j];
+			}
+			b[i] = sum / l[i * n + i];
+		}
+		for (int i = n - 1; i >= 0; --i) {
+			double sum = b[i];
+			for (int j = i + 1; j < n; ++j) {
+				sum -= l[j * n + i] * b[j];
+			}
+			b[i] = sum / l[i * n + i];
+		}
+	}
+
+	/**
+	 * Decomposes the row-major n x n matrix in place into P * A = L * U with unit lower triangular L, recording in
+	 * pivots the row of A that ended up in each row, and returns the sign of the permutation P. Stops as soon as a zero
+	 * pivot is found, returning zero; the singularity is decided by the pivots alone, not by their product, which can
+	 * underflow for a large matrix that is far from singular.
+	 */
+	static int decomposeLU(double[] lu, int n, int[] pivots) {
+		int sign = 1;
+		for (int i = 0; i < n; ++i) {
+			pivots[i] = i;
+		}
+		for (int k = 0; k < n; ++k) {
+			int pivot = k;
+			for (int i = k + 1; i < n; ++i) {
+				if (Math.abs(lu[i * n + k]) > Math.abs(lu[pivot * n + k])) {
+					pivot = i;
+				}
+			}
+			if (pivot != k) {
+				for (int j = 0; j < n; ++j) {
+					double t = lu[k * n + j]; lu[k * n + j] = lu[pivot * n + j]; lu[pivot * n + j] = t;
+				}
+				int t = pivots[k]; pivots[k] = pivots[pivot]; pivots[pivot] = t;
+				sign = -sign;
+			}
+			double diagonal = lu[k * n + k];
+			if (diagonal == 0.0) {
+				return 0;
+			}
+			for (int i = k + 1; i < n; ++i) {
+				double factor = lu[i * n + k] /= diagonal;
+				if (factor != 0.0) {
+					for (int j = k + 1; j < n; ++j) {
+						lu[i * n + j] -= factor * lu[k * n + j];
+					}
+				}
+			}
+		}
+		return sign;
+	}
+
+	/**
+	 * The determinant from an LU decomposition and the sign returned by {@link #decomposeLU(double[], int, int[])}
+	 */
+	static double determinantLU(double[] lu, int n, int sign) {
+		if (sign == 0) {
+			return 0.0;
+		}
+		double result = sign;
+		for (int i = 0; i < n; ++i) {
+			result *= lu[i * n + i];
+		}
+		return result;
+	}
+
+	/**
+	 * Solves L * U * x = b in place, for b already permuted
+	 */
+	static void solveLU(double[] lu, int n, double[] b) {
+		for (int i = 1; i < n; ++i) {
+			double sum = b[i];
+			for (int j = 0; j < i; ++j) {
+				sum -= lu[i * n + j] * b[j];
+			}
+			b[i] = sum;
+		}
+		for (int i = n - 1; i >= 0; --i) {
+			double sum = b[i];
+			for (int j = i + 1; j < n; ++j) {
+				sum -= lu[i * n + j] * b[j];
+			}
+			b[i] = sum / lu[i * n + i];
+		}
+	}
+}
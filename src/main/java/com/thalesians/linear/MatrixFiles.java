@@ -0,0 +1,220 @@
+package com.thalesians.linear;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes matrices of doubles in a compact binary format. A file starts with a 32 byte header, all little
+ * endian:
+ * <pre>
+ * int32 magic ("TLMX"), int32 version, int32 storage kind, int32 element type,
+ * int32 row count, int32 column count, int64 number of stored elements (sparse only, 0 otherwise)
+ * </pre>
+ * followed by the elements as little endian doubles: all of them row by row for a dense matrix, the lower triangle row
+ * by row for a packed symmetric one, and for a sparse matrix the nonzero values, then the int32 row pointers and then
+ * the int32 column indices of its CSR storage.
+ * <p>
+ * Files are read by mapping them into memory, so that loading takes no time and no heap whatever the size of the
+ * matrix; they are written through a small buffer, element by element, so that no copy of the matrix is made either.
+ */
+public final class MatrixFiles {
+	private MatrixFiles() {
+		throw new AssertionError("This class cannot be instantiated");
+	}
+
+	/**
+	 * How the elements are laid out in a file
+	 */
+	public enum StorageKind {
+		DENSE(1), PACKED_SYMMETRIC(2), SPARSE(3);
+
+		private final int code;
+
+		private StorageKind(int code) {
+			this.code = code;
+		}
+
+		static StorageKind fromCode(int code) throws LinearException {
+			for (StorageKind kind : values()) {
+				if (kind.code == code) {
+					return kind;
+				}
+			}
+			throw new LinearException("Unknown matrix storage kind: " + code);
+		}
+	}
+
+	/** "TLMX" read as a little endian int32 */
+	static final int MAGIC = 'T' | 'L' << 8 | 'M' << 16 | 'X' << 24;
+	static final int VERSION = 1;
+	/** The only element type so far: IEEE 754 double precision */
+	static final int FLOAT64 = 1;
+	static final int HEADER_LENGTH = 32;
+
+	private static final int WRITE_BUFFER_LENGTH = 1 << 16;
+
+	/**
+	 * Maps a matrix file into memory read-only. The matrix reads its elements straight from the mapping, which remains
+	 * valid after the file is closed.
+	 */
+	public static MappedMatrixOfDoubles map(Path path) throws IOException, LinearException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_LENGTH) {
+				throw new LinearException("Invalid matrix file: " + path);
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != MAGIC) {
+				throw new LinearException("Invalid matrix file: " + path);
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new LinearException("Unsupported matrix file version: " + header.getInt(4));
+			}
+			StorageKind kind = StorageKind.fromCode(header.getInt(8));
+			if (header.getInt(12) != FLOAT64) {
+				throw new LinearException("Unsupported matrix element type: " + header.getInt(12));
+			}
+			int rowcount = header.getInt(16), columncount = header.getInt(20);
+			long nonzerocount = header.getLong(24);
+			if (rowcount < 0 || columncount < 0 || nonzerocount < 0 || nonzerocount > Integer.MAX_VALUE
+					|| kind == StorageKind.PACKED_SYMMETRIC && rowcount != columncount) {
+				throw new LinearException("Invalid matrix file: " + path);
+			}
+			long valuecount = getValueCount(kind, rowcount, columncount, nonzerocount);
+			long length = HEADER_LENGTH + 8 * valuecount + (kind == StorageKind.SPARSE ? 4 * (rowcount + 1 + nonzerocount) : 0);
+			if (channel.size() < length) {
+				throw new LinearException("Truncated matrix file: " + path);
+			}
+			ByteBuffer[] values = mapChunks(channel, HEADER_LENGTH, 8 * valuecount);
+			if (kind != StorageKind.SPARSE) {
+				return new MappedMatrixOfDoubles(kind, rowcount, columncount, values, null, null);
+			}
+			long pointeroffset = HEADER_LENGTH + 8 * valuecount;
+			ByteBuffer[] pointers = mapChunks(channel, pointeroffset, 4L * (rowcount + 1));
+			ByteBuffer[] indices = mapChunks(channel, pointeroffset + 4L * (rowcount + 1), 4 * nonzerocount);
+			return new MappedMatrixOfDoubles(kind, rowcount, columncount, values, pointers, indices);
+		}
+	}
+
+	private static long getValueCount(StorageKind kind, int rowcount, int columncount, long nonzerocount) {
+		switch (kind) {
+		case DENSE: return (long) rowcount * columncount;
+		case PACKED_SYMMETRIC: return ((long) rowcount * rowcount + rowcount) / 2;
+		default: return nonzerocount;
+		}
+	}
+
+	/**
+	 * Maps a region in chunks of {@link MappedMatrixOfDoubles#CHUNK_LENGTH} bytes, as a single mapping is limited to
+	 * 2 GB
+	 */
+	private static ByteBuffer[] mapChunks(FileChannel channel, long offset, long length) throws IOException {
+		int chunkcount = (int) ((length + MappedMatrixOfDoubles.CHUNK_LENGTH - 1) / MappedMatrixOfDoubles.CHUNK_LENGTH);
+		ByteBuffer[] result = new ByteBuffer[chunkcount];
+		for (int c = 0; c < chunkcount; ++c) {
+			long chunkoffset = (long) c * MappedMatrixOfDoubles.CHUNK_LENGTH;
+			long chunklength = Math.min(MappedMatrixOfDoubles.CHUNK_LENGTH, length - chunkoffset);
+			MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, offset + chunkoffset, chunklength);
+			result[c] = chunk.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the matrix to a file, replacing any existing one. Sparse and symmetric matrices are written in their own
+	 * storage kind, any other matrix as dense.
+	 */
+	public static void write(Matrix<? extends Double> matrix, Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(matrix, channel);
+		}
+	}
+
+	/**
+	 * Streams the matrix to a channel, which is left open
+	 */
+	public static void write(Matrix<? extends Double> matrix, WritableByteChannel channel) throws IOException {
+		StorageKind kind = matrix instanceof SparseMatrixOfDoubles ? StorageKind.SPARSE
+				: matrix instanceof SymmetricMatrix ? StorageKind.PACKED_SYMMETRIC : StorageKind.DENSE;
+		write(matrix, kind, channel);
+	}
+
+	/**
+	 * Streams the matrix to a channel in the given storage kind: a packed symmetric file holds the lower triangle only,
+	 * and a sparse file the nonzero elements only
+	 */
+	public static void write(Matrix<? extends Double> matrix, StorageKind kind, WritableByteChannel channel) throws IOException {
+		int rowcount = matrix.getRowCount(), columncount = matrix.getColumnCount();
+		if (kind == StorageKind.PACKED_SYMMETRIC && rowcount != columncount) {
+			throw new RuntimeLinearException("Only a square matrix can be written as symmetric");
+		}
+		SparseMatrixOfDoubles sparse = kind == StorageKind.SPARSE ? SparseMatrixOfDoubles.copyOf(matrix).toCompressedRows() : null;
+		ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(kind.code).putInt(FLOAT64).putInt(rowcount).putInt(columncount);
+		buffer.putLong(sparse != null ? sparse.getNonZeroCount() : 0L);
+		switch (kind) {
+		case DENSE:
+			double[] row = new double[columncount];
+			for (int i = 0; i < rowcount; ++i) {
+				if (matrix instanceof DoubleMatrix) {
+					((DoubleMatrix) matrix).getRow(i, row, 0);
+				} else {
+					for (int j = 0; j < columncount; ++j) {
+						row[j] = matrix.get(i, j);
+					}
+				}
+				for (int j = 0; j < columncount; ++j) {
+					buffer = putDouble(buffer, row[j], channel);
+				}
+			}
+			break;
+		case PACKED_SYMMETRIC:
+			for (int i = 0; i < rowcount; ++i) {
+				for (int j = 0; j <= i; ++j) {
+					buffer = putDouble(buffer, MatrixUtils.getDouble(matrix, i, j), channel);
+				}
+			}
+			break;
+		default:
+			int nonzerocount = sparse.getNonZeroCount();
+			for (int k = 0; k < nonzerocount; ++k) {
+				buffer = putDouble(buffer, sparse.values[k], channel);
+			}
+			for (int i = 0; i <= rowcount; ++i) {
+				buffer = putInt(buffer, sparse.pointers[i], channel);
+			}
+			for (int k = 0; k < nonzerocount; ++k) {
+				buffer = putInt(buffer, sparse.indices[k], channel);
+			}
+			break;
+		}
+		flush(buffer, channel);
+	}
+
+	private static ByteBuffer putDouble(ByteBuffer buffer, double value, WritableByteChannel channel) throws IOException {
+		if (buffer.remaining() < 8) {
+			flush(buffer, channel);
+		}
+		return buffer.putDouble(value);
+	}
+
+	private static ByteBuffer putInt(ByteBuffer buffer, int value, WritableByteChannel channel) throws IOException {
+		if (buffer.remaining() < 4) {
+			flush(buffer, channel);
+		}
+		return buffer.putInt(value);
+	}
+
+	private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -1,5 +1,7 @@
 package com.thalesians.linear;
 
+import java.util.List;
+
 import org.ejml.alg.dense.decomposition.chol.CholeskyDecompositionInner_D64;
 import org.ejml.data.DenseMatrix64F;
 import org.ejml.factory.LinearSolverFactory;
@@ -56,7 +58,24 @@ public class MatrixFunctions {
 		}
 	}
 	
+	/**
+	 * Solves A * x = b, in the least squares sense if A is not square. Block diagonal matrices with square blocks are
+	 * solved block by block, and square dense and symmetric matrices with the factorisation they keep for all their
+	 * solves.
+	 */
 	public static final Matrix<Double> solve(Matrix<Double> A, Matrix<Double> b) {
+		if (A instanceof SimpleDenseMatrixOfDoubles && MatrixUtils.isSquare(A)) {
+			return ((SimpleDenseMatrixOfDoubles) A).solve(b);
+		}
+		if (A instanceof SimpleSymmetricMatrixOfDoubles) {
+			return ((SimpleSymmetricMatrixOfDoubles) A).solve(b);
+		}
+		if (A instanceof SimpleBlockDiagonalMatrixView && MatrixUtils.isSquare(A)) {
+			SimpleBlockDiagonalMatrixView<Double> blockdiagonal = (SimpleBlockDiagonalMatrixView<Double>) A;
+			if (blockdiagonal.hasSquareBlocks()) {
+				return solveByBlocks(blockdiagonal, b);
+			}
+		}
 		DenseMatrix64F A1 = MatrixUtils.toEJMLDenseMatrix64F(A);
 		DenseMatrix64F b1 = MatrixUtils.toEJMLDenseMatrix64F(b);
 		DenseMatrix64F x1 = new DenseMatrix64F(A.getColumnCount(), b.getColumnCount());
@@ -68,4 +87,17 @@ public class MatrixFunctions {
 		solver.solve(b1, x1);
 		return new SimpleDenseMatrixOfDoubles(x1);
 	}
+	
+	private static Matrix<Double> solveByBlocks(SimpleBlockDiagonalMatrixView<Double> A, Matrix<Double> b) {
+		int columncount = b.getColumnCount();
+		List<Matrix<Double>> solutions = A.mapBlocks(i -> {
+			Matrix<Double> block = A.getBlocks().get(i);
+			return solve(block, b.get(SimpleRectangle.create(A.getBlockTopRow(i), 0, block.getRowCount(), columncount)));
+		});
+		SimpleDenseMatrixOfDoubles.Builder resultbuilder = SimpleDenseMatrixOfDoubles.builder(A.getColumnCount(), columncount);
+		for (int i = 0; i < solutions.size(); ++i) {
+			resultbuilder.set(A.getBlockLeftColumn(i), 0, solutions.get(i));
+		}
+		return resultbuilder.build();
+	}
 }
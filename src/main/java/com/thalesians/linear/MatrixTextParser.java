@@ -0,0 +1,337 @@
+package com.thalesians.linear;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A single-pass parser of the dense and sparse matrix text formats of {@link StringUtils}, reading either a
+ * CharSequence in place or a Reader through a small buffer. Numbers are tokenised into one reused buffer and parsed
+ * from it without creating substrings, and elements are written straight into the builder, so that the memory used
+ * beyond the matrix itself does not depend on the length of the input.
+ * <p>
+ * The dense format "[a, b; c, d]" does not give the shape of the matrix up front, so its values are collected in a
+ * primitive array until the last row has been read; the sparse format "r x c: i,j=v; ..." does, and its elements go
+ * to the builder as they are read.
+ */
+final class MatrixTextParser {
+	private static final int BUFFER_LENGTH = 8192;
+	/** The powers of ten that are exact doubles */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+			POWERS_OF_TEN[i] = 10.0 * POWERS_OF_TEN[i - 1];
+		}
+	}
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	private final CharSequence chars;
+	private final Reader reader;
+	private final char[] buffer;
+	private int position;
+	private int limit;
+	private final StringBuilder token = new StringBuilder(32);
+
+	MatrixTextParser(CharSequence chars) {
+		this.chars = chars;
+		this.reader = null;
+		this.buffer = null;
+		this.limit = chars.length();
+	}
+
+	MatrixTextParser(Reader reader) {
+		this.chars = null;
+		this.reader = reader;
+		this.buffer = new char[BUFFER_LENGTH];
+	}
+
+	/**
+	 * The next character without consuming it, or -1 at the end of the input
+	 */
+	private int peek() throws IOException {
+		if (position == limit) {
+			if (reader == null) {
+				return -1;
+			}
+			int count;
+			do {
+				count = reader.read(buffer, 0, buffer.length);
+			} while (count == 0);
+			if (count < 0) {
+				return -1;
+			}
+			position = 0;
+			limit = count;
+		}
+		return reader == null ? chars.charAt(position) : buffer[position];
+	}
+
+	private void skipWhitespace() throws IOException {
+		int c;
+		while ((c = peek()) != -1 && Character.isWhitespace(c)) {
+			++position;
+		}
+	}
+
+	private static boolean isTokenChar(int c) {
+		return c >= '0' && c <= '9' || c == '.' || c == '+' || c == '-' || Character.isLetter(c) && c != 'x';
+	}
+
+	/**
+	 * Reads the next run of characters that can make up a number into the token buffer
+	 */
+	private boolean readToken() throws IOException {
+		token.setLength(0);
+		int c;
+		while ((c = peek()) != -1 && isTokenChar(c)) {
+			token.append((char) c);
+			++position;
+		}
+		return token.length() > 0;
+	}
+
+	private void expect(char expected) throws IOException, LinearException {
+		skipWhitespace();
+		if (peek() != expected) {
+			throw new LinearException("Invalid matrix string format");
+		}
+		++position;
+	}
+
+	private int readIndex() throws IOException, LinearException {
+		skipWhitespace();
+		if (!readToken()) {
+			throw new LinearException("Invalid matrix string format");
+		}
+		return parseIndex(token);
+	}
+
+	/**
+	 * Parses either format, telling them apart by the "x" after the first number of the sparse format
+	 */
+	Matrix<Double> parse(MatrixBuilder<Double> builder) throws IOException, LinearException {
+		skipDenseSeparators();
+		boolean tokenread = readToken();
+		skipWhitespace();
+		if (tokenread && peek() == 'x') {
+			return parseSparse(builder, parseIndex(token));
+		}
+		return parseDense(builder, tokenread);
+	}
+
+	Matrix<Double> parseDense(MatrixBuilder<Double> builder) throws IOException, LinearException {
+		skipDenseSeparators();
+		return parseDense(builder, readToken());
+	}
+
+	Matrix<Double> parseSparse(MatrixBuilder<Double> builder) throws IOException, LinearException {
+		return parseSparse(builder, readIndex());
+	}
+
+	/**
+	 * Skips whitespace and brackets, which carry no meaning in the dense format
+	 */
+	private void skipDenseSeparators() throws IOException {
+		int c;
+		while ((c = peek()) != -1 && (Character.isWhitespace(c) || c == '[' || c == ']')) {
+			++position;
+		}
+	}
+
+	/**
+	 * Rows are separated by semicolons and values by commas; empty rows and values are skipped
+	 */
+	private Matrix<Double> parseDense(MatrixBuilder<Double> builder, boolean tokenread) throws IOException, LinearException {
+		double[] values = new double[64];
+		int valuecount = 0, rowcount = 0, columncount = -1, rowvaluecount = 0;
+		boolean separated = true;
+		while (true) {
+			if (tokenread) {
+				if (!separated) {
+					throw new LinearException("Invalid matrix string format");
+				}
+				if (valuecount == values.length) {
+					values = Arrays.copyOf(values, 2 * valuecount);
+				}
+				values[valuecount++] = parseDouble(token);
+				++rowvaluecount;
+				separated = false;
+			} else {
+				int c = peek();
+				if (c == ',' || c == ';' || c == -1) {
+					if (c != -1) {
+						++position;
+					}
+					separated = true;
+					if (c != ',' && rowvaluecount > 0) {
+						if (columncount == -1) {
+							columncount = rowvaluecount;
+						} else if (rowvaluecount != columncount) {
+							throw new LinearException("Unexpected number of values in row at index " + rowcount + ": expected: " + columncount + ", got " + rowvaluecount);
+						}
+						++rowcount;
+						rowvaluecount = 0;
+					}
+					if (c == -1) {
+						break;
+					}
+				} else {
+					throw new LinearException("Invalid matrix string format");
+				}
+			}
+			skipDenseSeparators();
+			tokenread = readToken();
+		}
+		if (rowcount > 0) {
+			builder.setShape(rowcount, columncount);
+			DoubleMatrixBuilder doublebuilder = builder instanceof DoubleMatrixBuilder ? (DoubleMatrixBuilder) builder : null;
+			for (int i = 0, k = 0; i < rowcount; ++i) {
+				for (int j = 0; j < columncount; ++j, ++k) {
+					if (doublebuilder != null) {
+						doublebuilder.setDouble(i, j, values[k]);
+					} else {
+						builder.set(i, j, values[k]);
+					}
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * The shape "r x c", then optionally a colon and elements "i,j=v" separated by semicolons
+	 */
+	private Matrix<Double> parseSparse(MatrixBuilder<Double> builder, int rowcount) throws IOException, LinearException {
+		expect('x');
+		int columncount = readIndex();
+		builder.setShape(rowcount, columncount);
+		DoubleMatrixBuilder doublebuilder = builder instanceof DoubleMatrixBuilder ? (DoubleMatrixBuilder) builder : null;
+		skipWhitespace();
+		int c = peek();
+		if (c == ':') {
+			++position;
+			while (true) {
+				skipWhitespace();
+				c = peek();
+				if (c == -1) {
+					break;
+				} else if (c == ';') {
+					++position;
+					continue;
+				}
+				int row = readIndex();
+				expect(',');
+				int column = readIndex();
+				expect('=');
+				skipWhitespace();
+				if (!readToken()) {
+					throw new LinearException("Invalid matrix string format");
+				}
+				double value = parseDouble(token);
+				if (doublebuilder != null) {
+					doublebuilder.setDouble(row, column, value);
+				} else {
+					builder.set(row, column, value);
+				}
+				skipWhitespace();
+				c = peek();
+				if (c != ';' && c != -1) {
+					throw new LinearException("Invalid matrix string format");
+				}
+			}
+		} else if (c != -1) {
+			throw new LinearException("Invalid matrix string format");
+		}
+		return builder.build();
+	}
+
+	private static int parseIndex(CharSequence s) throws LinearException {
+		int n = s.length();
+		if (n == 0 || n > 9) {
+			throw new LinearException("Invalid matrix string format");
+		}
+		int result = 0;
+		for (int i = 0; i < n; ++i) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new LinearException("Invalid matrix string format");
+			}
+			result = 10 * result + (c - '0');
+		}
+		return result;
+	}
+
+	/**
+	 * Parses a decimal number directly when its digits form an integer of at most 53 bits and its decimal exponent is
+	 * at most 22 in magnitude, as the result is then a single correctly rounded multiplication or division of two exact
+	 * doubles. Anything else, including NaN, infinities and numbers with more digits, goes to Double.parseDouble.
+	 */
+	static double parseDouble(CharSequence s) throws LinearException {
+		int n = s.length(), i = 0;
+		boolean negative = false;
+		if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+			negative = s.charAt(i++) == '-';
+		}
+		long mantissa = 0;
+		int digitcount = 0, exponent = 0;
+		boolean anydigits = false, exact = true;
+		for (boolean fraction = false; i < n; ++i) {
+			char c = s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				anydigits = true;
+				if (mantissa == 0 && c == '0') {
+					// Leading zeros
+				} else if (digitcount < 18) {
+					mantissa = 10 * mantissa + (c - '0');
+					++digitcount;
+				} else {
+					exact = false;
+					break;
+				}
+				if (fraction) {
+					--exponent;
+				}
+			} else if (c == '.' && !fraction) {
+				fraction = true;
+			} else {
+				break;
+			}
+		}
+		if (exact && anydigits && i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+			++i;
+			boolean negativeexponent = false;
+			if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+				negativeexponent = s.charAt(i++) == '-';
+			}
+			int explicitexponent = 0, start = i;
+			for (; i < n && s.charAt(i) >= '0' && s.charAt(i) <= '9' && explicitexponent < 1000; ++i) {
+				explicitexponent = 10 * explicitexponent + (s.charAt(i) - '0');
+			}
+			exact = i > start;
+			exponent += negativeexponent ? -explicitexponent : explicitexponent;
+		}
+		if (exact && anydigits && i == n && mantissa <= MAX_EXACT_MANTISSA) {
+			double value;
+			if (mantissa == 0) {
+				value = 0.0;
+			} else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+				value = mantissa * POWERS_OF_TEN[exponent];
+			} else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+				value = mantissa / POWERS_OF_TEN[-exponent];
+			} else {
+				return parseDoubleSlowly(s);
+			}
+			return negative ? -value : value;
+		}
+		return parseDoubleSlowly(s);
+	}
+
+	private static double parseDoubleSlowly(CharSequence s) throws LinearException {
+		try {
+			return Double.parseDouble(s.toString());
+		} catch (NumberFormatException e) {
+			throw new LinearException("Invalid number in matrix string: " + s, e);
+		}
+	}
+}
@@ -11,9 +11,35 @@ public final class MatrixUtils {
 		int rc = matrix.getRowCount();
 		int cc = matrix.getColumnCount();
 		double[] result = new double[rc * cc];
-		for (int i = 0; i < rc; ++i) {
-			for (int j = 0; j < cc; ++j) {
-				result[i * cc + j] = matrix.get(i, j);
+		if (matrix instanceof DoubleMatrix) {
+			DoubleMatrix m = (DoubleMatrix) matrix;
+			for (int i = 0; i < rc; ++i) {
+				m.getRow(i, result, i * cc);
+			}
+		} else {
+			for (int i = 0; i < rc; ++i) {
+				for (int j = 0; j < cc; ++j) {
+					result[i * cc + j] = matrix.get(i, j);
+				}
+			}
+		}
+		return result;
+	}
+	
+	public static float[] toArrayOfFloats(Matrix<Float> matrix) {
+		int rc = matrix.getRowCount();
+		int cc = matrix.getColumnCount();
+		float[] result = new float[rc * cc];
+		if (matrix instanceof FloatMatrix) {
+			FloatMatrix m = (FloatMatrix) matrix;
+			for (int i = 0; i < rc; ++i) {
+				m.getRow(i, result, i * cc);
+			}
+		} else {
+			for (int i = 0; i < rc; ++i) {
+				for (int j = 0; j < cc; ++j) {
+					result[i * cc + j] = matrix.get(i, j);
+				}
 			}
 		}
 		return result;
@@ -25,7 +51,7 @@ public final class MatrixUtils {
 		int[] result = new int[rc * cc];
 		for (int i = 0; i < rc; ++i) {
 			for (int j = 0; j < cc; ++j) {
-				result[i * cc + j] = matrix.get(i, j).intValue();
+				result[i * cc + j] = (int) getDouble(matrix, i, j);
 			}
 		}
 		return result;
@@ -50,8 +76,12 @@ public final class MatrixUtils {
 		double[][] result = new double[rc][];
 		for (int i = 0; i < rc; ++i) {
 			result[i] = new double[cc];
-			for (int j = 0; j < cc; ++j) {
-				result[i][j] = matrix.get(i, j);
+			if (matrix instanceof DoubleMatrix) {
+				((DoubleMatrix) matrix).getRow(i, result[i], 0);
+			} else {
+				for (int j = 0; j < cc; ++j) {
+					result[i][j] = matrix.get(i, j);
+				}
 			}
 		}
 		return result;
@@ -95,8 +125,8 @@ public final class MatrixUtils {
 		double max = maxAbs(matrix);
 		for (int i = 0, rc = matrix.getRowCount(); i < rc; ++i) {
 			for (int j = 0, cc = matrix.getColumnCount(); j < cc; ++j) {
-				double a = matrix.get(i, j) / max;
-				double b = matrix.get(j, i) / max;
+				double a = getDouble(matrix, i, j) / max;
+				double b = getDouble(matrix, j, i) / max;
 				
 				double diff = Math.abs(a - b);
 				
@@ -117,21 +147,31 @@ public final class MatrixUtils {
 	}
 	
 	public static Matrix<Double> replaceNaNs(Matrix<? extends Double> matrix, double value) {
-		MatrixBuilder<Double> b = SimpleDenseMatrixOfDoubles.builder().setShape(matrix);
+		if (matrix instanceof SimpleDenseMatrixOfDoubles) {
+			DenseMatrix64F impl = ((SimpleDenseMatrixOfDoubles) matrix).impl;
+			double[] data = new double[impl.getNumElements()];
+			DoubleKernels.get().replaceNaNs(impl.data, value, data, data.length);
+			return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(impl.numRows, impl.numCols, data));
+		}
+		SimpleDenseMatrixOfDoubles.Builder b = SimpleDenseMatrixOfDoubles.builder().setShape(matrix);
 		for (int i = 0, rc = matrix.getRowCount(); i < rc; ++i) {
 			for (int j = 0, cc = matrix.getColumnCount(); j < cc; ++j) {
-				double v = matrix.get(i, j);
-				b.set(i, j, Double.isNaN(v) ? value : v);
+				double v = getDouble(matrix, i, j);
+				b.setDouble(i, j, Double.isNaN(v) ? value : v);
 			}
 		}
 		return b.build();
 	}
 	
 	public static double maxAbs(Matrix<? extends Double> matrix) {
+		if (matrix instanceof SimpleDenseMatrixOfDoubles) {
+			DenseMatrix64F impl = ((SimpleDenseMatrixOfDoubles) matrix).impl;
+			return DoubleKernels.get().maxAbs(impl.data, impl.getNumElements());
+		}
 		double max = 0.0;
 		for (int i = 0, rc = matrix.getRowCount(); i < rc; ++i) {
 			for (int j = 0, cc = matrix.getColumnCount(); j < cc; ++j) {
-				double val = Math.abs(matrix.get(i, j));
+				double val = Math.abs(getDouble(matrix, i, j));
 				if (val > max) {
 					max = val;
 				}
@@ -141,10 +181,14 @@ public final class MatrixUtils {
 	}
 	
 	public static double minAbs(Matrix<? extends Double> matrix) {
+		if (matrix instanceof SimpleDenseMatrixOfDoubles) {
+			DenseMatrix64F impl = ((SimpleDenseMatrixOfDoubles) matrix).impl;
+			return DoubleKernels.get().minAbs(impl.data, impl.getNumElements());
+		}
 		double min = Double.MAX_VALUE;
 		for (int i = 0, rc = matrix.getRowCount(); i < rc; ++i) {
 			for (int j = 0, cc = matrix.getColumnCount(); j < cc; ++j) {
-				double val = Math.abs(matrix.get(i, j));
+				double val = Math.abs(getDouble(matrix, i, j));
 				if (val < min) {
 					min = val;
 				}
@@ -180,6 +224,36 @@ public final class MatrixUtils {
 		return builder.build();
 	}
 	
+	/**
+	 * Reads an element without boxing it when the matrix provides primitive access
+	 */
+	public static double getDouble(Matrix<? extends Double> matrix, int row, int column) {
+		if (matrix instanceof DoubleMatrix) {
+			return ((DoubleMatrix) matrix).getDouble(row, column);
+		} else {
+			return matrix.get(row, column);
+		}
+	}
+	
+	/**
+	 * Reads an element without boxing it when the matrix provides primitive access
+	 */
+	public static float getFloat(Matrix<? extends Float> matrix, int row, int column) {
+		if (matrix instanceof FloatMatrix) {
+			return ((FloatMatrix) matrix).getFloat(row, column);
+		} else {
+			return matrix.get(row, column);
+		}
+	}
+	
+	/**
+	 * Used by the views, which are generic in their element type, to implement {@link DoubleMatrix}
+	 */
+	@SuppressWarnings("unchecked")
+	static double getDoubleUnchecked(Matrix<?> matrix, int row, int column) {
+		return getDouble((Matrix<? extends Double>) matrix, row, column);
+	}
+	
 	static DenseMatrix64F toEJMLDenseMatrix64F(Matrix<? extends Double> matrix) {
 		if (matrix instanceof SimpleDenseMatrixOfDoubles) {
 			return ((SimpleDenseMatrixOfDoubles) matrix).impl;
@@ -0,0 +1,325 @@
+package com.thalesians.linear;
+
+import java.util.Arrays;
+
+import org.ejml.data.DenseMatrix64F;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A mutable, row-major dense matrix of doubles, meant as a reusable workspace for loops that would otherwise allocate a
+ * new matrix for the result of every operation. The static "into" operations write their result into a given
+ * workspace, reshaping it as needed; its storage only grows, so once a loop has run through all its shapes none of
+ * them allocates. Products are computed on the calling thread for the same reason. Any matrix can be an operand, and a
+ * workspace can be passed wherever a Matrix is expected, but it is read as it is when it is read, so it must not be
+ * changed while another matrix or thread still uses it.
+ * <p>
+ * The result of an operation must not be one of its operands, except for addition, subtraction and scaling, which work
+ * element by element.
+ */
+public final class MutableDenseMatrixOfDoubles extends AbstractMatrix<Double> implements DoubleMatrix {
+	private int rowcount;
+	private int columncount;
+	private double[] data;
+	/** Row interchanges of the last inversion, kept to avoid allocating them every time */
+	private int[] pivots = new int[0];
+
+	private MutableDenseMatrixOfDoubles(int rowcount, int columncount) {
+		super(SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
+		Preconditions.checkArgument(rowcount >= 0 && columncount >= 0);
+		this.rowcount = rowcount;
+		this.columncount = columncount;
+		this.data = new double[rowcount * columncount];
+	}
+
+	public static MutableDenseMatrixOfDoubles create(int rowcount, int columncount) {
+		return new MutableDenseMatrixOfDoubles(rowcount, columncount);
+	}
+
+	public static MutableDenseMatrixOfDoubles copyOf(Matrix<? extends Double> matrix) {
+		return create(matrix.getRowCount(), matrix.getColumnCount()).set(matrix);
+	}
+
+	/**
+	 * Changes the shape, keeping the storage if it is large enough; the elements are left unspecified
+	 */
+	public MutableDenseMatrixOfDoubles reshape(int rowcount, int columncount) {
+		Preconditions.checkArgument(rowcount >= 0 && columncount >= 0);
+		if (data.length < rowcount * columncount) {
+			data = new double[rowcount * columncount];
+		}
+		this.rowcount = rowcount;
+		this.columncount = columncount;
+		return this;
+	}
+
+	@Override public int getRowCount() {
+		return rowcount;
+	}
+
+	@Override public int getColumnCount() {
+		return columncount;
+	}
+
+	@Override public Double get(int row, int column) {
+		return getDouble(row, column);
+	}
+
+	@Override public double getDouble(int row, int column) {
+		Preconditions.checkElementIndex(row, rowcount, "row");
+		Preconditions.checkElementIndex(column, columncount, "column");
+		return data[row * columncount + column];
+	}
+
+	@Override public void getRow(int row, double[] dest, int offset) {
+		Preconditions.checkElementIndex(row, rowcount, "row");
+		System.arraycopy(data, row * columncount, dest, offset, columncount);
+	}
+
+	public MutableDenseMatrixOfDoubles setDouble(int row, int column, double value) {
+		Preconditions.checkElementIndex(row, rowcount, "row");
+		Preconditions.checkElementIndex(column, columncount, "column");
+		data[row * columncount + column] = value;
+		return this;
+	}
+
+	/**
+	 * Copies the matrix into this workspace, reshaping it
+	 */
+	public MutableDenseMatrixOfDoubles set(Matrix<? extends Double> matrix) {
+		if (matrix == this) {
+			return this;
+		}
+		int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
+		double[] source = getArray(matrix);
+		reshape(rc, cc);
+		if (source != null) {
+			System.arraycopy(source, 0, data, 0, rc * cc);
+		} else if (matrix instanceof DoubleMatrix) {
+			for (int i = 0; i < rc; ++i) {
+				((DoubleMatrix) matrix).getRow(i, data, i * cc);
+			}
+		} else {
+			for (int i = 0; i < rc; ++i) {
+				for (int j = 0; j < cc; ++j) {
+					data[i * cc + j] = matrix.get(i, j);
+				}
+			}
+		}
+		return this;
+	}
+
+	public MutableDenseMatrixOfDoubles setToIdentity() {
+		Arrays.fill(data, 0, rowcount * columncount, 0.0);
+		for (int i = 0, n = Math.min(rowcount, columncount); i < n; ++i) {
+			data[i * columncount + i] = 1.0;
+		}
+		return this;
+	}
+
+	/**
+	 * An immutable copy of the current contents
+	 */
+	public SimpleDenseMatrixOfDoubles toImmutable() {
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(rowcount, columncount, Arrays.copyOf(data, rowcount * columncount)));
+	}
+
+	/**
+	 * Not memoised, as the contents may change
+	 */
+	@Override public Matrix<Double> invert() {
+		return toImmutable().invert();
+	}
+
+	@Override public Double determinant() {
+		return toImmutable().determinant();
+	}
+
+	/**
+	 * The row-major storage of a matrix, if it has one with no gaps between rows, or null
+	 */
+	private static double[] getArray(Matrix<? extends Double> matrix) {
+		if (matrix instanceof SimpleDenseMatrixOfDoubles) {
+			return ((SimpleDenseMatrixOfDoubles) matrix).impl.data;
+		} else if (matrix instanceof MutableDenseMatrixOfDoubles) {
+			return ((MutableDenseMatrixOfDoubles) matrix).data;
+		}
+		return null;
+	}
+
+	private static void checkNotAliased(Matrix<? extends Double> operand, MutableDenseMatrixOfDoubles result) {
+		Preconditions.checkArgument(operand != result, "The result of the operation must not be one of its operands");
+	}
+
+	/**
+	 * result = a * b
+	 */
+	public static MutableDenseMatrixOfDoubles multInto(Matrix<? extends Double> a, Matrix<? extends Double> b, MutableDenseMatrixOfDoubles result) {
+		checkNotAliased(a, result);
+		checkNotAliased(b, result);
+		int m = a.getRowCount(), k = a.getColumnCount(), n = b.getColumnCount();
+		if (b.getRowCount() != k) {
+			throw new RuntimeLinearException("Incompatible matrix dimensions for multiplication (lhs: " + m + " x " + k + ", rhs: " + b.getRowCount() + " x " + n + ")");
+		}
+		result.reshape(m, n);
+		double[] adata = getArray(a), bdata = getArray(b);
+		if (adata != null && bdata != null) {
+			Gemm.gemmSerial(m, n, k, 1.0, adata, 0, k, bdata, 0, n, 0.0, result.data, 0, n);
+		} else {
+			for (int i = 0; i < m; ++i) {
+				for (int j = 0; j < n; ++j) {
+					double sum = 0.0;
+					for (int p = 0; p < k; ++p) {
+						sum += MatrixUtils.getDouble(a, i, p) * MatrixUtils.getDouble(b, p, j);
+					}
+					result.data[i * n + j] = sum;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * result = alpha * a + beta * b
+	 */
+	private static MutableDenseMatrixOfDoubles combineInto(double alpha, Matrix<? extends Double> a, double beta, Matrix<? extends Double> b, MutableDenseMatrixOfDoubles result) {
+		Preconditions.checkArgument(MatrixUtils.areSameShape(a, b), "Incompatible matrix dimensions (%s x %s and %s x %s)",
+				a.getRowCount(), a.getColumnCount(), b.getRowCount(), b.getColumnCount());
+		int rc = a.getRowCount(), cc = a.getColumnCount();
+		double[] adata = getArray(a), bdata = getArray(b);
+		result.reshape(rc, cc);
+		double[] r = result.data;
+		if (adata != null && bdata != null) {
+			for (int k = 0, length = rc * cc; k < length; ++k) {
+				r[k] = alpha * adata[k] + beta * bdata[k];
+			}
+		} else {
+			for (int i = 0; i < rc; ++i) {
+				for (int j = 0; j < cc; ++j) {
+					r[i * cc + j] = alpha * MatrixUtils.getDouble(a, i, j) + beta * MatrixUtils.getDouble(b, i, j);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * result = a + b
+	 */
+	public static MutableDenseMatrixOfDoubles addInto(Matrix<? extends Double> a, Matrix<? extends Double> b, MutableDenseMatrixOfDoubles result) {
+		return combineInto(1.0, a, 1.0, b, result);
+	}
+
+	/**
+	 * result = a - b
+	 */
+	public static MutableDenseMatrixOfDoubles subtractInto(Matrix<? extends Double> a, Matrix<? extends Double> b, MutableDenseMatrixOfDoubles result) {
+		return combineInto(1.0, a, -1.0, b, result);
+	}
+
+	/**
+	 * result = scalar * a
+	 */
+	public static MutableDenseMatrixOfDoubles scaleInto(Matrix<? extends Double> a, double scalar, MutableDenseMatrixOfDoubles result) {
+		double[] adata = getArray(a);
+		int rc = a.getRowCount(), cc = a.getColumnCount();
+		result.reshape(rc, cc);
+		for (int i = 0; i < rc; ++i) {
+			for (int j = 0; j < cc; ++j) {
+				int k = i * cc + j;
+				result.data[k] = scalar * (adata != null ? adata[k] : MatrixUtils.getDouble(a, i, j));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * result = a^T
+	 */
+	public static MutableDenseMatrixOfDoubles transposeInto(Matrix<? extends Double> a, MutableDenseMatrixOfDoubles result) {
+		checkNotAliased(a, result);
+		int rc = a.getRowCount(), cc = a.getColumnCount();
+		double[] adata = getArray(a);
+		result.reshape(cc, rc);
+		for (int i = 0; i < rc; ++i) {
+			for (int j = 0; j < cc; ++j) {
+				result.data[j * rc + i] = adata != null ? adata[i * cc + j] : MatrixUtils.getDouble(a, i, j);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * result = a^-1, by Gauss-Jordan elimination with partial pivoting in the storage of the result
+	 *
+	 * @throws RuntimeLinearException if a is singular
+	 */
+	public static MutableDenseMatrixOfDoubles invertInto(Matrix<? extends Double> a, MutableDenseMatrixOfDoubles result) {
+		checkNotAliased(a, result);
+		Preconditions.checkArgument(MatrixUtils.isSquare(a), "Only square matrices can be inverted");
+		int n = a.getRowCount();
+		result.set(a);
+		if (result.pivots.length < n) {
+			result.pivots = new int[n];
+		}
+		double[] x = result.data;
+		int[] pivots = result.pivots;
+		for (int k = 0; k < n; ++k) {
+			int pivot = k;
+			for (int i = k + 1; i < n; ++i) {
+				if (Math.abs(x[i * n + k]) > Math.abs(x[pivot * n + k])) {
+					pivot = i;
+				}
+			}
+			if (x[pivot * n + k] == 0.0) {
+				throw new RuntimeLinearException("Singular matrix");
+			}
+			pivots[k] = pivot;
+			if (pivot != k) {
+				for (int j = 0; j < n; ++j) {
+					double t = x[k * n + j]; x[k * n + j] = x[pivot * n + j]; x[pivot * n + j] = t;
+				}
+			}
+			// Row k becomes row k of the inverse so far, with the identity column k folded into column k
+			double scale = 1.0 / x[k * n + k];
+			x[k * n + k] = 1.0;
+			for (int j = 0; j < n; ++j) {
+				x[k * n + j] *= scale;
+			}
+			for (int i = 0; i < n; ++i) {
+				double factor = x[i * n + k];
+				if (i != k && factor != 0.0) {
+					x[i * n + k] = 0.0;
+					for (int j = 0; j < n; ++j) {
+						x[i * n + j] -= factor * x[k * n + j];
+					}
+				}
+			}
+		}
+		// Undo the row interchanges, which act on the columns of the inverse, in reverse order
+		for (int k = n - 1; k >= 0; --k) {
+			int pivot = pivots[k];
+			if (pivot != k) {
+				for (int i = 0; i < n; ++i) {
+					double t = x[i * n + k]; x[i * n + k] = x[i * n + pivot]; x[i * n + pivot] = t;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * result = L, the lower triangular Cholesky factor of a, with a = L * L^T; only the lower triangle of a is read
+	 *
+	 * @throws LinearException if a is not positive definite
+	 */
+	public static MutableDenseMatrixOfDoubles choleskyInto(Matrix<? extends Double> a, MutableDenseMatrixOfDoubles result) throws LinearException {
+		checkNotAliased(a, result);
+		Preconditions.checkArgument(MatrixUtils.isSquare(a), "Only square matrices can be Cholesky decomposed");
+		result.set(a);
+		if (!MatrixFactorisation.decomposeCholesky(result.data, result.rowcount)) {
+			throw new LinearException("Unable to calculate Cholesky decomposition");
+		}
+		return result;
+	}
+}
@@ -0,0 +1,609 @@
+package com.thalesians.linear;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import org.ejml.data.DenseMatrix64F;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A dense row-major matrix of doubles stored outside the Java heap, in direct buffers of at most
+ * {@link MappedMatrixOfDoubles#CHUNK_LENGTH} bytes each. Elements are addressed by long indices, so the matrix is not
+ * limited to the 2^31 elements of an array, and its storage is never copied or scanned by the garbage collector.
+ * <p>
+ * The storage is released by {@link #close()}, after which the matrix must not be used; storage that is not closed is
+ * released when the matrix is garbage collected, as for any direct buffer. The results of operations on an off-heap
+ * matrix are off-heap matrices too, and are owned by the caller; in particular {@link #invert()} is not memoised, and
+ * returns a new matrix on every call. {@link #transpose()} returns a view of this matrix, which holds no storage of its
+ * own and cannot be used once this matrix is closed. Closing a matrix while other threads read it is not safe.
+ */
+public final class OffHeapMatrixOfDoubles extends AbstractMatrix<Double> implements DoubleMatrix, AutoCloseable {
+	/** The log to base 2 of the number of doubles in each chunk */
+	private static final int CHUNK_SHIFT = 27;
+	/** Rows of the left operand that a task of a multiplication computes together, sweeping once over the right one */
+	private static final int ROWS_PER_TASK = 32;
+
+	/** Releases a direct buffer right away where the JDK allows it, and otherwise does nothing */
+	private static final Consumer<ByteBuffer> RELEASER = createReleaser();
+
+	private final int rowcount;
+	private final int columncount;
+	private volatile Storage storage;
+
+	static final Builder resultBuilderPrototype = new Builder();
+
+	private OffHeapMatrixOfDoubles(int rowcount, int columncount, Storage storage) {
+		super(resultBuilderPrototype);
+		this.rowcount = rowcount;
+		this.columncount = columncount;
+		this.storage = storage;
+	}
+
+	public static OffHeapMatrixOfDoubles zero(int rowcount, int columncount) {
+		return builder(rowcount, columncount).build();
+	}
+
+	public static OffHeapMatrixOfDoubles copyOf(Matrix<? extends Double> matrix) {
+		return builderFromCopy(matrix).build();
+	}
+
+	/**
+	 * Copies the matrix onto the heap, if it has no more elements than an array can hold
+	 */
+	public SimpleDenseMatrixOfDoubles copyToHeap() {
+		long elementcount = getElementCount();
+		if (elementcount > Integer.MAX_VALUE - 8) {
+			throw new UnsupportedOperationException("A " + rowcount + " x " + columncount + " matrix is too large for the heap");
+		}
+		double[] data = new double[(int) elementcount];
+		getStorage().read(0, data, 0, data.length);
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(rowcount, columncount, data));
+	}
+
+	/**
+	 * Releases the off-heap storage. The matrix must not be used afterwards; closing it again does nothing.
+	 */
+	@Override public void close() {
+		Storage s = storage;
+		storage = null;
+		if (s != null) {
+			s.release();
+		}
+	}
+
+	private Storage getStorage() {
+		Storage result = storage;
+		if (result == null) {
+			throw new IllegalStateException("The matrix has been closed");
+		}
+		return result;
+	}
+
+	@Override public int getRowCount() {
+		return rowcount;
+	}
+
+	@Override public int getColumnCount() {
+		return columncount;
+	}
+
+	public long getElementCount() {
+		return (long) rowcount * columncount;
+	}
+
+	@Override public Double get(int row, int column) {
+		return getDouble(row, column);
+	}
+
+	@Override public double getDouble(int row, int column) {
+		Preconditions.checkElementIndex(row, rowcount, "row");
+		Preconditions.checkElementIndex(column, columncount, "column");
+		return getStorage().get((long) row * columncount + column);
+	}
+
+	/**
+	 * The element at the given row-major index
+	 */
+	public double getDouble(long index) {
+		if (index < 0 || index >= getElementCount()) {
+			throw new IndexOutOfBoundsException("Invalid index " + index + " of a " + rowcount + " x " + columncount + " matrix");
+		}
+		return getStorage().get(index);
+	}
+
+	@Override public void getRow(int row, double[] dest, int offset) {
+		Preconditions.checkElementIndex(row, rowcount, "row");
+		getStorage().read((long) row * columncount, dest, offset, columncount);
+	}
+
+	@Override public Double determinant() {
+		return copyToHeap().determinant();
+	}
+
+	/**
+	 * Inverts on the heap, so only for matrices that fit in an array, into a new matrix that the caller may close
+	 */
+	@Override public OffHeapMatrixOfDoubles invert() {
+		return copyOf(copyToHeap().invert());
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static Builder builder(int rowcount, int columncount) {
+		return new Builder().setShape(rowcount, columncount);
+	}
+
+	public static Builder builderFromCopy(Matrix<? extends Double> matrix) {
+		return new Builder().set(matrix);
+	}
+
+	/**
+	 * Reads a row of any matrix of doubles, in bulk where it can
+	 */
+	private static void readRow(Matrix<? extends Double> matrix, int row, double[] dest) {
+		if (matrix instanceof DoubleMatrix) {
+			((DoubleMatrix) matrix).getRow(row, dest, 0);
+		} else {
+			for (int j = 0, cc = matrix.getColumnCount(); j < cc; ++j) {
+				dest[j] = matrix.get(row, j);
+			}
+		}
+	}
+
+	/**
+	 * Direct buffers of at most 2^chunkshift doubles each, in native byte order; 2^{@link #CHUNK_SHIFT} unless the
+	 * builder was given smaller chunks
+	 */
+	private static final class Storage {
+		private final long elementcount;
+		private final int chunkshift;
+		private final int chunkelementcount;
+		private final ByteBuffer[] buffers;
+		private final DoubleBuffer[] chunks;
+		private volatile boolean released;
+
+		Storage(long elementcount, int chunkshift) {
+			this.elementcount = elementcount;
+			this.chunkshift = chunkshift;
+			this.chunkelementcount = 1 << chunkshift;
+			int chunkcount = (int) ((elementcount + chunkelementcount - 1) >>> chunkshift);
+			buffers = new ByteBuffer[chunkcount];
+			chunks = new DoubleBuffer[chunkcount];
+			for (int c = 0; c < chunkcount; ++c) {
+				int length = (int) Math.min(chunkelementcount, elementcount - ((long) c << chunkshift));
+				buffers[c] = ByteBuffer.allocateDirect(length << 3).order(ByteOrder.nativeOrder());
+				chunks[c] = buffers[c].asDoubleBuffer();
+			}
+		}
+
+		Storage copy() {
+			Storage result = new Storage(elementcount, chunkshift);
+			for (int c = 0; c < chunks.length; ++c) {
+				DoubleBuffer source = chunks[c].duplicate();
+				source.clear();
+				DoubleBuffer dest = result.chunks[c].duplicate();
+				dest.clear();
+				dest.put(source);
+			}
+			return result;
+		}
+
+		double get(long index) {
+			return chunks[(int) (index >>> chunkshift)].get((int) index & (chunkelementcount - 1));
+		}
+
+		void set(long index, double value) {
+			chunks[(int) (index >>> chunkshift)].put((int) index & (chunkelementcount - 1), value);
+		}
+
+		/**
+		 * Copies length elements from the given index, which may span chunks; safe to call from several threads at once
+		 */
+		void read(long index, double[] dest, int offset, int length) {
+			while (length > 0) {
+				int c = (int) (index >>> chunkshift), position = (int) index & (chunkelementcount - 1);
+				int count = Math.min(length, chunkelementcount - position);
+				DoubleBuffer chunk = chunks[c].duplicate();
+				chunk.position(position);
+				chunk.get(dest, offset, count);
+				index += count;
+				offset += count;
+				length -= count;
+			}
+		}
+
+		void write(long index, double[] source, int offset, int length) {
+			while (length > 0) {
+				int c = (int) (index >>> chunkshift), position = (int) index & (chunkelementcount - 1);
+				int count = Math.min(length, chunkelementcount - position);
+				DoubleBuffer chunk = chunks[c].duplicate();
+				chunk.position(position);
+				chunk.put(source, offset, count);
+				index += count;
+				offset += count;
+				length -= count;
+			}
+		}
+
+		void fill(double value) {
+			for (DoubleBuffer chunk : chunks) {
+				for (int k = 0, limit = chunk.limit(); k < limit; ++k) {
+					chunk.put(k, value);
+				}
+			}
+		}
+
+		/**
+		 * Fails if a matrix built on this storage has been closed, which released it under the builder
+		 */
+		Storage check() {
+			if (released) {
+				throw new IllegalStateException("The storage was released by closing a matrix built from the builder");
+			}
+			return this;
+		}
+
+		void release() {
+			released = true;
+			for (ByteBuffer buffer : buffers) {
+				RELEASER.accept(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Unsafe.invokeCleaner on Java 9 and later, the cleaner of the buffer on Java 8
+	 */
+	private static Consumer<ByteBuffer> createReleaser() {
+		try {
+			Class<?> unsafeclass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeclass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+			Method invokecleaner = unsafeclass.getMethod("invokeCleaner", ByteBuffer.class);
+			return buffer -> {
+				try {
+					invokecleaner.invoke(unsafe, buffer);
+				} catch (ReflectiveOperationException e) {
+					// Left to the garbage collector
+				}
+			};
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Not Java 9 or later
+		}
+		try {
+			Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> {
+				try {
+					Object c = cleaner.invoke(buffer);
+					if (c != null) {
+						clean.invoke(c);
+					}
+				} catch (ReflectiveOperationException e) {
+					// Left to the garbage collector
+				}
+			};
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return buffer -> { };
+		}
+	}
+
+	/**
+	 * Builds off-heap matrices. build() hands the storage over to the matrix, and the builder copies it again only if it
+	 * is changed afterwards. The operations read and write the storage a row at a time, so they need memory on the heap
+	 * for a few rows only.
+	 */
+	public static final class Builder implements DoubleMatrixBuilder {
+		private int rowcount;
+		private int columncount;
+		private int chunkshift = CHUNK_SHIFT;
+		private Storage storage = new Storage(0, CHUNK_SHIFT);
+		private boolean changed = true;
+		private OffHeapMatrixOfDoubles cached = null;
+		/** Whether the storage is also that of the cached matrix, and must be copied before it is changed */
+		private boolean shared = false;
+
+		private Builder() { }
+
+		/**
+		 * Stores the matrices that are built in chunks of 2^chunkshift doubles, rather than the default, so that small
+		 * matrices can have rows that span chunks in tests; the builder is reset to a 0 x 0 matrix
+		 */
+		Builder setChunkShift(int chunkshift) {
+			Preconditions.checkArgument(chunkshift > 0 && chunkshift <= CHUNK_SHIFT);
+			this.chunkshift = chunkshift;
+			rowcount = columncount = 0;
+			storage = new Storage(0, chunkshift);
+			shared = false;
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder newBuilder() {
+			return new Builder();
+		}
+
+		@Override public Double get(int row, int column) {
+			return getDouble(row, column);
+		}
+
+		@Override public double getDouble(int row, int column) {
+			return storage.check().get(getIndex(row, column));
+		}
+
+		private long getIndex(int row, int column) {
+			Preconditions.checkElementIndex(row, rowcount, "row");
+			Preconditions.checkElementIndex(column, columncount, "column");
+			return (long) row * columncount + column;
+		}
+
+		/**
+		 * Gives the builder storage of its own before it is changed, if the last matrix built still uses its storage
+		 */
+		private void detach(boolean keepvalues) {
+			if (shared) {
+				storage = keepvalues ? storage.check().copy() : new Storage(storage.elementcount, chunkshift);
+				shared = false;
+			}
+		}
+
+		/**
+		 * Allocates new, zeroed storage if the shape changes
+		 */
+		@Override public Builder setShape(int rowcount, int columncount) {
+			Preconditions.checkArgument(rowcount >= 0 && columncount >= 0);
+			if (this.rowcount != rowcount || this.columncount != columncount) {
+				this.rowcount = rowcount;
+				this.columncount = columncount;
+				storage = new Storage((long) rowcount * columncount, chunkshift);
+				shared = false;
+				changed = true;
+			}
+			return this;
+		}
+
+		@Override public Builder setShape(Matrix<?> matrix) {
+			return setShape(matrix.getRowCount(), matrix.getColumnCount());
+		}
+
+		@Override public Builder setToIdentity() {
+			detach(false);
+			storage.fill(0.0);
+			for (int i = 0, n = Math.min(rowcount, columncount); i < n; ++i) {
+				storage.set((long) i * columncount + i, 1.0);
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder set(int row, int column, Double value) {
+			return setDouble(row, column, value);
+		}
+
+		@Override public Builder setDouble(int row, int column, double value) {
+			long index = getIndex(row, column);
+			detach(true);
+			storage.set(index, value);
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder addDouble(int row, int column, double value) {
+			long index = getIndex(row, column);
+			detach(true);
+			storage.set(index, storage.get(index) + value);
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder set(int toprow, int leftcolumn, Matrix<? extends Double> matrix) {
+			detach(true);
+			double[] row = new double[matrix.getColumnCount()];
+			for (int i = 0; i < matrix.getRowCount(); ++i) {
+				readRow(matrix, i, row);
+				storage.write(getIndex(toprow + i, leftcolumn), row, 0, row.length);
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder set(Matrix<? extends Double> matrix) {
+			setShape(matrix);
+			detach(false);
+			return set(0, 0, matrix);
+		}
+
+		@Override public Builder setAll(Double value) {
+			detach(false);
+			storage.fill(value);
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder setAll(Rectangle rect, Double value) {
+			detach(true);
+			double[] row = new double[rect.getColumnCount()];
+			Arrays.fill(row, value);
+			for (int i = rect.getTopRow(), ilim = i + rect.getRowCount(); i < ilim; ++i) {
+				storage.write(getIndex(i, rect.getLeftColumn()), row, 0, row.length);
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder scale(int row, int column, Double scalar) {
+			long index = getIndex(row, column);
+			detach(true);
+			storage.set(index, scalar * storage.get(index));
+			changed = true;
+			return this;
+		}
+
+		/**
+		 * Applies the operation to every row of the builder, given the row buffer and the row index
+		 */
+		private void updateRows(RowOperation operation) {
+			detach(true);
+			double[] row = new double[columncount];
+			for (int i = 0; i < rowcount; ++i) {
+				long index = (long) i * columncount;
+				storage.read(index, row, 0, columncount);
+				operation.apply(i, row);
+				storage.write(index, row, 0, columncount);
+			}
+			changed = true;
+		}
+
+		private interface RowOperation {
+			void apply(int i, double[] row);
+		}
+
+		@Override public Builder scale(Double scalar) {
+			double s = scalar;
+			updateRows((i, row) -> {
+				for (int j = 0; j < row.length; ++j) {
+					row[j] *= s;
+				}
+			});
+			return this;
+		}
+
+		@Override public Builder add(int row, int column, Double value) {
+			return addDouble(row, column, value);
+		}
+
+		private Builder addScaled(double alpha, Matrix<? extends Double> matrix) {
+			Preconditions.checkArgument(matrix.getRowCount() == rowcount && matrix.getColumnCount() == columncount,
+					"Incompatible matrix dimensions (%s x %s and %s x %s)", rowcount, columncount, matrix.getRowCount(), matrix.getColumnCount());
+			double[] other = new double[columncount];
+			updateRows((i, row) -> {
+				readRow(matrix, i, other);
+				for (int j = 0; j < row.length; ++j) {
+					row[j] += alpha * other[j];
+				}
+			});
+			return this;
+		}
+
+		@Override public Builder add(Matrix<? extends Double> matrix) {
+			return addScaled(1.0, matrix);
+		}
+
+		@Override public Builder subtract(Matrix<? extends Double> matrix) {
+			return addScaled(-1.0, matrix);
+		}
+
+		@Override public Builder addToDiagonal(Matrix<? extends Double> vector) {
+			detach(true);
+			for (int i = 0; i < Math.min(vector.getRowCount(), Math.min(rowcount, columncount)); ++i) {
+				long index = (long) i * columncount + i;
+				storage.set(index, storage.get(index) + MatrixUtils.getDouble(vector, i, 0));
+			}
+			changed = true;
+			return this;
+		}
+
+		/**
+		 * Computes the product in blocks of rows of the left matrix, each of which sweeps once over the rows of the right
+		 * matrix; the blocks are computed in parallel if the product is large enough
+		 */
+		@Override public Builder mult(Matrix<? extends Double> leftmatrix, Matrix<? extends Double> rightmatrix) {
+			int m = leftmatrix.getRowCount(), k = leftmatrix.getColumnCount(), n = rightmatrix.getColumnCount();
+			if (rightmatrix.getRowCount() != k) {
+				throw new RuntimeLinearException("Incompatible matrix dimensions for multiplication (lhs: " + m + " x " + k + ", rhs: " + rightmatrix.getRowCount() + " x " + n + ")");
+			}
+			setShape(m, n);
+			// An operand built from this builder still shares its storage, so this also keeps the result apart from it
+			detach(false);
+			Storage result = storage;
+			int rowsperblock = (int) Math.max(1, Math.min(ROWS_PER_TASK, (1L << 20) / Math.max(1, Math.max(k, n))));
+			int blockcount = (m + rowsperblock - 1) / rowsperblock;
+			IntConsumer block = b -> {
+				int rowbegin = b * rowsperblock, rowend = Math.min(m, rowbegin + rowsperblock), rc = rowend - rowbegin;
+				double[] a = new double[rc * k], c = new double[rc * n], brow = new double[n];
+				double[] arow = new double[k];
+				for (int i = 0; i < rc; ++i) {
+					readRow(leftmatrix, rowbegin + i, arow);
+					System.arraycopy(arow, 0, a, i * k, k);
+				}
+				for (int p = 0; p < k; ++p) {
+					readRow(rightmatrix, p, brow);
+					for (int i = 0; i < rc; ++i) {
+						double aip = a[i * k + p];
+						if (aip != 0.0) {
+							for (int j = 0, crow = i * n; j < n; ++j) {
+								c[crow + j] += aip * brow[j];
+							}
+						}
+					}
+				}
+				result.write((long) rowbegin * n, c, 0, c.length);
+			};
+			if (blockcount > 1 && Gemm.getMultiplyAddCount(m, n, k) >= Gemm.getParallelThreshold()) {
+				ParallelUtils.forEachIndex(0, blockcount, block);
+			} else {
+				for (int b = 0; b < blockcount; ++b) {
+					block.accept(b);
+				}
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder multByDiag(Matrix<? extends Double> diag) {
+			double[] d = new double[columncount];
+			for (int j = 0; j < columncount; ++j) {
+				d[j] = MatrixUtils.getDouble(diag, j, 0);
+			}
+			updateRows((i, row) -> {
+				for (int j = 0; j < row.length; ++j) {
+					row[j] *= d[j];
+				}
+			});
+			return this;
+		}
+
+		@Override public Builder multElementwise(Matrix<? extends Double> matrix) {
+			Preconditions.checkArgument(matrix.getRowCount() == rowcount && matrix.getColumnCount() == columncount,
+					"Incompatible matrix dimensions (%s x %s and %s x %s)", rowcount, columncount, matrix.getRowCount(), matrix.getColumnCount());
+			double[] other = new double[columncount];
+			updateRows((i, row) -> {
+				readRow(matrix, i, other);
+				for (int j = 0; j < row.length; ++j) {
+					row[j] *= other[j];
+				}
+			});
+			return this;
+		}
+
+		/**
+		 * Inverts on the heap, so only for matrices that fit in an array
+		 */
+		@Override public Builder invert() {
+			SimpleDenseMatrixOfDoubles inverse = build().copyToHeap().invert();
+			detach(false);
+			storage.write(0, inverse.impl.data, 0, rowcount * columncount);
+			changed = true;
+			return this;
+		}
+
+		@Override public OffHeapMatrixOfDoubles build() {
+			if (changed || storage.released) {
+				cached = new OffHeapMatrixOfDoubles(rowcount, columncount, storage.check());
+				shared = true;
+				changed = false;
+			}
+			return cached;
+		}
+	}
+}
@@ -0,0 +1,464 @@
+package com.thalesians.linear;
+
+import java.util.Arrays;
+
+/**
+ * Cholesky (L * L^T) and LDL^T factorisations working in place on the packed lower triangular layout of
+ * {@link SimpleSymmetricMatrixOfDoubles}, where element (i, j), j <= i, is at index i * (i + 1) / 2 + j. Rows of the
+ * lower triangle are contiguous in this layout, so all the loops below run along rows. None of the operations allocate
+ * more than a vector of length n besides their result. Positive definite matrices are solved, inverted and their
+ * determinants computed with the Cholesky factor, and indefinite ones with the Bunch-Kaufman factorisation, which
+ * pivots symmetrically and so stays in packed storage. The unpivoted LDL^T factorisation is only there for
+ * {@link MatrixDecomposition}, as it is not stable for indefinite matrices.
+ */
+final class PackedCholesky {
+	/** Bunch and Kaufman's threshold for a 1 x 1 pivot, (1 + sqrt(17)) / 8, which bounds the growth of the elements */
+	private static final double BUNCH_KAUFMAN_ALPHA = (1.0 + Math.sqrt(17.0)) / 8.0;
+
+	private PackedCholesky() {
+		throw new AssertionError("This class cannot be instantiated");
+	}
+
+	/**
+	 * Overwrites the packed symmetric matrix a with its Cholesky factor L. Returns false, leaving a partially
+	 * overwritten, if the matrix is not positive definite.
+	 */
+	static boolean decompose(double[] a, int n) {
+		for (int i = 0; i < n; ++i) {
+			int irow = i * (i + 1) / 2;
+			for (int j = 0; j <= i; ++j) {
+				int jrow = j * (j + 1) / 2;
+				double s = a[irow + j];
+				for (int k = 0; k < j; ++k) {
+					s -= a[irow + k] * a[jrow + k];
+				}
+				if (j < i) {
+					a[irow + j] = s / a[jrow + j];
+				} else if (s > 0.0) {
+					a[irow + i] = Math.sqrt(s);
+				} else {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Overwrites the packed single precision matrix a with its Cholesky factor, accumulating the dot products in double
+	 * precision. Returns false, leaving a partially overwritten, if the matrix is not positive definite.
+	 */
+	static boolean decompose(float[] a, int n) {
+		for (int i = 0; i < n; ++i) {
+			int irow = i * (i + 1) / 2;
+			for (int j = 0; j <= i; ++j) {
+				int jrow = j * (j + 1) / 2;
+				double s = a[irow + j];
+				for (int k = 0; k < j; ++k) {
+					s -= (double) a[irow + k] * a[jrow + k];
+				}
+				if (j < i) {
+					a[irow + j] = (float) (s / a[jrow + j]);
+				} else if (s > 0.0) {
+					a[irow + i] = (float) Math.sqrt(s);
+				} else {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Overwrites the packed symmetric matrix a with its LDL^T factorisation: the strictly lower part holds the unit
+	 * lower triangular L and the diagonal holds D. No pivoting is done, so this works for indefinite matrices as long as
+	 * none of the leading principal minors is zero; otherwise false is returned.
+	 */
+	static boolean decomposeLdlt(double[] a, int n) {
+		// Row i of L * D, before it is divided by D to give row i of L
+		double[] v = new double[n];
+		for (int i = 0; i < n; ++i) {
+			int irow = i * (i + 1) / 2;
+			double d = a[irow + i];
+			for (int j = 0; j < i; ++j) {
+				int jrow = j * (j + 1) / 2;
+				double s = a[irow + j];
+				for (int k = 0; k < j; ++k) {
+					s -= v[k] * a[jrow + k];
+				}
+				v[j] = s;
+				a[irow + j] = s / a[jrow + j];
+				d -= s * a[irow + j];
+			}
+			if (d == 0.0 || Double.isNaN(d)) {
+				return false;
+			}
+			a[irow + i] = d;
+		}
+		return true;
+	}
+
+	/**
+	 * Overwrites the packed symmetric matrix a with its Bunch-Kaufman factorisation P * U * D * U^T * P^T, where D is
+	 * block diagonal with 1 x 1 and 2 x 2 blocks and U is unit upper triangular. The layout is that of the packed upper
+	 * triangle of LAPACK's dsptrf, so this works from the last row up in the same way. Row k of the result holds column
+	 * k of U to the left of the block of D. pivots[k] is the row that row k was interchanged with for a 1 x 1 block,
+	 * and -1 minus that row for both rows of a 2 x 2 block, the interchange being with the first of them. Returns
+	 * false, leaving a partially overwritten, if the matrix is singular.
+	 */
+	static boolean decomposeBunchKaufman(double[] a, int n, int[] pivots) {
+		int k = n - 1;
+		while (k >= 0) {
+			int krow = k * (k + 1) / 2;
+			double absakk = Math.abs(a[krow + k]);
+			// The largest element of column k above the diagonal, i.e. of row k left of it
+			int imax = 0;
+			double colmax = 0.0;
+			for (int i = 0; i < k; ++i) {
+				double val = Math.abs(a[krow + i]);
+				if (val > colmax) {
+					colmax = val;
+					imax = i;
+				}
+			}
+			if (!(Math.max(absakk, colmax) > 0.0)) {
+				return false;
+			}
+			int kstep = 1, kp = k;
+			if (absakk < BUNCH_KAUFMAN_ALPHA * colmax) {
+				// The largest off-diagonal element of row and column imax in the part still to be factorised
+				int imaxrow = imax * (imax + 1) / 2;
+				double rowmax = 0.0;
+				for (int j = 0; j < imax; ++j) {
+					rowmax = Math.max(rowmax, Math.abs(a[imaxrow + j]));
+				}
+				for (int j = imax + 1; j <= k; ++j) {
+					rowmax = Math.max(rowmax, Math.abs(a[j * (j + 1) / 2 + imax]));
+				}
+				if (absakk >= BUNCH_KAUFMAN_ALPHA * colmax * (colmax / rowmax)) {
+					// A 1 x 1 pivot on k after all
+				} else if (Math.abs(a[imaxrow + imax]) >= BUNCH_KAUFMAN_ALPHA * rowmax) {
+					kp = imax;
+				} else {
+					kp = imax;
+					kstep = 2;
+				}
+			}
+			int kk = k - kstep + 1;
+			if (kp != kk) {
+				// Interchange rows and columns kp and kk of the part still to be factorised
+				int kprow = kp * (kp + 1) / 2, kkrow = kk * (kk + 1) / 2;
+				for (int j = 0; j < kp; ++j) {
+					swap(a, kprow + j, kkrow + j);
+				}
+				for (int j = kp + 1; j < kk; ++j) {
+					swap(a, j * (j + 1) / 2 + kp, kkrow + j);
+				}
+				swap(a, kprow + kp, kkrow + kk);
+				if (kstep == 2) {
+					swap(a, krow + kk, krow + kp);
+				}
+			}
+			if (kstep == 1) {
+				// A = A - x * x^T / d for the part above, then x / d is column k of U
+				double r1 = 1.0 / a[krow + k];
+				for (int i = 0; i < k; ++i) {
+					double xi = a[krow + i] * r1;
+					if (xi != 0.0) {
+						int irow = i * (i + 1) / 2;
+						for (int j = 0; j <= i; ++j) {
+							a[irow + j] -= xi * a[krow + j];
+						}
+					}
+				}
+				for (int i = 0; i < k; ++i) {
+					a[krow + i] *= r1;
+				}
+				pivots[k] = kp;
+			} else {
+				// A = A - W * D^-1 * W^T for the two columns W, then W * D^-1 is columns k - 1 and k of U; D is scaled by its
+				// off-diagonal element, which is the largest, as in dsptrf
+				int km1row = (k - 1) * k / 2;
+				double d12 = a[krow + k - 1];
+				double d22 = a[km1row + k - 1] / d12, d11 = a[krow + k] / d12;
+				double t = d11 * d22 - 1.0;
+				if (t == 0.0) {
+					return false;
+				}
+				d12 = 1.0 / (t * d12);
+				for (int j = k - 2; j >= 0; --j) {
+					int jrow = j * (j + 1) / 2;
+					double wkm1 = d12 * (d11 * a[km1row + j] - a[krow + j]);
+					double wk = d12 * (d22 * a[krow + j] - a[km1row + j]);
+					for (int i = 0; i <= j; ++i) {
+						a[jrow + i] -= a[krow + i] * wk + a[km1row + i] * wkm1;
+					}
+					a[krow + j] = wk;
+					a[km1row + j] = wkm1;
+				}
+				pivots[k] = pivots[k - 1] = -1 - kp;
+			}
+			k -= kstep;
+		}
+		return true;
+	}
+
+	private static void swap(double[] a, int i, int j) {
+		double tmp = a[i];
+		a[i] = a[j];
+		a[j] = tmp;
+	}
+
+	/**
+	 * Solves A * x = b in place, where b is a vector of length n, with the Bunch-Kaufman factorisation of A
+	 */
+	static void solveBunchKaufman(double[] a, int n, int[] pivots, double[] b) {
+		// P * U * D * y = b, from the last block up
+		for (int k = n - 1; k >= 0;) {
+			int krow = k * (k + 1) / 2;
+			if (pivots[k] >= 0) {
+				swap(b, k, pivots[k]);
+				double bk = b[k];
+				for (int i = 0; i < k; ++i) {
+					b[i] -= a[krow + i] * bk;
+				}
+				b[k] = bk / a[krow + k];
+				--k;
+			} else {
+				int km1row = (k - 1) * k / 2;
+				swap(b, k - 1, -1 - pivots[k]);
+				double bkm1 = b[k - 1], bk = b[k];
+				for (int i = 0; i < k - 1; ++i) {
+					b[i] -= a[krow + i] * bk + a[km1row + i] * bkm1;
+				}
+				double akm1k = a[krow + k - 1];
+				double akm1 = a[km1row + k - 1] / akm1k, ak = a[krow + k] / akm1k, denominator = akm1 * ak - 1.0;
+				bkm1 /= akm1k;
+				bk /= akm1k;
+				b[k - 1] = (ak * bkm1 - bk) / denominator;
+				b[k] = (akm1 * bk - bkm1) / denominator;
+				k -= 2;
+			}
+		}
+		// U^T * P^T * x = y, from the first block down
+		for (int k = 0; k < n;) {
+			int krow = k * (k + 1) / 2;
+			double s = b[k];
+			for (int i = 0; i < k; ++i) {
+				s -= a[krow + i] * b[i];
+			}
+			b[k] = s;
+			if (pivots[k] >= 0) {
+				swap(b, k, pivots[k]);
+				++k;
+			} else {
+				int k1row = krow + k + 1;
+				s = b[k + 1];
+				for (int i = 0; i < k; ++i) {
+					s -= a[k1row + i] * b[i];
+				}
+				b[k + 1] = s;
+				swap(b, k, -1 - pivots[k]);
+				k += 2;
+			}
+		}
+	}
+
+	/**
+	 * Returns the packed inverse of the matrix whose Bunch-Kaufman factorisation is a, solving for one column of the
+	 * identity at a time and keeping the part of it on and below the diagonal
+	 */
+	static double[] invertBunchKaufman(double[] a, int n, int[] pivots) {
+		double[] result = new double[SimpleSymmetricMatrixOfDoubles.getDataLength(n)];
+		double[] column = new double[n];
+		for (int j = 0; j < n; ++j) {
+			Arrays.fill(column, 0.0);
+			column[j] = 1.0;
+			solveBunchKaufman(a, n, pivots, column);
+			for (int i = j; i < n; ++i) {
+				result[i * (i + 1) / 2 + j] = column[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The determinant of the 2 x 2 block of D in rows k - 1 and k, scaled by its off-diagonal element so that the
+	 * square of that does not overflow on its own
+	 */
+	private static double blockDeterminant(double[] a, int k) {
+		int krow = k * (k + 1) / 2, km1row = (k - 1) * k / 2;
+		double d12 = a[krow + k - 1];
+		return (a[km1row + k - 1] / d12 * (a[krow + k] / d12) - 1.0) * d12 * d12;
+	}
+
+	/**
+	 * The determinant of the matrix whose Bunch-Kaufman factorisation is a, i.e. that of D, as the symmetric
+	 * interchanges do not change it
+	 */
+	static double determinantBunchKaufman(double[] a, int n, int[] pivots) {
+		double result = 1.0;
+		for (int k = n - 1; k >= 0;) {
+			if (pivots[k] >= 0) {
+				result *= a[k * (k + 1) / 2 + k];
+				--k;
+			} else {
+				result *= blockDeterminant(a, k);
+				k -= 2;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The log of the determinant of the matrix whose Bunch-Kaufman factorisation is a, or NaN if the determinant is
+	 * negative
+	 */
+	static double logDeterminantBunchKaufman(double[] a, int n, int[] pivots) {
+		double result = 0.0;
+		boolean negative = false;
+		for (int k = n - 1; k >= 0;) {
+			double d;
+			if (pivots[k] >= 0) {
+				d = a[k * (k + 1) / 2 + k];
+				--k;
+			} else {
+				d = blockDeterminant(a, k);
+				k -= 2;
+			}
+			result += Math.log(Math.abs(d));
+			negative ^= d < 0.0;
+		}
+		return negative ? Double.NaN : result;
+	}
+
+	/**
+	 * Returns the packed inverse of the matrix whose Cholesky factor is l, as (L^-1)^T * L^-1. The factor is
+	 * overwritten with its inverse.
+	 */
+	static double[] invert(double[] l, int n) {
+		invertLower(l, n);
+		return transposeTimesSelf(l, n);
+	}
+
+	/**
+	 * Overwrites the lower triangular l with its inverse, row by row: row i of the inverse is a combination of the
+	 * rows above it, scaled by the diagonal element
+	 */
+	private static void invertLower(double[] l, int n) {
+		double[] row = new double[n];
+		for (int i = 0; i < n; ++i) {
+			int irow = i * (i + 1) / 2;
+			System.arraycopy(l, irow, row, 0, i);
+			double dinv = 1.0 / l[irow + i];
+			for (int j = 0; j < i; ++j) {
+				l[irow + j] = 0.0;
+			}
+			for (int k = 0; k < i; ++k) {
+				double lik = row[k];
+				if (lik != 0.0) {
+					int krow = k * (k + 1) / 2;
+					for (int j = 0; j <= k; ++j) {
+						l[irow + j] -= lik * l[krow + j];
+					}
+				}
+			}
+			for (int j = 0; j < i; ++j) {
+				l[irow + j] *= dinv;
+			}
+			l[irow + i] = dinv;
+		}
+	}
+
+	/**
+	 * Returns the packed X^T * X for a lower triangular X, as a sum of outer products of the rows of X
+	 */
+	private static double[] transposeTimesSelf(double[] x, int n) {
+		double[] result = new double[SimpleSymmetricMatrixOfDoubles.getDataLength(n)];
+		for (int k = 0; k < n; ++k) {
+			int krow = k * (k + 1) / 2;
+			for (int i = 0; i <= k; ++i) {
+				double xki = x[krow + i];
+				if (xki != 0.0) {
+					int irow = i * (i + 1) / 2;
+					for (int j = 0; j <= i; ++j) {
+						result[irow + j] += xki * x[krow + j];
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The determinant of L * L^T, i.e. the square of the product of the diagonal of L
+	 */
+	static double determinant(double[] l, int n) {
+		double result = 1.0;
+		for (int i = 0; i < n; ++i) {
+			double lii = l[i * (i + 1) / 2 + i];
+			result *= lii * lii;
+		}
+		return result;
+	}
+
+	/**
+	 * The log of the determinant of L * L^T
+	 */
+	static double logDeterminant(double[] l, int n) {
+		double result = 0.0;
+		for (int i = 0; i < n; ++i) {
+			result += Math.log(l[i * (i + 1) / 2 + i]);
+		}
+		return 2.0 * result;
+	}
+
+	/**
+	 * Solves L * L^T * x = b in place, where b is a vector of length n
+	 */
+	static void solve(double[] l, int n, double[] b) {
+		// Forward substitution, L * y = b, along the rows of L
+		for (int i = 0; i < n; ++i) {
+			int irow = i * (i + 1) / 2;
+			double s = b[i];
+			for (int k = 0; k < i; ++k) {
+				s -= l[irow + k] * b[k];
+			}
+			b[i] = s / l[irow + i];
+		}
+		// Back substitution, L^T * x = y, which reads the columns of L^T, i.e. again the rows of L
+		for (int i = n - 1; i >= 0; --i) {
+			int irow = i * (i + 1) / 2;
+			double xi = b[i] / l[irow + i];
+			b[i] = xi;
+			for (int k = 0; k < i; ++k) {
+				b[k] -= l[irow + k] * xi;
+			}
+		}
+	}
+
+	/**
+	 * Expands the packed lower triangle l into a dense lower triangular matrix. With unitdiagonal the stored diagonal
+	 * is replaced by ones, as for the L of an LDL^T factorisation.
+	 */
+	static SimpleDenseMatrixOfDoubles toDenseLower(double[] l, int n, boolean unitdiagonal) {
+		SimpleDenseMatrixOfDoubles.Builder builder = SimpleDenseMatrixOfDoubles.builder(n, n);
+		for (int i = 0, dataindex = 0; i < n; ++i) {
+			for (int j = 0; j <= i; ++j, ++dataindex) {
+				builder.setDouble(i, j, unitdiagonal && i == j ? 1.0 : l[dataindex]);
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * The diagonal of the packed lower triangle l as a column vector, e.g. the D of an LDL^T factorisation
+	 */
+	static SimpleDenseMatrixOfDoubles diagonal(double[] l, int n) {
+		double[] d = new double[n];
+		for (int i = 0; i < n; ++i) {
+			d[i] = l[i * (i + 1) / 2 + i];
+		}
+		return SimpleDenseMatrixOfDoubles.columnVector(d);
+	}
+}
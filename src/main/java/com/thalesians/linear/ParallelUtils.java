@@ -0,0 +1,103 @@
+package com.thalesians.linear;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import com.google.common.base.Preconditions;
+
+public final class ParallelUtils {
+	/** Blocks of rows with fewer elements than this are not split any further */
+	static final int MIN_TASK_ELEMENT_COUNT = 64 * 64;
+	
+	private static volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+	
+	private ParallelUtils() {
+		throw new AssertionError("This class cannot be instantiated");
+	}
+	
+	/**
+	 * Returns the pool on which the parallel kernels of the library run; by default this is the common pool
+	 */
+	public static ForkJoinPool getPool() {
+		return pool;
+	}
+	
+	public static void setPool(ForkJoinPool pool) {
+		ParallelUtils.pool = Preconditions.checkNotNull(pool);
+	}
+	
+	public static int getParallelism() {
+		return pool.getParallelism();
+	}
+	
+	/**
+	 * Applies the action to every index in [begin, end) on the pool, splitting the range in halves down to single
+	 * indices. The action must only write state of its own index, as the indices are processed concurrently.
+	 */
+	static void forEachIndex(int begin, int end, IntConsumer action) {
+		if (end - begin == 1) {
+			action.accept(begin);
+		} else if (end > begin) {
+			pool.invoke(new IndexRangeTask(begin, end, action));
+		}
+	}
+	
+	interface RowBlockAction {
+		void apply(int rowbegin, int rowend);
+	}
+	
+	/**
+	 * Applies the action to blocks of rows of a rowcount x columncount matrix with about the same number of elements
+	 * each, on the pool if parallel is set and there are enough elements, and to all rows at once otherwise
+	 */
+	static void forEachRowBlock(int rowcount, int columncount, boolean parallel, RowBlockAction action) {
+		forEachRowBlock(rowcount, (long) rowcount * columncount, false, parallel, action);
+	}
+	
+	/**
+	 * As {@link #forEachRowBlock(int, int, boolean, RowBlockAction)}, for the lower triangle of a rowcount x rowcount
+	 * matrix, e.g. in the packed layout of {@link SimpleSymmetricMatrixOfDoubles}
+	 */
+	static void forEachLowerTriangleRowBlock(int rowcount, boolean parallel, RowBlockAction action) {
+		forEachRowBlock(rowcount, SimpleSymmetricMatrixOfDoubles.getDataLength(rowcount), true, parallel, action);
+	}
+	
+	private static void forEachRowBlock(int rowcount, long elementcount, boolean lowertriangle, boolean parallel, RowBlockAction action) {
+		int blockcount = parallel ? (int) Math.min(Math.min(4 * getParallelism(), elementcount / MIN_TASK_ELEMENT_COUNT), rowcount) : 1;
+		if (blockcount <= 1) {
+			action.apply(0, rowcount);
+			return;
+		}
+		// Row i of a lower triangle ends at element (i + 1) * (i + 2) / 2, so block b ends at the row where about
+		// b / blockcount of the elements have been covered
+		int[] bounds = new int[blockcount + 1];
+		for (int b = 1; b < blockcount; ++b) {
+			int bound = lowertriangle ? (int) Math.round(Math.sqrt(2.0 * elementcount * b / blockcount)) : (int) ((long) rowcount * b / blockcount);
+			bounds[b] = Math.max(bounds[b - 1], Math.min(rowcount, bound));
+		}
+		bounds[blockcount] = rowcount;
+		forEachIndex(0, blockcount, b -> action.apply(bounds[b], bounds[b + 1]));
+	}
+	
+	private static final class IndexRangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final int begin, end;
+		private final IntConsumer action;
+		
+		IndexRangeTask(int begin, int end, IntConsumer action) {
+			this.begin = begin; this.end = end;
+			this.action = action;
+		}
+		
+		@Override protected void compute() {
+			if (end - begin == 1) {
+				action.accept(begin);
+			} else {
+				int mid = (begin + end) >>> 1;
+				invokeAll(new IndexRangeTask(begin, mid, action), new IndexRangeTask(mid, end, action));
+			}
+		}
+	}
+}
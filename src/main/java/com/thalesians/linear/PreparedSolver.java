@@ -0,0 +1,220 @@
+package com.thalesians.linear;
+
+import org.ejml.data.DenseMatrix64F;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A linear system A * x = b with its matrix A factorised once, for solving against any number of right-hand sides.
+ * {@link #solveInto(double[], double[])} solves for a single right-hand side without allocating, and
+ * {@link #solve(Matrix)} solves for all the columns of a matrix, split across the pool of {@link ParallelUtils} when
+ * there are enough of them. A prepared solver is immutable and can be used by several threads at once.
+ */
+public abstract class PreparedSolver {
+	/** Right-hand sides handled by one task of a parallel solve */
+	private static final int COLUMNS_PER_TASK = 16;
+
+	private final int rowcount;
+	private final int columncount;
+
+	private PreparedSolver(int rowcount, int columncount) {
+		this.rowcount = rowcount;
+		this.columncount = columncount;
+	}
+
+	/**
+	 * Prepares to solve a square system by LU decomposition with partial pivoting, or by Cholesky factorisation if A
+	 * turns out to be symmetric and positive definite. A dense A shares the factorisation it keeps for its own
+	 * determinant, solves and inverse.
+	 *
+	 * @throws LinearException if A is singular
+	 */
+	public static PreparedSolver square(Matrix<Double> A) throws LinearException {
+		Preconditions.checkArgument(MatrixUtils.isSquare(A), "Expected a square matrix, got %s x %s", A.getRowCount(), A.getColumnCount());
+		SimpleDenseMatrixOfDoubles dense = A instanceof SimpleDenseMatrixOfDoubles ? (SimpleDenseMatrixOfDoubles) A : SimpleDenseMatrixOfDoubles.copyOf(A);
+		MatrixFactorisation factorisation = dense.getFactorisation();
+		if (factorisation.isSingular()) {
+			throw new LinearException("The matrix is singular");
+		}
+		return new Factorised(factorisation);
+	}
+
+	/**
+	 * Prepares to solve a symmetric positive definite system by Cholesky factorisation; only the lower triangle of A is
+	 * read
+	 *
+	 * @throws LinearException if A is not positive definite
+	 */
+	public static PreparedSolver symmetricPositiveDefinite(Matrix<Double> A) throws LinearException {
+		Preconditions.checkArgument(MatrixUtils.isSquare(A), "Expected a square matrix, got %s x %s", A.getRowCount(), A.getColumnCount());
+		MatrixFactorisation factorisation = MatrixFactorisation.cholesky(MatrixUtils.toEJMLDenseMatrix64F(A));
+		if (factorisation == null) {
+			throw new LinearException("The matrix is not positive definite");
+		}
+		return new Factorised(factorisation);
+	}
+
+	/**
+	 * Prepares to solve an overdetermined system in the least squares sense, by Householder QR decomposition of the
+	 * m x n A, m &gt;= n
+	 *
+	 * @throws LinearException if A does not have full column rank
+	 */
+	public static PreparedSolver leastSquares(Matrix<Double> A) throws LinearException {
+		Preconditions.checkArgument(A.getRowCount() >= A.getColumnCount(), "Expected at least as many rows as columns, got %s x %s", A.getRowCount(), A.getColumnCount());
+		return new LeastSquares(A);
+	}
+
+	/**
+	 * The number of equations, i.e. the length of a right-hand side
+	 */
+	public int getRowCount() {
+		return rowcount;
+	}
+
+	/**
+	 * The number of unknowns, i.e. the length of a solution
+	 */
+	public int getColumnCount() {
+		return columncount;
+	}
+
+	/**
+	 * Solves for the right-hand side b into x, without allocating. b is left unchanged, and must not be the same array
+	 * as x.
+	 */
+	public final void solveInto(double[] b, double[] x) {
+		Preconditions.checkArgument(b.length >= rowcount && x.length >= columncount, "Expected a right-hand side of length %s and a solution of length %s", rowcount, columncount);
+		Preconditions.checkArgument(b != x, "The right-hand side and the solution must be different arrays");
+		doSolveInto(b, x);
+	}
+
+	abstract void doSolveInto(double[] b, double[] x);
+
+	/**
+	 * Solves for every column of B, in parallel across the columns if there are enough of them
+	 */
+	public Matrix<Double> solve(Matrix<? extends Double> B) {
+		Preconditions.checkArgument(B.getRowCount() == rowcount, "The right-hand side has %s rows, expected %s", B.getRowCount(), rowcount);
+		double[] b = MatrixUtils.toEJMLDenseMatrix64F(B).data;
+		int rhscount = B.getColumnCount();
+		double[] result = new double[columncount * rhscount];
+		int taskcount = (rhscount + COLUMNS_PER_TASK - 1) / COLUMNS_PER_TASK;
+		if (taskcount > 1 && Gemm.getMultiplyAddCount(rowcount, columncount, rhscount) >= Gemm.getParallelThreshold()) {
+			ParallelUtils.forEachIndex(0, taskcount, t -> solveColumns(b, rhscount, t * COLUMNS_PER_TASK, Math.min(rhscount, (t + 1) * COLUMNS_PER_TASK), result));
+		} else {
+			solveColumns(b, rhscount, 0, rhscount, result);
+		}
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(columncount, rhscount, result));
+	}
+
+	private void solveColumns(double[] b, int rhscount, int begin, int end, double[] dest) {
+		double[] column = new double[rowcount], x = new double[columncount];
+		for (int j = begin; j < end; ++j) {
+			for (int i = 0; i < rowcount; ++i) {
+				column[i] = b[i * rhscount + j];
+			}
+			doSolveInto(column, x);
+			for (int i = 0; i < columncount; ++i) {
+				dest[i * rhscount + j] = x[i];
+			}
+		}
+	}
+
+	/**
+	 * A square system with an LU or Cholesky factorisation
+	 */
+	private static final class Factorised extends PreparedSolver {
+		private final MatrixFactorisation factorisation;
+
+		Factorised(MatrixFactorisation factorisation) {
+			super(factorisation.getDimensionCount(), factorisation.getDimensionCount());
+			this.factorisation = factorisation;
+		}
+
+		@Override void doSolveInto(double[] b, double[] x) {
+			factorisation.solveInto(b, x);
+		}
+	}
+
+	/**
+	 * An overdetermined system with a Householder QR decomposition, stored column by column as in LINPACK: the
+	 * Householder vectors on and below the diagonal, R above it and the diagonal of R separately
+	 */
+	private static final class LeastSquares extends PreparedSolver {
+		private final double[] qr;
+		private final double[] rdiagonal;
+		/** A work vector of length m for every thread, so that solving does not allocate */
+		private final ThreadLocal<double[]> work;
+
+		LeastSquares(Matrix<Double> A) throws LinearException {
+			super(A.getRowCount(), A.getColumnCount());
+			int m = A.getRowCount(), n = A.getColumnCount();
+			qr = new double[m * n];
+			for (int i = 0; i < m; ++i) {
+				for (int j = 0; j < n; ++j) {
+					qr[j * m + i] = MatrixUtils.getDouble(A, i, j);
+				}
+			}
+			rdiagonal = new double[n];
+			for (int k = 0; k < n; ++k) {
+				int kcolumn = k * m;
+				double norm = 0.0;
+				for (int i = k; i < m; ++i) {
+					norm = Math.hypot(norm, qr[kcolumn + i]);
+				}
+				if (norm == 0.0) {
+					throw new LinearException("The matrix does not have full column rank");
+				}
+				if (qr[kcolumn + k] < 0.0) {
+					norm = -norm;
+				}
+				for (int i = k; i < m; ++i) {
+					qr[kcolumn + i] /= norm;
+				}
+				qr[kcolumn + k] += 1.0;
+				for (int j = k + 1; j < n; ++j) {
+					int jcolumn = j * m;
+					double s = 0.0;
+					for (int i = k; i < m; ++i) {
+						s += qr[kcolumn + i] * qr[jcolumn + i];
+					}
+					s = -s / qr[kcolumn + k];
+					for (int i = k; i < m; ++i) {
+						qr[jcolumn + i] += s * qr[kcolumn + i];
+					}
+				}
+				rdiagonal[k] = -norm;
+			}
+			work = ThreadLocal.withInitial(() -> new double[m]);
+		}
+
+		/**
+		 * Applies Q^T to b and solves R * x = (Q^T * b)[0, n) by back substitution
+		 */
+		@Override void doSolveInto(double[] b, double[] x) {
+			int m = getRowCount(), n = getColumnCount();
+			double[] y = work.get();
+			System.arraycopy(b, 0, y, 0, m);
+			for (int k = 0; k < n; ++k) {
+				int kcolumn = k * m;
+				double s = 0.0;
+				for (int i = k; i < m; ++i) {
+					s += qr[kcolumn + i] * y[i];
+				}
+				s = -s / qr[kcolumn + k];
+				for (int i = k; i < m; ++i) {
+					y[i] += s * qr[kcolumn + i];
+				}
+			}
+			for (int k = n - 1; k >= 0; --k) {
+				int kcolumn = k * m;
+				double xk = y[k] / rdiagonal[k];
+				x[k] = xk;
+				for (int i = 0; i < k; ++i) {
+					y[i] -= xk * qr[kcolumn + i];
+				}
+			}
+		}
+	}
+}
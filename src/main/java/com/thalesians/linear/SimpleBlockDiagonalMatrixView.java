@@ -1,18 +1,33 @@
 package com.thalesians.linear;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
 import com.google.common.collect.ImmutableList;
 
-public final class SimpleBlockDiagonalMatrixView<T> extends AbstractMatrix<T> {	
+/**
+ * A block diagonal matrix over the given blocks. Inversion, determinants and the products and sums with conforming
+ * block diagonal matrices are computed block by block, in parallel on the pool of {@link ParallelUtils} when there is
+ * enough work, so that the zeros off the diagonal blocks are never materialised.
+ */
+public final class SimpleBlockDiagonalMatrixView<T> extends AbstractMatrix<T> implements DoubleMatrix {	
 	private final ImmutableList<Matrix<T>> blocks;
 	private final T zero;
 	private final int[] blockrowcounts;
 	private final int[] blockcolumncounts;
+	private final int[] blockleftcolumns;
+	private final int[] blocktoprows;
+	/** Cumulative estimate of the work of a cubic operation on the blocks, used to decide on and split parallel tasks */
+	private final long[] blockworkprefix;
 	private final int rowcount;
 	private final int columncount;
 	private final int[] rowblockindices;
 	private final int[] rowblockoffsets;
 	private final int[] columnblockindices;
 	private final int[] columnblockoffsets;
+	private volatile SimpleBlockDiagonalMatrixView<T> inverse;
 	
 	private SimpleBlockDiagonalMatrixView(T zero, ImmutableList<Matrix<T>> blocks, MatrixBuilder<T> resultbuilder) {
 		super(resultbuilder);
@@ -23,11 +38,17 @@ public final class SimpleBlockDiagonalMatrixView<T> extends AbstractMatrix<T> {
 		
 		this.blockrowcounts = new int[blocks.size()];
 		this.blockcolumncounts = new int[blocks.size()];
+		this.blockleftcolumns = new int[blocks.size()];
+		this.blocktoprows = new int[blocks.size()];
+		this.blockworkprefix = new long[blocks.size() + 1];
 		
 		int trc = 0, tcc = 0;
 		for (int i = 0; i < blocks.size(); ++i) {
+			this.blocktoprows[i] = trc;
+			this.blockleftcolumns[i] = tcc;
 			trc += this.blockrowcounts[i] = blocks.get(i).getRowCount();
 			tcc += this.blockcolumncounts[i] = blocks.get(i).getColumnCount();
+			this.blockworkprefix[i + 1] = this.blockworkprefix[i] + Gemm.getMultiplyAddCount(blockrowcounts[i], blockcolumncounts[i], Math.max(blockrowcounts[i], blockcolumncounts[i]));
 		}
 		
 		this.rowcount = trc; this.columncount = tcc;
@@ -57,7 +78,7 @@ public final class SimpleBlockDiagonalMatrixView<T> extends AbstractMatrix<T> {
 	}
 	
 	public static SimpleBlockDiagonalMatrixView<Double> create(ImmutableList<Matrix<Double>> blocks) {
-		return create(0.0, blocks, SimpleDenseMatrixOfDoubles.builder());
+		return create(0.0, blocks, SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
 	}
 	
 	@SafeVarargs
@@ -75,6 +96,30 @@ public final class SimpleBlockDiagonalMatrixView<T> extends AbstractMatrix<T> {
 		}
 	}
 	
+	@Override public double getDouble(int row, int column) {
+		int rowBlockIndex = rowblockindices[row];
+		int colBlockIndex = columnblockindices[column];
+		if (rowBlockIndex != colBlockIndex) {
+			return (Double) zero;
+		} else {
+			return MatrixUtils.getDoubleUnchecked(blocks.get(rowBlockIndex), rowblockoffsets[row], columnblockoffsets[column]);
+		}
+	}
+	
+	@Override public void getRow(int row, double[] dest, int offset) {
+		int blockindex = rowblockindices[row];
+		Matrix<T> block = blocks.get(blockindex);
+		int left = blockleftcolumns[blockindex];
+		Arrays.fill(dest, offset, offset + columncount, (Double) zero);
+		if (block instanceof DoubleMatrix) {
+			((DoubleMatrix) block).getRow(rowblockoffsets[row], dest, offset + left);
+		} else {
+			for (int j = 0; j < blockcolumncounts[blockindex]; ++j) {
+				dest[offset + left + j] = MatrixUtils.getDoubleUnchecked(block, rowblockoffsets[row], j);
+			}
+		}
+	}
+	
 	@Override public int getRowCount() {
 		return rowcount;
 	}
@@ -83,11 +128,172 @@ public final class SimpleBlockDiagonalMatrixView<T> extends AbstractMatrix<T> {
 		return columncount;
 	}
 	
+	public ImmutableList<Matrix<T>> getBlocks() {
+		return blocks;
+	}
+	
+	public int getBlockCount() {
+		return blocks.size();
+	}
+	
+	public int getBlockTopRow(int blockindex) {
+		return blocktoprows[blockindex];
+	}
+	
+	public int getBlockLeftColumn(int blockindex) {
+		return blockleftcolumns[blockindex];
+	}
+	
+	/**
+	 * Whether the blocks of this matrix and the given one have the same shapes
+	 */
+	public boolean hasSamePartition(SimpleBlockDiagonalMatrixView<?> matrix) {
+		return Arrays.equals(blockrowcounts, matrix.blockrowcounts) && Arrays.equals(blockcolumncounts, matrix.blockcolumncounts);
+	}
+	
+	public boolean hasSquareBlocks() {
+		return Arrays.equals(blockrowcounts, blockcolumncounts);
+	}
+	
+	/**
+	 * Whether the column partition of this matrix is the row partition of the given one, so that the product is block
+	 * diagonal
+	 */
+	private boolean conformsForMult(SimpleBlockDiagonalMatrixView<?> matrix) {
+		return Arrays.equals(blockcolumncounts, matrix.blockrowcounts);
+	}
+	
+	/**
+	 * Applies the function to every block index, in parallel on the pool of {@link ParallelUtils} if the blocks are large
+	 * or numerous enough, and returns the results in block order
+	 */
+	<R> List<R> mapBlocks(IntFunction<? extends R> function) {
+		Object[] results = new Object[blocks.size()];
+		if (blocks.size() > 1 && blockworkprefix[blocks.size()] >= Gemm.getParallelThreshold()) {
+			ParallelUtils.getPool().invoke(new BlockTask(0, blocks.size(), function, results));
+		} else {
+			for (int i = 0; i < blocks.size(); ++i) {
+				results[i] = function.apply(i);
+			}
+		}
+		@SuppressWarnings("unchecked")
+		List<R> result = (List<R>) Arrays.asList(results);
+		return result;
+	}
+	
+	private SimpleBlockDiagonalMatrixView<T> createFromBlocks(List<Matrix<T>> newblocks) {
+		return create(zero, ImmutableList.copyOf(newblocks), getResultBuilderPrototype());
+	}
+	
 	@Override public Matrix<T> scale(T factor) {
 		ImmutableList.Builder<Matrix<T>> bs = ImmutableList.builder();
 		for (Matrix<T> block : blocks) {
 			bs.add(block.scale(factor));
 		}
-		return create(zero, bs.build(), getResultBuilder());
+		return create(zero, bs.build(), getResultBuilderPrototype());
+	}
+	
+	/**
+	 * Block diagonal if the given matrix is block diagonal with the same partition, otherwise the general sum
+	 */
+	@Override public Matrix<T> add(Matrix<T> matrix) {
+		if (matrix instanceof SimpleBlockDiagonalMatrixView && hasSamePartition((SimpleBlockDiagonalMatrixView<?>) matrix)) {
+			SimpleBlockDiagonalMatrixView<T> m = (SimpleBlockDiagonalMatrixView<T>) matrix;
+			return createFromBlocks(mapBlocks(i -> blocks.get(i).add(m.blocks.get(i))));
+		} else {
+			return super.add(matrix);
+		}
+	}
+	
+	/**
+	 * Block diagonal if the given matrix is block diagonal with the same partition, otherwise the general difference
+	 */
+	@Override public Matrix<T> subtract(Matrix<T> matrix) {
+		if (matrix instanceof SimpleBlockDiagonalMatrixView && hasSamePartition((SimpleBlockDiagonalMatrixView<?>) matrix)) {
+			SimpleBlockDiagonalMatrixView<T> m = (SimpleBlockDiagonalMatrixView<T>) matrix;
+			return createFromBlocks(mapBlocks(i -> blocks.get(i).subtract(m.blocks.get(i))));
+		} else {
+			return super.subtract(matrix);
+		}
+	}
+	
+	/**
+	 * Block diagonal if the given matrix is block diagonal with a conforming partition. Otherwise every block is
+	 * multiplied by the rows of the given matrix that it meets, so the zero blocks still take no part.
+	 */
+	@Override public Matrix<T> mult(Matrix<T> matrix) {
+		if (matrix instanceof SimpleBlockDiagonalMatrixView && conformsForMult((SimpleBlockDiagonalMatrixView<?>) matrix)) {
+			SimpleBlockDiagonalMatrixView<T> m = (SimpleBlockDiagonalMatrixView<T>) matrix;
+			return createFromBlocks(mapBlocks(i -> blocks.get(i).mult(m.blocks.get(i))));
+		}
+		if (matrix.getRowCount() != columncount) {
+			return super.mult(matrix);
+		}
+		int resultcolumncount = matrix.getColumnCount();
+		List<Matrix<T>> products = mapBlocks(i -> blocks.get(i).mult(
+				matrix.get(SimpleRectangle.create(blockleftcolumns[i], 0, blockcolumncounts[i], resultcolumncount))));
+		MatrixBuilder<T> resultbuilder = getResultBuilder().setShape(rowcount, resultcolumncount);
+		for (int i = 0; i < products.size(); ++i) {
+			resultbuilder.set(blocktoprows[i], 0, products.get(i));
+		}
+		return resultbuilder.build();
+	}
+	
+	/**
+	 * The block diagonal matrix of the inverses of the blocks
+	 */
+	@Override public Matrix<T> invert() {
+		SimpleBlockDiagonalMatrixView<T> result = inverse;
+		if (result == null) {
+			inverse = result = createFromBlocks(mapBlocks(i -> blocks.get(i).invert()));
+		}
+		return result;
+	}
+	
+	/**
+	 * The product of the determinants of the blocks; only supported for matrices of doubles
+	 */
+	@SuppressWarnings("unchecked")
+	@Override public T determinant() {
+		if (!(zero instanceof Double)) {
+			return super.determinant();
+		}
+		List<T> determinants = mapBlocks(i -> blocks.get(i).determinant());
+		double result = 1.0;
+		for (T determinant : determinants) {
+			result *= (Double) determinant;
+		}
+		return (T) Double.valueOf(result);
+	}
+	
+	/**
+	 * Splits a range of blocks into two halves of about equal work until the work is below the parallel threshold of
+	 * {@link Gemm}. Every task writes its own elements of the results array, so the tasks need no synchronisation.
+	 */
+	private final class BlockTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final int begin, end;
+		private final IntFunction<?> function;
+		private final Object[] results;
+		
+		BlockTask(int begin, int end, IntFunction<?> function, Object[] results) {
+			this.begin = begin; this.end = end;
+			this.function = function; this.results = results;
+		}
+		
+		@Override protected void compute() {
+			if (end - begin < 2 || blockworkprefix[end] - blockworkprefix[begin] < Gemm.getParallelThreshold() / 4) {
+				for (int i = begin; i < end; ++i) {
+					results[i] = function.apply(i);
+				}
+			} else {
+				long halfwork = (blockworkprefix[begin] + blockworkprefix[end]) / 2;
+				int mid = Arrays.binarySearch(blockworkprefix, begin, end, halfwork);
+				mid = mid < 0 ? -mid - 1 : mid;
+				mid = Math.max(begin + 1, Math.min(end - 1, mid));
+				invokeAll(new BlockTask(begin, mid, function, results), new BlockTask(mid, end, function, results));
+			}
+		}
 	}
 }
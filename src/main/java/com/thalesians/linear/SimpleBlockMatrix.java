@@ -1,8 +1,18 @@
 package com.thalesians.linear;
 
+import java.util.Arrays;
+
+import org.ejml.data.DenseMatrix64F;
+
 import com.google.common.collect.ImmutableList;
 
-public final class SimpleBlockMatrix<T, MatrixType extends Matrix<? extends T>> extends AbstractMatrix<T> {
+/**
+ * A matrix partitioned into rows of blocks, where all the blocks in a row of blocks have the same row count and all the
+ * blocks in a column of blocks the same column count. Elements are located by binary search over the offsets of the
+ * rows and columns of blocks, so the matrix holds no per-row or per-column index tables. Copying into dense storage and
+ * multiplying by a block matrix with a conforming partition work a block at a time, in parallel across rows of blocks.
+ */
+public final class SimpleBlockMatrix<T, MatrixType extends Matrix<? extends T>> extends AbstractMatrix<T> implements DoubleMatrix {
 	private final ImmutableList<ImmutableList<MatrixType>> blocks;
 	private final int[] blockrowcounts;
 	private final int[] blockcolumncounts;
@@ -10,10 +20,9 @@ public final class SimpleBlockMatrix<T, MatrixType extends Matrix<? extends T>>
 	private final int[] blockleftcolumns;
 	private final int rowcount;
 	private final int columncount;
-	private final int[] blockrowindices;
-	private final int[] blockrowoffsets;
-	private final int[] blockcolumnindices;
-	private final int[] blockcolumnoffsets;
+	
+	/** Copies of at least this many elements are split across rows of blocks */
+	private static final int PARALLEL_COPY_ELEMENT_COUNT = 1 << 18;
 	
 	private SimpleBlockMatrix(MatrixBuilder<T> resultbuilder, ImmutableList<ImmutableList<MatrixType>> blocks) {
 		super(resultbuilder);
@@ -39,25 +48,22 @@ public final class SimpleBlockMatrix<T, MatrixType extends Matrix<? extends T>>
 		}
 		
 		this.rowcount = trc; this.columncount = tcc;
-		
-		this.blockrowindices = new int[trc];
-		this.blockrowoffsets = new int[trc];
-		this.blockcolumnindices = new int[tcc];
-		this.blockcolumnoffsets = new int[tcc];
-		
-		for (int ii = 0, i = 0; i < this.blockrowcounts.length; ++i) {
-			for (int j = 0; j < this.blockrowcounts[i]; ++j, ++ii) {
-				this.blockrowindices[ii] = i;
-				this.blockrowoffsets[ii] = j;
-			}
-		}
-		
-		for (int ii = 0, i = 0; i < this.blockcolumncounts.length; ++i) {
-			for (int j = 0; j < this.blockcolumncounts[i]; ++j, ++ii) {
-				this.blockcolumnindices[ii] = i;
-				this.blockcolumnoffsets[ii] = j;
+	}
+	
+	/**
+	 * Returns the index of the last block whose offset is at most the given row or column, which skips any empty blocks
+	 */
+	private static int findBlock(int[] offsets, int index) {
+		int low = 0, high = offsets.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (offsets[mid] <= index) {
+				low = mid;
+			} else {
+				high = mid - 1;
 			}
 		}
+		return low;
 	}
 	
 	public static <VT, MT extends Matrix<? extends VT>> SimpleBlockMatrix<VT, MT> of(MatrixBuilder<VT> builder, ImmutableList<ImmutableList<MT>> blocks) {
@@ -70,7 +76,7 @@ public final class SimpleBlockMatrix<T, MatrixType extends Matrix<? extends T>>
 	}
 	
 	public static <MT extends Matrix<Double>> SimpleBlockMatrix<Double, MT> of(ImmutableList<ImmutableList<MT>> blocks) {
-		return of(SimpleDenseMatrixOfDoubles.builder(), blocks);
+		return of(SimpleDenseMatrixOfDoubles.resultBuilderPrototype, blocks);
 	}
 	
 	@SafeVarargs
@@ -88,7 +94,7 @@ public final class SimpleBlockMatrix<T, MatrixType extends Matrix<? extends T>>
 	}
 	
 	public static <MT extends Matrix<Double>> SimpleBlockMatrix<Double, MT> createRow(ImmutableList<MT> blocks) {
-		return createRow(SimpleDenseMatrixOfDoubles.builder(), blocks);
+		return createRow(SimpleDenseMatrixOfDoubles.resultBuilderPrototype, blocks);
 	}
 	
 	@SafeVarargs
@@ -110,7 +116,7 @@ public final class SimpleBlockMatrix<T, MatrixType extends Matrix<? extends T>>
 	}
 	
 	public static <MT extends Matrix<Double>> SimpleBlockMatrix<Double, MT> createColumn(ImmutableList<MT> blocks) {
-		return createColumn(SimpleDenseMatrixOfDoubles.builder(), blocks);
+		return createColumn(SimpleDenseMatrixOfDoubles.resultBuilderPrototype, blocks);
 	}
 	
 	@SafeVarargs
@@ -119,9 +125,30 @@ public final class SimpleBlockMatrix<T, MatrixType extends Matrix<? extends T>>
 	}
 	
 	@Override public T get(int row, int column) {
-		int ri = blockrowindices[row], ci = blockcolumnindices[column];
+		int ri = findBlock(blocktoprows, row), ci = findBlock(blockleftcolumns, column);
 		MatrixType block = blocks.get(ri).get(ci);
-		return block.get(blockrowoffsets[row], blockcolumnoffsets[column]);
+		return block.get(row - blocktoprows[ri], column - blockleftcolumns[ci]);
+	}
+	
+	@Override public double getDouble(int row, int column) {
+		int ri = findBlock(blocktoprows, row), ci = findBlock(blockleftcolumns, column);
+		MatrixType block = blocks.get(ri).get(ci);
+		return MatrixUtils.getDoubleUnchecked(block, row - blocktoprows[ri], column - blockleftcolumns[ci]);
+	}
+	
+	@Override public void getRow(int row, double[] dest, int offset) {
+		int ri = findBlock(blocktoprows, row), blockrow = row - blocktoprows[ri];
+		ImmutableList<MatrixType> rowofblocks = blocks.get(ri);
+		for (int ci = 0; ci < rowofblocks.size(); ++ci) {
+			MatrixType block = rowofblocks.get(ci);
+			if (block instanceof DoubleMatrix) {
+				((DoubleMatrix) block).getRow(blockrow, dest, offset + blockleftcolumns[ci]);
+			} else {
+				for (int j = 0; j < blockcolumncounts[ci]; ++j) {
+					dest[offset + blockleftcolumns[ci] + j] = MatrixUtils.getDoubleUnchecked(block, blockrow, j);
+				}
+			}
+		}
 	}
 	
 	@Override public int getRowCount() {
@@ -131,4 +158,150 @@ public final class SimpleBlockMatrix<T, MatrixType extends Matrix<? extends T>>
 	@Override public int getColumnCount() {
 		return columncount;
 	}
+	
+	/**
+	 * Copies the matrix into row-major storage starting at the given offset, with the given distance between the
+	 * starts of consecutive rows
+	 */
+	void copyTo(double[] dest, int offset, int stride) {
+		if ((long) rowcount * columncount >= PARALLEL_COPY_ELEMENT_COUNT && blocks.size() > 1) {
+			ParallelUtils.forEachIndex(0, blocks.size(), ri -> copyBlockRowTo(ri, dest, offset, stride));
+		} else {
+			for (int ri = 0; ri < blocks.size(); ++ri) {
+				copyBlockRowTo(ri, dest, offset, stride);
+			}
+		}
+	}
+	
+	private void copyBlockRowTo(int ri, double[] dest, int offset, int stride) {
+		ImmutableList<MatrixType> rowofblocks = blocks.get(ri);
+		for (int ci = 0; ci < rowofblocks.size(); ++ci) {
+			copyBlock(rowofblocks.get(ci), dest, offset + blocktoprows[ri] * stride + blockleftcolumns[ci], stride);
+		}
+	}
+	
+	private static void copyBlock(Matrix<?> block, double[] dest, int offset, int stride) {
+		int rc = block.getRowCount(), cc = block.getColumnCount();
+		if (block instanceof SimpleDenseMatrixOfDoubles) {
+			double[] data = ((SimpleDenseMatrixOfDoubles) block).impl.data;
+			for (int i = 0; i < rc; ++i) {
+				System.arraycopy(data, i * cc, dest, offset + i * stride, cc);
+			}
+		} else if (block instanceof DoubleMatrix) {
+			for (int i = 0; i < rc; ++i) {
+				((DoubleMatrix) block).getRow(i, dest, offset + i * stride);
+			}
+		} else {
+			for (int i = 0; i < rc; ++i) {
+				for (int j = 0; j < cc; ++j) {
+					dest[offset + i * stride + j] = MatrixUtils.getDoubleUnchecked(block, i, j);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the row-major elements of a block, without copying them if the block is dense, or null if all of them are
+	 * zero, so that the block can be skipped
+	 */
+	private static double[] getBlockData(Matrix<?> block) {
+		double[] data;
+		if (block instanceof SimpleDenseMatrixOfDoubles) {
+			data = ((SimpleDenseMatrixOfDoubles) block).impl.data;
+		} else {
+			data = new double[block.getRowCount() * block.getColumnCount()];
+			copyBlock(block, data, 0, block.getColumnCount());
+		}
+		for (int i = 0, n = block.getRowCount() * block.getColumnCount(); i < n; ++i) {
+			if (data[i] != 0.0) {
+				return data;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Computed from the factorisation of a dense copy; only supported for matrices of doubles, for which it is what
+	 * {@link SimpleDenseMatrixOfDoubles#determinant()} gives for the same elements. Other element types are unsupported,
+	 * as for any {@link AbstractMatrix}.
+	 *
+	 * @throws RuntimeLinearException if the matrix is not square
+	 */
+	@SuppressWarnings("unchecked")
+	@Override public T determinant() {
+		if (!(getResultBuilderPrototype() instanceof SimpleDenseMatrixOfDoubles.Builder)) {
+			return super.determinant();
+		}
+		if (rowcount != columncount) {
+			throw new RuntimeLinearException("Only square matrices have a determinant (got " + rowcount + " x " + columncount + ")");
+		}
+		double[] data = new double[rowcount * columncount];
+		copyTo(data, 0, columncount);
+		return (T) new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(rowcount, columncount, data)).determinant();
+	}
+	
+	/**
+	 * Multiplies block by block if the given matrix is a block matrix whose rows of blocks match the columns of blocks of
+	 * this one and both hold doubles; blocks that are entirely zero are skipped. Otherwise the general product is used.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override public Matrix<T> mult(Matrix<T> matrix) {
+		if (matrix instanceof SimpleBlockMatrix && getResultBuilderPrototype() instanceof SimpleDenseMatrixOfDoubles.Builder) {
+			SimpleBlockMatrix<?, ?> m = (SimpleBlockMatrix<?, ?>) matrix;
+			if (!blocks.isEmpty() && !m.blocks.isEmpty() && Arrays.equals(blockcolumncounts, m.blockrowcounts)) {
+				return (Matrix<T>) (Matrix<?>) blockMult(m);
+			}
+		}
+		return super.mult(matrix);
+	}
+	
+	private SimpleDenseMatrixOfDoubles blockMult(SimpleBlockMatrix<?, ?> matrix) {
+		int resultcolumncount = matrix.columncount;
+		int depthblockcount = blockcolumncounts.length, resultblockcolumncount = matrix.blockcolumncounts.length;
+		double[][][] rightdata = new double[depthblockcount][resultblockcolumncount][];
+		for (int k = 0; k < depthblockcount; ++k) {
+			for (int cj = 0; cj < resultblockcolumncount; ++cj) {
+				rightdata[k][cj] = getBlockData(matrix.blocks.get(k).get(cj));
+			}
+		}
+		double[] result = new double[rowcount * resultcolumncount];
+		long work = Gemm.getMultiplyAddCount(rowcount, resultcolumncount, columncount);
+		if (blocks.size() > 1 && work >= Gemm.getParallelThreshold()) {
+			ParallelUtils.forEachIndex(0, blocks.size(), ri -> multBlockRow(ri, matrix, rightdata, result, false));
+		} else {
+			for (int ri = 0; ri < blocks.size(); ++ri) {
+				multBlockRow(ri, matrix, rightdata, result, true);
+			}
+		}
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(rowcount, resultcolumncount, result));
+	}
+	
+	/**
+	 * Accumulates the products of the blocks of a row of blocks of this matrix and the blocks of the given matrix into
+	 * the corresponding row of blocks of the result. The products of large blocks are themselves computed in parallel
+	 * only when the rows of blocks are not.
+	 */
+	private void multBlockRow(int ri, SimpleBlockMatrix<?, ?> matrix, double[][][] rightdata, double[] result, boolean parallelblocks) {
+		int resultcolumncount = matrix.columncount, m = blockrowcounts[ri];
+		ImmutableList<MatrixType> rowofblocks = blocks.get(ri);
+		for (int k = 0; k < rowofblocks.size(); ++k) {
+			double[] left = getBlockData(rowofblocks.get(k));
+			if (left == null) {
+				continue;
+			}
+			int depth = blockcolumncounts[k];
+			for (int cj = 0; cj < matrix.blockcolumncounts.length; ++cj) {
+				double[] right = rightdata[k][cj];
+				if (right == null) {
+					continue;
+				}
+				int n = matrix.blockcolumncounts[cj], coffset = blocktoprows[ri] * resultcolumncount + matrix.blockleftcolumns[cj];
+				if (parallelblocks) {
+					Gemm.gemm(m, n, depth, 1.0, left, 0, depth, right, 0, n, 1.0, result, coffset, resultcolumncount);
+				} else {
+					Gemm.gemmSerial(m, n, depth, 1.0, left, 0, depth, right, 0, n, 1.0, result, coffset, resultcolumncount);
+				}
+			}
+		}
+	}
 }
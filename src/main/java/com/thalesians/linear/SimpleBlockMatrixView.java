@@ -2,7 +2,7 @@ package com.thalesians.linear;
 
 import com.google.common.collect.ImmutableList;
 
-public final class SimpleBlockMatrixView<T> extends AbstractMatrix<T> {
+public final class SimpleBlockMatrixView<T> extends AbstractMatrix<T> implements DoubleMatrix {
 	private final Matrix<T> matrix;
 	private final ImmutableList<ImmutableList<? extends Rectangle>> rects;
 	private final int[] rectrowcounts;
@@ -60,7 +60,7 @@ public final class SimpleBlockMatrixView<T> extends AbstractMatrix<T> {
 	}
 	
 	public static SimpleBlockMatrixView<Double> of(Matrix<Double> matrix, ImmutableList<ImmutableList<? extends Rectangle>> rects) {
-		return of(matrix, rects, SimpleDenseMatrixOfDoubles.builder());
+		return of(matrix, rects, SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
 	}
 	
 	@Override public T get(int row, int column) {
@@ -68,6 +68,11 @@ public final class SimpleBlockMatrixView<T> extends AbstractMatrix<T> {
 		return matrix.get(rect.getTopRow() + rectrowoffsets[row], rect.getLeftColumn() + rectcolumnoffsets[column]);
 	}
 	
+	@Override public double getDouble(int row, int column) {
+		Rectangle rect = rects.get(rectrowindices[row]).get(rectcolumnindices[column]);
+		return MatrixUtils.getDoubleUnchecked(matrix, rect.getTopRow() + rectrowoffsets[row], rect.getLeftColumn() + rectcolumnoffsets[column]);
+	}
+	
 	@Override public int getRowCount() {
 		return rowcount;
 	}
@@ -6,13 +6,20 @@ import org.ejml.ops.CommonOps;
 
 import com.google.common.collect.ImmutableList;
 
-public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
+public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> implements DoubleMatrix {
 	final DenseMatrix64F impl;
 	
-	private Double determinant;
+	/** Computed on first use; racing threads may both compute it, but either result is correct */
+	private volatile MatrixFactorisation factorisation;
+	private volatile SimpleDenseMatrixOfDoubles inverse;
+	
+	/**
+	 * Only used to create builders, so it can be shared by all instances
+	 */
+	static final Builder resultBuilderPrototype = new Builder();
 	
 	SimpleDenseMatrixOfDoubles(DenseMatrix64F impl) {
-		super(builder());
+		super(resultBuilderPrototype);
 		this.impl = impl;
 	}
 	
@@ -80,6 +87,14 @@ public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
 		return impl.unsafe_get(row, column);
 	}
 	
+	@Override public double getDouble(int row, int column) {
+		return impl.unsafe_get(row, column);
+	}
+	
+	@Override public void getRow(int row, double[] dest, int offset) {
+		System.arraycopy(impl.data, row * impl.numCols, dest, offset, impl.numCols);
+	}
+	
 	@Override public Matrix<Double> get(Rectangle rect) {
 		DenseMatrix64F ret = new DenseMatrix64F(rect.getRowCount(), rect.getColumnCount());
 		CommonOps.extract(impl, rect.getTopRow(), rect.getTopRow() + rect.getRowCount(), rect.getLeftColumn(), rect.getLeftColumn() + rect.getColumnCount(), ret, 0, 0);
@@ -94,11 +109,55 @@ public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
 		return impl.numCols;
 	}
 	
+	/**
+	 * Multiplying by the own transpose gives a symmetric matrix, of which only the lower triangle is computed
+	 */
+	@Override public Matrix<Double> mult(Matrix<Double> matrix) {
+		if (matrix instanceof SimpleTransposeView && matrix.transpose() == this) {
+			return SimpleSymmetricMatrixOfDoubles.selfTimesTranspose(this);
+		} else {
+			return super.mult(matrix);
+		}
+	}
+	
+	/**
+	 * The Cholesky factorisation of the matrix if it is symmetric and positive definite, its LU decomposition otherwise,
+	 * shared by the determinant, log-determinant, solves and inverse
+	 */
+	MatrixFactorisation getFactorisation() {
+		MatrixFactorisation result = factorisation;
+		if (result == null) {
+			factorisation = result = MatrixFactorisation.of(impl);
+		}
+		return result;
+	}
+	
 	@Override public Double determinant() {
-		if (determinant == null) {
-			determinant = CommonOps.det(impl);
+		return getFactorisation().determinant();
+	}
+	
+	/**
+	 * The log of the determinant, which does not overflow or underflow for large matrices the way the determinant does.
+	 * NaN if the determinant is negative and negative infinity if the matrix is singular.
+	 */
+	public double logDeterminant() {
+		return getFactorisation().logDeterminant();
+	}
+	
+	/**
+	 * Solves this * X = B for X with the factorisation of this matrix, which is only computed once however many
+	 * right-hand sides are solved for
+	 */
+	public SimpleDenseMatrixOfDoubles solve(Matrix<? extends Double> b) {
+		return getFactorisation().solve(b);
+	}
+	
+	@Override public SimpleDenseMatrixOfDoubles invert() {
+		SimpleDenseMatrixOfDoubles result = inverse;
+		if (result == null) {
+			inverse = result = getFactorisation().inverse();
 		}
-		return determinant;
+		return result;
 	}
 	
 	@Override public boolean equals(Object obj) {
@@ -138,46 +197,88 @@ public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
 		return (new Builder()).set(matrix);
 	}
 	
-	public static class Builder implements MatrixBuilder<Double> {
+	public static class Builder implements DoubleMatrixBuilder {
 		
 		private DenseMatrix64F impl = new DenseMatrix64F(new double[][] {{0}});
 		private boolean changed = true;
 		private SimpleDenseMatrixOfDoubles cached = null;
+		/** Whether impl is also the storage of the cached matrix, and must be copied before it is changed */
+		private boolean shared = false;
 		
 		private Builder() { }
 		
+		@Override public Builder newBuilder() {
+			return new Builder();
+		}
+		
 		@Override public Double get(int row, int column) {
 			return impl.unsafe_get(row, column);
 		}
 		
+		@Override public double getDouble(int row, int column) {
+			return impl.unsafe_get(row, column);
+		}
+		
 		@Override public Builder setShape(int rowcount, int columncount) {
 			if (impl.numRows != rowcount || impl.numCols != columncount) {
-				impl.reshape(rowcount, columncount, false);
+				if (shared) {
+					impl = new DenseMatrix64F(rowcount, columncount);
+					shared = false;
+				} else {
+					impl.reshape(rowcount, columncount, false);
+				}
 				changed = true;
 			}
 			return this;
 		}
 		
+		/**
+		 * Gives the builder storage of its own before it is changed, if the last matrix built still uses its storage
+		 */
+		private void detach(boolean keepvalues) {
+			if (shared) {
+				impl = keepvalues ? impl.copy() : new DenseMatrix64F(impl.numRows, impl.numCols);
+				shared = false;
+			}
+		}
+		
 		@Override public Builder setShape(Matrix<?> matrix) {
 			return setShape(matrix.getRowCount(), matrix.getColumnCount());
 		}
 
 		@Override public Builder setToIdentity() {
+			detach(false);
 			CommonOps.setIdentity(impl);
 			changed = true;
 			return this;
 		}
 
 		@Override public Builder set(int row, int column, Double value) {
+			detach(true);
+			impl.unsafe_set(row, column, value);
+			changed = true;
+			return this;
+		}
+		
+		@Override public Builder setDouble(int row, int column, double value) {
+			detach(true);
 			impl.unsafe_set(row, column, value);
 			changed = true;
 			return this;
 		}
 
 		@Override public Builder set(int toprow, int leftcolumn, Matrix<? extends Double> matrix) {
-			for (int i = 0; i < matrix.getRowCount(); ++i) {
-				for (int j = 0; j < matrix.getColumnCount(); ++j) {
-					impl.unsafe_set(toprow + i, leftcolumn + j, matrix.get(i, j));
+			detach(true);
+			if (matrix instanceof DoubleMatrix) {
+				DoubleMatrix m = (DoubleMatrix) matrix;
+				for (int i = 0; i < matrix.getRowCount(); ++i) {
+					m.getRow(i, impl.data, impl.getIndex(toprow + i, leftcolumn));
+				}
+			} else {
+				for (int i = 0; i < matrix.getRowCount(); ++i) {
+					for (int j = 0; j < matrix.getColumnCount(); ++j) {
+						impl.unsafe_set(toprow + i, leftcolumn + j, matrix.get(i, j));
+					}
 				}
 			}
 			changed = true;
@@ -186,9 +287,21 @@ public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
 
 		@Override public Builder set(Matrix<? extends Double> matrix) {
 			setShape(matrix);
-			for (int i = 0; i < matrix.getRowCount(); ++i) {
-				for (int j = 0; j < matrix.getColumnCount(); ++j) {
-					impl.unsafe_set(i, j, matrix.get(i, j));
+			detach(false);
+			if (matrix instanceof SimpleDenseMatrixOfDoubles) {
+				impl.set(((SimpleDenseMatrixOfDoubles) matrix).impl);
+			} else if (matrix instanceof SimpleBlockMatrix) {
+				((SimpleBlockMatrix<?, ?>) matrix).copyTo(impl.data, 0, impl.numCols);
+			} else if (matrix instanceof DoubleMatrix) {
+				DoubleMatrix m = (DoubleMatrix) matrix;
+				for (int i = 0; i < matrix.getRowCount(); ++i) {
+					m.getRow(i, impl.data, i * impl.numCols);
+				}
+			} else {
+				for (int i = 0; i < matrix.getRowCount(); ++i) {
+					for (int j = 0; j < matrix.getColumnCount(); ++j) {
+						impl.unsafe_set(i, j, matrix.get(i, j));
+					}
 				}
 			}
 			changed = true;
@@ -196,6 +309,7 @@ public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
 		}
 		
 		@Override public Builder setAll(Double value) {
+			detach(false);
 			for (int i = 0; i < impl.numRows; ++i) {
 				for (int j = 0; j < impl.numCols; ++j) {
 					impl.unsafe_set(i, j, value);
@@ -211,6 +325,7 @@ public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
 		}
 		
 		@Override public Builder setAll(Rectangle rect, Double value) {
+			detach(true);
 			for (int i = rect.getTopRow(), ilim = i + rect.getRowCount(); i < ilim; ++i) {
 				for (int j = rect.getLeftColumn(), jlim = j + rect.getColumnCount(); j < jlim; ++j) {
 					impl.unsafe_set(i, j, value);
@@ -221,31 +336,46 @@ public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
 		}
 
 		@Override public Builder scale(int row, int column, Double scalar) {
+			detach(true);
 			impl.unsafe_set(row, column, scalar * impl.get(row, column));
 			changed = true;
 			return this;
 		}
 
 		@Override public Builder scale(Double scalar) {
-			CommonOps.scale(scalar, impl);
+			detach(true);
+			DoubleKernels.get().scale(scalar, impl.data, impl.data, impl.getNumElements());
 			changed = true;
 			return this;
 		}
 
 		@Override public Builder add(int row, int column, Double value) {
+			detach(true);
+			impl.add(row, column, value);
+			changed = true;
+			return this;
+		}
+		
+		@Override public Builder addDouble(int row, int column, double value) {
+			detach(true);
 			impl.add(row, column, value);
 			changed = true;
 			return this;
 		}
 
 		@Override public Builder add(Matrix<? extends Double> matrix) {
+			detach(true);
 			if (matrix instanceof SimpleDenseMatrixOfDoubles) {
 				DenseMatrix64F m = ((SimpleDenseMatrixOfDoubles) matrix).impl;
-				CommonOps.addEquals(impl, m);
+				if (m.numRows == impl.numRows && m.numCols == impl.numCols) {
+					DoubleKernels.get().add(impl.data, m.data, impl.data, impl.getNumElements());
+				} else {
+					CommonOps.addEquals(impl, m);
+				}
 			} else {
 				for (int i = 0; i < matrix.getRowCount(); ++i) {
 					for (int j = 0; j < matrix.getColumnCount(); ++j) {
-						impl.add(i, j, matrix.get(i, j));
+						impl.add(i, j, MatrixUtils.getDouble(matrix, i, j));
 					}
 				}
 			}
@@ -254,21 +384,27 @@ public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
 		}
 
 		@Override public Builder addToDiagonal(Matrix<? extends Double> vector) {
+			detach(true);
 			for (int i = 0; i < Math.min(vector.getRowCount(), Math.min(impl.numRows, impl.numCols)); ++i) {
-				impl.add(i, i, vector.get(i, 0));
+				impl.add(i, i, MatrixUtils.getDouble(vector, i, 0));
 			}
 			changed = true;
 			return this;
 		}
 
 		@Override public Builder subtract(Matrix<? extends Double> matrix) {
+			detach(true);
 			if (matrix instanceof SimpleDenseMatrixOfDoubles) {
 				DenseMatrix64F m = ((SimpleDenseMatrixOfDoubles) matrix).impl;
-				CommonOps.subEquals(impl, m);
+				if (m.numRows == impl.numRows && m.numCols == impl.numCols) {
+					DoubleKernels.get().subtract(impl.data, m.data, impl.data, impl.getNumElements());
+				} else {
+					CommonOps.subEquals(impl, m);
+				}
 			} else {
 				for (int i = 0; i < matrix.getRowCount(); ++i) {
 					for (int j = 0; j < matrix.getColumnCount(); ++j) {
-						impl.add(i, j, -matrix.get(i, j));
+						impl.add(i, j, -MatrixUtils.getDouble(matrix, i, j));
 					}
 				}
 			}
@@ -278,31 +414,71 @@ public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
 
 		@Override public Builder mult(Matrix<? extends Double> leftmatrix, Matrix<? extends Double> rightmatrix) {
 			setShape(leftmatrix.getRowCount(), rightmatrix.getColumnCount());
+			detach(false);
 			DenseMatrix64F lm = MatrixUtils.toEJMLDenseMatrix64F(leftmatrix);
 			DenseMatrix64F rm = MatrixUtils.toEJMLDenseMatrix64F(rightmatrix);
-			try {
-				CommonOps.mult(lm, rm, impl);
-			} catch (MatrixDimensionException e) {
-				throw new RuntimeLinearException(new StringBuilder().append("Incompatible matrix dimensions for multiplication (lhs: ").append(lm.numRows).append(" x ").append(lm.numCols).append(", rhs: ").append(rm.numRows).append(" x ").append(rm.numCols).append(")").toString());
+			if (lm.numCols != rm.numRows) {
+				throw incompatibleDimensions(lm, rm);
+			}
+			if (Gemm.getMultiplyAddCount(lm.numRows, rm.numCols, lm.numCols) >= Gemm.getKernelThreshold()) {
+				Gemm.gemm(lm.numRows, rm.numCols, lm.numCols, 1.0, lm.data, 0, lm.numCols, rm.data, 0, rm.numCols, 0.0, impl.data, 0, impl.numCols);
+			} else {
+				try {
+					CommonOps.mult(lm, rm, impl);
+				} catch (MatrixDimensionException e) {
+					throw incompatibleDimensions(lm, rm);
+				}
 			}
 			changed = true;
 			return this;
 		}
 		
+		/**
+		 * Sets this matrix to alpha * leftmatrix * rightmatrix + beta * this matrix. When beta is zero the current
+		 * contents are ignored and the shape is set from the operands; otherwise the shape must already match.
+		 */
+		public Builder multAdd(double alpha, Matrix<? extends Double> leftmatrix, Matrix<? extends Double> rightmatrix, double beta) {
+			if (beta == 0.0) {
+				setShape(leftmatrix.getRowCount(), rightmatrix.getColumnCount());
+			}
+			detach(beta != 0.0);
+			DenseMatrix64F lm = MatrixUtils.toEJMLDenseMatrix64F(leftmatrix);
+			DenseMatrix64F rm = MatrixUtils.toEJMLDenseMatrix64F(rightmatrix);
+			if (lm.numCols != rm.numRows || lm.numRows != impl.numRows || rm.numCols != impl.numCols) {
+				throw incompatibleDimensions(lm, rm);
+			}
+			Gemm.gemm(lm.numRows, rm.numCols, lm.numCols, alpha, lm.data, 0, lm.numCols, rm.data, 0, rm.numCols, beta, impl.data, 0, impl.numCols);
+			changed = true;
+			return this;
+		}
+		
+		private RuntimeLinearException incompatibleDimensions(DenseMatrix64F lm, DenseMatrix64F rm) {
+			return new RuntimeLinearException(new StringBuilder().append("Incompatible matrix dimensions for multiplication (lhs: ").append(lm.numRows).append(" x ").append(lm.numCols).append(", rhs: ").append(rm.numRows).append(" x ").append(rm.numCols).append(", result: ").append(impl.numRows).append(" x ").append(impl.numCols).append(")").toString());
+		}
+		
 		@Override public Builder multByDiag(Matrix<? extends Double> diag) {
+			detach(true);
+			double[] d = new double[impl.numCols];
+			for (int j = 0; j < impl.numCols; ++j) {
+				d[j] = MatrixUtils.getDouble(diag, j, 0);
+			}
+			DoubleKernels kernels = DoubleKernels.get();
 			for (int i = 0; i < impl.numRows; ++i) {
-				for (int j = 0; j < impl.numCols; ++j) {
-					impl.unsafe_set(i, j, impl.unsafe_get(i, j) * diag.get(j, 0));
-				}
+				kernels.multiply(impl.data, i * impl.numCols, d, 0, impl.data, i * impl.numCols, impl.numCols);
 			}
 			changed = true;
 			return this;
 		}
 		
 		@Override public Builder multElementwise(Matrix<? extends Double> matrix) {
-			for (int i = 0; i < matrix.getRowCount(); ++i) {
-				for (int j = 0; j < matrix.getColumnCount(); ++j) {
-					impl.times(impl.getIndex(i, j), matrix.get(i, j));
+			detach(true);
+			if (matrix instanceof SimpleDenseMatrixOfDoubles && matrix.getRowCount() == impl.numRows && matrix.getColumnCount() == impl.numCols) {
+				DoubleKernels.get().multiply(impl.data, 0, ((SimpleDenseMatrixOfDoubles) matrix).impl.data, 0, impl.data, 0, impl.getNumElements());
+			} else {
+				for (int i = 0; i < matrix.getRowCount(); ++i) {
+					for (int j = 0; j < matrix.getColumnCount(); ++j) {
+						impl.times(impl.getIndex(i, j), MatrixUtils.getDouble(matrix, i, j));
+					}
 				}
 			}
 			changed = true;
@@ -310,6 +486,7 @@ public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
 		}
 
 		@Override public Builder invert() {
+			detach(true);
 			if (!CommonOps.invert(impl)) {
 				throw new RuntimeLinearException("Singular matrix");
 			}
@@ -317,9 +494,18 @@ public final class SimpleDenseMatrixOfDoubles extends AbstractMatrix<Double> {
 			return this;
 		}
 
+		/**
+		 * Hands the builder's storage over to the matrix instead of copying it; the builder copies it again only if it
+		 * is changed afterwards
+		 */
 		@Override public SimpleDenseMatrixOfDoubles build() {
 			if (changed) {
-				cached = new SimpleDenseMatrixOfDoubles(impl.copy());
+				if (impl.data.length != impl.getNumElements()) {
+					// Trim storage left over from a larger shape
+					impl = impl.copy();
+				}
+				cached = new SimpleDenseMatrixOfDoubles(impl);
+				shared = true;
 				changed = false;
 			}
 			return cached;
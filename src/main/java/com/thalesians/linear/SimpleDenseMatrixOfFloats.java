@@ -0,0 +1,450 @@
+package com.thalesians.linear;
+
+import java.util.Arrays;
+
+import org.ejml.data.DenseMatrix64F;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A dense row-major matrix of floats, for large matrices whose operations are bound by memory bandwidth and for which
+ * single precision is enough: it takes half the memory of a {@link SimpleDenseMatrixOfDoubles}, so twice as many
+ * elements go through the caches in the same time. Products and sums are computed in single precision; the Cholesky
+ * factorisation accumulates in double precision, and the determinant and inverse are computed in double precision and
+ * rounded. Conversions to and from the double precision types are explicit.
+ */
+public final class SimpleDenseMatrixOfFloats extends AbstractMatrix<Float> implements FloatMatrix {
+	final int rowcount;
+	final int columncount;
+	final float[] data;
+
+	/**
+	 * Only used to create builders, so it can be shared by all instances
+	 */
+	static final Builder resultBuilderPrototype = new Builder();
+
+	SimpleDenseMatrixOfFloats(int rowcount, int columncount, float[] data) {
+		super(resultBuilderPrototype);
+		this.rowcount = rowcount;
+		this.columncount = columncount;
+		this.data = data;
+	}
+
+	public static SimpleDenseMatrixOfFloats of(float[][] data) {
+		int rc = data.length, cc = rc == 0 ? 0 : data[0].length;
+		float[] d = new float[rc * cc];
+		for (int i = 0; i < rc; ++i) {
+			Preconditions.checkArgument(data[i].length == cc, "Row %s has %s columns, expected %s", i, data[i].length, cc);
+			System.arraycopy(data[i], 0, d, i * cc, cc);
+		}
+		return new SimpleDenseMatrixOfFloats(rc, cc, d);
+	}
+
+	public static SimpleDenseMatrixOfFloats identity(int dimensioncount) {
+		return builder(dimensioncount, dimensioncount).setToIdentity().build();
+	}
+
+	public static SimpleDenseMatrixOfFloats zero(int rowcount, int columncount) {
+		return builder(rowcount, columncount).build();
+	}
+
+	public static SimpleDenseMatrixOfFloats copyOf(Matrix<Float> matrix) {
+		if (matrix == null) { return null; }
+		return builderFromCopy(matrix).build();
+	}
+
+	/**
+	 * Rounds every element of a double valued matrix to the nearest float
+	 */
+	public static SimpleDenseMatrixOfFloats copyOfDoubles(Matrix<? extends Double> matrix) {
+		int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
+		float[] d = new float[rc * cc];
+		if (matrix instanceof SimpleDenseMatrixOfDoubles) {
+			double[] source = ((SimpleDenseMatrixOfDoubles) matrix).impl.data;
+			for (int k = 0; k < d.length; ++k) {
+				d[k] = (float) source[k];
+			}
+		} else {
+			for (int i = 0; i < rc; ++i) {
+				for (int j = 0; j < cc; ++j) {
+					d[i * cc + j] = (float) MatrixUtils.getDouble(matrix, i, j);
+				}
+			}
+		}
+		return new SimpleDenseMatrixOfFloats(rc, cc, d);
+	}
+
+	/**
+	 * Widens every element to a double, which is exact
+	 */
+	public SimpleDenseMatrixOfDoubles toDoubles() {
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(rowcount, columncount, toDoubleArray()));
+	}
+
+	private double[] toDoubleArray() {
+		double[] result = new double[rowcount * columncount];
+		for (int k = 0; k < result.length; ++k) {
+			result[k] = data[k];
+		}
+		return result;
+	}
+
+	@Override public Float get(int row, int column) {
+		return getFloat(row, column);
+	}
+
+	@Override public float getFloat(int row, int column) {
+		Preconditions.checkElementIndex(row, rowcount, "row");
+		Preconditions.checkElementIndex(column, columncount, "column");
+		return data[row * columncount + column];
+	}
+
+	@Override public void getRow(int row, float[] dest, int offset) {
+		System.arraycopy(data, row * columncount, dest, offset, columncount);
+	}
+
+	@Override public Matrix<Float> get(Rectangle rect) {
+		int rc = rect.getRowCount(), cc = rect.getColumnCount();
+		float[] result = new float[rc * cc];
+		for (int i = 0; i < rc; ++i) {
+			System.arraycopy(data, (rect.getTopRow() + i) * columncount + rect.getLeftColumn(), result, i * cc, cc);
+		}
+		return new SimpleDenseMatrixOfFloats(rc, cc, result);
+	}
+
+	@Override public int getRowCount() {
+		return rowcount;
+	}
+
+	@Override public int getColumnCount() {
+		return columncount;
+	}
+
+	/**
+	 * Multiplying by the own transpose gives a symmetric matrix, of which only the lower triangle is computed
+	 */
+	@Override public Matrix<Float> mult(Matrix<Float> matrix) {
+		if (matrix instanceof SimpleTransposeView && matrix.transpose() == this) {
+			return SimpleSymmetricMatrixOfFloats.selfTimesTranspose(this);
+		} else {
+			return super.mult(matrix);
+		}
+	}
+
+	/**
+	 * Computed in double precision and rounded
+	 */
+	@Override public Float determinant() {
+		return (float) MatrixFactorisation.of(DenseMatrix64F.wrap(rowcount, columncount, toDoubleArray())).determinant();
+	}
+
+	/**
+	 * The lower triangular Cholesky factor L, with this = L * L^T, of a symmetric positive definite matrix, of which
+	 * only the lower triangle is read
+	 *
+	 * @throws LinearException if the matrix is not positive definite
+	 */
+	public SimpleDenseMatrixOfFloats cholesky() throws LinearException {
+		Preconditions.checkArgument(rowcount == columncount, "Only square matrices can be Cholesky decomposed");
+		return SimpleSymmetricMatrixOfFloats.fromLower(this).cholesky();
+	}
+
+	@Override public boolean equals(Object obj) {
+		if (obj == null) return false;
+		if (obj == this) return true;
+		if (obj.getClass() != getClass()) return false;
+		SimpleDenseMatrixOfFloats rhs = (SimpleDenseMatrixOfFloats) obj;
+		return rowcount == rhs.rowcount && columncount == rhs.columncount && Arrays.equals(data, rhs.data);
+	}
+
+	@Override public int hashCode() {
+		return 31 * (31 * rowcount + columncount) + Arrays.hashCode(data);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static Builder builder(int rowcount, int columncount) {
+		return (new Builder()).setShape(rowcount, columncount);
+	}
+
+	public static Builder builderFromCopy(Matrix<? extends Float> matrix) {
+		return (new Builder()).set(matrix);
+	}
+
+	/**
+	 * The row-major elements of the matrix, without copying them if it is dense
+	 */
+	static float[] toArray(Matrix<? extends Float> matrix) {
+		if (matrix instanceof SimpleDenseMatrixOfFloats) {
+			return ((SimpleDenseMatrixOfFloats) matrix).data;
+		}
+		int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
+		float[] result = new float[rc * cc];
+		for (int i = 0; i < rc; ++i) {
+			if (matrix instanceof FloatMatrix) {
+				((FloatMatrix) matrix).getRow(i, result, i * cc);
+			} else {
+				for (int j = 0; j < cc; ++j) {
+					result[i * cc + j] = matrix.get(i, j);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Copy-on-write in the same way as the builder of {@link SimpleDenseMatrixOfDoubles}: build() hands the storage over
+	 * to the matrix, and the builder copies it again only if it is changed afterwards
+	 */
+	public static class Builder implements FloatMatrixBuilder {
+
+		private int rowcount = 1;
+		private int columncount = 1;
+		private float[] impl = new float[1];
+		private boolean changed = true;
+		private SimpleDenseMatrixOfFloats cached = null;
+		/** Whether impl is also the storage of the cached matrix, and must be copied before it is changed */
+		private boolean shared = false;
+
+		private Builder() { }
+
+		@Override public Builder newBuilder() {
+			return new Builder();
+		}
+
+		@Override public Float get(int row, int column) {
+			return impl[row * columncount + column];
+		}
+
+		@Override public float getFloat(int row, int column) {
+			return impl[row * columncount + column];
+		}
+
+		@Override public Builder setShape(int rowcount, int columncount) {
+			Preconditions.checkArgument(rowcount >= 0 && columncount >= 0);
+			if (this.rowcount != rowcount || this.columncount != columncount) {
+				if (shared || impl.length < rowcount * columncount) {
+					impl = new float[rowcount * columncount];
+					shared = false;
+				}
+				this.rowcount = rowcount;
+				this.columncount = columncount;
+				changed = true;
+			}
+			return this;
+		}
+
+		/**
+		 * Gives the builder storage of its own before it is changed, if the last matrix built still uses its storage
+		 */
+		private void detach(boolean keepvalues) {
+			if (shared) {
+				impl = keepvalues ? impl.clone() : new float[impl.length];
+				shared = false;
+			}
+		}
+
+		@Override public Builder setShape(Matrix<?> matrix) {
+			return setShape(matrix.getRowCount(), matrix.getColumnCount());
+		}
+
+		@Override public Builder setToIdentity() {
+			detach(false);
+			Arrays.fill(impl, 0, rowcount * columncount, 0.0f);
+			for (int i = 0, n = Math.min(rowcount, columncount); i < n; ++i) {
+				impl[i * columncount + i] = 1.0f;
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder set(int row, int column, Float value) {
+			return setFloat(row, column, value);
+		}
+
+		@Override public Builder setFloat(int row, int column, float value) {
+			detach(true);
+			impl[row * columncount + column] = value;
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder set(int toprow, int leftcolumn, Matrix<? extends Float> matrix) {
+			detach(true);
+			int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
+			for (int i = 0; i < rc; ++i) {
+				int offset = (toprow + i) * columncount + leftcolumn;
+				if (matrix instanceof FloatMatrix) {
+					((FloatMatrix) matrix).getRow(i, impl, offset);
+				} else {
+					for (int j = 0; j < cc; ++j) {
+						impl[offset + j] = matrix.get(i, j);
+					}
+				}
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder set(Matrix<? extends Float> matrix) {
+			setShape(matrix);
+			detach(false);
+			return set(0, 0, matrix);
+		}
+
+		@Override public Builder setAll(Float value) {
+			detach(false);
+			Arrays.fill(impl, 0, rowcount * columncount, value);
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder setAll(Rectangle rect, Float value) {
+			detach(true);
+			for (int i = rect.getTopRow(), ilim = i + rect.getRowCount(); i < ilim; ++i) {
+				int offset = i * columncount + rect.getLeftColumn();
+				Arrays.fill(impl, offset, offset + rect.getColumnCount(), value);
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder scale(int row, int column, Float scalar) {
+			detach(true);
+			impl[row * columncount + column] *= scalar;
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder scale(Float scalar) {
+			detach(true);
+			float s = scalar;
+			for (int k = 0, length = rowcount * columncount; k < length; ++k) {
+				impl[k] *= s;
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder add(int row, int column, Float value) {
+			return addFloat(row, column, value);
+		}
+
+		@Override public Builder addFloat(int row, int column, float value) {
+			detach(true);
+			impl[row * columncount + column] += value;
+			changed = true;
+			return this;
+		}
+
+		private void addScaled(float alpha, Matrix<? extends Float> matrix) {
+			Preconditions.checkArgument(matrix.getRowCount() == rowcount && matrix.getColumnCount() == columncount,
+					"Incompatible matrix dimensions (%s x %s and %s x %s)", rowcount, columncount, matrix.getRowCount(), matrix.getColumnCount());
+			detach(true);
+			if (matrix instanceof SimpleDenseMatrixOfFloats) {
+				float[] m = ((SimpleDenseMatrixOfFloats) matrix).data;
+				for (int k = 0, length = rowcount * columncount; k < length; ++k) {
+					impl[k] += alpha * m[k];
+				}
+			} else {
+				for (int i = 0; i < rowcount; ++i) {
+					for (int j = 0; j < columncount; ++j) {
+						impl[i * columncount + j] += alpha * MatrixUtils.getFloat(matrix, i, j);
+					}
+				}
+			}
+			changed = true;
+		}
+
+		@Override public Builder add(Matrix<? extends Float> matrix) {
+			addScaled(1.0f, matrix);
+			return this;
+		}
+
+		@Override public Builder addToDiagonal(Matrix<? extends Float> vector) {
+			detach(true);
+			for (int i = 0; i < Math.min(vector.getRowCount(), Math.min(rowcount, columncount)); ++i) {
+				impl[i * columncount + i] += MatrixUtils.getFloat(vector, i, 0);
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder subtract(Matrix<? extends Float> matrix) {
+			addScaled(-1.0f, matrix);
+			return this;
+		}
+
+		@Override public Builder mult(Matrix<? extends Float> leftmatrix, Matrix<? extends Float> rightmatrix) {
+			int m = leftmatrix.getRowCount(), k = leftmatrix.getColumnCount(), n = rightmatrix.getColumnCount();
+			if (rightmatrix.getRowCount() != k) {
+				throw new RuntimeLinearException("Incompatible matrix dimensions for multiplication (lhs: " + m + " x " + k + ", rhs: " + rightmatrix.getRowCount() + " x " + n + ")");
+			}
+			float[] a = toArray(leftmatrix), b = toArray(rightmatrix);
+			setShape(m, n);
+			// An operand built from this builder still shares its storage, so this also keeps the result apart from it
+			detach(false);
+			Gemm.gemm(m, n, k, 1.0f, a, 0, k, b, 0, n, 0.0f, impl, 0, n);
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder multByDiag(Matrix<? extends Float> diag) {
+			detach(true);
+			float[] d = new float[columncount];
+			for (int j = 0; j < columncount; ++j) {
+				d[j] = MatrixUtils.getFloat(diag, j, 0);
+			}
+			for (int i = 0; i < rowcount; ++i) {
+				for (int j = 0; j < columncount; ++j) {
+					impl[i * columncount + j] *= d[j];
+				}
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder multElementwise(Matrix<? extends Float> matrix) {
+			detach(true);
+			for (int i = 0; i < matrix.getRowCount(); ++i) {
+				for (int j = 0; j < matrix.getColumnCount(); ++j) {
+					impl[i * columncount + j] *= MatrixUtils.getFloat(matrix, i, j);
+				}
+			}
+			changed = true;
+			return this;
+		}
+
+		/**
+		 * Inverts in double precision and rounds the result
+		 */
+		@Override public Builder invert() {
+			double[] d = new double[rowcount * columncount];
+			for (int k = 0; k < d.length; ++k) {
+				d[k] = impl[k];
+			}
+			double[] inverse = MatrixFactorisation.of(DenseMatrix64F.wrap(rowcount, columncount, d)).inverse().impl.data;
+			detach(false);
+			for (int k = 0; k < inverse.length; ++k) {
+				impl[k] = (float) inverse[k];
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public SimpleDenseMatrixOfFloats build() {
+			if (changed) {
+				if (impl.length != rowcount * columncount) {
+					// Trim storage left over from a larger shape
+					impl = Arrays.copyOf(impl, rowcount * columncount);
+				}
+				cached = new SimpleDenseMatrixOfFloats(rowcount, columncount, impl);
+				shared = true;
+				changed = false;
+			}
+			return cached;
+		}
+	}
+}
@@ -57,6 +57,11 @@ public final class SimpleMatrix<T> extends AbstractMatrix<T> {
 		private boolean changed = true;
 		private Matrix<U> cached = null;
 		
+		@Override
+		public Builder<U> newBuilder() {
+			return new Builder<U>();
+		}
+		
 		@Override
 		public U get(int row, int column) {
 			return impl.get(row).get(column);
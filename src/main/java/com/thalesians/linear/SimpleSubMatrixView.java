@@ -1,6 +1,6 @@
 package com.thalesians.linear;
 
-public final class SimpleSubMatrixView<T> extends AbstractMatrix<T> {
+public final class SimpleSubMatrixView<T> extends AbstractMatrix<T> implements DoubleMatrix {
 	private final Matrix<T> matrix;
 
 	private final Rectangle rect;
@@ -19,10 +19,14 @@ public final class SimpleSubMatrixView<T> extends AbstractMatrix<T> {
 		return matrix.get(rect.getTopRow() + row, rect.getLeftColumn() + column);
 	}
 	
+	@Override public double getDouble(int row, int column) {
+		return MatrixUtils.getDoubleUnchecked(matrix, rect.getTopRow() + row, rect.getLeftColumn() + column);
+	}
+	
 	@Override public Matrix<T> get(Rectangle rect) {
 		return of(matrix, SimpleRectangle.create(
 				this.rect.getTopRow() + rect.getTopRow(), this.rect.getLeftColumn() + rect.getLeftColumn(),
-				rect.getRowCount(), rect.getColumnCount()), getResultBuilder());
+				rect.getRowCount(), rect.getColumnCount()), getResultBuilderPrototype());
 	}
 	
 	@Override public int getRowCount() {
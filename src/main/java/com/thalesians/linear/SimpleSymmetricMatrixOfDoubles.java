@@ -2,15 +2,21 @@ package com.thalesians.linear;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import org.ejml.data.DenseMatrix64F;
+
 import com.google.common.base.Preconditions;
 
-public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double> implements SymmetricMatrix<Double> {
+public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double> implements SymmetricMatrix<Double>, DoubleMatrix {
 	protected final int rowcount;
 	protected final double[] data;
 	protected final double scale;
 	
+	/** Computed on first use; racing threads may both compute them, but either result is correct */
+	private volatile PackedFactor factor;
+	private volatile SimpleSymmetricMatrixOfDoubles inverse;
+	
 	protected SimpleSymmetricMatrixOfDoubles(int rowcount, double[] data, double scale) {
-		super(SimpleDenseMatrixOfDoubles.builder());
+		super(SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
 		this.rowcount = rowcount;
 		this.data = Preconditions.checkNotNull(data);
 		this.scale = scale;
@@ -25,13 +31,13 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 	}
 	
 	protected SimpleSymmetricMatrixOfDoubles(Matrix<Double> matrix) {
-		super(SimpleDenseMatrixOfDoubles.builder());
+		super(SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
 		this.rowcount = matrix.getRowCount();
 		this.data = new double[getDataLength(rowcount)];
 		this.scale = 1.0;
 		for (int i = 0; i < matrix.getRowCount(); ++i) {
 			for (int j = 0; j <= i; ++j) {
-				data[getDataIndex(i, j)] = matrix.get(i, j);
+				data[getDataIndex(i, j)] = MatrixUtils.getDouble(matrix, i, j);
 			}
 		}
 	}
@@ -64,6 +70,21 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		return create(dimcount, Double.NaN);
 	}
 	
+	/**
+	 * Computes X^T * X (e.g. the scatter matrix of the observations in the rows of X) without computing its upper
+	 * triangle
+	 */
+	public static SimpleSymmetricMatrixOfDoubles transposeTimesSelf(Matrix<? extends Double> x) {
+		return builder().setToTransposeTimesSelf(x).build();
+	}
+	
+	/**
+	 * Computes X * X^T without computing its upper triangle
+	 */
+	public static SimpleSymmetricMatrixOfDoubles selfTimesTranspose(Matrix<? extends Double> x) {
+		return builder().setToSelfTimesTranspose(x).build();
+	}
+	
 	public static SimpleSymmetricMatrixOfDoubles fromLower(Matrix<Double> matrix) {
 		if (matrix instanceof SimpleSymmetricMatrixOfDoubles) {
 			return new SimpleSymmetricMatrixOfDoubles((SimpleSymmetricMatrixOfDoubles) matrix);
@@ -84,6 +105,27 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		return scale * data[getDataIndex(row, column)];
 	}
 	
+	@Override public double getDouble(int row, int column) {
+		return scale * data[getDataIndex(row, column)];
+	}
+	
+	@Override public void getRow(int row, double[] dest, int offset) {
+		// The lower part of the row is contiguous in the packed data, the upper part is read down the column
+		int dataindex = getDataIndex(row, 0);
+		for (int j = 0; j <= row; ++j) {
+			dest[offset + j] = scale * data[dataindex++];
+		}
+		dataindex += row;
+		for (int j = row + 1; j < rowcount; ++j) {
+			dest[offset + j] = scale * data[dataindex];
+			dataindex += j + 1;
+		}
+	}
+	
+	@Override public void getColumn(int column, double[] dest, int offset) {
+		getRow(column, dest, offset);
+	}
+	
 	@Override public int getRowCount() {
 		return rowcount;
 	}
@@ -116,8 +158,143 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		}		
 	}
 	
+	/**
+	 * A copy of the packed data with the scale applied, for the factorisations to overwrite
+	 */
+	double[] getScaledData() {
+		double[] result = data.clone();
+		if (scale != 1.0) {
+			for (int i = 0; i < result.length; ++i) {
+				result[i] *= scale;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * The packed Cholesky factor of a positive definite matrix, or the packed Bunch-Kaufman factorisation of an
+	 * indefinite one. Only a singular matrix is copied into a dense matrix, whose memoised LU factorisation then reports
+	 * the singularity in the same way as for any other dense matrix.
+	 */
+	private static final class PackedFactor {
+		/** Null if the matrix is not positive definite */
+		final double[] cholesky;
+		/** Null unless the matrix is indefinite and not singular */
+		final double[] bunchkaufman;
+		final int[] pivots;
+		/** Null unless the matrix is singular */
+		final SimpleDenseMatrixOfDoubles dense;
+		
+		PackedFactor(double[] cholesky, double[] bunchkaufman, int[] pivots, SimpleDenseMatrixOfDoubles dense) {
+			this.cholesky = cholesky;
+			this.bunchkaufman = bunchkaufman;
+			this.pivots = pivots;
+			this.dense = dense;
+		}
+	}
+	
+	/**
+	 * Factorises the matrix once, for the determinant, log-determinant, solves and inverse to share
+	 */
+	private PackedFactor getFactor() {
+		PackedFactor result = factor;
+		if (result == null) {
+			double[] data = getScaledData();
+			int[] pivots = new int[rowcount];
+			if (PackedCholesky.decompose(data, rowcount)) {
+				result = new PackedFactor(data, null, null, null);
+			} else if (PackedCholesky.decomposeBunchKaufman(data = getScaledData(), rowcount, pivots)) {
+				result = new PackedFactor(null, data, pivots, null);
+			} else {
+				result = new PackedFactor(null, null, null, SimpleDenseMatrixOfDoubles.builderFromCopy(this).build());
+			}
+			factor = result;
+		}
+		return result;
+	}
+	
+	/**
+	 * The packed Cholesky factor, or null if the matrix is not positive definite; not to be modified
+	 */
+	double[] getCholeskyFactor() {
+		return getFactor().cholesky;
+	}
+	
+	/**
+	 * Computed from the packed Cholesky factor, or from the Bunch-Kaufman factorisation if the matrix is not positive
+	 * definite
+	 */
 	@Override public Double determinant() {
-		return SimpleDenseMatrixOfDoubles.builderFromCopy(this).build().determinant();
+		PackedFactor factor = getFactor();
+		if (factor.dense != null) {
+			return factor.dense.determinant();
+		} else if (factor.bunchkaufman != null) {
+			return PackedCholesky.determinantBunchKaufman(factor.bunchkaufman, rowcount, factor.pivots);
+		}
+		return PackedCholesky.determinant(factor.cholesky, rowcount);
+	}
+	
+	/**
+	 * The log of the determinant, which does not overflow or underflow for large matrices the way the determinant does.
+	 * NaN if the determinant is negative and negative infinity if it is zero.
+	 */
+	public double logDeterminant() {
+		PackedFactor factor = getFactor();
+		if (factor.dense != null) {
+			return factor.dense.logDeterminant();
+		} else if (factor.bunchkaufman != null) {
+			return PackedCholesky.logDeterminantBunchKaufman(factor.bunchkaufman, rowcount, factor.pivots);
+		}
+		return PackedCholesky.logDeterminant(factor.cholesky, rowcount);
+	}
+	
+	/**
+	 * Solves this * X = B for X, column by column, with the packed Cholesky factor, or with the Bunch-Kaufman
+	 * factorisation if the matrix is not positive definite
+	 */
+	public Matrix<Double> solve(Matrix<? extends Double> b) {
+		checkArgument(b.getRowCount() == rowcount, "The right-hand side has %s rows, expected %s", b.getRowCount(), rowcount);
+		PackedFactor factor = getFactor();
+		if (factor.dense != null) {
+			return factor.dense.solve(b);
+		}
+		int columncount = b.getColumnCount();
+		SimpleDenseMatrixOfDoubles.Builder resultbuilder = SimpleDenseMatrixOfDoubles.builder(rowcount, columncount);
+		double[] column = new double[rowcount];
+		for (int j = 0; j < columncount; ++j) {
+			for (int i = 0; i < rowcount; ++i) {
+				column[i] = MatrixUtils.getDouble(b, i, j);
+			}
+			if (factor.cholesky != null) {
+				PackedCholesky.solve(factor.cholesky, rowcount, column);
+			} else {
+				PackedCholesky.solveBunchKaufman(factor.bunchkaufman, rowcount, factor.pivots, column);
+			}
+			for (int i = 0; i < rowcount; ++i) {
+				resultbuilder.setDouble(i, j, column[i]);
+			}
+		}
+		return resultbuilder.build();
+	}
+	
+	/**
+	 * Inverts in packed storage through the shared Cholesky factor, or through the Bunch-Kaufman factorisation if the
+	 * matrix is not positive definite
+	 */
+	@Override public Matrix<Double> invert() {
+		SimpleSymmetricMatrixOfDoubles result = inverse;
+		if (result == null) {
+			PackedFactor factor = getFactor();
+			if (factor.dense != null) {
+				result = fromLower(factor.dense.invert());
+			} else if (factor.bunchkaufman != null) {
+				result = new SimpleSymmetricMatrixOfDoubles(rowcount, PackedCholesky.invertBunchKaufman(factor.bunchkaufman, rowcount, factor.pivots));
+			} else {
+				result = new SimpleSymmetricMatrixOfDoubles(rowcount, PackedCholesky.invert(factor.cholesky.clone(), rowcount));
+			}
+			inverse = result;
+		}
+		return result;
 	}
 	
 	public static Builder builder() {
@@ -136,26 +313,47 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		return new Builder().setFromUpper(matrix);
 	}
 	
-	public static class Builder implements MatrixBuilder<Double> {
+	public static class Builder implements DoubleMatrixBuilder {
 		
 		private int rowcount;
 		private double[] impl;
 		private boolean changed = true;
 		private SimpleSymmetricMatrixOfDoubles cached = null;
+		/** Whether impl is also the storage of the cached matrix, and must be copied before it is changed */
+		private boolean shared = false;
+		
+		@Override public Builder newBuilder() {
+			return new Builder();
+		}
 		
 		@Override
 		public Double get(int row, int column) {
 			return impl[getDataIndex(row, column)];
 		}
 		
+		@Override public double getDouble(int row, int column) {
+			return impl[getDataIndex(row, column)];
+		}
+		
 		@Override public Builder setShape(int rowcount, int columncount) {
 			checkArgument(rowcount == columncount);
 			this.rowcount = rowcount;
 			this.impl = new double[getDataLength(rowcount)];
+			this.shared = false;
 			this.changed = true;
 			return this;
 		}
 		
+		/**
+		 * Gives the builder storage of its own before it is changed, if the last matrix built still uses its storage
+		 */
+		private void detach(boolean keepvalues) {
+			if (shared) {
+				impl = keepvalues ? impl.clone() : new double[impl.length];
+				shared = false;
+			}
+		}
+		
 		public Builder setShape(int dimcount) {
 			return setShape(dimcount, dimcount);
 		}
@@ -165,27 +363,37 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		}
 		
 		@Override public Builder setToIdentity() {
+			detach(false);
 			int dataindex = 0;
 			for (int i = 0; i < rowcount; ++i) {
 				for (int j = 0; j < i; ++j) {
 					impl[dataindex++] = 0.0;
 				}
-				impl[dataindex] = 1.0;
+				impl[dataindex++] = 1.0;
 			}
 			changed = true;
 			return this;
 		}
 		
 		@Override public Builder set(int row, int column, Double value) {
+			detach(true);
+			impl[getDataIndex(row, column)] = value;
+			changed = true;
+			return this;
+		}
+		
+		@Override public Builder setDouble(int row, int column, double value) {
+			detach(true);
 			impl[getDataIndex(row, column)] = value;
 			changed = true;
 			return this;
 		}
 		
 		@Override public Builder set(int toprow, int leftcolumn, Matrix<? extends Double> matrix) {
+			detach(true);
 			for (int i = 0; i < matrix.getRowCount(); ++i) {
 				for (int j = 0; j <= i; ++j) {
-					set(toprow + i, leftcolumn + j, matrix.get(i, j));
+					setDouble(toprow + i, leftcolumn + j, MatrixUtils.getDouble(matrix, i, j));
 				}
 			}
 			changed = true;
@@ -194,9 +402,17 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		
 		public Builder setFromLower(Matrix<? extends Double> matrix) {
 			setShape(matrix);
-			for (int i = 0; i < matrix.getRowCount(); ++i) {
-				for (int j = 0; j <= i; ++j) {
-					set(i, j, matrix.get(i, j));
+			if (matrix instanceof SimpleSymmetricMatrixOfDoubles) {
+				SimpleSymmetricMatrixOfDoubles m = (SimpleSymmetricMatrixOfDoubles) matrix;
+				for (int i = 0; i < impl.length; ++i) {
+					impl[i] = m.scale * m.data[i];
+				}
+			} else {
+				int dataindex = 0;
+				for (int i = 0; i < matrix.getRowCount(); ++i) {
+					for (int j = 0; j <= i; ++j) {
+						impl[dataindex++] = MatrixUtils.getDouble(matrix, i, j);
+					}
 				}
 			}
 			changed = true;
@@ -207,7 +423,7 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 			setShape(matrix);
 			for (int i = 0; i < matrix.getRowCount(); ++i) {
 				for (int j = 0; j <= i; ++j) {
-					set(i, j, matrix.get(j, i));
+					impl[getDataIndex(i, j)] = MatrixUtils.getDouble(matrix, j, i);
 				}
 			}
 			changed = true;
@@ -221,6 +437,7 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		}
 		
 		@Override public Builder setAll(Double value) {
+			detach(false);
 			for (int i = 0; i < impl.length; ++i) {
 				impl[i] = value;
 			}
@@ -229,6 +446,7 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		}
 		
 		@Override public Builder setAll(Rectangle rect, Double value) {
+			detach(true);
 			for (int i = rect.getTopRow(), ilim = i + rect.getRowCount(); i < ilim; ++i) {
 				for (int j = rect.getLeftColumn(), jlim = j + rect.getColumnCount(); j < jlim; ++j) {
 					impl[getDataIndex(i, j)] = value;
@@ -239,12 +457,14 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		}
 		
 		@Override public Builder scale(int row, int column, Double value) {
+			detach(true);
 			impl[getDataIndex(row, column)] *= value;
 			changed = true;
 			return this;
 		}
 		
 		@Override public Builder scale(Double scalar) {
+			detach(true);
 			for (int i = 0; i < impl.length; ++i) {
 				impl[i] *= scalar;
 			}
@@ -253,15 +473,24 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		}
 		
 		@Override public Builder add(int row, int column, Double value) {
+			detach(true);
+			impl[getDataIndex(row, column)] += value;
+			changed = true;
+			return this;
+		}
+		
+		@Override public Builder addDouble(int row, int column, double value) {
+			detach(true);
 			impl[getDataIndex(row, column)] += value;
 			changed = true;
 			return this;
 		}
 		
 		@Override public Builder add(Matrix<? extends Double> matrix) {
+			detach(true);
 			for (int i = 0; i < matrix.getRowCount(); ++i) {
 				for (int j = 0; j <= i; ++j) {
-					impl[getDataIndex(i, j)] += matrix.get(i, j);
+					impl[getDataIndex(i, j)] += MatrixUtils.getDouble(matrix, i, j);
 				}
 			}
 			changed = true;
@@ -269,31 +498,64 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		}
 		
 		@Override public Builder addToDiagonal(Matrix<? extends Double> vector) {
+			detach(true);
 			for (int i = 0; i < rowcount; ++i) {
-				impl[getDataIndex(i, i)] = vector.get(i, 0);
+				impl[getDataIndex(i, i)] = MatrixUtils.getDouble(vector, i, 0);
 			}
 			changed = true;
 			return this;
 		}
 
 		@Override public Builder subtract(Matrix<? extends Double> matrix) {
+			detach(true);
 			for (int i = 0; i < matrix.getRowCount(); ++i) {
 				for (int j = 0; j <= i; ++j) {
-					impl[getDataIndex(i, j)] -= matrix.get(i, j);
+					impl[getDataIndex(i, j)] -= MatrixUtils.getDouble(matrix, i, j);
 				}
 			}
 			changed = true;
 			return this;
 		}
 		
+		/**
+		 * Only products that are known to be symmetric are supported: X^T * X and X * X^T, where the transpose is the
+		 * one returned by X.transpose(), and A * A for a symmetric A
+		 */
 		@Override public Builder mult(Matrix<? extends Double> leftmatrix, Matrix<? extends Double> rightmatrix) {
-			throw new UnsupportedOperationException("The symmetric matrix builder does not support matrix multiplication");
+			if (leftmatrix instanceof SimpleTransposeView && leftmatrix.transpose() == rightmatrix) {
+				return setToTransposeTimesSelf(rightmatrix);
+			} else if (rightmatrix instanceof SimpleTransposeView && rightmatrix.transpose() == leftmatrix) {
+				return setToSelfTimesTranspose(leftmatrix);
+			} else if (leftmatrix == rightmatrix && leftmatrix instanceof SymmetricMatrix) {
+				return setToTransposeTimesSelf(leftmatrix);
+			} else {
+				throw new UnsupportedOperationException("The symmetric matrix builder only supports the multiplication of a matrix by its own transpose");
+			}
+		}
+		
+		public Builder setToTransposeTimesSelf(Matrix<? extends Double> x) {
+			DenseMatrix64F dx = MatrixUtils.toEJMLDenseMatrix64F(x);
+			rowcount = dx.numCols;
+			impl = SymmetricRankK.transposeTimesSelf(dx.numRows, dx.numCols, 1.0, dx.data);
+			shared = false;
+			changed = true;
+			return this;
+		}
+		
+		public Builder setToSelfTimesTranspose(Matrix<? extends Double> x) {
+			DenseMatrix64F dx = MatrixUtils.toEJMLDenseMatrix64F(x);
+			rowcount = dx.numRows;
+			impl = SymmetricRankK.selfTimesTranspose(dx.numRows, dx.numCols, 1.0, dx.data);
+			shared = false;
+			changed = true;
+			return this;
 		}
 		
 		@Override public Builder multByDiag(Matrix<? extends Double> diag) {
+			detach(true);
 			for (int i = 0; i < rowcount; ++i) {
 				for (int j = 0; j <= i; ++j) {
-					impl[getDataIndex(i, j)] *= diag.get(j, 0);
+					impl[getDataIndex(i, j)] *= MatrixUtils.getDouble(diag, j, 0);
 				}
 			}
 			changed = true;
@@ -301,12 +563,13 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 		}
 		
 		@Override public Builder multElementwise(Matrix<? extends Double> matrix) {
+			detach(true);
 			if (!MatrixUtils.isSymmetric(matrix)) {
 				throw new UnsupportedOperationException("The symmetric matrix builder does not support elementwise multiplication by a nonsymmetric matrix");
 			} else {
 				for (int i = 0; i < rowcount; ++i) {
 					for (int j = 0; j <= i; ++j) {
-						impl[getDataIndex(i, j)] *= matrix.get(i, j);
+						impl[getDataIndex(i, j)] *= MatrixUtils.getDouble(matrix, i, j);
 					}
 				}
 			}
@@ -314,16 +577,34 @@ public final class SimpleSymmetricMatrixOfDoubles extends AbstractMatrix<Double>
 			return this;
 		}
 		
+		/**
+		 * Inverts in packed storage through the Cholesky factor, or through the Bunch-Kaufman factorisation if the
+		 * matrix is not positive definite
+		 */
 		@Override public Builder invert() {
-			// TODO this can be done more efficiently
-			setFromLower(SimpleDenseMatrixOfDoubles.builderFromCopy(build()).invert().build());
+			double[] factor = impl.clone();
+			int[] pivots = new int[rowcount];
+			if (PackedCholesky.decompose(factor, rowcount)) {
+				impl = PackedCholesky.invert(factor, rowcount);
+				shared = false;
+			} else if (PackedCholesky.decomposeBunchKaufman(factor = impl.clone(), rowcount, pivots)) {
+				impl = PackedCholesky.invertBunchKaufman(factor, rowcount, pivots);
+				shared = false;
+			} else {
+				setFromLower(SimpleDenseMatrixOfDoubles.builderFromCopy(build()).invert().build());
+			}
 			changed = true;
 			return this;
 		}
 		
+		/**
+		 * Hands the builder's storage over to the matrix instead of copying it; the builder copies it again only if it
+		 * is changed afterwards
+		 */
 		@Override public SimpleSymmetricMatrixOfDoubles build() {
 			if (changed) {
 				cached = new SimpleSymmetricMatrixOfDoubles(rowcount, impl);
+				shared = true;
 				changed = false;
 			}
 			return cached;
@@ -0,0 +1,488 @@
+package com.thalesians.linear;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A symmetric matrix of floats in the packed lower triangular layout of {@link SimpleSymmetricMatrixOfDoubles}, for
+ * large covariance and correlation matrices that only need single precision. The Cholesky factorisation accumulates in
+ * double precision; the determinant and inverse are computed in double precision and rounded.
+ */
+public final class SimpleSymmetricMatrixOfFloats extends AbstractMatrix<Float> implements SymmetricMatrix<Float>, FloatMatrix {
+	final int rowcount;
+	final float[] data;
+
+	/** Computed on first use; racing threads may both compute them, but either result is correct */
+	private volatile float[] choleskyfactor;
+	private volatile SimpleSymmetricMatrixOfFloats inverse;
+
+	SimpleSymmetricMatrixOfFloats(int rowcount, float[] data) {
+		super(SimpleDenseMatrixOfFloats.resultBuilderPrototype);
+		this.rowcount = rowcount;
+		this.data = Preconditions.checkNotNull(data);
+	}
+
+	private static int getDataLength(int rowcount) {
+		return SimpleSymmetricMatrixOfDoubles.getDataLength(rowcount);
+	}
+
+	private static int getDataIndex(int row, int column) {
+		return SimpleSymmetricMatrixOfDoubles.getDataIndex(row, column);
+	}
+
+	public static SimpleSymmetricMatrixOfFloats create(int dimcount, float value) {
+		return builder(dimcount).setAll(value).build();
+	}
+
+	public static SimpleSymmetricMatrixOfFloats identity(int dimcount) {
+		return builder(dimcount).setToIdentity().build();
+	}
+
+	public static SimpleSymmetricMatrixOfFloats zero(int dimcount) {
+		return create(dimcount, 0.0f);
+	}
+
+	/**
+	 * Computes X^T * X without computing its upper triangle
+	 */
+	public static SimpleSymmetricMatrixOfFloats transposeTimesSelf(Matrix<? extends Float> x) {
+		return builder().setToTransposeTimesSelf(x).build();
+	}
+
+	/**
+	 * Computes X * X^T without computing its upper triangle
+	 */
+	public static SimpleSymmetricMatrixOfFloats selfTimesTranspose(Matrix<? extends Float> x) {
+		return builder().setToSelfTimesTranspose(x).build();
+	}
+
+	public static SimpleSymmetricMatrixOfFloats fromLower(Matrix<? extends Float> matrix) {
+		if (matrix instanceof SimpleSymmetricMatrixOfFloats) {
+			return (SimpleSymmetricMatrixOfFloats) matrix;
+		}
+		return builderFromLower(matrix).build();
+	}
+
+	/**
+	 * Rounds the lower triangle of a double valued matrix to floats
+	 */
+	public static SimpleSymmetricMatrixOfFloats copyOfDoubles(Matrix<? extends Double> matrix) {
+		checkArgument(MatrixUtils.isSquare(matrix), "Expected a square matrix, got %s x %s", matrix.getRowCount(), matrix.getColumnCount());
+		int n = matrix.getRowCount();
+		float[] d = new float[getDataLength(n)];
+		if (matrix instanceof SimpleSymmetricMatrixOfDoubles) {
+			SimpleSymmetricMatrixOfDoubles m = (SimpleSymmetricMatrixOfDoubles) matrix;
+			for (int k = 0; k < d.length; ++k) {
+				d[k] = (float) (m.scale * m.data[k]);
+			}
+		} else {
+			for (int i = 0, k = 0; i < n; ++i) {
+				for (int j = 0; j <= i; ++j) {
+					d[k++] = (float) MatrixUtils.getDouble(matrix, i, j);
+				}
+			}
+		}
+		return new SimpleSymmetricMatrixOfFloats(n, d);
+	}
+
+	/**
+	 * Widens every element to a double, which is exact
+	 */
+	public SimpleSymmetricMatrixOfDoubles toDoubles() {
+		double[] d = new double[data.length];
+		for (int k = 0; k < d.length; ++k) {
+			d[k] = data[k];
+		}
+		return new SimpleSymmetricMatrixOfDoubles(rowcount, d);
+	}
+
+	@Override public Float get(int row, int column) {
+		return data[getDataIndex(row, column)];
+	}
+
+	@Override public float getFloat(int row, int column) {
+		return data[getDataIndex(row, column)];
+	}
+
+	@Override public void getRow(int row, float[] dest, int offset) {
+		int dataindex = getDataIndex(row, 0);
+		System.arraycopy(data, dataindex, dest, offset, row + 1);
+		dataindex += 2 * row + 1;
+		for (int j = row + 1; j < rowcount; ++j) {
+			dest[offset + j] = data[dataindex];
+			dataindex += j + 1;
+		}
+	}
+
+	@Override public int getRowCount() {
+		return rowcount;
+	}
+
+	@Override public int getColumnCount() {
+		return rowcount;
+	}
+
+	@Override public Matrix<Float> transpose() {
+		return this;
+	}
+
+	@Override public Matrix<Float> scale(Float scalar) {
+		return builderFromLower(this).scale(scalar).build();
+	}
+
+	@Override public Matrix<Float> add(Matrix<Float> matrix) {
+		if (matrix instanceof SimpleSymmetricMatrixOfFloats) {
+			return builderFromLower(this).add(matrix).build();
+		} else {
+			return super.add(matrix);
+		}
+	}
+
+	@Override public Matrix<Float> subtract(Matrix<Float> matrix) {
+		if (matrix instanceof SimpleSymmetricMatrixOfFloats) {
+			return builderFromLower(this).subtract(matrix).build();
+		} else {
+			return super.subtract(matrix);
+		}
+	}
+
+	/**
+	 * The packed Cholesky factor, or null if the matrix is not positive definite; not to be modified
+	 */
+	private float[] getCholeskyFactor() {
+		float[] result = choleskyfactor;
+		if (result == null) {
+			result = data.clone();
+			if (!PackedCholesky.decompose(result, rowcount)) {
+				result = new float[0];
+			}
+			choleskyfactor = result;
+		}
+		return result.length == data.length ? result : null;
+	}
+
+	/**
+	 * The lower triangular Cholesky factor L, with this = L * L^T
+	 *
+	 * @throws LinearException if the matrix is not positive definite
+	 */
+	public SimpleDenseMatrixOfFloats cholesky() throws LinearException {
+		float[] factor = getCholeskyFactor();
+		if (factor == null) {
+			throw new LinearException("Unable to calculate Cholesky decomposition");
+		}
+		float[] result = new float[rowcount * rowcount];
+		for (int i = 0; i < rowcount; ++i) {
+			System.arraycopy(factor, getDataIndex(i, 0), result, i * rowcount, i + 1);
+		}
+		return new SimpleDenseMatrixOfFloats(rowcount, rowcount, result);
+	}
+
+	/**
+	 * Computed in double precision from the single precision Cholesky factor if the matrix is positive definite, and
+	 * from the double precision matrix otherwise
+	 */
+	@Override public Float determinant() {
+		float[] factor = getCholeskyFactor();
+		if (factor == null) {
+			return toDoubles().determinant().floatValue();
+		}
+		double result = 1.0;
+		for (int i = 0; i < rowcount; ++i) {
+			result *= factor[getDataIndex(i, i)];
+		}
+		return (float) (result * result);
+	}
+
+	/**
+	 * Inverts in double precision, in packed storage, and rounds the result
+	 */
+	@Override public Matrix<Float> invert() {
+		SimpleSymmetricMatrixOfFloats result = inverse;
+		if (result == null) {
+			Matrix<Double> d = toDoubles().invert();
+			inverse = result = copyOfDoubles(d);
+		}
+		return result;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static Builder builder(int dimcount) {
+		return new Builder().setShape(dimcount, dimcount);
+	}
+
+	public static Builder builderFromLower(Matrix<? extends Float> matrix) {
+		return new Builder().setFromLower(matrix);
+	}
+
+	/**
+	 * Copy-on-write in the same way as the builder of {@link SimpleSymmetricMatrixOfDoubles}
+	 */
+	public static class Builder implements FloatMatrixBuilder {
+
+		private int rowcount;
+		private float[] impl = new float[0];
+		private boolean changed = true;
+		private SimpleSymmetricMatrixOfFloats cached = null;
+		/** Whether impl is also the storage of the cached matrix, and must be copied before it is changed */
+		private boolean shared = false;
+
+		@Override public Builder newBuilder() {
+			return new Builder();
+		}
+
+		@Override public Float get(int row, int column) {
+			return impl[getDataIndex(row, column)];
+		}
+
+		@Override public float getFloat(int row, int column) {
+			return impl[getDataIndex(row, column)];
+		}
+
+		@Override public Builder setShape(int rowcount, int columncount) {
+			checkArgument(rowcount == columncount);
+			this.rowcount = rowcount;
+			this.impl = new float[getDataLength(rowcount)];
+			this.shared = false;
+			this.changed = true;
+			return this;
+		}
+
+		/**
+		 * Gives the builder storage of its own before it is changed, if the last matrix built still uses its storage
+		 */
+		private void detach(boolean keepvalues) {
+			if (shared) {
+				impl = keepvalues ? impl.clone() : new float[impl.length];
+				shared = false;
+			}
+		}
+
+		public Builder setShape(int dimcount) {
+			return setShape(dimcount, dimcount);
+		}
+
+		@Override public Builder setShape(Matrix<?> matrix) {
+			return setShape(matrix.getRowCount(), matrix.getColumnCount());
+		}
+
+		@Override public Builder setToIdentity() {
+			detach(false);
+			Arrays.fill(impl, 0.0f);
+			for (int i = 0; i < rowcount; ++i) {
+				impl[getDataIndex(i, i)] = 1.0f;
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder set(int row, int column, Float value) {
+			return setFloat(row, column, value);
+		}
+
+		@Override public Builder setFloat(int row, int column, float value) {
+			detach(true);
+			impl[getDataIndex(row, column)] = value;
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder set(int toprow, int leftcolumn, Matrix<? extends Float> matrix) {
+			detach(true);
+			for (int i = 0; i < matrix.getRowCount(); ++i) {
+				for (int j = 0; j <= i; ++j) {
+					impl[getDataIndex(toprow + i, leftcolumn + j)] = MatrixUtils.getFloat(matrix, i, j);
+				}
+			}
+			changed = true;
+			return this;
+		}
+
+		public Builder setFromLower(Matrix<? extends Float> matrix) {
+			setShape(matrix);
+			if (matrix instanceof SimpleSymmetricMatrixOfFloats) {
+				System.arraycopy(((SimpleSymmetricMatrixOfFloats) matrix).data, 0, impl, 0, impl.length);
+			} else {
+				int dataindex = 0;
+				for (int i = 0; i < rowcount; ++i) {
+					for (int j = 0; j <= i; ++j) {
+						impl[dataindex++] = MatrixUtils.getFloat(matrix, i, j);
+					}
+				}
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder set(Matrix<? extends Float> matrix) {
+			return setFromLower(matrix);
+		}
+
+		@Override public Builder setAll(Float value) {
+			detach(false);
+			Arrays.fill(impl, value);
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder setAll(Rectangle rect, Float value) {
+			detach(true);
+			for (int i = rect.getTopRow(), ilim = i + rect.getRowCount(); i < ilim; ++i) {
+				for (int j = rect.getLeftColumn(), jlim = j + rect.getColumnCount(); j < jlim; ++j) {
+					impl[getDataIndex(i, j)] = value;
+				}
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder scale(int row, int column, Float scalar) {
+			detach(true);
+			impl[getDataIndex(row, column)] *= scalar;
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder scale(Float scalar) {
+			detach(true);
+			float s = scalar;
+			for (int k = 0; k < impl.length; ++k) {
+				impl[k] *= s;
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder add(int row, int column, Float value) {
+			return addFloat(row, column, value);
+		}
+
+		@Override public Builder addFloat(int row, int column, float value) {
+			detach(true);
+			impl[getDataIndex(row, column)] += value;
+			changed = true;
+			return this;
+		}
+
+		private void addScaled(float alpha, Matrix<? extends Float> matrix) {
+			checkArgument(matrix.getRowCount() == rowcount && matrix.getColumnCount() == rowcount,
+					"Incompatible matrix dimensions (%s x %s and %s x %s)", rowcount, rowcount, matrix.getRowCount(), matrix.getColumnCount());
+			detach(true);
+			if (matrix instanceof SimpleSymmetricMatrixOfFloats) {
+				float[] m = ((SimpleSymmetricMatrixOfFloats) matrix).data;
+				for (int k = 0; k < impl.length; ++k) {
+					impl[k] += alpha * m[k];
+				}
+			} else {
+				for (int i = 0, k = 0; i < rowcount; ++i) {
+					for (int j = 0; j <= i; ++j) {
+						impl[k++] += alpha * MatrixUtils.getFloat(matrix, i, j);
+					}
+				}
+			}
+			changed = true;
+		}
+
+		@Override public Builder add(Matrix<? extends Float> matrix) {
+			addScaled(1.0f, matrix);
+			return this;
+		}
+
+		@Override public Builder addToDiagonal(Matrix<? extends Float> vector) {
+			detach(true);
+			for (int i = 0; i < rowcount; ++i) {
+				impl[getDataIndex(i, i)] += MatrixUtils.getFloat(vector, i, 0);
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder subtract(Matrix<? extends Float> matrix) {
+			addScaled(-1.0f, matrix);
+			return this;
+		}
+
+		/**
+		 * Only products that are known to be symmetric are supported: X^T * X and X * X^T, where the transpose is the
+		 * one returned by X.transpose(), and A * A for a symmetric A
+		 */
+		@Override public Builder mult(Matrix<? extends Float> leftmatrix, Matrix<? extends Float> rightmatrix) {
+			if (leftmatrix instanceof SimpleTransposeView && leftmatrix.transpose() == rightmatrix) {
+				return setToTransposeTimesSelf(rightmatrix);
+			} else if (rightmatrix instanceof SimpleTransposeView && rightmatrix.transpose() == leftmatrix) {
+				return setToSelfTimesTranspose(leftmatrix);
+			} else if (leftmatrix == rightmatrix && leftmatrix instanceof SymmetricMatrix) {
+				return setToTransposeTimesSelf(leftmatrix);
+			} else {
+				throw new UnsupportedOperationException("The symmetric matrix builder only supports the multiplication of a matrix by its own transpose");
+			}
+		}
+
+		public Builder setToTransposeTimesSelf(Matrix<? extends Float> x) {
+			rowcount = x.getColumnCount();
+			impl = SymmetricRankK.transposeTimesSelf(x.getRowCount(), rowcount, SimpleDenseMatrixOfFloats.toArray(x));
+			shared = false;
+			changed = true;
+			return this;
+		}
+
+		public Builder setToSelfTimesTranspose(Matrix<? extends Float> x) {
+			rowcount = x.getRowCount();
+			impl = SymmetricRankK.selfTimesTranspose(rowcount, x.getColumnCount(), SimpleDenseMatrixOfFloats.toArray(x));
+			shared = false;
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder multByDiag(Matrix<? extends Float> diag) {
+			detach(true);
+			for (int i = 0; i < rowcount; ++i) {
+				for (int j = 0; j <= i; ++j) {
+					impl[getDataIndex(i, j)] *= MatrixUtils.getFloat(diag, j, 0);
+				}
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder multElementwise(Matrix<? extends Float> matrix) {
+			if (!(matrix instanceof SymmetricMatrix)) {
+				throw new UnsupportedOperationException("The symmetric matrix builder does not support elementwise multiplication by a matrix that is not known to be symmetric");
+			}
+			detach(true);
+			for (int i = 0; i < rowcount; ++i) {
+				for (int j = 0; j <= i; ++j) {
+					impl[getDataIndex(i, j)] *= MatrixUtils.getFloat(matrix, i, j);
+				}
+			}
+			changed = true;
+			return this;
+		}
+
+		/**
+		 * Inverts in double precision, in packed storage, and rounds the result
+		 */
+		@Override public Builder invert() {
+			SimpleSymmetricMatrixOfFloats inverse = (SimpleSymmetricMatrixOfFloats) new SimpleSymmetricMatrixOfFloats(rowcount, impl.clone()).invert();
+			impl = inverse.data;
+			shared = true;
+			changed = true;
+			return this;
+		}
+
+		@Override public SimpleSymmetricMatrixOfFloats build() {
+			if (changed) {
+				cached = new SimpleSymmetricMatrixOfFloats(rowcount, impl);
+				shared = true;
+				changed = false;
+			}
+			return cached;
+		}
+	}
+}
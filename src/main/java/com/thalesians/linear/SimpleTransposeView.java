@@ -1,6 +1,6 @@
 package com.thalesians.linear;
 
-public final class SimpleTransposeView<T> extends AbstractMatrix<T> {
+public final class SimpleTransposeView<T> extends AbstractMatrix<T> implements DoubleMatrix {
 	private final Matrix<T> matrix;
 
 	public SimpleTransposeView(Matrix<T> matrix, MatrixBuilder<T> resultbuilder) {
@@ -13,15 +13,35 @@ public final class SimpleTransposeView<T> extends AbstractMatrix<T> {
 	}
 	
 	public static SimpleTransposeView<Double> of(Matrix<Double> matrix) {
-		return of(matrix, SimpleDenseMatrixOfDoubles.builder());
+		return of(matrix, SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
 	}
 	
 	@Override public T get(int row, int column) {
 		return matrix.get(column, row);
 	}
 	
+	@Override public double getDouble(int row, int column) {
+		return MatrixUtils.getDoubleUnchecked(matrix, column, row);
+	}
+	
+	@Override public void getRow(int row, double[] dest, int offset) {
+		if (matrix instanceof DoubleMatrix) {
+			((DoubleMatrix) matrix).getColumn(row, dest, offset);
+		} else {
+			DoubleMatrix.super.getRow(row, dest, offset);
+		}
+	}
+	
+	@Override public void getColumn(int column, double[] dest, int offset) {
+		if (matrix instanceof DoubleMatrix) {
+			((DoubleMatrix) matrix).getRow(column, dest, offset);
+		} else {
+			DoubleMatrix.super.getColumn(column, dest, offset);
+		}
+	}
+	
 	@Override public Matrix<T> get(Rectangle rect) {
-		MatrixBuilder<T> b = getResultBuilder();
+		MatrixBuilder<T> b = getResultBuilderPrototype();
 		return of(SimpleSubMatrixView.of(matrix, SimpleRectangle.create(
 				rect.getLeftColumn(), rect.getTopRow(),
 				rect.getColumnCount(), rect.getRowCount()), b), b);
@@ -35,6 +55,19 @@ public final class SimpleTransposeView<T> extends AbstractMatrix<T> {
 		return matrix.getRowCount();
 	}
 	
+	/**
+	 * Multiplying a double valued matrix on the left by its own transpose gives a symmetric matrix, of which only
+	 * the lower triangle is computed
+	 */
+	@SuppressWarnings("unchecked")
+	@Override public Matrix<T> mult(Matrix<T> matrix) {
+		if (matrix == this.matrix && getResultBuilderPrototype() instanceof DoubleMatrixBuilder) {
+			return (Matrix<T>) SimpleSymmetricMatrixOfDoubles.transposeTimesSelf((Matrix<Double>) matrix);
+		} else {
+			return super.mult(matrix);
+		}
+	}
+	
 	@Override public Matrix<T> transpose() {
 		return matrix;
 	}
@@ -0,0 +1,676 @@
+package com.thalesians.linear;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import org.ejml.data.DenseMatrix64F;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A sparse matrix of doubles in compressed sparse row (CSR) storage: the column indices and values of the nonzero
+ * elements, row after row, with the start of every row in a pointer array. The transpose is a compressed sparse column
+ * (CSC) view that shares the three arrays, so the storage is read either by rows or, for a transpose, by columns.
+ * Only the nonzero elements are stored, sorted by their index within each row (or column).
+ * <p>
+ * Sums, differences and products with other sparse matrices are sparse; products with dense matrices and sums with
+ * them are dense. Inversion and the determinant go through a dense copy.
+ */
+public final class SparseMatrixOfDoubles extends AbstractMatrix<Double> implements DoubleMatrix {
+	private final int rowcount;
+	private final int columncount;
+	/** Whether the arrays are read by columns (CSC), as they are for the transpose of a CSR matrix */
+	final boolean columnmajor;
+	final int[] pointers;
+	final int[] indices;
+	final double[] values;
+
+	/** Products with dense matrices of at least this many multiply-adds are computed in parallel across rows */
+	private static final long PARALLEL_MULTIPLY_ADD_COUNT = 1L << 16;
+	/** Rows handled by one task of a parallel product */
+	private static final int ROWS_PER_TASK = 64;
+
+	private SparseMatrixOfDoubles(int rowcount, int columncount, boolean columnmajor, int[] pointers, int[] indices, double[] values) {
+		super(SimpleDenseMatrixOfDoubles.resultBuilderPrototype);
+		this.rowcount = rowcount;
+		this.columncount = columncount;
+		this.columnmajor = columnmajor;
+		this.pointers = pointers;
+		this.indices = indices;
+		this.values = values;
+	}
+
+	/**
+	 * Wraps CSR arrays without copying them: pointers has rowcount + 1 elements, and the column indices within each row
+	 * must be sorted and distinct
+	 */
+	static SparseMatrixOfDoubles wrapCompressedRows(int rowcount, int columncount, int[] pointers, int[] indices, double[] values) {
+		Preconditions.checkArgument(pointers.length == rowcount + 1 && indices.length >= pointers[rowcount] && values.length >= pointers[rowcount]);
+		return new SparseMatrixOfDoubles(rowcount, columncount, false, pointers, indices, values);
+	}
+
+	public static SparseMatrixOfDoubles zero(int rowcount, int columncount) {
+		return builder(rowcount, columncount).build();
+	}
+
+	public static SparseMatrixOfDoubles identity(int dimcount) {
+		return builder(dimcount, dimcount).setToIdentity().build();
+	}
+
+	public static SparseMatrixOfDoubles copyOf(Matrix<? extends Double> matrix) {
+		if (matrix instanceof SparseMatrixOfDoubles) {
+			return (SparseMatrixOfDoubles) matrix;
+		}
+		return builder().set(matrix).build();
+	}
+
+	@Override public int getRowCount() {
+		return rowcount;
+	}
+
+	@Override public int getColumnCount() {
+		return columncount;
+	}
+
+	/**
+	 * The number of stored elements
+	 */
+	public int getNonZeroCount() {
+		return pointers[pointers.length - 1];
+	}
+
+	private int find(int row, int column) {
+		int major = columnmajor ? column : row, minor = columnmajor ? row : column;
+		return Arrays.binarySearch(indices, pointers[major], pointers[major + 1], minor);
+	}
+
+	@Override public Double get(int row, int column) {
+		return getDouble(row, column);
+	}
+
+	@Override public double getDouble(int row, int column) {
+		int index = find(row, column);
+		return index >= 0 ? values[index] : 0.0;
+	}
+
+	@Override public void getRow(int row, double[] dest, int offset) {
+		if (columnmajor) {
+			for (int j = 0; j < columncount; ++j) {
+				dest[offset + j] = getDouble(row, j);
+			}
+		} else {
+			Arrays.fill(dest, offset, offset + columncount, 0.0);
+			for (int k = pointers[row]; k < pointers[row + 1]; ++k) {
+				dest[offset + indices[k]] = values[k];
+			}
+		}
+	}
+
+	@Override public void getColumn(int column, double[] dest, int offset) {
+		if (columnmajor) {
+			Arrays.fill(dest, offset, offset + rowcount, 0.0);
+			for (int k = pointers[column]; k < pointers[column + 1]; ++k) {
+				dest[offset + indices[k]] = values[k];
+			}
+		} else {
+			for (int i = 0; i < rowcount; ++i) {
+				dest[offset + i] = getDouble(i, column);
+			}
+		}
+	}
+
+	/**
+	 * The transpose shares the storage of this matrix, read the other way round
+	 */
+	@Override public SparseMatrixOfDoubles transpose() {
+		return new SparseMatrixOfDoubles(columncount, rowcount, !columnmajor, pointers, indices, values);
+	}
+
+	/**
+	 * Returns this matrix in CSR storage, converting the storage of a CSC view
+	 */
+	SparseMatrixOfDoubles toCompressedRows() {
+		if (!columnmajor) {
+			return this;
+		}
+		int nonzerocount = getNonZeroCount();
+		int[] rowpointers = new int[rowcount + 1];
+		int[] columnindices = new int[nonzerocount];
+		double[] rowvalues = new double[nonzerocount];
+		for (int k = 0; k < nonzerocount; ++k) {
+			++rowpointers[indices[k] + 1];
+		}
+		for (int i = 0; i < rowcount; ++i) {
+			rowpointers[i + 1] += rowpointers[i];
+		}
+		int[] next = Arrays.copyOf(rowpointers, rowcount);
+		// Visiting the columns in order leaves the column indices within each row sorted
+		for (int j = 0; j < columncount; ++j) {
+			for (int k = pointers[j]; k < pointers[j + 1]; ++k) {
+				int position = next[indices[k]]++;
+				columnindices[position] = j;
+				rowvalues[position] = values[k];
+			}
+		}
+		return new SparseMatrixOfDoubles(rowcount, columncount, false, rowpointers, columnindices, rowvalues);
+	}
+
+	/**
+	 * Applies the operator to the stored elements only, keeping the structure; the operator must map zero to zero
+	 */
+	SparseMatrixOfDoubles mapNonZeros(DoubleUnaryOperator operator) {
+		int nonzerocount = getNonZeroCount();
+		double[] result = new double[nonzerocount];
+		for (int k = 0; k < nonzerocount; ++k) {
+			result[k] = operator.applyAsDouble(values[k]);
+		}
+		return new SparseMatrixOfDoubles(rowcount, columncount, columnmajor, pointers, indices, result);
+	}
+
+	/**
+	 * Combines the elements of two sparse matrices of the same shape over the union of their structures; the operator
+	 * must map two zeros to zero. Elements that come out zero are not stored.
+	 */
+	static SparseMatrixOfDoubles merge(SparseMatrixOfDoubles matrix1, SparseMatrixOfDoubles matrix2, DoubleBinaryOperator operator) {
+		Preconditions.checkArgument(MatrixUtils.areSameShape(matrix1, matrix2), "Incompatible matrix dimensions (%s x %s and %s x %s)",
+				matrix1.rowcount, matrix1.columncount, matrix2.rowcount, matrix2.columncount);
+		SparseMatrixOfDoubles a = matrix1.toCompressedRows(), b = matrix2.toCompressedRows();
+		int rc = a.rowcount, capacity = a.getNonZeroCount() + b.getNonZeroCount();
+		int[] rowpointers = new int[rc + 1];
+		int[] columnindices = new int[capacity];
+		double[] result = new double[capacity];
+		int position = 0;
+		for (int i = 0; i < rc; ++i) {
+			int ka = a.pointers[i], kaend = a.pointers[i + 1], kb = b.pointers[i], kbend = b.pointers[i + 1];
+			while (ka < kaend || kb < kbend) {
+				int ja = ka < kaend ? a.indices[ka] : Integer.MAX_VALUE, jb = kb < kbend ? b.indices[kb] : Integer.MAX_VALUE;
+				int j = Math.min(ja, jb);
+				double value = operator.applyAsDouble(ja == j ? a.values[ka++] : 0.0, jb == j ? b.values[kb++] : 0.0);
+				if (value != 0.0) {
+					columnindices[position] = j;
+					result[position++] = value;
+				}
+			}
+			rowpointers[i + 1] = position;
+		}
+		return new SparseMatrixOfDoubles(rc, a.columncount, false, rowpointers, columnindices, result);
+	}
+
+	/**
+	 * Adds alpha times this matrix to the row-major dense storage dest
+	 */
+	private void addTo(double alpha, double[] dest, int stride) {
+		int majorcount = columnmajor ? columncount : rowcount;
+		for (int major = 0; major < majorcount; ++major) {
+			for (int k = pointers[major]; k < pointers[major + 1]; ++k) {
+				int row = columnmajor ? indices[k] : major, column = columnmajor ? major : indices[k];
+				dest[row * stride + column] += alpha * values[k];
+			}
+		}
+	}
+
+	public SimpleDenseMatrixOfDoubles toDense() {
+		double[] result = new double[rowcount * columncount];
+		addTo(1.0, result, columncount);
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(rowcount, columncount, result));
+	}
+
+	@Override public SparseMatrixOfDoubles scale(Double scalar) {
+		double s = scalar;
+		return mapNonZeros(v -> s * v);
+	}
+
+	@Override public Matrix<Double> add(Matrix<Double> matrix) {
+		if (matrix instanceof SparseMatrixOfDoubles) {
+			return merge(this, (SparseMatrixOfDoubles) matrix, (a, b) -> a + b);
+		}
+		Preconditions.checkArgument(MatrixUtils.areSameShape(this, matrix));
+		DenseMatrix64F result = SimpleDenseMatrixOfDoubles.builderFromCopy(matrix).build().impl.copy();
+		addTo(1.0, result.data, columncount);
+		return new SimpleDenseMatrixOfDoubles(result);
+	}
+
+	@Override public Matrix<Double> subtract(Matrix<Double> matrix) {
+		if (matrix instanceof SparseMatrixOfDoubles) {
+			return merge(this, (SparseMatrixOfDoubles) matrix, (a, b) -> a - b);
+		}
+		Preconditions.checkArgument(MatrixUtils.areSameShape(this, matrix));
+		DenseMatrix64F result = SimpleDenseMatrixOfDoubles.builderFromCopy(matrix).build().impl.copy();
+		for (int i = 0; i < result.data.length; ++i) {
+			result.data[i] = -result.data[i];
+		}
+		addTo(1.0, result.data, columncount);
+		return new SimpleDenseMatrixOfDoubles(result);
+	}
+
+	/**
+	 * Sparse if the given matrix is sparse, dense otherwise
+	 */
+	@Override public Matrix<Double> mult(Matrix<Double> matrix) {
+		if (matrix.getRowCount() != columncount) {
+			throw new RuntimeLinearException("Incompatible matrix dimensions for multiplication (lhs: " + rowcount + " x " + columncount + ", rhs: " + matrix.getRowCount() + " x " + matrix.getColumnCount() + ")");
+		}
+		if (matrix instanceof SparseMatrixOfDoubles) {
+			return multSparse((SparseMatrixOfDoubles) matrix);
+		} else {
+			return multDense(matrix);
+		}
+	}
+
+	/**
+	 * Gustavson's algorithm: every row of the product is accumulated in a dense work row, of which only the touched
+	 * elements are visited
+	 */
+	private SparseMatrixOfDoubles multSparse(SparseMatrixOfDoubles matrix) {
+		SparseMatrixOfDoubles a = toCompressedRows(), b = matrix.toCompressedRows();
+		int resultcolumncount = b.columncount;
+		double[] work = new double[resultcolumncount];
+		int[] marks = new int[resultcolumncount];
+		Arrays.fill(marks, -1);
+		int[] touched = new int[resultcolumncount];
+		int[] rowpointers = new int[rowcount + 1];
+		int capacity = Math.max(16, a.getNonZeroCount() + b.getNonZeroCount());
+		int[] columnindices = new int[capacity];
+		double[] result = new double[capacity];
+		int position = 0;
+		for (int i = 0; i < rowcount; ++i) {
+			int touchedcount = 0;
+			for (int ka = a.pointers[i]; ka < a.pointers[i + 1]; ++ka) {
+				int k = a.indices[ka];
+				double aik = a.values[ka];
+				for (int kb = b.pointers[k]; kb < b.pointers[k + 1]; ++kb) {
+					int j = b.indices[kb];
+					if (marks[j] != i) {
+						marks[j] = i;
+						work[j] = 0.0;
+						touched[touchedcount++] = j;
+					}
+					work[j] += aik * b.values[kb];
+				}
+			}
+			Arrays.sort(touched, 0, touchedcount);
+			if (position + touchedcount > capacity) {
+				capacity = Math.max(2 * capacity, position + touchedcount);
+				columnindices = Arrays.copyOf(columnindices, capacity);
+				result = Arrays.copyOf(result, capacity);
+			}
+			for (int t = 0; t < touchedcount; ++t) {
+				int j = touched[t];
+				if (work[j] != 0.0) {
+					columnindices[position] = j;
+					result[position++] = work[j];
+				}
+			}
+			rowpointers[i + 1] = position;
+		}
+		return new SparseMatrixOfDoubles(rowcount, resultcolumncount, false, rowpointers, columnindices, result);
+	}
+
+	/**
+	 * Every stored element (i, k) adds a multiple of row k of the dense matrix to row i of the product. In CSR storage
+	 * the rows of the product are independent, so large products are split across rows.
+	 */
+	private SimpleDenseMatrixOfDoubles multDense(Matrix<Double> matrix) {
+		double[] x = MatrixUtils.toEJMLDenseMatrix64F(matrix).data;
+		int resultcolumncount = matrix.getColumnCount();
+		double[] result = new double[rowcount * resultcolumncount];
+		if (!columnmajor && (long) getNonZeroCount() * resultcolumncount >= PARALLEL_MULTIPLY_ADD_COUNT && rowcount > ROWS_PER_TASK) {
+			ParallelUtils.forEachIndex(0, (rowcount + ROWS_PER_TASK - 1) / ROWS_PER_TASK,
+					t -> multDenseRows(t * ROWS_PER_TASK, Math.min(rowcount, (t + 1) * ROWS_PER_TASK), x, resultcolumncount, result));
+		} else if (!columnmajor) {
+			multDenseRows(0, rowcount, x, resultcolumncount, result);
+		} else {
+			// Column j of the storage is row j of this matrix's transpose, so element (k, j) of the storage is (j, k) here
+			DoubleKernels kernels = DoubleKernels.get();
+			for (int k = 0; k < columncount; ++k) {
+				for (int p = pointers[k]; p < pointers[k + 1]; ++p) {
+					kernels.axpy(values[p], x, k * resultcolumncount, result, indices[p] * resultcolumncount, resultcolumncount);
+				}
+			}
+		}
+		return new SimpleDenseMatrixOfDoubles(DenseMatrix64F.wrap(rowcount, resultcolumncount, result));
+	}
+
+	private void multDenseRows(int rowbegin, int rowend, double[] x, int resultcolumncount, double[] result) {
+		DoubleKernels kernels = DoubleKernels.get();
+		for (int i = rowbegin; i < rowend; ++i) {
+			for (int p = pointers[i]; p < pointers[i + 1]; ++p) {
+				kernels.axpy(values[p], x, indices[p] * resultcolumncount, result, i * resultcolumncount, resultcolumncount);
+			}
+		}
+	}
+
+	@Override public SparseMatrixOfDoubles multByDiag(Matrix<Double> diag) {
+		int nonzerocount = getNonZeroCount();
+		double[] result = new double[nonzerocount];
+		for (int major = 0, majorcount = pointers.length - 1; major < majorcount; ++major) {
+			for (int k = pointers[major]; k < pointers[major + 1]; ++k) {
+				result[k] = values[k] * MatrixUtils.getDouble(diag, columnmajor ? major : indices[k], 0);
+			}
+		}
+		return new SparseMatrixOfDoubles(rowcount, columncount, columnmajor, pointers, indices, result);
+	}
+
+	@Override public Double determinant() {
+		return toDense().determinant();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static Builder builder(int rowcount, int columncount) {
+		return new Builder().setShape(rowcount, columncount);
+	}
+
+	/**
+	 * Collects (row, column, value) triplets, which either set or add to an element, and compresses them into CSR
+	 * storage when the matrix is built. Later triplets for the same element take effect after earlier ones, and elements
+	 * that end up zero are not stored. Reading an element back scans all the triplets collected so far.
+	 */
+	public static final class Builder implements DoubleMatrixBuilder {
+		private int rowcount;
+		private int columncount;
+		private int size;
+		private int[] rows = new int[16];
+		private int[] columns = new int[16];
+		private double[] tripletvalues = new double[16];
+		private boolean[] additions = new boolean[16];
+		private boolean changed = true;
+		private SparseMatrixOfDoubles cached = null;
+
+		private Builder() { }
+
+		@Override public Builder newBuilder() {
+			return new Builder();
+		}
+
+		private void append(int row, int column, double value, boolean addition) {
+			Preconditions.checkElementIndex(row, rowcount, "row");
+			Preconditions.checkElementIndex(column, columncount, "column");
+			if (size == rows.length) {
+				int capacity = 2 * size;
+				rows = Arrays.copyOf(rows, capacity);
+				columns = Arrays.copyOf(columns, capacity);
+				tripletvalues = Arrays.copyOf(tripletvalues, capacity);
+				additions = Arrays.copyOf(additions, capacity);
+			}
+			rows[size] = row;
+			columns[size] = column;
+			tripletvalues[size] = value;
+			additions[size++] = addition;
+			changed = true;
+		}
+
+		/**
+		 * Sorts the triplets by row and column, keeping the order of the triplets for the same element, folds those into
+		 * a single value and drops the zeros, leaving one triplet per nonzero element in row-major order
+		 */
+		private void compact() {
+			int[] rowstarts = new int[rowcount + 1];
+			for (int t = 0; t < size; ++t) {
+				++rowstarts[rows[t] + 1];
+			}
+			for (int i = 0; i < rowcount; ++i) {
+				rowstarts[i + 1] += rowstarts[i];
+			}
+			// Within a row, sort by column and then by the position of the triplet, both packed into one long
+			long[] keys = new long[size];
+			int[] next = Arrays.copyOf(rowstarts, rowcount);
+			for (int t = 0; t < size; ++t) {
+				keys[next[rows[t]]++] = ((long) columns[t] << 32) | t;
+			}
+			int[] newrows = new int[Math.max(16, size)], newcolumns = new int[newrows.length];
+			double[] newvalues = new double[newrows.length];
+			int newsize = 0;
+			for (int i = 0; i < rowcount; ++i) {
+				Arrays.sort(keys, rowstarts[i], rowstarts[i + 1]);
+				for (int k = rowstarts[i]; k < rowstarts[i + 1];) {
+					int column = (int) (keys[k] >>> 32);
+					double value = 0.0;
+					for (; k < rowstarts[i + 1] && (int) (keys[k] >>> 32) == column; ++k) {
+						int t = (int) keys[k];
+						value = additions[t] ? value + tripletvalues[t] : tripletvalues[t];
+					}
+					if (value != 0.0) {
+						newrows[newsize] = i;
+						newcolumns[newsize] = column;
+						newvalues[newsize++] = value;
+					}
+				}
+			}
+			rows = newrows;
+			columns = newcolumns;
+			tripletvalues = newvalues;
+			additions = new boolean[newrows.length];
+			size = newsize;
+		}
+
+		private void clear() {
+			size = 0;
+			changed = true;
+		}
+
+		/**
+		 * Drops the triplets within the given rectangle
+		 */
+		private void clear(int toprow, int leftcolumn, int rc, int cc) {
+			compact();
+			int newsize = 0;
+			for (int t = 0; t < size; ++t) {
+				boolean inside = rows[t] >= toprow && rows[t] < toprow + rc && columns[t] >= leftcolumn && columns[t] < leftcolumn + cc;
+				if (!inside) {
+					rows[newsize] = rows[t];
+					columns[newsize] = columns[t];
+					tripletvalues[newsize++] = tripletvalues[t];
+				}
+			}
+			size = newsize;
+			changed = true;
+		}
+
+		/**
+		 * Appends a triplet for every nonzero element of the matrix, scaled by alpha and placed at the given offset
+		 */
+		private void appendNonZeros(int toprow, int leftcolumn, Matrix<? extends Double> matrix, double alpha, boolean addition) {
+			if (matrix instanceof SparseMatrixOfDoubles) {
+				SparseMatrixOfDoubles m = (SparseMatrixOfDoubles) matrix;
+				for (int major = 0, majorcount = m.pointers.length - 1; major < majorcount; ++major) {
+					for (int k = m.pointers[major]; k < m.pointers[major + 1]; ++k) {
+						int row = m.columnmajor ? m.indices[k] : major, column = m.columnmajor ? major : m.indices[k];
+						append(toprow + row, leftcolumn + column, alpha * m.values[k], addition);
+					}
+				}
+			} else {
+				int rc = matrix.getRowCount(), cc = matrix.getColumnCount();
+				double[] row = new double[cc];
+				for (int i = 0; i < rc; ++i) {
+					if (matrix instanceof DoubleMatrix) {
+						((DoubleMatrix) matrix).getRow(i, row, 0);
+					} else {
+						for (int j = 0; j < cc; ++j) {
+							row[j] = matrix.get(i, j);
+						}
+					}
+					for (int j = 0; j < cc; ++j) {
+						if (row[j] != 0.0) {
+							append(toprow + i, leftcolumn + j, alpha * row[j], addition);
+						}
+					}
+				}
+			}
+		}
+
+		@Override public Double get(int row, int column) {
+			return getDouble(row, column);
+		}
+
+		@Override public double getDouble(int row, int column) {
+			double value = 0.0;
+			for (int t = 0; t < size; ++t) {
+				if (rows[t] == row && columns[t] == column) {
+					value = additions[t] ? value + tripletvalues[t] : tripletvalues[t];
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * Changing the shape drops all the elements
+		 */
+		@Override public Builder setShape(int rowcount, int columncount) {
+			Preconditions.checkArgument(rowcount >= 0 && columncount >= 0);
+			if (this.rowcount != rowcount || this.columncount != columncount) {
+				this.rowcount = rowcount;
+				this.columncount = columncount;
+				clear();
+			}
+			return this;
+		}
+
+		@Override public Builder setShape(Matrix<?> matrix) {
+			return setShape(matrix.getRowCount(), matrix.getColumnCount());
+		}
+
+		@Override public Builder setToIdentity() {
+			clear();
+			for (int i = 0, n = Math.min(rowcount, columncount); i < n; ++i) {
+				append(i, i, 1.0, false);
+			}
+			return this;
+		}
+
+		@Override public Builder set(int row, int column, Double value) {
+			return setDouble(row, column, value);
+		}
+
+		@Override public Builder setDouble(int row, int column, double value) {
+			append(row, column, value, false);
+			return this;
+		}
+
+		@Override public Builder set(int toprow, int leftcolumn, Matrix<? extends Double> matrix) {
+			clear(toprow, leftcolumn, matrix.getRowCount(), matrix.getColumnCount());
+			appendNonZeros(toprow, leftcolumn, matrix, 1.0, false);
+			return this;
+		}
+
+		@Override public Builder set(Matrix<? extends Double> matrix) {
+			setShape(matrix);
+			clear();
+			appendNonZeros(0, 0, matrix, 1.0, false);
+			return this;
+		}
+
+		/**
+		 * Only zero is supported, as any other value would make the matrix dense
+		 */
+		@Override public Builder setAll(Double value) {
+			if (value != 0.0) {
+				throw new UnsupportedOperationException("The sparse matrix builder does not support setting all the elements to a nonzero value");
+			}
+			clear();
+			return this;
+		}
+
+		@Override public Builder setAll(Rectangle rect, Double value) {
+			clear(rect.getTopRow(), rect.getLeftColumn(), rect.getRowCount(), rect.getColumnCount());
+			if (value != 0.0) {
+				for (int i = rect.getTopRow(), ilim = i + rect.getRowCount(); i < ilim; ++i) {
+					for (int j = rect.getLeftColumn(), jlim = j + rect.getColumnCount(); j < jlim; ++j) {
+						append(i, j, value, false);
+					}
+				}
+			}
+			return this;
+		}
+
+		@Override public Builder scale(int row, int column, Double scalar) {
+			return setDouble(row, column, getDouble(row, column) * scalar);
+		}
+
+		@Override public Builder scale(Double scalar) {
+			for (int t = 0; t < size; ++t) {
+				tripletvalues[t] *= scalar;
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder add(int row, int column, Double value) {
+			return addDouble(row, column, value);
+		}
+
+		@Override public Builder addDouble(int row, int column, double value) {
+			append(row, column, value, true);
+			return this;
+		}
+
+		@Override public Builder add(Matrix<? extends Double> matrix) {
+			Preconditions.checkArgument(matrix.getRowCount() == rowcount && matrix.getColumnCount() == columncount);
+			appendNonZeros(0, 0, matrix, 1.0, true);
+			return this;
+		}
+
+		@Override public Builder addToDiagonal(Matrix<? extends Double> vector) {
+			for (int i = 0, n = Math.min(rowcount, columncount); i < n; ++i) {
+				double value = MatrixUtils.getDouble(vector, i, 0);
+				if (value != 0.0) {
+					append(i, i, value, true);
+				}
+			}
+			return this;
+		}
+
+		@Override public Builder subtract(Matrix<? extends Double> matrix) {
+			Preconditions.checkArgument(matrix.getRowCount() == rowcount && matrix.getColumnCount() == columncount);
+			appendNonZeros(0, 0, matrix, -1.0, true);
+			return this;
+		}
+
+		/**
+		 * Sets this matrix to the sparse product of the operands, converting any operand that is not sparse
+		 */
+		@Override public Builder mult(Matrix<? extends Double> leftmatrix, Matrix<? extends Double> rightmatrix) {
+			return set(copyOf(leftmatrix).mult(copyOf(rightmatrix)));
+		}
+
+		@Override public Builder multByDiag(Matrix<? extends Double> diag) {
+			for (int t = 0; t < size; ++t) {
+				tripletvalues[t] *= MatrixUtils.getDouble(diag, columns[t], 0);
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder multElementwise(Matrix<? extends Double> matrix) {
+			compact();
+			for (int t = 0; t < size; ++t) {
+				tripletvalues[t] *= MatrixUtils.getDouble(matrix, rows[t], columns[t]);
+			}
+			changed = true;
+			return this;
+		}
+
+		@Override public Builder invert() {
+			throw new UnsupportedOperationException("The sparse matrix builder does not support inversion, as the inverse of a sparse matrix is dense in general");
+		}
+
+		@Override public SparseMatrixOfDoubles build() {
+			if (changed) {
+				compact();
+				int[] rowpointers = new int[rowcount + 1];
+				for (int t = 0; t < size; ++t) {
+					++rowpointers[rows[t] + 1];
+				}
+				for (int i = 0; i < rowcount; ++i) {
+					rowpointers[i + 1] += rowpointers[i];
+				}
+				cached = new SparseMatrixOfDoubles(rowcount, columncount, false, rowpointers, Arrays.copyOf(columns, size), Arrays.copyOf(tripletvalues, size));
+				changed = false;
+			}
+			return cached;
+		}
+	}
+}
@@ -1,10 +1,10 @@
 package com.thalesians.linear;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import com.google.common.base.Splitter;
-import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 
 public final class StringUtils {
 	private StringUtils() {
@@ -28,64 +28,58 @@ public final class StringUtils {
 	}
 	
 	public static Matrix<Double> fromString(MatrixBuilder<Double> builder, String str) throws LinearException {
-		if (str.indexOf("x") != -1) {
-			return fromSparseFormatString(builder, str);
-		} else {
-			return fromDenseFormatString(builder, str);
-		}
+		return readMatrix(builder, str);
 	}
 	
-	public static Matrix<Double> fromDenseFormatString(MatrixBuilder<Double> builder, String str) throws LinearException {                                      
-		str = str.replace("[", "").replace("]", "");
-		ImmutableList<String> rowStrings = ImmutableList.copyOf(Splitter.on(";").trimResults().omitEmptyStrings().split(str));
-		int rc = rowStrings.size();
-		int cc = -1;
-		for (int i = 0; i < rc; ++i) {
-			String rowString = rowStrings.get(i);
-			ImmutableList<String> valueStrings = ImmutableList.copyOf(Splitter.on(",").trimResults().omitEmptyStrings().split(rowString));
-			if (i == 0) {
-				cc = valueStrings.size();
-				builder.setShape(rc, cc);
-			} else {
-				if (valueStrings.size() != cc) {
-					throw new LinearException("Unexpected number of values in row at index " + i + ": expected: " + cc + ", got " + valueStrings.size());
-				}
-			}
-			for (int j = 0; j < valueStrings.size(); ++j) {
-				builder.set(i, j, Double.valueOf(valueStrings.get(j)));
-			}
+	public static Matrix<Double> fromDenseFormatString(MatrixBuilder<Double> builder, String str) throws LinearException {
+		try {
+			return new MatrixTextParser(str).parseDense(builder);
+		} catch (IOException e) {
+			throw new AssertionError(e);
 		}
-		return builder.build();
 	}
 	
-	private static final Pattern sparseFormatSizePattern = Pattern.compile("\\s*(\\d+)\\s*x\\s*(\\d+)\\s*");
-	private static final Pattern sparseFormatElementValuePattern = Pattern.compile("\\s*(\\d+)\\s*\\,\\s*(\\d+)\\s*=(.+)\\s*");
-	
 	public static Matrix<Double> fromSparseFormatString(MatrixBuilder<Double> builder, String str) throws LinearException {
-		ImmutableList<String> strs = ImmutableList.copyOf(Splitter.on(":").trimResults().split(str));
-		if (strs.size() > 2) { throw new LinearException("Invalid matrix string format"); }
-		
-		String size = strs.get(0);
-		Matcher sizeMatcher = sparseFormatSizePattern.matcher(size);
-		if (!sizeMatcher.matches()) { throw new LinearException("Invalid matrix string format"); }
-		
-		int rowCount = Integer.valueOf(sizeMatcher.group(1));
-		int columnCount = Integer.valueOf(sizeMatcher.group(2));
-		
-		builder.setShape(rowCount, columnCount);
-		
-		if (strs.size() > 1) {
-			ImmutableList<String> elementValues = ImmutableList.copyOf(Splitter.on(";").trimResults().omitEmptyStrings().split(strs.get(1)));
-			for (String ev : elementValues) {
-				Matcher elementValueMatcher = sparseFormatElementValuePattern.matcher(ev);
-				if (!elementValueMatcher.matches()) { throw new LinearException("Invalid matrix string format"); }
-				int row = Integer.parseInt(elementValueMatcher.group(1));
-				int column = Integer.parseInt(elementValueMatcher.group(2));
-				double value = Double.parseDouble(elementValueMatcher.group(3));
-				builder.set(row, column, value);
-			}
+		try {
+			return new MatrixTextParser(str).parseSparse(builder);
+		} catch (IOException e) {
+			throw new AssertionError(e);
 		}
-		
-		return builder.build();
+	}
+	
+	/**
+	 * Parses a matrix in either the dense or the sparse format in a single pass over the characters, without copying
+	 * them
+	 */
+	public static Matrix<Double> readMatrix(MatrixBuilder<Double> builder, CharSequence chars) throws LinearException {
+		try {
+			return new MatrixTextParser(chars).parse(builder);
+		} catch (IOException e) {
+			// A CharSequence cannot fail to be read
+			throw new AssertionError(e);
+		}
+	}
+	
+	/**
+	 * Parses a matrix in either the dense or the sparse format in a single pass, reading through a small buffer; the
+	 * reader is not closed
+	 */
+	public static Matrix<Double> readMatrix(MatrixBuilder<Double> builder, Reader reader) throws IOException, LinearException {
+		return new MatrixTextParser(reader).parse(builder);
+	}
+	
+	/**
+	 * Parses a matrix in either the dense or the sparse format from UTF-8 text, decoding it through a small buffer so
+	 * that inputs of any size are read in constant memory beyond the matrix itself; the channel is not closed
+	 */
+	public static Matrix<Double> readMatrix(MatrixBuilder<Double> builder, ReadableByteChannel channel) throws IOException, LinearException {
+		return readMatrix(builder, Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1));
+	}
+	
+	/**
+	 * Parses the sparse format straight into a {@link SparseMatrixOfDoubles}, which stores only the listed elements
+	 */
+	public static SparseMatrixOfDoubles fromSparseFormatString(String str) throws LinearException {
+		return (SparseMatrixOfDoubles) fromSparseFormatString(SparseMatrixOfDoubles.builder(), str);
 	}
 }
@@ -0,0 +1,184 @@
+package com.thalesians.linear;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Symmetric rank-k products (SYRK) computed directly into the packed lower triangular layout of
+ * {@link SimpleSymmetricMatrixOfDoubles}. Only the lower triangle is computed, which halves the work of the general
+ * multiplication. Large products are split into blocks of rows of the result with roughly equal numbers of elements,
+ * which are computed on the pool of {@link ParallelUtils}.
+ */
+final class SymmetricRankK {
+	/** Number of rows of X that are swept over for every block of rows of the result, so that they stay in cache */
+	private static final int KC = 128;
+
+	private SymmetricRankK() {
+		throw new AssertionError("This class cannot be instantiated");
+	}
+
+	/**
+	 * Computes the packed lower triangle of alpha * X^T * X, where X is n x p and stored row-major
+	 */
+	static double[] transposeTimesSelf(int n, int p, double alpha, double[] x) {
+		double[] c = new double[SimpleSymmetricMatrixOfDoubles.getDataLength(p)];
+		if (Gemm.getMultiplyAddCount(n, p, p) / 2 >= Gemm.getParallelThreshold()) {
+			ParallelUtils.getPool().invoke(new Task(false, 0, p, n, p, alpha, x, c));
+		} else {
+			transposeTimesSelf(0, p, n, p, alpha, x, c);
+		}
+		return c;
+	}
+
+	/**
+	 * Computes the packed lower triangle of alpha * X * X^T, where X is n x p and stored row-major
+	 */
+	static double[] selfTimesTranspose(int n, int p, double alpha, double[] x) {
+		double[] c = new double[SimpleSymmetricMatrixOfDoubles.getDataLength(n)];
+		if (Gemm.getMultiplyAddCount(n, n, p) / 2 >= Gemm.getParallelThreshold()) {
+			ParallelUtils.getPool().invoke(new Task(true, 0, n, n, p, alpha, x, c));
+		} else {
+			selfTimesTranspose(0, n, p, alpha, x, c);
+		}
+		return c;
+	}
+
+	/**
+	 * Computes the packed lower triangle of X^T * X in single precision, where X is n x p and stored row-major
+	 */
+	static float[] transposeTimesSelf(int n, int p, float[] x) {
+		float[] c = new float[SimpleSymmetricMatrixOfDoubles.getDataLength(p)];
+		ParallelUtils.forEachLowerTriangleRowBlock(p, Gemm.getMultiplyAddCount(n, p, p) / 2 >= Gemm.getParallelThreshold(), (rowbegin, rowend) -> {
+			for (int k = 0; k < n; ++k) {
+				int xrow = k * p;
+				for (int i = rowbegin; i < rowend; ++i) {
+					int crow = SimpleSymmetricMatrixOfDoubles.getDataIndex(i, 0);
+					float a = x[xrow + i];
+					for (int j = 0; j <= i; ++j) {
+						c[crow + j] += a * x[xrow + j];
+					}
+				}
+			}
+		});
+		return c;
+	}
+
+	/**
+	 * Computes the packed lower triangle of X * X^T in single precision, where X is n x p and stored row-major
+	 */
+	static float[] selfTimesTranspose(int n, int p, float[] x) {
+		float[] c = new float[SimpleSymmetricMatrixOfDoubles.getDataLength(n)];
+		ParallelUtils.forEachLowerTriangleRowBlock(n, Gemm.getMultiplyAddCount(n, n, p) / 2 >= Gemm.getParallelThreshold(), (rowbegin, rowend) -> {
+			for (int i = rowbegin; i < rowend; ++i) {
+				int crow = SimpleSymmetricMatrixOfDoubles.getDataIndex(i, 0), xi = i * p;
+				for (int j = 0; j <= i; ++j) {
+					int xj = j * p;
+					float s = 0.0f;
+					for (int k = 0; k < p; ++k) {
+						s += x[xi + k] * x[xj + k];
+					}
+					c[crow + j] = s;
+				}
+			}
+		});
+		return c;
+	}
+
+	/**
+	 * Accumulates the rows [rowbegin, rowend) of the result as a sum of outer products of the rows of X, so that the
+	 * innermost loop runs along contiguous rows of both X and the packed result
+	 */
+	private static void transposeTimesSelf(int rowbegin, int rowend, int n, int p, double alpha, double[] x, double[] c) {
+		for (int kk = 0; kk < n; kk += KC) {
+			int kend = Math.min(kk + KC, n);
+			for (int i = rowbegin; i < rowend; ++i) {
+				int crow = SimpleSymmetricMatrixOfDoubles.getDataIndex(i, 0);
+				int k = kk;
+				for (; k + 3 < kend; k += 4) {
+					int x0 = k * p, x1 = x0 + p, x2 = x1 + p, x3 = x2 + p;
+					double a0 = alpha * x[x0 + i], a1 = alpha * x[x1 + i], a2 = alpha * x[x2 + i], a3 = alpha * x[x3 + i];
+					for (int j = 0; j <= i; ++j) {
+						c[crow + j] += a0 * x[x0 + j] + a1 * x[x1 + j] + a2 * x[x2 + j] + a3 * x[x3 + j];
+					}
+				}
+				for (; k < kend; ++k) {
+					int x0 = k * p;
+					double a0 = alpha * x[x0 + i];
+					for (int j = 0; j <= i; ++j) {
+						c[crow + j] += a0 * x[x0 + j];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the rows [rowbegin, rowend) of the result as dot products of the rows of X, four columns at a time so
+	 * that each element of row i of X is loaded once for four multiply-adds
+	 */
+	private static void selfTimesTranspose(int rowbegin, int rowend, int p, double alpha, double[] x, double[] c) {
+		for (int i = rowbegin; i < rowend; ++i) {
+			int crow = SimpleSymmetricMatrixOfDoubles.getDataIndex(i, 0), xi = i * p;
+			int j = 0;
+			for (; j + 3 <= i; j += 4) {
+				int x0 = j * p, x1 = x0 + p, x2 = x1 + p, x3 = x2 + p;
+				double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+				for (int k = 0; k < p; ++k) {
+					double v = x[xi + k];
+					s0 += v * x[x0 + k];
+					s1 += v * x[x1 + k];
+					s2 += v * x[x2 + k];
+					s3 += v * x[x3 + k];
+				}
+				c[crow + j] = alpha * s0;
+				c[crow + j + 1] = alpha * s1;
+				c[crow + j + 2] = alpha * s2;
+				c[crow + j + 3] = alpha * s3;
+			}
+			for (; j <= i; ++j) {
+				int x0 = j * p;
+				double s = 0.0;
+				for (int k = 0; k < p; ++k) {
+					s += x[xi + k] * x[x0 + k];
+				}
+				c[crow + j] = alpha * s;
+			}
+		}
+	}
+
+	/**
+	 * Splits the rows of the result so that both halves hold about the same number of packed elements. The blocks of
+	 * rows are disjoint ranges of the packed array, so the tasks need no synchronisation.
+	 */
+	private static final class Task extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final boolean selftimestranspose;
+		private final int rowbegin, rowend, n, p;
+		private final double alpha;
+		private final double[] x, c;
+
+		Task(boolean selftimestranspose, int rowbegin, int rowend, int n, int p, double alpha, double[] x, double[] c) {
+			this.selftimestranspose = selftimestranspose;
+			this.rowbegin = rowbegin; this.rowend = rowend;
+			this.n = n; this.p = p;
+			this.alpha = alpha; this.x = x; this.c = c;
+		}
+
+		@Override protected void compute() {
+			long elementcount = (long) SimpleSymmetricMatrixOfDoubles.getDataIndex(rowend, 0) - SimpleSymmetricMatrixOfDoubles.getDataIndex(rowbegin, 0);
+			if (rowend - rowbegin < 2 || elementcount < ParallelUtils.MIN_TASK_ELEMENT_COUNT) {
+				if (selftimestranspose) {
+					selfTimesTranspose(rowbegin, rowend, p, alpha, x, c);
+				} else {
+					transposeTimesSelf(rowbegin, rowend, n, p, alpha, x, c);
+				}
+			} else {
+				// Row i holds i + 1 elements, so rows [rowbegin, mid) hold about half of the elements when
+				// mid^2 = (rowbegin^2 + rowend^2) / 2
+				int mid = (int) Math.sqrt(((double) rowbegin * rowbegin + (double) rowend * rowend) / 2.0);
+				mid = Math.max(rowbegin + 1, Math.min(rowend - 1, mid));
+				invokeAll(new Task(selftimestranspose, rowbegin, mid, n, p, alpha, x, c), new Task(selftimestranspose, mid, rowend, n, p, alpha, x, c));
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CovarianceAccumulatorTest {
+	private static final int DIM_COUNT = 5;
+	private static final double TOLERANCE = 1e-10;
+
+	/**
+	 * Observations with a large common offset, so that a naive sum of squares would lose most of its digits
+	 */
+	private static double[][] observations(int count, long seed) {
+		Random random = new Random(seed);
+		double[][] result = new double[count][DIM_COUNT];
+		for (int i = 0; i < count; ++i) {
+			double common = random.nextGaussian();
+			for (int j = 0; j < DIM_COUNT; ++j) {
+				result[i][j] = 1000.0 + j + common * (j + 1) + random.nextGaussian();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Two passes over the observations, the k-th of n weighted by decay^(n - 1 - k): the weighted mean first, then the
+	 * weighted scatter matrix about it; the covariance is the scatter matrix divided by the given divisor, computed from
+	 * the sums of the weights and of their squares
+	 */
+	private static final class TwoPass {
+		final double[] mean = new double[DIM_COUNT];
+		final double[][] scatter = new double[DIM_COUNT][DIM_COUNT];
+		double weight;
+		double weightsq;
+
+		TwoPass(double[][] x, double decay) {
+			int n = x.length;
+			double[] weights = new double[n];
+			for (int k = 0; k < n; ++k) {
+				weights[k] = Math.pow(decay, n - 1 - k);
+				weight += weights[k];
+				weightsq += weights[k] * weights[k];
+				for (int j = 0; j < DIM_COUNT; ++j) {
+					mean[j] += weights[k] * x[k][j];
+				}
+			}
+			for (int j = 0; j < DIM_COUNT; ++j) {
+				mean[j] /= weight;
+			}
+			for (int k = 0; k < n; ++k) {
+				for (int i = 0; i < DIM_COUNT; ++i) {
+					for (int j = 0; j < DIM_COUNT; ++j) {
+						scatter[i][j] += weights[k] * (x[k][i] - mean[i]) * (x[k][j] - mean[j]);
+					}
+				}
+			}
+		}
+
+		SimpleDenseMatrixOfDoubles covariance(double divisor) {
+			double[][] result = new double[DIM_COUNT][DIM_COUNT];
+			for (int i = 0; i < DIM_COUNT; ++i) {
+				for (int j = 0; j < DIM_COUNT; ++j) {
+					result[i][j] = scatter[i][j] / divisor;
+				}
+			}
+			return TestMatrices.dense(result);
+		}
+	}
+
+	private static void assertMatchesTwoPass(double[][] x, double decay, CovarianceAccumulator accumulator) {
+		TwoPass expected = new TwoPass(x, decay);
+		assertEquals(x.length, accumulator.getCount());
+		assertEquals(expected.weight, accumulator.getWeight(), TOLERANCE * expected.weight);
+		assertMatrixEquals(SimpleDenseMatrixOfDoubles.rowVector(expected.mean), accumulator.getMean(), TOLERANCE * 1000.0);
+		assertMatrixEquals(expected.covariance(expected.weight), accumulator.getCovariance(), TOLERANCE);
+		assertMatrixEquals(expected.covariance(expected.weight - expected.weightsq / expected.weight), accumulator.getSampleCovariance(), TOLERANCE);
+	}
+
+	private static CovarianceAccumulator sequential(double[][] x, double decay) {
+		CovarianceAccumulator result = CovarianceAccumulator.create(DIM_COUNT, decay);
+		for (double[] observation : x) {
+			result.add(observation);
+		}
+		return result;
+	}
+
+	@Test public void matchesTwoPass() {
+		double[][] x = observations(500, 1L);
+		assertMatchesTwoPass(x, 1.0, sequential(x, 1.0));
+		assertMatchesTwoPass(x, 0.99, sequential(x, 0.99));
+		assertMatchesTwoPass(x, 0.5, sequential(x, 0.5));
+	}
+
+	/**
+	 * Without decay the sample divisor W - W2 / W is n - 1
+	 */
+	@Test public void sampleDivisorWithoutDecay() {
+		double[][] x = observations(10, 2L);
+		CovarianceAccumulator accumulator = sequential(x, 1.0);
+		SimpleSymmetricMatrixOfDoubles population = accumulator.getCovariance(), sample = accumulator.getSampleCovariance();
+		for (int i = 0; i < DIM_COUNT; ++i) {
+			for (int j = 0; j < DIM_COUNT; ++j) {
+				assertEquals(MatrixUtils.getDouble(population, i, j) * 10.0 / 9.0, MatrixUtils.getDouble(sample, i, j), TOLERANCE);
+			}
+		}
+	}
+
+	private static double[][] rows(double[][] x, int from, int to) {
+		return Arrays.copyOfRange(x, from, to);
+	}
+
+	/**
+	 * Accumulators of consecutive uneven chunks, merged in order with Chan's formula, give the sequential statistics
+	 */
+	@Test public void mergedChunksMatchSequential() {
+		double[][] x = observations(300, 3L);
+		int[] bounds = {0, 1, 2, 50, 51, 170, 300};
+		for (double decay : new double[] {1.0, 0.97}) {
+			CovarianceAccumulator merged = CovarianceAccumulator.create(DIM_COUNT, decay);
+			for (int c = 0; c + 1 < bounds.length; ++c) {
+				merged.merge(sequential(rows(x, bounds[c], bounds[c + 1]), decay));
+			}
+			merged.merge(CovarianceAccumulator.create(DIM_COUNT, decay));
+			CovarianceAccumulator expected = sequential(x, decay);
+			assertEquals(expected.getCount(), merged.getCount());
+			assertEquals(expected.getWeight(), merged.getWeight(), TOLERANCE * expected.getWeight());
+			assertMatrixEquals(expected.getMean(), merged.getMean(), TOLERANCE * 1000.0);
+			assertMatrixEquals(expected.getCovariance(), merged.getCovariance(), TOLERANCE);
+			assertMatrixEquals(expected.getSampleCovariance(), merged.getSampleCovariance(), TOLERANCE);
+			assertMatchesTwoPass(x, decay, merged);
+		}
+	}
+
+	/**
+	 * Batches given as the rows of a matrix, which without decay go through the rank-k product, give the sequential
+	 * statistics
+	 */
+	@Test public void batchesMatchSequential() {
+		double[][] x = observations(200, 4L);
+		for (double decay : new double[] {1.0, 0.95}) {
+			CovarianceAccumulator batched = CovarianceAccumulator.create(DIM_COUNT, decay);
+			batched.add(x[0]);
+			batched.add(TestMatrices.dense(rows(x, 1, 120)));
+			batched.add(SimpleDenseMatrixOfDoubles.builder(0, DIM_COUNT).build());
+			batched.add(TestMatrices.dense(rows(x, 120, 200)).transpose().transpose());
+			assertMatchesTwoPass(x, decay, batched);
+		}
+	}
+
+	@Test public void copyIsIndependent() {
+		double[][] x = observations(20, 5L);
+		CovarianceAccumulator accumulator = sequential(rows(x, 0, 10), 1.0);
+		CovarianceAccumulator copy = accumulator.copy();
+		for (int i = 10; i < 20; ++i) {
+			copy.add(x[i]);
+		}
+		assertMatchesTwoPass(rows(x, 0, 10), 1.0, accumulator);
+		assertMatchesTwoPass(x, 1.0, copy);
+	}
+
+	@Test public void tooFewObservations() {
+		CovarianceAccumulator accumulator = CovarianceAccumulator.create(2);
+		assertTrue(Double.isNaN(MatrixUtils.getDouble(accumulator.getMean(), 0, 1)));
+		assertTrue(Double.isNaN(MatrixUtils.getDouble(accumulator.getCovariance(), 1, 0)));
+		accumulator.add(1.0, 2.0);
+		assertMatrixEquals(SimpleDenseMatrixOfDoubles.rowVector(new double[] {1.0, 2.0}), accumulator.getMean(), 0.0);
+		assertMatrixEquals(TestMatrices.dense(new double[][] {{0, 0}, {0, 0}}), accumulator.getCovariance(), 0.0);
+		assertTrue(Double.isNaN(MatrixUtils.getDouble(accumulator.getSampleCovariance(), 0, 0)));
+	}
+}
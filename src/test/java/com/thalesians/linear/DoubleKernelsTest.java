@@ -0,0 +1,139 @@
+package com.thalesians.linear;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The vectorised kernels against the scalar ones, on every length up to several vectors so that each combination of
+ * whole vectors and scalar tail is covered, with NaNs, infinities and signed zeros mixed in. Every kernel does the same
+ * IEEE operations on each element in both implementations, so the results must agree bit for bit, NaNs aside.
+ */
+public class DoubleKernelsTest {
+	private static final int MAX_LENGTH = 70;
+
+	private DoubleKernels scalar;
+	private DoubleKernels vector;
+	private final Random random = new Random(1L);
+
+	@Before public void setUp() {
+		scalar = DoubleKernels.scalar();
+		vector = DoubleKernels.vector();
+		assumeTrue("The vector kernels cannot be loaded on this JVM", vector != null);
+	}
+
+	private double[] values(int length) {
+		double[] result = new double[length];
+		for (int i = 0; i < length; ++i) {
+			int kind = random.nextInt(20);
+			result[i] = kind == 0 ? Double.NaN
+					: kind == 1 ? Double.POSITIVE_INFINITY
+					: kind == 2 ? Double.NEGATIVE_INFINITY
+					: kind == 3 ? -0.0
+					: kind == 4 ? 0.0
+					: kind == 5 ? Double.MIN_VALUE * random.nextInt(100)
+					: random.nextGaussian() * Math.pow(10.0, random.nextInt(21) - 10);
+		}
+		return result;
+	}
+
+	private static void assertSame(String message, double expected, double actual) {
+		assertEquals(message, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+	}
+
+	private static void assertSame(String message, double[] expected, double[] actual) {
+		assertEquals(message, expected.length, actual.length);
+		for (int i = 0; i < expected.length; ++i) {
+			assertSame(message + " [" + i + "]", expected[i], actual[i]);
+		}
+	}
+
+	@Test public void elementwise() {
+		for (int length = 0; length <= MAX_LENGTH; ++length) {
+			double[] a = values(length), b = values(length);
+			double[] expected = new double[length], actual = new double[length];
+			scalar.add(a, b, expected, length);
+			vector.add(a, b, actual, length);
+			assertSame("add " + length, expected, actual);
+			scalar.subtract(a, b, expected, length);
+			vector.subtract(a, b, actual, length);
+			assertSame("subtract " + length, expected, actual);
+			scalar.scale(-1.5, a, expected, length);
+			vector.scale(-1.5, a, actual, length);
+			assertSame("scale " + length, expected, actual);
+			scalar.replaceNaNs(a, -7.0, expected, length);
+			vector.replaceNaNs(a, -7.0, actual, length);
+			assertSame("replaceNaNs " + length, expected, actual);
+			// In place, as the builders call them
+			double[] inplace = a.clone();
+			vector.add(inplace, b, inplace, length);
+			scalar.add(a, b, expected, length);
+			assertSame("add in place " + length, expected, inplace);
+		}
+	}
+
+	/**
+	 * The kernels taking offsets, with the offsets at odd positions so that the vectors are not aligned with the arrays;
+	 * the elements outside the range must not be touched
+	 */
+	@Test public void withOffsets() {
+		for (int length = 0; length <= MAX_LENGTH; ++length) {
+			int xoffset = 3, yoffset = 5;
+			double[] x = values(length + 2 * xoffset), y = values(length + 2 * yoffset);
+			double[] expected = y.clone(), actual = y.clone();
+			scalar.axpy(0.75, x, xoffset, expected, yoffset, length);
+			vector.axpy(0.75, x, xoffset, actual, yoffset, length);
+			assertSame("axpy " + length, expected, actual);
+			assertSame("axpy head " + length, Arrays.copyOf(y, yoffset), Arrays.copyOf(actual, yoffset));
+			assertSame("axpy tail " + length, Arrays.copyOfRange(y, yoffset + length, y.length), Arrays.copyOfRange(actual, yoffset + length, y.length));
+			expected = y.clone();
+			actual = y.clone();
+			scalar.multiply(x, xoffset, x, 1, expected, yoffset, length);
+			vector.multiply(x, xoffset, x, 1, actual, yoffset, length);
+			assertSame("multiply " + length, expected, actual);
+		}
+	}
+
+	@Test public void reductions() {
+		for (int length = 0; length <= MAX_LENGTH; ++length) {
+			for (int k = 0; k < 20; ++k) {
+				double[] a = values(length);
+				assertSame("maxAbs " + Arrays.toString(a), scalar.maxAbs(a, length), vector.maxAbs(a, length));
+				assertSame("minAbs " + Arrays.toString(a), scalar.minAbs(a, length), vector.minAbs(a, length));
+			}
+		}
+	}
+
+	/**
+	 * NaNs are skipped wherever they are, in the first lane the blend compares against, in later vectors, and in the
+	 * scalar tail, rather than winning as they would with the max and min lane operations
+	 */
+	@Test public void reductionsIgnoreNaNs() {
+		for (int length = 1; length <= MAX_LENGTH; ++length) {
+			double[] nans = new double[length];
+			Arrays.fill(nans, Double.NaN);
+			assertSame("maxAbs of NaNs", 0.0, vector.maxAbs(nans, length));
+			assertSame("minAbs of NaNs", Double.MAX_VALUE, vector.minAbs(nans, length));
+			for (int position = 0; position < length; ++position) {
+				double[] a = new double[length];
+				for (int i = 0; i < length; ++i) {
+					a[i] = i % 2 == 0 ? i + 1.0 : -(i + 1.0);
+				}
+				a[position] = Double.NaN;
+				double max = position == length - 1 ? length - 1.0 : length, min = position == 0 ? (length > 1 ? 2.0 : Double.MAX_VALUE) : 1.0;
+				assertSame("maxAbs with NaN at " + position, max, vector.maxAbs(a, length));
+				assertSame("minAbs with NaN at " + position, min, vector.minAbs(a, length));
+				a[position] = Double.NEGATIVE_INFINITY;
+				assertSame("maxAbs with infinity at " + position, Double.POSITIVE_INFINITY, vector.maxAbs(a, length));
+				assertSame("maxAbs with infinity at " + position, Double.POSITIVE_INFINITY, scalar.maxAbs(a, length));
+			}
+		}
+		assertSame("maxAbs of nothing", 0.0, vector.maxAbs(new double[0], 0));
+		assertSame("minAbs of nothing", Double.MAX_VALUE, vector.minAbs(new double[0], 0));
+	}
+}
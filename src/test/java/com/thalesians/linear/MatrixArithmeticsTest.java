@@ -0,0 +1,84 @@
+package com.thalesians.linear;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class MatrixArithmeticsTest {
+	/**
+	 * Spans several row and column blocks, with elements of very different magnitudes so that the order of addition
+	 * shows in the last bits
+	 */
+	private static SimpleDenseMatrixOfDoubles matrix(int rowcount, int columncount) {
+		Random random = new Random(1L);
+		SimpleDenseMatrixOfDoubles.Builder builder = SimpleDenseMatrixOfDoubles.builder(rowcount, columncount);
+		for (int i = 0; i < rowcount; ++i) {
+			for (int j = 0; j < columncount; ++j) {
+				builder.setDouble(i, j, random.nextGaussian() * Math.pow(10.0, random.nextInt(16) - 8));
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Every reduction, with the vectors flattened, as computed on a pool of the given parallelism
+	 */
+	private static double[] reductions(Matrix<Double> matrix, Matrix<Double> square, int parallelism) {
+		ForkJoinPool previous = ParallelUtils.getPool(), pool = new ForkJoinPool(parallelism);
+		long threshold = Gemm.getParallelThreshold();
+		ParallelUtils.setPool(pool);
+		Gemm.setParallelThreshold(0);
+		try {
+			Matrix<Double> rows = MatrixArithmetics.sumOfRows(matrix), columns = MatrixArithmetics.sumOfColumns(matrix);
+			double[] result = new double[5 + rows.getColumnCount() + columns.getRowCount()];
+			result[0] = MatrixArithmetics.sumOfElements(matrix);
+			result[1] = MatrixArithmetics.frobeniusNorm(matrix);
+			result[2] = MatrixArithmetics.norm1(matrix);
+			result[3] = MatrixArithmetics.normInf(matrix);
+			result[4] = MatrixArithmetics.trace(square);
+			for (int j = 0; j < rows.getColumnCount(); ++j) {
+				result[5 + j] = MatrixUtils.getDouble(rows, 0, j);
+			}
+			for (int i = 0; i < columns.getRowCount(); ++i) {
+				result[5 + rows.getColumnCount() + i] = MatrixUtils.getDouble(columns, i, 0);
+			}
+			return result;
+		} finally {
+			Gemm.setParallelThreshold(threshold);
+			ParallelUtils.setPool(previous);
+			pool.shutdown();
+		}
+	}
+
+	@Test public void independentOfParallelism() {
+		SimpleDenseMatrixOfDoubles matrix = matrix(700, 2500), square = matrix(1500, 1500);
+		double[] expected = reductions(matrix, square, 1);
+		for (int parallelism : new int[] {2, 3, 8}) {
+			// Exact equality of the bits, which assertArrayEquals with a zero tolerance checks
+			assertArrayEquals("parallelism " + parallelism, expected, reductions(matrix, square, parallelism), 0.0);
+		}
+	}
+
+	@Test public void reductionsOfSmallMatrix() {
+		SimpleDenseMatrixOfDoubles a = TestMatrices.dense(new double[][] {{1, -2, 3}, {-4, 5, -6}});
+		assertEquals(-3.0, MatrixArithmetics.sumOfElements(a), 0.0);
+		assertEquals(-0.5, MatrixArithmetics.meanElement(a), 0.0);
+		assertEquals(Math.sqrt(91.0), MatrixArithmetics.frobeniusNorm(a), 1e-15);
+		assertEquals(9.0, MatrixArithmetics.norm1(a), 0.0);
+		assertEquals(15.0, MatrixArithmetics.normInf(a), 0.0);
+		assertEquals(-6.0, MatrixArithmetics.minElement(a), 0.0);
+		assertEquals(5.0, MatrixArithmetics.maxElement(a), 0.0);
+		TestMatrices.assertMatrixEquals(TestMatrices.dense(new double[][] {{-3, 3, -3}}), MatrixArithmetics.sumOfRows(a), 0.0);
+		TestMatrices.assertMatrixEquals(TestMatrices.dense(new double[][] {{2}, {-5}}), MatrixArithmetics.sumOfColumns(a), 0.0);
+		assertEquals(-8.0, MatrixArithmetics.trace(a.get(SimpleRectangle.create(0, 1, 2, 2))), 0.0);
+	}
+
+	@Test public void meanOfEmptyMatrix() {
+		assertTrue(Double.isNaN(MatrixArithmetics.meanElement(SimpleDenseMatrixOfDoubles.builder(0, 3).build())));
+	}
+}
@@ -0,0 +1,163 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Compares every batched kernel with the dense equivalent, for the unrolled 2 x 2 and 3 x 3 kernels, the general ones,
+ * and batches large enough to be split across the pool
+ */
+public class MatrixBatchTest {
+	private static final int[] SIZES = {2, 3, 5};
+	/** Enough matrices for several parallel tasks */
+	private static final int LARGE_COUNT = 600;
+
+	private static List<SimpleDenseMatrixOfDoubles> random(int count, int rowcount, int columncount, long seed) {
+		List<SimpleDenseMatrixOfDoubles> result = new ArrayList<>();
+		for (int b = 0; b < count; ++b) {
+			result.add(TestMatrices.random(rowcount, columncount, seed * 1000 + b));
+		}
+		return result;
+	}
+
+	private static List<SimpleDenseMatrixOfDoubles> randomSymmetricPositiveDefinite(int count, int dimcount, long seed) {
+		List<SimpleDenseMatrixOfDoubles> result = new ArrayList<>();
+		for (int b = 0; b < count; ++b) {
+			result.add(SimpleDenseMatrixOfDoubles.copyOf(TestMatrices.randomSymmetricPositiveDefinite(dimcount, seed * 1000 + b)));
+		}
+		return result;
+	}
+
+	private interface Check {
+		void run(int count, int n) throws LinearException;
+	}
+
+	/**
+	 * Runs the check for every size, on a small batch and on a large one with the threshold lowered so that it is split
+	 */
+	private static void forEachShape(Check check) throws LinearException {
+		long threshold = Gemm.getParallelThreshold();
+		try {
+			for (int n : SIZES) {
+				Gemm.setParallelThreshold(threshold);
+				check.run(7, n);
+				Gemm.setParallelThreshold(0);
+				check.run(LARGE_COUNT, n);
+			}
+		} finally {
+			Gemm.setParallelThreshold(threshold);
+		}
+	}
+
+	@Test public void elementwise() throws LinearException {
+		forEachShape((count, n) -> {
+			List<SimpleDenseMatrixOfDoubles> a = random(count, n, n + 1, 1L), b = random(count, n, n + 1, 2L);
+			MatrixBatch sum = MatrixBatch.of(a).add(MatrixBatch.of(b));
+			MatrixBatch difference = MatrixBatch.of(a).subtract(MatrixBatch.of(b));
+			MatrixBatch scaled = MatrixBatch.of(a).scale(3.0);
+			MatrixBatch transpose = MatrixBatch.of(a).transpose();
+			for (int x = 0; x < count; ++x) {
+				assertMatrixEquals(a.get(x).add(b.get(x)), sum.get(x), 0.0);
+				assertMatrixEquals(a.get(x).subtract(b.get(x)), difference.get(x), 0.0);
+				assertMatrixEquals(a.get(x).scale(3.0), scaled.get(x), 0.0);
+				assertMatrixEquals(a.get(x).transpose(), transpose.get(x), 0.0);
+			}
+		});
+	}
+
+	@Test public void mult() throws LinearException {
+		forEachShape((count, n) -> {
+			List<SimpleDenseMatrixOfDoubles> a = random(count, n + 1, n, 3L), b = random(count, n, n + 2, 4L);
+			MatrixBatch product = MatrixBatch.of(a).mult(MatrixBatch.of(b));
+			for (int x = 0; x < count; ++x) {
+				assertMatrixEquals(a.get(x).mult(b.get(x)), product.get(x), 1e-13);
+			}
+		});
+	}
+
+	@Test public void determinant() throws LinearException {
+		forEachShape((count, n) -> {
+			List<SimpleDenseMatrixOfDoubles> a = random(count, n, n, 5L);
+			double[] determinants = MatrixBatch.of(a).determinant();
+			for (int x = 0; x < count; ++x) {
+				double expected = a.get(x).determinant();
+				assertEquals(expected, determinants[x], 1e-12 * Math.max(1.0, Math.abs(expected)));
+			}
+		});
+	}
+
+	@Test public void invert() throws LinearException {
+		forEachShape((count, n) -> {
+			List<SimpleDenseMatrixOfDoubles> a = random(count, n, n, 6L);
+			MatrixBatch inverse = MatrixBatch.of(a).invert();
+			for (int x = 0; x < count; ++x) {
+				assertMatrixEquals(a.get(x).invert(), inverse.get(x), 1e-8 * MatrixArithmetics.normInf(a.get(x).invert()));
+			}
+		});
+	}
+
+	@Test public void cholesky() throws LinearException {
+		forEachShape((count, n) -> {
+			List<SimpleDenseMatrixOfDoubles> a = randomSymmetricPositiveDefinite(count, n, 7L);
+			MatrixBatch l = MatrixBatch.of(a).cholesky();
+			for (int x = 0; x < count; ++x) {
+				assertMatrixEquals(MatrixDecomposition.cholesky(a.get(x)).L, l.get(x), 1e-13);
+			}
+		});
+	}
+
+	@Test public void solve() throws LinearException {
+		forEachShape((count, n) -> {
+			List<SimpleDenseMatrixOfDoubles> a = random(count, n, n, 8L), b = random(count, n, 2, 9L);
+			MatrixBatch x = MatrixBatch.of(a).solve(MatrixBatch.of(b));
+			for (int i = 0; i < count; ++i) {
+				Matrix<Double> expected = MatrixFunctions.solve(a.get(i), b.get(i));
+				assertMatrixEquals(expected, x.get(i), 1e-8 * MatrixArithmetics.normInf(expected));
+			}
+		});
+	}
+
+	/**
+	 * 12 x 12 matrices with elements of about 1e-30, whose determinants underflow to zero, are not singular
+	 */
+	@Test public void smallElements() {
+		List<SimpleDenseMatrixOfDoubles> a = new ArrayList<>(), b = random(3, 12, 1, 10L);
+		for (int x = 0; x < 3; ++x) {
+			a.add(SimpleDenseMatrixOfDoubles.copyOf(TestMatrices.random(12, 12, 11L + x).scale(1e-30)));
+		}
+		MatrixBatch batch = MatrixBatch.of(a);
+		MatrixBatch inverse = batch.invert();
+		MatrixBatch x = batch.solve(MatrixBatch.of(b));
+		for (int i = 0; i < 3; ++i) {
+			assertTrue(TestMatrices.identityResidual(a.get(i), inverse.get(i)) < 1e-10);
+			assertMatrixEquals(b.get(i), a.get(i).mult(x.get(i)), 1e-12);
+		}
+	}
+
+	@Test public void singularMatrixIndex() {
+		for (int n : SIZES) {
+			List<SimpleDenseMatrixOfDoubles> a = random(5, n, n, 12L);
+			a.set(3, SimpleDenseMatrixOfDoubles.builder(n, n).build());
+			try {
+				MatrixBatch.of(a).invert();
+				fail("A batch with a zero matrix was inverted");
+			} catch (RuntimeLinearException e) {
+				assertEquals("The matrix at index 3 of the batch is singular", e.getMessage());
+			}
+		}
+	}
+
+	@Test(expected = LinearException.class)
+	public void choleskyOfIndefiniteMatrix() throws LinearException {
+		List<SimpleDenseMatrixOfDoubles> a = randomSymmetricPositiveDefinite(4, 5, 13L);
+		a.set(2, SimpleDenseMatrixOfDoubles.copyOf(a.get(2).scale(-1.0)));
+		MatrixBatch.of(a).cholesky();
+	}
+}
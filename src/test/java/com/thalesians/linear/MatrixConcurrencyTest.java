@@ -0,0 +1,132 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Many threads operating on the same immutable matrices at once must get the results that a single thread gets, and
+ * must not change the shared matrices
+ */
+public class MatrixConcurrencyTest {
+	private static final int THREAD_COUNT = 8;
+	private static final int ITERATION_COUNT = 200;
+	private static final int DIMENSION = 24;
+
+	@Test public void newBuilderReturnsSeparateBuilders() {
+		MatrixBuilder<Double> prototype = SimpleDenseMatrixOfDoubles.builder();
+		assertNotSame(prototype.newBuilder(), prototype.newBuilder());
+		assertNotSame(prototype, prototype.newBuilder());
+	}
+
+	/**
+	 * A builder that does not implement newBuilder, as one written against the earlier interface, still compiles and
+	 * fails clearly when it is asked for a new builder
+	 */
+	@SuppressWarnings("unchecked")
+	@Test public void newBuilderDefaultsToUnsupported() throws Throwable {
+		MatrixBuilder<Double> legacy = (MatrixBuilder<Double>) Proxy.newProxyInstance(MatrixBuilder.class.getClassLoader(), new Class<?>[] {MatrixBuilder.class},
+				(proxy, method, args) -> method.isDefault() ? InvocationHandler.invokeDefault(proxy, method, args) : null);
+		try {
+			legacy.newBuilder();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("newBuilder()"));
+		}
+	}
+
+	@Test public void sharedDenseMatrix() throws Exception {
+		SimpleDenseMatrixOfDoubles a = SimpleDenseMatrixOfDoubles.builder()
+				.set(TestMatrices.random(DIMENSION, DIMENSION, 1L))
+				.add(SimpleDenseMatrixOfDoubles.identity(DIMENSION).scale(10.0))
+				.build();
+		double[] before = MatrixUtils.toArrayOfDoubles(a);
+		List<Matrix<Double>> operands = new ArrayList<>();
+		for (int k = 0; k < THREAD_COUNT; ++k) {
+			operands.add(TestMatrices.random(DIMENSION, DIMENSION, 100L + k));
+		}
+		// Computed serially on a copy, so that none of the memoised results of the shared matrix are computed yet
+		SimpleDenseMatrixOfDoubles reference = SimpleDenseMatrixOfDoubles.copyOf(a);
+		List<Matrix<Double>> products = new ArrayList<>(), sums = new ArrayList<>();
+		for (Matrix<Double> operand : operands) {
+			products.add(reference.mult(operand));
+			sums.add(reference.add(operand));
+		}
+		Matrix<Double> inverse = reference.invert(), transpose = reference.transpose();
+		double determinant = reference.determinant();
+
+		runConcurrently(k -> {
+			Matrix<Double> operand = operands.get(k);
+			for (int iteration = 0; iteration < ITERATION_COUNT; ++iteration) {
+				assertMatrixEquals(products.get(k), a.mult(operand), 0.0);
+				assertMatrixEquals(sums.get(k), a.add(operand), 0.0);
+				assertMatrixEquals(inverse, a.invert(), 0.0);
+				assertMatrixEquals(transpose, a.transpose(), 0.0);
+				assertEquals(determinant, a.determinant(), 0.0);
+			}
+		});
+		assertMatrixEquals(SimpleDenseMatrixOfDoubles.columnVector(before), SimpleDenseMatrixOfDoubles.columnVector(MatrixUtils.toArrayOfDoubles(a)), 0.0);
+	}
+
+	@Test public void sharedSymmetricMatrix() throws Exception {
+		SimpleSymmetricMatrixOfDoubles a = TestMatrices.randomSymmetricPositiveDefinite(DIMENSION, 2L);
+		SimpleSymmetricMatrixOfDoubles reference = SimpleSymmetricMatrixOfDoubles.builder().set(a).build();
+		Matrix<Double> inverse = reference.invert();
+		double determinant = reference.determinant(), logdeterminant = reference.logDeterminant();
+		Matrix<Double> rhs = TestMatrices.random(DIMENSION, 3, 3L);
+		Matrix<Double> solution = reference.solve(rhs);
+
+		runConcurrently(k -> {
+			for (int iteration = 0; iteration < ITERATION_COUNT; ++iteration) {
+				assertMatrixEquals(inverse, a.invert(), 0.0);
+				assertEquals(determinant, a.determinant(), 0.0);
+				assertEquals(logdeterminant, a.logDeterminant(), 0.0);
+				assertMatrixEquals(solution, a.solve(rhs), 0.0);
+			}
+		});
+	}
+
+	private interface Task {
+		void run(int thread) throws Exception;
+	}
+
+	/**
+	 * Runs the task on THREAD_COUNT threads released at the same time, and rethrows the first failure
+	 */
+	private static void runConcurrently(Task task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Void>> futures = new ArrayList<>();
+			for (int k = 0; k < THREAD_COUNT; ++k) {
+				int thread = k;
+				futures.add(executor.submit((Callable<Void>) () -> {
+					start.await();
+					task.run(thread);
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<Void> future : futures) {
+				future.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+
+import org.junit.Test;
+
+public class MatrixDecompositionTest {
+	@Test public void choleskyOfDenseMatrix() throws LinearException {
+		SimpleDenseMatrixOfDoubles a = SimpleDenseMatrixOfDoubles.copyOf(TestMatrices.randomSymmetricPositiveDefinite(8, 1L));
+		Matrix<Double> l = MatrixDecomposition.cholesky(a).L;
+		assertMatrixEquals(a, l.mult(l.transpose()), 1e-12);
+	}
+
+	/**
+	 * A matrix that is symmetric to within rounding only is decomposed from its lower triangle
+	 */
+	@Test public void choleskyOfNearlySymmetricMatrix() throws LinearException {
+		SimpleDenseMatrixOfDoubles a = TestMatrices.dense(new double[][] {{4, 1}, {Math.nextUp(1.0), 3}});
+		Matrix<Double> l = MatrixDecomposition.cholesky(a).L;
+		assertMatrixEquals(a, l.mult(l.transpose()), 1e-15);
+	}
+
+	@Test(expected = LinearException.class)
+	public void choleskyOfIndefiniteMatrix() throws LinearException {
+		MatrixDecomposition.cholesky(TestMatrices.dense(new double[][] {{1, 2}, {2, 1}}));
+	}
+
+	/**
+	 * Updating the decomposition of A gives that of A + X * X^T, as computed from scratch
+	 */
+	@Test public void choleskyUpdate() throws LinearException {
+		Matrix<Double> a = SimpleDenseMatrixOfDoubles.copyOf(TestMatrices.randomSymmetricPositiveDefinite(8, 1L));
+		Matrix<Double> x = TestMatrices.random(8, 3, 2L);
+		Matrix<Double> updated = MatrixDecomposition.cholesky(a).update(x).L;
+		assertMatrixEquals(MatrixDecomposition.cholesky(a.add(x.mult(x.transpose()))).L, updated, 1e-12);
+	}
+
+	/**
+	 * Downdating the decomposition of B + X * X^T by X gives that of B, as computed from scratch
+	 */
+	@Test public void choleskyDowndate() throws LinearException {
+		Matrix<Double> b = SimpleDenseMatrixOfDoubles.copyOf(TestMatrices.randomSymmetricPositiveDefinite(8, 3L));
+		Matrix<Double> x = TestMatrices.random(8, 3, 4L);
+		Matrix<Double> downdated = MatrixDecomposition.cholesky(b.add(x.mult(x.transpose()))).downdate(x).L;
+		assertMatrixEquals(MatrixDecomposition.cholesky(b).L, downdated, 1e-10);
+	}
+
+	@Test public void choleskyRankOneUpdateAndDowndate() throws LinearException {
+		Matrix<Double> a = SimpleDenseMatrixOfDoubles.copyOf(TestMatrices.randomSymmetricPositiveDefinite(8, 5L));
+		Matrix<Double> x = TestMatrices.random(8, 1, 6L);
+		MatrixDecomposition.Cholesky cholesky = MatrixDecomposition.cholesky(a);
+		assertMatrixEquals(cholesky.L, cholesky.update(x).downdate(x).L, 1e-12);
+	}
+
+	@Test(expected = LinearException.class)
+	public void choleskyUpdateWithNaN() throws LinearException {
+		Matrix<Double> a = SimpleDenseMatrixOfDoubles.copyOf(TestMatrices.randomSymmetricPositiveDefinite(4, 9L));
+		MatrixDecomposition.cholesky(a).update(SimpleDenseMatrixOfDoubles.columnVector(new double[] {1.0, Double.NaN, 0.0, 2.0}));
+	}
+
+	@Test(expected = LinearException.class)
+	public void choleskyUpdateWithInfinity() throws LinearException {
+		Matrix<Double> a = SimpleDenseMatrixOfDoubles.copyOf(TestMatrices.randomSymmetricPositiveDefinite(4, 10L));
+		MatrixDecomposition.cholesky(a).update(SimpleDenseMatrixOfDoubles.columnVector(new double[] {Double.POSITIVE_INFINITY, 0.0, 0.0, 0.0}));
+	}
+
+	@Test(expected = LinearException.class)
+	public void choleskyDowndateToIndefiniteMatrix() throws LinearException {
+		Matrix<Double> a = SimpleDenseMatrixOfDoubles.copyOf(TestMatrices.randomSymmetricPositiveDefinite(8, 7L));
+		MatrixDecomposition.cholesky(a).downdate(TestMatrices.random(8, 1, 8L).scale(10.0));
+	}
+}
@@ -0,0 +1,101 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.common.base.Function;
+
+public class MatrixExpressionTest {
+	private static final double TOLERANCE = 1e-12;
+
+	private final SimpleDenseMatrixOfDoubles p = TestMatrices.random(6, 4, 1L);
+	private final SimpleDenseMatrixOfDoubles h = TestMatrices.random(5, 4, 2L);
+	private final SimpleDenseMatrixOfDoubles r = TestMatrices.random(6, 5, 3L);
+	private final SimpleDenseMatrixOfDoubles q = TestMatrices.random(6, 5, 4L);
+	private final Function<Double, Double> square = x -> x * x;
+
+	@Test public void structuralEquality() {
+		MatrixExpression product = MatrixExpression.of(p).mult(h.transpose());
+		Matrix<Double> htranspose = h.transpose();
+		assertEquals(MatrixExpression.of(p).mult(htranspose), MatrixExpression.of(p).mult(htranspose));
+		assertEquals(MatrixExpression.of(p).mult(htranspose).hashCode(), MatrixExpression.of(p).mult(htranspose).hashCode());
+		// Leaves are the same only if they wrap the same matrix, not an equal one
+		assertNotEquals(MatrixExpression.of(p), MatrixExpression.of(SimpleDenseMatrixOfDoubles.copyOf(p)));
+		assertEquals(MatrixExpression.of(p).transpose(), MatrixExpression.of(p).transpose());
+		assertSame(product, product.transpose().transpose());
+		assertEquals(product.scale(2.0).add(r), product.scale(2.0).add(r));
+		assertNotEquals(product.scale(2.0).add(r), product.scale(3.0).add(r));
+		assertNotEquals(product.add(r), product.subtract(r));
+		assertEquals(MatrixExpression.of(p).elementwise(square), MatrixExpression.of(p).elementwise(square));
+		assertNotEquals(MatrixExpression.of(p).elementwise(square), MatrixExpression.of(p).elementwise(x -> x * x));
+	}
+
+	/**
+	 * The fused evaluation against the same operations done eagerly on dense matrices
+	 */
+	@Test public void fusedMatchesEager() {
+		double s = 0.75;
+		Matrix<Double> eager = p.mult(h.transpose()).scale(s).add(r).subtract(q);
+		MatrixExpression lazy = MatrixExpression.of(p).mult(h.transpose()).scale(s).add(r).subtract(q);
+		assertMatrixEquals(eager, lazy, TOLERANCE);
+		assertSame(lazy.evaluate(), lazy.evaluate());
+
+		// Several products, one of them of a linear combination, inside one combination
+		Matrix<Double> eager2 = p.mult(h.transpose()).subtract(p.add(p).mult(h.transpose()).scale(0.5)).add(r.mult(h).mult(h.transpose()));
+		MatrixExpression lazy2 = MatrixExpression.of(p).mult(h.transpose())
+				.subtract(MatrixExpression.of(p).add(p).mult(h.transpose()).scale(0.5))
+				.add(MatrixExpression.of(r).mult(h).mult(h.transpose()));
+		assertMatrixEquals(eager2, lazy2, TOLERANCE);
+
+		// Elementwise functions and transposes fused around a product
+		SimpleDenseMatrixOfDoubles.Builder expected = SimpleDenseMatrixOfDoubles.builder(5, 6);
+		Matrix<Double> product = p.mult(h.transpose());
+		for (int i = 0; i < 5; ++i) {
+			for (int j = 0; j < 6; ++j) {
+				double x = MatrixUtils.getDouble(product, j, i);
+				expected.setDouble(i, j, x * x - MatrixUtils.getDouble(r, j, i) * MatrixUtils.getDouble(q, j, i));
+			}
+		}
+		MatrixExpression lazy3 = MatrixExpression.of(p).mult(h.transpose()).elementwise(square).transpose()
+				.subtract(MatrixExpression.of(r).elementwise(q, (x, y) -> x * y).transpose());
+		assertMatrixEquals(expected.build(), lazy3, TOLERANCE);
+	}
+
+	/**
+	 * A product occurring twice is computed once and stored, while a product occurring once is accumulated straight into
+	 * the result
+	 */
+	@Test public void commonProductsAreEvaluatedOnce() {
+		MatrixExpression product = MatrixExpression.of(p).mult(h.transpose());
+		MatrixExpression equalproduct = MatrixExpression.of(p).mult(h.transpose());
+		MatrixExpression.Evaluation evaluation = new MatrixExpression.Evaluation();
+		SimpleDenseMatrixOfDoubles once = evaluation.evaluate(product.scale(2.0).add(r));
+		assertFalse(evaluation.isStored(product));
+		assertMatrixEquals(p.mult(h.transpose()).scale(2.0).add(r), once, TOLERANCE);
+
+		evaluation = new MatrixExpression.Evaluation();
+		SimpleDenseMatrixOfDoubles twice = evaluation.evaluate(product.scale(2.0).add(r).subtract(equalproduct.scale(3.0)));
+		assertTrue(evaluation.isStored(product));
+		assertMatrixEquals(p.mult(h.transpose()).scale(-1.0).add(r), twice, TOLERANCE);
+
+		// Once in a combination and once under an elementwise function
+		evaluation = new MatrixExpression.Evaluation();
+		SimpleDenseMatrixOfDoubles nested = evaluation.evaluate(product.add(r).elementwise(equalproduct, (x, y) -> x - y));
+		assertTrue(evaluation.isStored(product));
+		assertMatrixEquals(r, nested, TOLERANCE);
+	}
+
+	@Test public void evaluatedSubexpressionsAreReused() {
+		MatrixExpression product = MatrixExpression.of(p).mult(h.transpose());
+		SimpleDenseMatrixOfDoubles value = product.evaluate();
+		MatrixExpression.Evaluation evaluation = new MatrixExpression.Evaluation();
+		assertFalse(evaluation.isFusable(product));
+		assertMatrixEquals(value.scale(2.0).add(q), evaluation.evaluate(product.scale(2.0).add(q)), TOLERANCE);
+	}
+}
@@ -0,0 +1,144 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MatrixFilesTest {
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path write(Matrix<? extends Double> matrix) throws IOException {
+		Path path = folder.newFile().toPath();
+		MatrixFiles.write(matrix, path);
+		return path;
+	}
+
+	private Path write(Matrix<? extends Double> matrix, MatrixFiles.StorageKind kind) throws IOException {
+		Path path = folder.newFile().toPath();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			MatrixFiles.write(matrix, kind, channel);
+		}
+		return path;
+	}
+
+	private static void assertRowsEqual(Matrix<Double> expected, MappedMatrixOfDoubles actual) {
+		double[] row = new double[actual.getColumnCount() + 2];
+		for (int i = 0; i < actual.getRowCount(); ++i) {
+			actual.getRow(i, row, 1);
+			for (int j = 0; j < actual.getColumnCount(); ++j) {
+				assertEquals("(" + i + ", " + j + ")", MatrixUtils.getDouble(expected, i, j), row[j + 1], 0.0);
+			}
+		}
+	}
+
+	@Test public void dense() throws IOException, LinearException {
+		SimpleDenseMatrixOfDoubles matrix = TestMatrices.random(7, 5, 1L);
+		MappedMatrixOfDoubles mapped = MatrixFiles.map(write(matrix));
+		assertEquals(MatrixFiles.StorageKind.DENSE, mapped.getStorageKind());
+		assertMatrixEquals(matrix, mapped, 0.0);
+		assertRowsEqual(matrix, mapped);
+		Matrix<Double> heap = mapped.copyToHeap();
+		assertTrue(heap instanceof SimpleDenseMatrixOfDoubles);
+		assertMatrixEquals(matrix, heap, 0.0);
+	}
+
+	@Test public void packedSymmetric() throws IOException, LinearException {
+		SimpleSymmetricMatrixOfDoubles matrix = TestMatrices.randomSymmetricPositiveDefinite(6, 2L);
+		Path path = write(matrix);
+		assertEquals(MatrixFiles.HEADER_LENGTH + 8 * 21, path.toFile().length());
+		MappedMatrixOfDoubles mapped = MatrixFiles.map(path);
+		assertEquals(MatrixFiles.StorageKind.PACKED_SYMMETRIC, mapped.getStorageKind());
+		assertMatrixEquals(matrix, mapped, 0.0);
+		assertRowsEqual(matrix, mapped);
+		Matrix<Double> heap = mapped.copyToHeap();
+		assertTrue(heap instanceof SimpleSymmetricMatrixOfDoubles);
+		assertMatrixEquals(matrix, heap, 0.0);
+	}
+
+	@Test public void sparse() throws IOException, LinearException {
+		SparseMatrixOfDoubles matrix = SparseMatrixOfDoubles.builder(6, 8).setDouble(0, 3, 1.5).setDouble(2, 0, -2.0).setDouble(2, 7, 3.0).setDouble(5, 5, 4.0).build();
+		MappedMatrixOfDoubles mapped = MatrixFiles.map(write(matrix));
+		assertEquals(MatrixFiles.StorageKind.SPARSE, mapped.getStorageKind());
+		assertMatrixEquals(matrix, mapped, 0.0);
+		assertRowsEqual(matrix, mapped);
+		Matrix<Double> heap = mapped.copyToHeap();
+		assertTrue(heap instanceof SparseMatrixOfDoubles);
+		assertEquals(4, ((SparseMatrixOfDoubles) heap).getNonZeroCount());
+		assertMatrixEquals(matrix, heap, 0.0);
+		// The transpose is CSC, and is written in CSR storage
+		assertMatrixEquals(matrix.transpose(), MatrixFiles.map(write(matrix.transpose())), 0.0);
+	}
+
+	@Test public void denseMatrixInOtherStorageKinds() throws IOException, LinearException {
+		SimpleDenseMatrixOfDoubles symmetric = SimpleDenseMatrixOfDoubles.copyOf(TestMatrices.randomSymmetricPositiveDefinite(5, 3L));
+		assertMatrixEquals(symmetric, MatrixFiles.map(write(symmetric, MatrixFiles.StorageKind.PACKED_SYMMETRIC)), 0.0);
+		SimpleDenseMatrixOfDoubles matrix = TestMatrices.dense(new double[][] {{0, 1, 0}, {0, 0, 0}, {2, 0, 3}});
+		MappedMatrixOfDoubles mapped = MatrixFiles.map(write(matrix, MatrixFiles.StorageKind.SPARSE));
+		assertEquals(MatrixFiles.StorageKind.SPARSE, mapped.getStorageKind());
+		assertMatrixEquals(matrix, mapped, 0.0);
+	}
+
+	private static void overwrite(Path path, int offset, int value) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value);
+			buffer.flip();
+			channel.write(buffer, offset);
+		}
+	}
+
+	private static void assertInvalid(Path path, String message) throws IOException {
+		try {
+			MatrixFiles.map(path);
+			fail("Mapped an invalid file");
+		} catch (LinearException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+		}
+	}
+
+	@Test public void truncated() throws IOException {
+		for (Matrix<Double> matrix : Arrays.<Matrix<Double>>asList(
+				TestMatrices.random(4, 3, 4L), TestMatrices.randomSymmetricPositiveDefinite(4, 5L), SparseMatrixOfDoubles.copyOf(TestMatrices.random(4, 3, 6L)))) {
+			Path path = write(matrix);
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				channel.truncate(channel.size() - 4);
+			}
+			assertInvalid(path, "Truncated matrix file");
+		}
+		Path path = write(TestMatrices.random(4, 3, 7L));
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(MatrixFiles.HEADER_LENGTH - 1);
+		}
+		assertInvalid(path, "Invalid matrix file");
+	}
+
+	@Test public void badMagic() throws IOException {
+		Path path = write(TestMatrices.random(4, 3, 8L));
+		overwrite(path, 0, 0x12345678);
+		assertInvalid(path, "Invalid matrix file");
+	}
+
+	@Test public void badVersion() throws IOException {
+		Path path = write(TestMatrices.random(4, 3, 9L));
+		overwrite(path, 4, MatrixFiles.VERSION + 1);
+		assertInvalid(path, "Unsupported matrix file version");
+	}
+
+	@Test public void badStorageKind() throws IOException {
+		Path path = write(TestMatrices.random(4, 3, 10L));
+		overwrite(path, 8, 42);
+		assertInvalid(path, "Unknown matrix storage kind");
+	}
+}
@@ -0,0 +1,152 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MatrixTextParserTest {
+	private static void assertParsesAsJava(String s) throws LinearException {
+		double expected = Double.parseDouble(s), actual = MatrixTextParser.parseDouble(s);
+		assertEquals(s, Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual));
+	}
+
+	@Test public void parseDoubleEdgeCases() throws LinearException {
+		String[] inputs = {
+				"0", "-0", "+0", "0.0", "-0.0", "-0e5", "00", "007", "-007.50", "0.000123", "000.000", ".5", "5.", "-.5",
+				"1", "-1", "+1.5", "3.141592653589793", "2.718281828459045E0",
+				"123456789012345678", "1234567890123456789", "12345678901234567890123", "0.12345678901234567890",
+				"9007199254740992", "9007199254740993", "9007199254740993e-5", "18014398509481985",
+				"1e22", "1e23", "1e-22", "1e-23", "123e22", "123e-22", "4.5e-30", "7e300", "1e308", "1.7976931348623157e308",
+				"1e309", "-1e309", "4.9e-324", "1e-325", "2.2250738585072014E-308", "1E+5", "1e+05", "1e-0",
+				"NaN", "Infinity", "-Infinity", "+Infinity", "1d", "2.5f", "1.0000000000000000000001" };
+		for (String s : inputs) {
+			assertParsesAsJava(s);
+		}
+	}
+
+	@Test public void parseDoubleRandomInputs() throws LinearException {
+		Random random = new Random(1L);
+		for (int k = 0; k < 100000; ++k) {
+			StringBuilder sb = new StringBuilder();
+			if (random.nextBoolean()) {
+				sb.append('-');
+			}
+			int digitcount = 1 + random.nextInt(19), point = random.nextInt(digitcount + 1);
+			for (int d = 0; d < digitcount; ++d) {
+				if (d == point) {
+					sb.append('.');
+				}
+				sb.append((char) ('0' + random.nextInt(10)));
+			}
+			if (random.nextBoolean()) {
+				sb.append('e').append(random.nextInt(61) - 30);
+			}
+			assertParsesAsJava(sb.toString());
+		}
+	}
+
+	@Test public void invalidNumbers() {
+		for (String s : new String[] {"", "-", ".", "1e", "1e+", "1.2.3", "abc", "1-2"}) {
+			try {
+				MatrixTextParser.parseDouble(s);
+				fail("Parsed " + s);
+			} catch (LinearException e) {
+				// Expected
+			}
+		}
+	}
+
+	private static Matrix<Double> read(String s) throws LinearException {
+		return StringUtils.readMatrix(SimpleDenseMatrixOfDoubles.builder(), s);
+	}
+
+	@Test public void brackets() throws LinearException {
+		SimpleDenseMatrixOfDoubles expected = TestMatrices.dense(new double[][] {{1, 2}, {3, 4}});
+		for (String s : new String[] {"[1, 2; 3, 4]", "1,2;3,4", "[[1, 2]; [3, 4]]", " [ 1 ,2 ; 3, 4 ; ] ", "1, 2;; 3, 4;", "[1, 2,; 3, 4]"}) {
+			assertMatrixEquals(expected, read(s), 0.0);
+			assertMatrixEquals(expected, StringUtils.fromDenseFormatString(SimpleDenseMatrixOfDoubles.builder(), s), 0.0);
+		}
+		assertMatrixEquals(TestMatrices.dense(new double[][] {{-0.5}}), read("[-.5]"), 0.0);
+	}
+
+	@Test public void invalidDense() {
+		for (String s : new String[] {"[1, 2; 3]", "[1 2]", "[1, 2; 3, x]", "[1, (2)]"}) {
+			try {
+				read(s);
+				fail("Parsed " + s);
+			} catch (LinearException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test public void sparse() throws LinearException {
+		SimpleDenseMatrixOfDoubles expected = TestMatrices.dense(new double[][] {{0, 2.5, 0}, {0, 0, -1}});
+		assertMatrixEquals(expected, read("2 x 3: 0,1=2.5; 1,2=-1"), 0.0);
+		assertMatrixEquals(expected, read("2x3:0,1=2.5;1,2=-1;"), 0.0);
+		assertMatrixEquals(expected, StringUtils.fromSparseFormatString("2 x 3: 0, 1 = 2.5; 1, 2 = -1e0"), 0.0);
+		assertMatrixEquals(SimpleDenseMatrixOfDoubles.builder(2, 3).build(), read("2 x 3"), 0.0);
+	}
+
+	/**
+	 * Hands out the characters in small, uneven reads, so that numbers keep straddling refills of the parser's buffer
+	 */
+	private static final class UnevenReader extends FilterReader {
+		private final Random random = new Random(2L);
+
+		UnevenReader(Reader in) {
+			super(in);
+		}
+
+		@Override public int read(char[] cbuf, int off, int len) throws IOException {
+			return super.read(cbuf, off, Math.min(len, 1 + random.nextInt(13)));
+		}
+	}
+
+	private static String denseText(int rowcount, int columncount, long seed) {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < rowcount; ++i) {
+			for (int j = 0; j < columncount; ++j) {
+				sb.append(j == 0 ? (i == 0 ? "" : "; ") : ", ");
+				sb.append(random.nextGaussian() * Math.pow(10.0, random.nextInt(41) - 20));
+			}
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * Inputs many times the 8K buffer, read through a plain reader and through one that returns a few characters at a
+	 * time, give the same matrix as the CharSequence path
+	 */
+	@Test public void readerAgreesWithCharSequence() throws IOException, LinearException {
+		String dense = denseText(300, 20, 3L);
+		StringBuilder sparse = new StringBuilder("400 x 300:");
+		Random random = new Random(4L);
+		for (int k = 0; k < 3000; ++k) {
+			sparse.append(' ').append(random.nextInt(400)).append(',').append(random.nextInt(300)).append('=').append(random.nextGaussian()).append(';');
+		}
+		for (String text : new String[] {dense, sparse.toString()}) {
+			Matrix<Double> expected = read(text);
+			assertMatrixEquals(expected, StringUtils.readMatrix(SimpleDenseMatrixOfDoubles.builder(), new StringReader(text)), 0.0);
+			assertMatrixEquals(expected, StringUtils.readMatrix(SimpleDenseMatrixOfDoubles.builder(), new UnevenReader(new StringReader(text))), 0.0);
+		}
+		// Every value round-trips through its shortest representation, as Double.toString wrote it
+		Matrix<Double> matrix = read(dense);
+		String[] rows = dense.substring(1, dense.length() - 1).split("; ");
+		for (int i = 0; i < rows.length; ++i) {
+			String[] values = rows[i].split(", ");
+			for (int j = 0; j < values.length; ++j) {
+				assertEquals(Double.parseDouble(values[j]), MatrixUtils.getDouble(matrix, i, j), 0.0);
+			}
+		}
+	}
+}
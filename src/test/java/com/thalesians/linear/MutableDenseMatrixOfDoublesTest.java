@@ -0,0 +1,70 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class MutableDenseMatrixOfDoublesTest {
+	private static final int N = 16;
+
+	private final MutableDenseMatrixOfDoubles a = MutableDenseMatrixOfDoubles.copyOf(TestMatrices.random(N, N, 1L));
+	private final MutableDenseMatrixOfDoubles b = MutableDenseMatrixOfDoubles.copyOf(TestMatrices.random(N, N, 2L));
+	private final MutableDenseMatrixOfDoubles spd = MutableDenseMatrixOfDoubles.copyOf(TestMatrices.randomSymmetricPositiveDefinite(N, 3L));
+	private final MutableDenseMatrixOfDoubles product = MutableDenseMatrixOfDoubles.create(0, 0);
+	private final MutableDenseMatrixOfDoubles sum = MutableDenseMatrixOfDoubles.create(0, 0);
+	private final MutableDenseMatrixOfDoubles transpose = MutableDenseMatrixOfDoubles.create(0, 0);
+	private final MutableDenseMatrixOfDoubles inverse = MutableDenseMatrixOfDoubles.create(0, 0);
+	private final MutableDenseMatrixOfDoubles cholesky = MutableDenseMatrixOfDoubles.create(0, 0);
+
+	private void runOperations() throws LinearException {
+		MutableDenseMatrixOfDoubles.multInto(a, b, product);
+		MutableDenseMatrixOfDoubles.addInto(a, b, sum);
+		MutableDenseMatrixOfDoubles.subtractInto(sum, b, sum);
+		MutableDenseMatrixOfDoubles.scaleInto(sum, 0.5, sum);
+		MutableDenseMatrixOfDoubles.transposeInto(product, transpose);
+		MutableDenseMatrixOfDoubles.invertInto(a, inverse);
+		MutableDenseMatrixOfDoubles.choleskyInto(spd, cholesky);
+	}
+
+	@Test public void operations() throws LinearException {
+		runOperations();
+		Matrix<Double> ab = TestMatrices.random(N, N, 1L).mult(TestMatrices.random(N, N, 2L));
+		assertMatrixEquals(ab, product, 1e-12);
+		assertMatrixEquals(a.scale(0.5), sum, 1e-15);
+		assertMatrixEquals(ab.transpose(), transpose, 1e-12);
+		assertTrue(TestMatrices.identityResidual(a, inverse) < 1e-10);
+		assertMatrixEquals(spd, cholesky.mult(cholesky.transpose()), 1e-12);
+	}
+
+	/**
+	 * Once the workspaces have their shapes the "into" operations allocate nothing, as counted by the JVM for the thread.
+	 * A round that happens to overlap a recompilation may see a few stray bytes, so the best of several rounds counts.
+	 */
+	@Test public void steadyStateDoesNotAllocate() throws LinearException {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+		for (int i = 0; i < 10000; ++i) {
+			runOperations();
+		}
+		// Called once beforehand so that nothing it allocates the first time is counted
+		threads.getThreadAllocatedBytes(thread);
+		long allocated = Long.MAX_VALUE;
+		for (int round = 0; round < 5 && allocated > 0; ++round) {
+			long before = threads.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < 1000; ++i) {
+				runOperations();
+			}
+			allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - before);
+		}
+		assertEquals("bytes allocated", 0L, allocated);
+	}
+}
@@ -0,0 +1,100 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class OffHeapMatrixOfDoublesTest {
+	/** Chunks of 16 doubles, so that the 7-element rows below keep straddling chunk boundaries */
+	private static final int CHUNK_SHIFT = 4;
+
+	private static OffHeapMatrixOfDoubles smallChunks(Matrix<? extends Double> matrix) {
+		return OffHeapMatrixOfDoubles.builder().setChunkShift(CHUNK_SHIFT).set(matrix).build();
+	}
+
+	@Test public void copyToHeap() {
+		SimpleDenseMatrixOfDoubles source = TestMatrices.random(5, 7, 1L);
+		try (OffHeapMatrixOfDoubles m = OffHeapMatrixOfDoubles.copyOf(source)) {
+			assertMatrixEquals(source, m, 0.0);
+			assertMatrixEquals(source, m.copyToHeap(), 0.0);
+		}
+	}
+
+	@Test public void rowsStraddlingChunks() {
+		SimpleDenseMatrixOfDoubles source = TestMatrices.random(9, 7, 2L);
+		try (OffHeapMatrixOfDoubles m = smallChunks(source)) {
+			assertMatrixEquals(source, m.copyToHeap(), 0.0);
+			double[] row = new double[7];
+			for (int i = 0; i < 9; ++i) {
+				m.getRow(i, row, 0);
+				for (int j = 0; j < 7; ++j) {
+					assertEquals(source.getDouble(i, j), row[j], 0.0);
+					assertEquals(source.getDouble(i, j), m.getDouble((long) i * 7 + j), 0.0);
+				}
+			}
+		}
+	}
+
+	@Test public void operationsOnRowsStraddlingChunks() {
+		SimpleDenseMatrixOfDoubles a = TestMatrices.random(9, 7, 3L), b = TestMatrices.random(7, 11, 4L);
+		Matrix<Double> expected = a.mult(b).scale(2.0).add(a.mult(b));
+		try (OffHeapMatrixOfDoubles product = OffHeapMatrixOfDoubles.builder().setChunkShift(CHUNK_SHIFT).mult(smallChunks(a), smallChunks(b)).build()) {
+			OffHeapMatrixOfDoubles result = OffHeapMatrixOfDoubles.builder().setChunkShift(CHUNK_SHIFT).set(product).scale(2.0).add(product).build();
+			assertMatrixEquals(expected, result, 1e-12);
+			result.close();
+		}
+	}
+
+	@Test public void invertReturnsNewMatrices() {
+		SimpleDenseMatrixOfDoubles source = TestMatrices.random(6, 6, 5L);
+		try (OffHeapMatrixOfDoubles m = OffHeapMatrixOfDoubles.copyOf(source)) {
+			OffHeapMatrixOfDoubles inverse = m.invert();
+			assertMatrixEquals(source.invert(), inverse, 1e-12);
+			inverse.close();
+			OffHeapMatrixOfDoubles again = m.invert();
+			assertNotSame(inverse, again);
+			assertMatrixEquals(source.invert(), again, 1e-12);
+			again.close();
+		}
+	}
+
+	@Test public void transposeIsView() {
+		SimpleDenseMatrixOfDoubles source = TestMatrices.random(5, 7, 6L);
+		OffHeapMatrixOfDoubles m = OffHeapMatrixOfDoubles.copyOf(source);
+		Matrix<Double> transpose = m.transpose();
+		assertMatrixEquals(source.transpose(), transpose, 0.0);
+		m.close();
+		try {
+			transpose.get(0, 0);
+			fail("The transpose of a closed matrix was read");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	@Test public void closeTwice() {
+		OffHeapMatrixOfDoubles m = OffHeapMatrixOfDoubles.copyOf(TestMatrices.random(3, 3, 7L));
+		m.close();
+		m.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void useAfterClose() {
+		OffHeapMatrixOfDoubles m = OffHeapMatrixOfDoubles.copyOf(TestMatrices.random(3, 3, 8L));
+		m.close();
+		m.getDouble(0, 0);
+	}
+
+	/**
+	 * Closing a matrix releases the storage it shares with its builder, which must not be read or changed through it
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void builderAfterClose() {
+		OffHeapMatrixOfDoubles.Builder builder = OffHeapMatrixOfDoubles.builderFromCopy(TestMatrices.random(3, 3, 9L));
+		builder.build().close();
+		builder.setDouble(0, 0, 1.0);
+	}
+}
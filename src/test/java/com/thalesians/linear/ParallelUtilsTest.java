@@ -0,0 +1,68 @@
+package com.thalesians.linear;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelUtilsTest {
+	private ForkJoinPool previous;
+	private ForkJoinPool pool;
+
+	@Before public void setUp() {
+		previous = ParallelUtils.getPool();
+		pool = new ForkJoinPool(4);
+		ParallelUtils.setPool(pool);
+	}
+
+	@After public void tearDown() {
+		ParallelUtils.setPool(previous);
+		pool.shutdown();
+	}
+
+	@Test public void rowBlocksCoverEveryRowOnce() {
+		AtomicIntegerArray visits = new AtomicIntegerArray(1000);
+		AtomicInteger blockcount = new AtomicInteger();
+		ParallelUtils.forEachRowBlock(1000, 100, true, (rowbegin, rowend) -> {
+			blockcount.incrementAndGet();
+			for (int i = rowbegin; i < rowend; ++i) {
+				visits.incrementAndGet(i);
+			}
+		});
+		assertTrue("block count", blockcount.get() > 1);
+		for (int i = 0; i < visits.length(); ++i) {
+			assertEquals("row " + i, 1, visits.get(i));
+		}
+	}
+
+	@Test public void lowerTriangleRowBlocksCoverEveryRowOnce() {
+		AtomicIntegerArray visits = new AtomicIntegerArray(1000);
+		AtomicInteger blockcount = new AtomicInteger();
+		ParallelUtils.forEachLowerTriangleRowBlock(1000, true, (rowbegin, rowend) -> {
+			blockcount.incrementAndGet();
+			for (int i = rowbegin; i < rowend; ++i) {
+				visits.incrementAndGet(i);
+			}
+		});
+		assertTrue("block count", blockcount.get() > 1);
+		for (int i = 0; i < visits.length(); ++i) {
+			assertEquals("row " + i, 1, visits.get(i));
+		}
+	}
+
+	@Test public void sequentialRowBlockIsAllRows() {
+		AtomicInteger blockcount = new AtomicInteger();
+		ParallelUtils.forEachRowBlock(1000, 100, false, (rowbegin, rowend) -> {
+			blockcount.incrementAndGet();
+			assertEquals(0, rowbegin);
+			assertEquals(1000, rowend);
+		});
+		assertEquals(1, blockcount.get());
+	}
+}
@@ -0,0 +1,89 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.LinearSolverFactory;
+import org.ejml.interfaces.linsol.LinearSolver;
+import org.junit.Test;
+
+public class PreparedSolverTest {
+	@Test public void square() throws LinearException {
+		Matrix<Double> a = TestMatrices.random(20, 20, 1L);
+		Matrix<Double> b = TestMatrices.random(20, 5, 2L);
+		assertMatrixEquals(MatrixFunctions.solve(a, b), PreparedSolver.square(a).solve(b), 1e-10);
+	}
+
+	/**
+	 * 0.1 * I, whose determinant underflows to zero, is not singular
+	 */
+	@Test public void squareWithUnderflowingDeterminant() throws LinearException {
+		SimpleDenseMatrixOfDoubles.Builder builder = SimpleDenseMatrixOfDoubles.builder(400, 400);
+		for (int i = 0; i < 400; ++i) {
+			builder.setDouble(i, i, 0.1);
+		}
+		Matrix<Double> b = TestMatrices.random(400, 1, 3L);
+		assertMatrixEquals(b.scale(10.0), PreparedSolver.square(builder.build()).solve(b), 1e-12);
+	}
+
+	@Test(expected = LinearException.class)
+	public void squareOfSingularMatrix() throws LinearException {
+		PreparedSolver.square(TestMatrices.dense(new double[][] {{2, 4}, {1, 2}}));
+	}
+
+	@Test public void symmetricPositiveDefinite() throws LinearException {
+		Matrix<Double> a = SimpleDenseMatrixOfDoubles.copyOf(TestMatrices.randomSymmetricPositiveDefinite(20, 4L));
+		Matrix<Double> b = TestMatrices.random(20, 5, 5L);
+		assertMatrixEquals(MatrixFunctions.solve(a, b), PreparedSolver.symmetricPositiveDefinite(a).solve(b), 1e-12);
+	}
+
+	@Test(expected = LinearException.class)
+	public void symmetricPositiveDefiniteOfIndefiniteMatrix() throws LinearException {
+		PreparedSolver.symmetricPositiveDefinite(TestMatrices.dense(new double[][] {{1, 2}, {2, 1}}));
+	}
+
+	@Test public void leastSquares() throws LinearException {
+		Matrix<Double> a = TestMatrices.random(30, 6, 6L);
+		Matrix<Double> b = TestMatrices.random(30, 4, 7L);
+		LinearSolver<DenseMatrix64F> solver = LinearSolverFactory.leastSquares(30, 6);
+		solver.setA(MatrixUtils.toEJMLDenseMatrix64F(a).copy());
+		DenseMatrix64F expected = new DenseMatrix64F(6, 4);
+		solver.solve(MatrixUtils.toEJMLDenseMatrix64F(b).copy(), expected);
+		Matrix<Double> actual = PreparedSolver.leastSquares(a).solve(b);
+		assertMatrixEquals(new SimpleDenseMatrixOfDoubles(expected), actual, 1e-12);
+		assertMatrixEquals(MatrixFunctions.solve(a, b), actual, 1e-12);
+	}
+
+	@Test(expected = LinearException.class)
+	public void leastSquaresOfRankDeficientMatrix() throws LinearException {
+		PreparedSolver.leastSquares(TestMatrices.dense(new double[][] {{1, 0}, {2, 0}, {3, 0}}));
+	}
+
+	@Test public void solveInto() throws LinearException {
+		Matrix<Double> a = TestMatrices.random(30, 6, 8L);
+		Matrix<Double> b = TestMatrices.random(30, 1, 9L);
+		double[] x = new double[6];
+		PreparedSolver solver = PreparedSolver.leastSquares(a);
+		solver.solveInto(MatrixUtils.toEJMLDenseMatrix64F(b).data.clone(), x);
+		Matrix<Double> expected = solver.solve(b);
+		for (int i = 0; i < 6; ++i) {
+			assertEquals(MatrixUtils.getDouble(expected, i, 0), x[i], 0.0);
+		}
+	}
+
+	/**
+	 * Enough right-hand sides for several column tasks, with the threshold lowered so that they run on the pool
+	 */
+	@Test public void solveColumnsInParallel() throws LinearException {
+		Matrix<Double> a = TestMatrices.random(20, 20, 10L);
+		Matrix<Double> b = TestMatrices.random(20, 100, 11L);
+		long threshold = Gemm.getParallelThreshold();
+		Gemm.setParallelThreshold(0);
+		try {
+			assertMatrixEquals(MatrixFunctions.solve(a, b), PreparedSolver.square(a).solve(b), 1e-10);
+		} finally {
+			Gemm.setParallelThreshold(threshold);
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class SimpleBlockMatrixTest {
+	private static SimpleBlockMatrix<Double, Matrix<Double>> split(SimpleDenseMatrixOfDoubles source, int top) {
+		int n = source.getRowCount(), bottom = n - top;
+		return SimpleBlockMatrix.of(
+				ImmutableList.of(source.get(SimpleRectangle.create(0, 0, top, top)), source.get(SimpleRectangle.create(0, top, top, bottom))),
+				ImmutableList.of(source.get(SimpleRectangle.create(top, 0, bottom, top)), source.get(SimpleRectangle.create(top, top, bottom, bottom))));
+	}
+
+	@Test public void determinant() {
+		SimpleDenseMatrixOfDoubles source = TestMatrices.random(9, 9, 1L);
+		SimpleBlockMatrix<Double, Matrix<Double>> block = split(source, 4);
+		assertMatrixEquals(source, block, 0.0);
+		assertEquals(source.determinant(), block.determinant(), 1e-12 * Math.abs(source.determinant()));
+	}
+
+	@Test(expected = RuntimeLinearException.class)
+	public void determinantOfNonSquareMatrix() {
+		SimpleDenseMatrixOfDoubles source = TestMatrices.random(5, 7, 2L);
+		SimpleBlockMatrix.of(
+				ImmutableList.of(source.get(SimpleRectangle.create(0, 0, 2, 3)), source.get(SimpleRectangle.create(0, 3, 2, 4))),
+				ImmutableList.of(source.get(SimpleRectangle.create(2, 0, 3, 3)), source.get(SimpleRectangle.create(2, 3, 3, 4)))).determinant();
+	}
+}
@@ -0,0 +1,70 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SimpleDenseMatrixOfDoublesTest {
+	private static final int N = 400;
+
+	/**
+	 * 0.1 * I, whose determinant 1e-400 underflows to zero although the matrix is perfectly conditioned
+	 */
+	private static SimpleDenseMatrixOfDoubles smallDiagonal() {
+		SimpleDenseMatrixOfDoubles.Builder builder = SimpleDenseMatrixOfDoubles.builder(N, N);
+		for (int i = 0; i < N; ++i) {
+			builder.setDouble(i, i, 0.1);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * A lower bidiagonal, non-symmetric matrix with 0.1 on the diagonal, which is decomposed by LU rather than Cholesky
+	 */
+	private static SimpleDenseMatrixOfDoubles smallBidiagonal() {
+		SimpleDenseMatrixOfDoubles.Builder builder = SimpleDenseMatrixOfDoubles.builder(N, N);
+		for (int i = 0; i < N; ++i) {
+			builder.setDouble(i, i, 0.1);
+			if (i > 0) {
+				builder.setDouble(i, i - 1, 0.05);
+			}
+		}
+		return builder.build();
+	}
+
+	@Test public void largeDiagonalWithUnderflowingDeterminant() {
+		SimpleDenseMatrixOfDoubles a = smallDiagonal();
+		assertEquals(0.0, a.determinant(), 0.0);
+		assertEquals(N * Math.log(0.1), a.logDeterminant(), 1e-9);
+		assertTrue(TestMatrices.identityResidual(a, a.invert()) < 1e-14);
+		Matrix<Double> b = TestMatrices.random(N, 2, 1L);
+		assertMatrixEquals(b.scale(10.0), MatrixFunctions.solve(a, b), 1e-12);
+	}
+
+	@Test public void largeBidiagonalWithUnderflowingDeterminant() {
+		SimpleDenseMatrixOfDoubles a = smallBidiagonal();
+		assertEquals(0.0, a.determinant(), 0.0);
+		assertEquals(N * Math.log(0.1), a.logDeterminant(), 1e-9);
+		assertTrue(TestMatrices.identityResidual(a, a.invert()) < 1e-12);
+		Matrix<Double> b = TestMatrices.random(N, 2, 2L);
+		assertMatrixEquals(b, a.mult(MatrixFunctions.solve(a, b)), 1e-12);
+	}
+
+	@Test public void determinantOfNonSymmetricMatrix() {
+		SimpleDenseMatrixOfDoubles a = TestMatrices.dense(new double[][] {{0, 2, 1}, {1, 1, 0}, {3, 0, 1}});
+		assertEquals(-5.0, a.determinant(), 1e-14);
+		assertTrue(Double.isNaN(a.logDeterminant()));
+		SimpleDenseMatrixOfDoubles b = TestMatrices.dense(new double[][] {{0, 2, 1}, {3, 0, 1}, {1, 1, 0}});
+		assertEquals(5.0, b.determinant(), 1e-14);
+		assertEquals(Math.log(5.0), b.logDeterminant(), 1e-14);
+	}
+
+	@Test(expected = RuntimeLinearException.class)
+	public void invertSingularMatrix() {
+		SimpleDenseMatrixOfDoubles a = TestMatrices.dense(new double[][] {{2, 4}, {1, 2}});
+		assertEquals(Double.NEGATIVE_INFINITY, a.logDeterminant(), 0.0);
+		a.invert();
+	}
+}
@@ -0,0 +1,163 @@
+package com.thalesians.linear;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The single precision matrices and kernels against their double precision counterparts, given the same (float
+ * valued) inputs
+ */
+public class SimpleDenseMatrixOfFloatsTest {
+	private ForkJoinPool previouspool;
+	private ForkJoinPool pool;
+	private long previousthreshold;
+
+	@Before public void setUp() {
+		previouspool = ParallelUtils.getPool();
+		pool = new ForkJoinPool(4);
+		ParallelUtils.setPool(pool);
+		previousthreshold = Gemm.getParallelThreshold();
+	}
+
+	@After public void tearDown() {
+		Gemm.setParallelThreshold(previousthreshold);
+		ParallelUtils.setPool(previouspool);
+		pool.shutdown();
+	}
+
+	static SimpleDenseMatrixOfFloats random(int rowcount, int columncount, long seed) {
+		return SimpleDenseMatrixOfFloats.copyOfDoubles(TestMatrices.random(rowcount, columncount, seed));
+	}
+
+	/**
+	 * Asserts that the elements agree to within single precision, relative to the largest element of the expected matrix
+	 * and to the number of terms summed into each
+	 */
+	static void assertFloatsClose(Matrix<? extends Double> expected, Matrix<? extends Float> actual, int termcount) {
+		assertEquals("row count", expected.getRowCount(), actual.getRowCount());
+		assertEquals("column count", expected.getColumnCount(), actual.getColumnCount());
+		double scale = 1.0;
+		for (int i = 0; i < expected.getRowCount(); ++i) {
+			for (int j = 0; j < expected.getColumnCount(); ++j) {
+				scale = Math.max(scale, Math.abs(MatrixUtils.getDouble(expected, i, j)));
+			}
+		}
+		double tolerance = 4.0 * Math.ulp(1.0f) * Math.max(1, termcount) * scale;
+		for (int i = 0; i < expected.getRowCount(); ++i) {
+			for (int j = 0; j < expected.getColumnCount(); ++j) {
+				assertEquals("(" + i + ", " + j + ")", MatrixUtils.getDouble(expected, i, j), MatrixUtils.getFloat(actual, i, j), tolerance);
+			}
+		}
+	}
+
+	private void checkMult(int m, int k, int n) {
+		SimpleDenseMatrixOfFloats a = random(m, k, 1L), b = random(k, n, 2L);
+		SimpleDenseMatrixOfDoubles expected = SimpleDenseMatrixOfDoubles.builder().mult(a.toDoubles(), b.toDoubles()).build();
+		assertFloatsClose(expected, a.mult(b), k);
+		assertFloatsClose(expected, SimpleDenseMatrixOfFloats.builder().mult(a, b).build(), k);
+	}
+
+	@Test public void multMatchesDoubles() {
+		Gemm.setParallelThreshold(Long.MAX_VALUE);
+		checkMult(1, 1, 1);
+		checkMult(7, 5, 3);
+		checkMult(33, 130, 17);
+		checkMult(40, 300, 520);
+	}
+
+	/**
+	 * With the threshold lowered the rows of C are split into blocks of 32, the last one partial, which are computed on
+	 * the pool; the result must be the same as the serial one, bit for bit, as every element is summed in the same order
+	 */
+	@Test public void parallelMultMatchesSerial() {
+		SimpleDenseMatrixOfFloats a = random(101, 70, 3L), b = random(70, 45, 4L);
+		Gemm.setParallelThreshold(Long.MAX_VALUE);
+		SimpleDenseMatrixOfFloats serial = SimpleDenseMatrixOfFloats.builder().mult(a, b).build();
+		Gemm.setParallelThreshold(0L);
+		SimpleDenseMatrixOfFloats parallel = SimpleDenseMatrixOfFloats.builder().mult(a, b).build();
+		assertEquals(serial, parallel);
+		assertFloatsClose(SimpleDenseMatrixOfDoubles.builder().mult(a.toDoubles(), b.toDoubles()).build(), parallel, 70);
+		checkMult(32, 10, 10);
+		checkMult(33, 10, 10);
+	}
+
+	/**
+	 * The raw kernel with offsets, leading dimensions wider than the rows, and both scalars, against the double kernel;
+	 * with beta zero the previous contents of C, NaNs included, are overwritten
+	 */
+	@Test public void gemmKernel() {
+		Random random = new Random(5L);
+		int m = 70, n = 23, k = 41, lda = k + 3, ldb = n + 2, ldc = n + 5, offset = 7;
+		float[] a = new float[offset + m * lda], b = new float[offset + k * ldb];
+		for (int i = 0; i < a.length; ++i) {
+			a[i] = (float) random.nextGaussian();
+		}
+		for (int i = 0; i < b.length; ++i) {
+			b[i] = (float) random.nextGaussian();
+		}
+		double[] ad = new double[a.length], bd = new double[b.length];
+		for (int i = 0; i < a.length; ++i) {
+			ad[i] = a[i];
+		}
+		for (int i = 0; i < b.length; ++i) {
+			bd[i] = b[i];
+		}
+		for (long threshold : new long[] {Long.MAX_VALUE, 0L}) {
+			Gemm.setParallelThreshold(threshold);
+			for (float beta : new float[] {0.0f, 1.0f, -0.5f}) {
+				float[] c = new float[offset + m * ldc];
+				double[] cd = new double[c.length];
+				for (int i = 0; i < c.length; ++i) {
+					c[i] = beta == 0.0f ? Float.NaN : (float) random.nextGaussian();
+					cd[i] = beta == 0.0f ? 0.0 : c[i];
+				}
+				float[] untouched = c.clone();
+				Gemm.gemm(m, n, k, 0.5f, a, offset, lda, b, offset, ldb, beta, c, offset, ldc);
+				Gemm.gemmSerial(m, n, k, 0.5, ad, offset, lda, bd, offset, ldb, beta, cd, offset, ldc);
+				for (int i = 0; i < m; ++i) {
+					for (int j = 0; j < ldc; ++j) {
+						int index = offset + i * ldc + j;
+						if (j < n) {
+							assertEquals(cd[index], c[index], 4.0 * Math.ulp(1.0f) * k * 4.0);
+						} else {
+							assertEquals(Float.floatToRawIntBits(untouched[index]), Float.floatToRawIntBits(c[index]));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test public void selfTimesTranspose() {
+		SimpleDenseMatrixOfFloats a = random(20, 9, 6L);
+		Matrix<Float> product = a.mult(a.transpose());
+		assertTrue(product instanceof SimpleSymmetricMatrixOfFloats);
+		assertFloatsClose(a.toDoubles().mult(a.toDoubles().transpose()), product, 9);
+	}
+
+	@Test public void decompositions() throws LinearException {
+		SimpleDenseMatrixOfDoubles d = TestMatrices.dense(new double[][] {{4, 1, 2}, {1, 5, -1}, {2, -1, 6}});
+		SimpleDenseMatrixOfFloats f = SimpleDenseMatrixOfFloats.copyOfDoubles(d);
+		assertEquals(d.determinant(), f.determinant(), 1e-4);
+		assertFloatsClose(d.invert(), f.invert(), 3);
+		SimpleDenseMatrixOfDoubles l = f.cholesky().toDoubles();
+		assertFloatsClose(l.mult(l.transpose()), f, 3);
+		assertEquals(0.0, MatrixUtils.getDouble(l, 0, 2), 0.0);
+		SimpleDenseMatrixOfFloats r = random(12, 12, 7L);
+		assertEquals(r.toDoubles().determinant(), r.determinant(), Math.abs(r.toDoubles().determinant()) * 1e-6);
+	}
+
+	@Test public void roundTripThroughDoubles() {
+		SimpleDenseMatrixOfDoubles d = TestMatrices.random(5, 4, 8L);
+		SimpleDenseMatrixOfFloats f = SimpleDenseMatrixOfFloats.copyOfDoubles(d);
+		assertFloatsClose(d, f, 1);
+		assertEquals(f, SimpleDenseMatrixOfFloats.copyOfDoubles(f.toDoubles()));
+	}
+}
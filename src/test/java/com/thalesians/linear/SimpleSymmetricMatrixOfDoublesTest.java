@@ -0,0 +1,109 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static com.thalesians.linear.TestMatrices.identityResidual;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SimpleSymmetricMatrixOfDoublesTest {
+	/** Indefinite and well conditioned, but with a tiny leading pivot that breaks a factorisation without pivoting */
+	private static final double[][] SMALL_PIVOT = {{1e-15, 1, 0.5}, {1, 1, 0.3}, {0.5, 0.3, 2}};
+
+	@Test public void positiveDefinite() {
+		SimpleSymmetricMatrixOfDoubles a = TestMatrices.randomSymmetricPositiveDefinite(12, 3L);
+		SimpleDenseMatrixOfDoubles dense = SimpleDenseMatrixOfDoubles.copyOf(a);
+		assertTrue(identityResidual(a, a.invert()) < 1e-12);
+		assertTrue(identityResidual(a, SimpleSymmetricMatrixOfDoubles.builder().set(a).invert().build()) < 1e-12);
+		assertEquals(dense.determinant(), a.determinant(), 1e-12 * Math.abs(dense.determinant()));
+		assertEquals(Math.log(dense.determinant()), a.logDeterminant(), 1e-12);
+	}
+
+	@Test public void indefiniteWithSmallPivot() {
+		SimpleSymmetricMatrixOfDoubles a = SimpleSymmetricMatrixOfDoubles.fromLower(TestMatrices.dense(SMALL_PIVOT));
+		assertTrue(identityResidual(a, a.invert()) < 1e-14);
+		assertTrue(identityResidual(a, SimpleSymmetricMatrixOfDoubles.builder().set(a).invert().build()) < 1e-14);
+		assertEquals(-1.95, a.determinant(), 1e-14);
+		assertTrue(Double.isNaN(a.logDeterminant()));
+		Matrix<Double> b = TestMatrices.random(3, 2, 4L);
+		assertMatrixEquals(b, a.mult(a.solve(b)), 1e-14);
+	}
+
+	/**
+	 * Random symmetric matrices, which are indefinite, some with zero diagonals so that 2 x 2 pivots are needed and
+	 * some with a dominant diagonal element far from the end so that 1 x 1 pivots are interchanged; the packed
+	 * Bunch-Kaufman results must match those of the dense LU factorisation
+	 */
+	@Test public void indefiniteMatchesDense() throws LinearException {
+		Random random = new Random(5L);
+		for (int n = 1; n <= 40; ++n) {
+			for (int variant = 0; variant < 3; ++variant) {
+				SimpleSymmetricMatrixOfDoubles.Builder builder = SimpleSymmetricMatrixOfDoubles.builderFromLower(TestMatrices.random(n, n, 100L * n + variant));
+				for (int i = 0; i < n; ++i) {
+					if (variant == 1) {
+						builder.setDouble(i, i, 0.0);
+					} else if (variant == 2 && i == random.nextInt(n)) {
+						builder.setDouble(i, i, 50.0 * (random.nextBoolean() ? 1.0 : -1.0));
+					}
+				}
+				SimpleSymmetricMatrixOfDoubles a = builder.build();
+				if (n > 1 || variant != 1) {
+					int[] pivots = new int[n];
+					assertTrue(PackedCholesky.decomposeBunchKaufman(a.getScaledData(), n, pivots));
+				}
+				SimpleDenseMatrixOfDoubles dense = SimpleDenseMatrixOfDoubles.copyOf(a);
+				double determinant = dense.determinant();
+				if (determinant == 0.0) {
+					continue;
+				}
+				assertEquals(determinant, a.determinant(), 1e-10 * Math.abs(determinant));
+				assertEquals(dense.logDeterminant(), a.logDeterminant(), 1e-10);
+				double tolerance = 1e-11 * MatrixUtils.maxAbs(dense.invert());
+				assertMatrixEquals(dense.invert(), a.invert(), tolerance);
+				assertMatrixEquals(dense.invert(), SimpleSymmetricMatrixOfDoubles.builder().set(a).invert().build(), tolerance);
+				Matrix<Double> b = TestMatrices.random(n, 3, n);
+				assertMatrixEquals(dense.solve(b), a.solve(b), tolerance * n);
+			}
+		}
+	}
+
+	/**
+	 * A singular indefinite matrix, for which the pivoting breaks down, goes through the dense LU factorisation and
+	 * reports its singularity in the same way
+	 */
+	@Test public void singularIndefinite() {
+		SimpleSymmetricMatrixOfDoubles a = SimpleSymmetricMatrixOfDoubles.fromLower(TestMatrices.dense(new double[][] {{1, 2, 3}, {2, -1, 1}, {3, 1, 4}}));
+		assertEquals(0.0, a.determinant(), 1e-12);
+		SimpleSymmetricMatrixOfDoubles exact = SimpleSymmetricMatrixOfDoubles.fromLower(TestMatrices.dense(new double[][] {{0, 0}, {0, 1}}));
+		assertEquals(0.0, exact.determinant(), 0.0);
+		assertEquals(Double.NEGATIVE_INFINITY, exact.logDeterminant(), 0.0);
+		try {
+			exact.solve(SimpleDenseMatrixOfDoubles.columnVector(new double[] {1, 1}));
+			fail();
+		} catch (RuntimeLinearException e) {
+			// Expected
+		}
+	}
+
+	@Test public void solvePositiveDefinite() {
+		SimpleSymmetricMatrixOfDoubles a = TestMatrices.randomSymmetricPositiveDefinite(10, 1L);
+		Matrix<Double> b = TestMatrices.random(10, 2, 2L);
+		assertMatrixEquals(b, a.mult(a.solve(b)), 1e-12);
+		assertMatrixEquals(b, a.mult(MatrixFunctions.solve(a, b)), 1e-12);
+	}
+
+	/**
+	 * A nonsingular matrix whose leading principal minor is zero has neither a Cholesky factorisation nor one without
+	 * pivoting, and must be solved with pivoting
+	 */
+	@Test public void solveWithZeroLeadingMinor() {
+		SimpleSymmetricMatrixOfDoubles a = SimpleSymmetricMatrixOfDoubles.fromLower(TestMatrices.dense(new double[][] {{0, 1}, {1, 0}}));
+		Matrix<Double> b = SimpleDenseMatrixOfDoubles.columnVector(new double[] {2, 3});
+		assertMatrixEquals(SimpleDenseMatrixOfDoubles.columnVector(new double[] {3, 2}), a.solve(b), 0.0);
+		assertMatrixEquals(SimpleDenseMatrixOfDoubles.columnVector(new double[] {3, 2}), MatrixFunctions.solve(a, b), 0.0);
+	}
+}
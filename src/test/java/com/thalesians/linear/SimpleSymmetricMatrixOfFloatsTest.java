@@ -0,0 +1,85 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.SimpleDenseMatrixOfFloatsTest.assertFloatsClose;
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SimpleSymmetricMatrixOfFloatsTest {
+	private ForkJoinPool previouspool;
+	private ForkJoinPool pool;
+	private long previousthreshold;
+
+	@Before public void setUp() {
+		previouspool = ParallelUtils.getPool();
+		pool = new ForkJoinPool(4);
+		ParallelUtils.setPool(pool);
+		previousthreshold = Gemm.getParallelThreshold();
+	}
+
+	@After public void tearDown() {
+		Gemm.setParallelThreshold(previousthreshold);
+		ParallelUtils.setPool(previouspool);
+		pool.shutdown();
+	}
+
+	/**
+	 * Both rank-k products against the double precision ones, serially and split into row blocks of the packed lower
+	 * triangle, which must not change a single bit
+	 */
+	@Test public void rankKProductsMatchDoubles() {
+		for (int[] shape : new int[][] {{1, 1}, {9, 4}, {200, 150}, {150, 200}}) {
+			int n = shape[0], p = shape[1];
+			SimpleDenseMatrixOfFloats x = SimpleDenseMatrixOfFloatsTest.random(n, p, n + p);
+			SimpleDenseMatrixOfDoubles xd = x.toDoubles();
+			Gemm.setParallelThreshold(Long.MAX_VALUE);
+			SimpleSymmetricMatrixOfFloats tts = SimpleSymmetricMatrixOfFloats.transposeTimesSelf(x);
+			SimpleSymmetricMatrixOfFloats stt = SimpleSymmetricMatrixOfFloats.selfTimesTranspose(x);
+			assertFloatsClose(SimpleSymmetricMatrixOfDoubles.transposeTimesSelf(xd), tts, n);
+			assertFloatsClose(SimpleSymmetricMatrixOfDoubles.selfTimesTranspose(xd), stt, p);
+			Gemm.setParallelThreshold(0L);
+			assertMatrixEquals(tts.toDoubles(), SimpleSymmetricMatrixOfFloats.transposeTimesSelf(x).toDoubles(), 0.0);
+			assertMatrixEquals(stt.toDoubles(), SimpleSymmetricMatrixOfFloats.selfTimesTranspose(x).toDoubles(), 0.0);
+		}
+	}
+
+	@Test public void decompositions() throws LinearException {
+		SimpleSymmetricMatrixOfDoubles d = TestMatrices.randomSymmetricPositiveDefinite(30, 1L);
+		SimpleSymmetricMatrixOfFloats f = SimpleSymmetricMatrixOfFloats.copyOfDoubles(d);
+		SimpleSymmetricMatrixOfDoubles rounded = f.toDoubles();
+		SimpleDenseMatrixOfDoubles l = f.cholesky().toDoubles();
+		assertFloatsClose(l.mult(l.transpose()), f, 30);
+		assertFloatsClose(rounded.invert(), f.invert(), 30);
+		assertEquals(rounded.determinant(), f.determinant(), Math.abs(rounded.determinant()) * 1e-4);
+		Matrix<Float> inverse = f.invert();
+		assertTrue(inverse instanceof SimpleSymmetricMatrixOfFloats);
+	}
+
+	@Test public void indefinite() {
+		SimpleSymmetricMatrixOfFloats f = SimpleSymmetricMatrixOfFloats.copyOfDoubles(TestMatrices.dense(new double[][] {{1, 2}, {2, 1}}));
+		assertEquals(-3.0f, f.determinant(), 1e-6f);
+		try {
+			f.cholesky();
+			fail();
+		} catch (LinearException e) {
+			// Expected
+		}
+		assertFloatsClose(TestMatrices.dense(new double[][] {{-1.0 / 3, 2.0 / 3}, {2.0 / 3, -1.0 / 3}}), f.invert(), 2);
+	}
+
+	@Test public void arithmetic() {
+		SimpleSymmetricMatrixOfDoubles a = TestMatrices.randomSymmetricPositiveDefinite(6, 2L), b = TestMatrices.randomSymmetricPositiveDefinite(6, 3L);
+		SimpleSymmetricMatrixOfFloats af = SimpleSymmetricMatrixOfFloats.copyOfDoubles(a), bf = SimpleSymmetricMatrixOfFloats.copyOfDoubles(b);
+		assertFloatsClose(a.add(b), af.add(bf), 2);
+		assertFloatsClose(a.subtract(b), af.subtract(bf), 2);
+		assertFloatsClose(a.scale(-2.5), af.scale(-2.5f), 1);
+		assertFloatsClose(a.mult(b), af.mult(bf), 6);
+	}
+}
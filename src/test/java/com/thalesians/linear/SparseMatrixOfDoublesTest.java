@@ -0,0 +1,190 @@
+package com.thalesians.linear;
+
+import static com.thalesians.linear.TestMatrices.assertMatrixEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SparseMatrixOfDoublesTest {
+	/**
+	 * A dense matrix with about the given fraction of nonzero elements
+	 */
+	private static SimpleDenseMatrixOfDoubles sparseDense(int rowcount, int columncount, double density, long seed) {
+		Random random = new Random(seed);
+		SimpleDenseMatrixOfDoubles.Builder builder = SimpleDenseMatrixOfDoubles.builder(rowcount, columncount);
+		for (int i = 0; i < rowcount; ++i) {
+			for (int j = 0; j < columncount; ++j) {
+				if (random.nextDouble() < density) {
+					builder.setDouble(i, j, random.nextGaussian());
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	private static int countNonZeros(Matrix<Double> matrix) {
+		int result = 0;
+		for (int i = 0; i < matrix.getRowCount(); ++i) {
+			for (int j = 0; j < matrix.getColumnCount(); ++j) {
+				if (MatrixUtils.getDouble(matrix, i, j) != 0.0) {
+					++result;
+				}
+			}
+		}
+		return result;
+	}
+
+	@Test public void copyOf() {
+		SimpleDenseMatrixOfDoubles dense = sparseDense(9, 13, 0.3, 1L);
+		SparseMatrixOfDoubles sparse = SparseMatrixOfDoubles.copyOf(dense);
+		assertEquals(countNonZeros(dense), sparse.getNonZeroCount());
+		assertMatrixEquals(dense, sparse, 0.0);
+		assertMatrixEquals(dense, sparse.toDense(), 0.0);
+		double[] row = new double[13], column = new double[9];
+		for (int i = 0; i < 9; ++i) {
+			sparse.getRow(i, row, 0);
+			for (int j = 0; j < 13; ++j) {
+				assertEquals(dense.getDouble(i, j), row[j], 0.0);
+			}
+		}
+		for (int j = 0; j < 13; ++j) {
+			sparse.getColumn(j, column, 0);
+			for (int i = 0; i < 9; ++i) {
+				assertEquals(dense.getDouble(i, j), column[i], 0.0);
+			}
+		}
+	}
+
+	@Test public void transposeView() {
+		SimpleDenseMatrixOfDoubles dense = sparseDense(9, 13, 0.3, 2L);
+		SparseMatrixOfDoubles transpose = SparseMatrixOfDoubles.copyOf(dense).transpose();
+		assertMatrixEquals(dense.transpose(), transpose, 0.0);
+		assertMatrixEquals(dense.transpose(), transpose.toDense(), 0.0);
+		SparseMatrixOfDoubles rows = transpose.toCompressedRows();
+		assertEquals(transpose.getNonZeroCount(), rows.getNonZeroCount());
+		assertMatrixEquals(dense.transpose(), rows, 0.0);
+		double[] row = new double[9];
+		for (int i = 0; i < 13; ++i) {
+			transpose.getRow(i, row, 0);
+			for (int j = 0; j < 9; ++j) {
+				assertEquals(dense.getDouble(j, i), row[j], 0.0);
+			}
+		}
+		assertMatrixEquals(dense, transpose.transpose(), 0.0);
+	}
+
+	@Test public void addAndSubtract() {
+		SimpleDenseMatrixOfDoubles a = sparseDense(9, 13, 0.3, 3L), b = sparseDense(9, 13, 0.3, 4L), c = sparseDense(13, 9, 0.3, 5L);
+		SparseMatrixOfDoubles sa = SparseMatrixOfDoubles.copyOf(a), sb = SparseMatrixOfDoubles.copyOf(b), sc = SparseMatrixOfDoubles.copyOf(c);
+		Matrix<Double> sum = sa.add(sb);
+		assertTrue(sum instanceof SparseMatrixOfDoubles);
+		assertMatrixEquals(a.add(b), sum, 0.0);
+		assertMatrixEquals(a.subtract(b), sa.subtract(sb), 0.0);
+		// The transpose of a CSR matrix is CSC, so this merges storage read the other way round
+		assertMatrixEquals(a.add(c.transpose()), sa.add(sc.transpose()), 0.0);
+		assertMatrixEquals(c.transpose().subtract(a), sc.transpose().subtract(sa), 0.0);
+		assertEquals(0, ((SparseMatrixOfDoubles) sa.subtract(sa)).getNonZeroCount());
+		// With a dense operand the result is dense
+		assertMatrixEquals(a.add(b), sa.add(b), 0.0);
+		assertMatrixEquals(a.subtract(b), sa.subtract(b), 0.0);
+	}
+
+	@Test public void multSparse() {
+		SimpleDenseMatrixOfDoubles a = sparseDense(9, 13, 0.3, 6L), b = sparseDense(13, 7, 0.3, 7L);
+		SparseMatrixOfDoubles sa = SparseMatrixOfDoubles.copyOf(a), sb = SparseMatrixOfDoubles.copyOf(b);
+		Matrix<Double> product = sa.mult(sb);
+		assertTrue(product instanceof SparseMatrixOfDoubles);
+		assertEquals(countNonZeros(product), ((SparseMatrixOfDoubles) product).getNonZeroCount());
+		assertMatrixEquals(a.mult(b), product, 1e-14);
+		SparseMatrixOfDoubles sat = SparseMatrixOfDoubles.copyOf(a.transpose()).transpose(), sbt = SparseMatrixOfDoubles.copyOf(b.transpose()).transpose();
+		assertMatrixEquals(a.mult(b), sat.mult(sb), 1e-14);
+		assertMatrixEquals(a.mult(b), sa.mult(sbt), 1e-14);
+		assertMatrixEquals(a.mult(b), sat.mult(sbt), 1e-14);
+		assertMatrixEquals(a.mult(b), SparseMatrixOfDoubles.builder().mult(a, b).build(), 1e-14);
+	}
+
+	@Test public void multDense() {
+		SimpleDenseMatrixOfDoubles a = sparseDense(9, 13, 0.3, 8L), x = TestMatrices.random(13, 5, 9L);
+		assertMatrixEquals(a.mult(x), SparseMatrixOfDoubles.copyOf(a).mult(x), 1e-14);
+		// A CSC operand, as the transpose of the CSR storage of a^T
+		assertMatrixEquals(a.mult(x), SparseMatrixOfDoubles.copyOf(a.transpose()).transpose().mult(x), 1e-14);
+	}
+
+	/**
+	 * Enough rows and multiply-adds for the product to be split across the pool
+	 */
+	@Test public void multDenseInParallel() {
+		SimpleDenseMatrixOfDoubles a = sparseDense(300, 300, 0.2, 10L), x = TestMatrices.random(300, 10, 11L);
+		assertMatrixEquals(a.mult(x), SparseMatrixOfDoubles.copyOf(a).mult(x), 1e-13);
+	}
+
+	@Test public void scaleAndMultByDiag() {
+		SimpleDenseMatrixOfDoubles a = sparseDense(9, 13, 0.3, 12L), d = TestMatrices.random(13, 1, 13L);
+		SparseMatrixOfDoubles sa = SparseMatrixOfDoubles.copyOf(a);
+		assertMatrixEquals(a.scale(2.5), sa.scale(2.5), 0.0);
+		assertMatrixEquals(a.multByDiag(d), sa.multByDiag(d), 0.0);
+		SimpleDenseMatrixOfDoubles e = TestMatrices.random(9, 1, 14L);
+		assertMatrixEquals(a.transpose().multByDiag(e), sa.transpose().multByDiag(e), 0.0);
+	}
+
+	@Test public void determinantAndInverse() {
+		SimpleDenseMatrixOfDoubles a = SimpleDenseMatrixOfDoubles.copyOf(sparseDense(8, 8, 0.3, 15L).add(SimpleDenseMatrixOfDoubles.identity(8).scale(3.0)));
+		SparseMatrixOfDoubles sa = SparseMatrixOfDoubles.copyOf(a);
+		assertEquals(a.determinant(), sa.determinant(), 1e-12 * Math.abs(a.determinant()));
+		assertMatrixEquals(a.invert(), sa.invert(), 1e-12);
+	}
+
+	/**
+	 * Triplets for the same element take effect in order: a set replaces what came before, an add adds to it
+	 */
+	@Test public void builderOrdering() {
+		SparseMatrixOfDoubles.Builder builder = SparseMatrixOfDoubles.builder(3, 4);
+		builder.addDouble(1, 2, 5.0).setDouble(1, 2, 1.0).addDouble(1, 2, 2.0).addDouble(1, 2, 4.0);
+		builder.setDouble(2, 0, 3.0).addDouble(2, 0, -3.0);
+		builder.addDouble(0, 3, 1.0).setDouble(0, 3, 6.0);
+		builder.setDouble(0, 1, 1.0).setDouble(0, 0, 2.0);
+		assertEquals(7.0, builder.getDouble(1, 2), 0.0);
+		SparseMatrixOfDoubles matrix = builder.build();
+		assertMatrixEquals(TestMatrices.dense(new double[][] {{2, 1, 0, 6}, {0, 0, 7, 0}, {0, 0, 0, 0}}), matrix, 0.0);
+		// The element that cancelled out is not stored
+		assertEquals(4, matrix.getNonZeroCount());
+		// Building compacts the triplets, and later ones still apply on top
+		builder.addDouble(1, 2, 1.0).scale(2.0);
+		assertMatrixEquals(TestMatrices.dense(new double[][] {{4, 2, 0, 12}, {0, 0, 16, 0}, {0, 0, 0, 0}}), builder.build(), 0.0);
+	}
+
+	@Test public void builderOperations() {
+		SimpleDenseMatrixOfDoubles a = sparseDense(6, 7, 0.4, 16L), b = sparseDense(3, 2, 0.8, 17L), c = sparseDense(6, 7, 0.4, 20L);
+		SparseMatrixOfDoubles.Builder builder = SparseMatrixOfDoubles.builder().set(a);
+		SimpleDenseMatrixOfDoubles.Builder expected = SimpleDenseMatrixOfDoubles.builderFromCopy(a);
+		builder.set(2, 3, b);
+		expected.set(2, 3, b);
+		assertMatrixEquals(expected.build(), builder.build(), 0.0);
+		builder.setAll(SimpleRectangle.create(0, 0, 2, 2), 1.5);
+		expected.setAll(SimpleRectangle.create(0, 0, 2, 2), 1.5);
+		assertMatrixEquals(expected.build(), builder.build(), 0.0);
+		builder.add(a).subtract(SparseMatrixOfDoubles.copyOf(c));
+		expected.add(a).subtract(c);
+		assertMatrixEquals(expected.build(), builder.build(), 0.0);
+	}
+
+	@Test public void elementwise() {
+		SimpleDenseMatrixOfDoubles a = sparseDense(9, 13, 0.3, 18L), b = sparseDense(9, 13, 0.3, 19L);
+		SparseMatrixOfDoubles sa = SparseMatrixOfDoubles.copyOf(a), sb = SparseMatrixOfDoubles.copyOf(b);
+		Matrix<Double> doubled = Elementwise.elementwiseDoubles(sa, v -> 2.0 * v);
+		assertTrue(doubled instanceof SparseMatrixOfDoubles);
+		assertMatrixEquals(a.scale(2.0), doubled, 0.0);
+		// A function that does not map zero to zero gives a dense result
+		Matrix<Double> shifted = Elementwise.elementwiseDoubles(sa, v -> v + 1.0);
+		assertTrue(shifted instanceof SimpleDenseMatrixOfDoubles);
+		assertMatrixEquals(Elementwise.elementwiseDoubles(a, v -> v + 1.0), shifted, 0.0);
+		Matrix<Double> product = Elementwise.elementwiseDoubles(sa, sb, (x, y) -> x * y);
+		assertTrue(product instanceof SparseMatrixOfDoubles);
+		assertMatrixEquals(Elementwise.elementwiseDoubles(a, b, (x, y) -> x * y), product, 0.0);
+		assertEquals(countNonZeros(product), ((SparseMatrixOfDoubles) product).getNonZeroCount());
+		assertMatrixEquals(Elementwise.elementwiseDoubles(a.transpose(), b.transpose(), (x, y) -> x - y), Elementwise.elementwiseDoubles(sa.transpose(), sb.transpose(), (x, y) -> x - y), 0.0);
+	}
+}
@@ -0,0 +1,70 @@
+package com.thalesians.linear;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+/**
+ * Fixtures and assertions shared by the tests
+ */
+final class TestMatrices {
+	private TestMatrices() {
+		throw new AssertionError("This class cannot be instantiated");
+	}
+
+	static SimpleDenseMatrixOfDoubles random(int rowcount, int columncount, long seed) {
+		Random random = new Random(seed);
+		SimpleDenseMatrixOfDoubles.Builder builder = SimpleDenseMatrixOfDoubles.builder(rowcount, columncount);
+		for (int i = 0; i < rowcount; ++i) {
+			for (int j = 0; j < columncount; ++j) {
+				builder.setDouble(i, j, random.nextGaussian());
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * A well conditioned symmetric positive definite matrix, G * G^T / n + I for a random G
+	 */
+	static SimpleSymmetricMatrixOfDoubles randomSymmetricPositiveDefinite(int dimcount, long seed) {
+		return SimpleSymmetricMatrixOfDoubles.builder()
+				.setToSelfTimesTranspose(random(dimcount, dimcount, seed))
+				.scale(1.0 / dimcount)
+				.add(SimpleDenseMatrixOfDoubles.identity(dimcount))
+				.build();
+	}
+
+	static SimpleDenseMatrixOfDoubles dense(double[][] values) {
+		SimpleDenseMatrixOfDoubles.Builder builder = SimpleDenseMatrixOfDoubles.builder(values.length, values[0].length);
+		for (int i = 0; i < values.length; ++i) {
+			for (int j = 0; j < values[i].length; ++j) {
+				builder.setDouble(i, j, values[i][j]);
+			}
+		}
+		return builder.build();
+	}
+
+	static void assertMatrixEquals(Matrix<? extends Double> expected, Matrix<? extends Double> actual, double tolerance) {
+		assertEquals("row count", expected.getRowCount(), actual.getRowCount());
+		assertEquals("column count", expected.getColumnCount(), actual.getColumnCount());
+		for (int i = 0; i < expected.getRowCount(); ++i) {
+			for (int j = 0; j < expected.getColumnCount(); ++j) {
+				assertEquals("(" + i + ", " + j + ")", MatrixUtils.getDouble(expected, i, j), MatrixUtils.getDouble(actual, i, j), tolerance);
+			}
+		}
+	}
+
+	/**
+	 * The largest absolute element of A * B - I
+	 */
+	static double identityResidual(Matrix<Double> a, Matrix<Double> b) {
+		Matrix<Double> product = SimpleDenseMatrixOfDoubles.builder().mult(a, b).build();
+		double result = 0.0;
+		for (int i = 0; i < product.getRowCount(); ++i) {
+			for (int j = 0; j < product.getColumnCount(); ++j) {
+				result = Math.max(result, Math.abs(MatrixUtils.getDouble(product, i, j) - (i == j ? 1.0 : 0.0)));
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,118 @@
+package com.thalesians.linear;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernels of {@link DoubleKernels} on the Java Vector API, in the widest vectors the CPU supports. Each loop runs
+ * over whole vectors and finishes the remaining elements with scalar code. Loaded reflectively by DoubleKernels, so
+ * that the rest of the library neither needs Java 17 nor the incubator module.
+ */
+final class VectorDoubleKernels extends DoubleKernels {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+
+	@Override void add(double[] a, double[] b, double[] c, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(c, i);
+		}
+		for (; i < length; ++i) {
+			c[i] = a[i] + b[i];
+		}
+	}
+
+	@Override void subtract(double[] a, double[] b, double[] c, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(c, i);
+		}
+		for (; i < length; ++i) {
+			c[i] = a[i] - b[i];
+		}
+	}
+
+	@Override void scale(double alpha, double[] a, double[] c, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, a, i).mul(alpha).intoArray(c, i);
+		}
+		for (; i < length; ++i) {
+			c[i] = alpha * a[i];
+		}
+	}
+
+	/**
+	 * Multiplies and adds separately rather than with fma, so that the results are the same as those of the scalar loop
+	 */
+	@Override void axpy(double alpha, double[] x, int xoffset, double[] y, int yoffset, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, x, xoffset + i).mul(alpha).add(DoubleVector.fromArray(SPECIES, y, yoffset + i)).intoArray(y, yoffset + i);
+		}
+		for (; i < length; ++i) {
+			y[yoffset + i] += alpha * x[xoffset + i];
+		}
+	}
+
+	@Override void multiply(double[] a, int aoffset, double[] b, int boffset, double[] c, int coffset, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, a, aoffset + i).mul(DoubleVector.fromArray(SPECIES, b, boffset + i)).intoArray(c, coffset + i);
+		}
+		for (; i < length; ++i) {
+			c[coffset + i] = a[aoffset + i] * b[boffset + i];
+		}
+	}
+
+	/**
+	 * Compares and blends rather than using max, which would let NaNs through
+	 */
+	@Override double maxAbs(double[] a, int length) {
+		DoubleVector max = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector v = DoubleVector.fromArray(SPECIES, a, i).abs();
+			max = max.blend(v, v.compare(VectorOperators.GT, max));
+		}
+		double result = max.reduceLanes(VectorOperators.MAX);
+		for (; i < length; ++i) {
+			double val = Math.abs(a[i]);
+			if (val > result) {
+				result = val;
+			}
+		}
+		return result;
+	}
+
+	@Override double minAbs(double[] a, int length) {
+		DoubleVector min = DoubleVector.broadcast(SPECIES, Double.MAX_VALUE);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector v = DoubleVector.fromArray(SPECIES, a, i).abs();
+			min = min.blend(v, v.compare(VectorOperators.LT, min));
+		}
+		double result = min.reduceLanes(VectorOperators.MIN);
+		for (; i < length; ++i) {
+			double val = Math.abs(a[i]);
+			if (val < result) {
+				result = val;
+			}
+		}
+		return result;
+	}
+
+	@Override void replaceNaNs(double[] a, double value, double[] c, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector v = DoubleVector.fromArray(SPECIES, a, i);
+			VectorMask<Double> nans = v.test(VectorOperators.IS_NAN);
+			v.blend(value, nans).intoArray(c, i);
+		}
+		for (; i < length; ++i) {
+			c[i] = Double.isNaN(a[i]) ? value : a[i];
+		}
+	}
+}